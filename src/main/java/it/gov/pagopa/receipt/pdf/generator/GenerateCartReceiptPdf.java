@@ -2,13 +2,13 @@ package it.gov.pagopa.receipt.pdf.generator;
 
 import com.azure.core.http.rest.Response;
 import com.azure.storage.queue.models.SendMessageResult;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.microsoft.azure.functions.ExecutionContext;
-import com.microsoft.azure.functions.OutputBinding;
-import com.microsoft.azure.functions.annotation.CosmosDBOutput;
 import com.microsoft.azure.functions.annotation.FunctionName;
 import com.microsoft.azure.functions.annotation.QueueTrigger;
 import it.gov.pagopa.receipt.pdf.generator.client.CartQueueClient;
 import it.gov.pagopa.receipt.pdf.generator.client.impl.CartQueueClientImpl;
+import it.gov.pagopa.receipt.pdf.generator.client.impl.CircuitBreakerPdfEngineClient;
 import it.gov.pagopa.receipt.pdf.generator.entity.cart.CartForReceipt;
 import it.gov.pagopa.receipt.pdf.generator.entity.cart.CartPayment;
 import it.gov.pagopa.receipt.pdf.generator.entity.cart.CartStatusType;
@@ -20,19 +20,29 @@ import it.gov.pagopa.receipt.pdf.generator.exception.BizEventNotValidException;
 import it.gov.pagopa.receipt.pdf.generator.exception.CartNotFoundException;
 import it.gov.pagopa.receipt.pdf.generator.exception.CartReceiptGenerationNotToRetryException;
 import it.gov.pagopa.receipt.pdf.generator.exception.UnableToQueueException;
+import it.gov.pagopa.receipt.pdf.generator.exception.UnableToSaveException;
 import it.gov.pagopa.receipt.pdf.generator.model.PdfCartGeneration;
+import it.gov.pagopa.receipt.pdf.generator.model.PdfMetadata;
 import it.gov.pagopa.receipt.pdf.generator.service.CartReceiptCosmosService;
 import it.gov.pagopa.receipt.pdf.generator.service.GenerateCartReceiptPdfService;
 import it.gov.pagopa.receipt.pdf.generator.service.impl.CartReceiptCosmosServiceImpl;
 import it.gov.pagopa.receipt.pdf.generator.service.impl.GenerateCartReceiptPdfServiceImpl;
+import it.gov.pagopa.receipt.pdf.generator.utils.DegradedMode;
+import it.gov.pagopa.receipt.pdf.generator.utils.DocumentPatchBuilder;
+import it.gov.pagopa.receipt.pdf.generator.utils.GenerationMetrics;
+import it.gov.pagopa.receipt.pdf.generator.utils.GenerationMetrics.Stage;
 import it.gov.pagopa.receipt.pdf.generator.utils.ReceiptGeneratorUtils;
+import it.gov.pagopa.receipt.pdf.generator.utils.RequeueBackoff;
+import lombok.Setter;
 import org.apache.http.HttpStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.List;
 
@@ -43,16 +53,32 @@ public class GenerateCartReceiptPdf {
 
     private final Logger logger = LoggerFactory.getLogger(GenerateCartReceiptPdf.class);
 
+    static final String FUNCTION_NAME = "GenerateCartReceiptProcess";
+
     private static final int MAX_NUMBER_RETRY = Integer.parseInt(System.getenv().getOrDefault("COSMOS_CART_RECEIPT_QUEUE_MAX_RETRY", "5"));
 
     private final GenerateCartReceiptPdfService generateCartReceiptPdfService;
     private final CartReceiptCosmosService cartReceiptCosmosService;
     private final CartQueueClient cartQueueClient;
+    private final GenerationMetrics generationMetrics;
+    private final RequeueBackoff requeueBackoff;
+
+    /**
+     * While active the messages are requeued without calling the PDF Engine and without consuming a retry.
+     */
+    @Setter
+    private DegradedMode degradedMode;
 
     public GenerateCartReceiptPdf() {
-        this.generateCartReceiptPdfService = new GenerateCartReceiptPdfServiceImpl();
+        this.generationMetrics = GenerationMetrics.getInstance(FUNCTION_NAME);
+        this.requeueBackoff = RequeueBackoff.getInstance();
+        GenerateCartReceiptPdfServiceImpl generateCartReceiptPdfServiceImpl = new GenerateCartReceiptPdfServiceImpl();
+        generateCartReceiptPdfServiceImpl.setGenerationMetrics(this.generationMetrics);
+        this.generateCartReceiptPdfService = generateCartReceiptPdfServiceImpl;
         this.cartReceiptCosmosService = new CartReceiptCosmosServiceImpl();
         this.cartQueueClient = CartQueueClientImpl.getInstance();
+        this.degradedMode = new DegradedMode(
+                () -> !CircuitBreakerPdfEngineClient.getInstance().getCircuitBreaker().isCallPermitted());
     }
 
     GenerateCartReceiptPdf(
@@ -63,6 +89,9 @@ public class GenerateCartReceiptPdf {
         this.generateCartReceiptPdfService = generateCartReceiptPdfService;
         this.cartReceiptCosmosService = cartReceiptCosmosService;
         this.cartQueueClient = cartQueueClient;
+        this.generationMetrics = GenerationMetrics.getInstance(FUNCTION_NAME);
+        this.requeueBackoff = RequeueBackoff.getInstance();
+        this.degradedMode = DegradedMode.disabled();
     }
 
     /**
@@ -83,7 +112,7 @@ public class GenerateCartReceiptPdf {
      * </ul>
      * If everything succeeded the cart receipt's status will be updated to GENERATED and saved to CosmosDB
      * <p>
-     * The bizEventMessage is re-sent to the queue in case of errors like:
+     * The bizEventMessage is re-sent to the queue, with a delay growing with the retries, in case of errors like:
      * <ul>
      *     <li> there is an error generating at least one pdf;
      *     <li> there is an error saving at least one pdf to blob storage;
@@ -95,45 +124,53 @@ public class GenerateCartReceiptPdf {
      *     <li> the cart receipt has not valid payload
      *     <li> the cart receipt's status is not INSERTED or RETRY
      * </ul>
-     * After too many retry the cart receipt's status will be updated to FAILED
+     * After too many retry the cart receipt's status will be updated to FAILED,
+     * the attempts rejected by the circuit breaker of the PDF Engine are requeued without being counted
+     * <p>
+     * While the PDF Engine is unhealthy the message is requeued with a longer delay before reading the cart,
+     * without generating anything nor consuming a retry
      *
      * @param bizEventMessage BizEventMessage, with biz-event's data, triggering the function
-     * @param documentdb      Output binding that will update the cart receipt data with the pdfs metadata
      * @param context         Function context
      * @throws BizEventNotValidException thrown when an error occur on parsing the message from the queue to a {@link BizEvent}
+     * @throws UnableToSaveException     thrown when the cart cannot be saved on Cosmos DB, a cart modified by someone else
+     *                                   in the meantime is read again and saved only if it is still waiting for generation
      */
-    @FunctionName("GenerateCartReceiptProcess")
+    @FunctionName(FUNCTION_NAME)
     public void processGenerateCartReceipt(
             @QueueTrigger(
                     name = "QueueCartReceiptWaitingForGen",
                     queueName = "%CART_RECEIPT_QUEUE_TOPIC%",
                     connection = "RECEIPTS_STORAGE_CONN_STRING")
             String bizEventMessage,
-            @CosmosDBOutput(
-                    name = "CartReceiptDatastore",
-                    databaseName = "db",
-                    containerName = "cart-for-receipts",
-                    connection = "COSMOS_RECEIPTS_CONN_STRING")
-            OutputBinding<CartForReceipt> documentdb,
             final ExecutionContext context
-    ) throws BizEventNotValidException, IOException, CartNotFoundException {
+    ) throws BizEventNotValidException, IOException, CartNotFoundException, UnableToSaveException {
 
         //Map queue bizEventMessage to BizEvent
-        List<BizEvent> listOfBizEvent = ReceiptGeneratorUtils.getBizEventListFromMessage(bizEventMessage, context.getFunctionName());
+        List<BizEvent> listOfBizEvent = this.generationMetrics.time(Stage.MESSAGE_PARSE,
+                () -> ReceiptGeneratorUtils.getBizEventListFromMessage(bizEventMessage, context.getFunctionName()));
 
         if (listOfBizEvent.isEmpty()) {
             return;
         }
         String cartReceiptEventReference = ReceiptGeneratorUtils.getCartReceiptEventReference(listOfBizEvent.get(0));
 
+        //Shed the load while the PDF Engine is unhealthy, the message comes back later
+        if (this.degradedMode.isActive() && requeueInDegradedMode(bizEventMessage, context, cartReceiptEventReference)) {
+            return;
+        }
+
         logger.info("[{}] function called at {} for cart receipt with cart reference {}",
                 context.getFunctionName(), LocalDateTime.now(), cartReceiptEventReference);
 
         //Retrieve cart's data from CosmosDB
-        CartForReceipt cart = this.cartReceiptCosmosService.getCartForReceipt(cartReceiptEventReference);
+        CartForReceipt cart = this.generationMetrics.time(Stage.COSMOS_READ,
+                () -> this.cartReceiptCosmosService.getCartForReceipt(cartReceiptEventReference));
+        //Only the fields changed since now are saved
+        JsonNode cartSnapshot = DocumentPatchBuilder.snapshot(cart);
 
         //Verify cart status
-        if (isCartNotValidForGeneration(documentdb, context, cart, listOfBizEvent, cartReceiptEventReference)) {
+        if (isCartNotValidForGeneration(cartSnapshot, context, cart, listOfBizEvent, cartReceiptEventReference)) {
             return;
         }
 
@@ -144,8 +181,10 @@ public class GenerateCartReceiptPdf {
 
         //Generate and save PDF
         PdfCartGeneration pdfCartGeneration = generatePdfCart(cart, listOfBizEvent);
+        recordPdfOutcomes(pdfCartGeneration);
 
         //Verify PDF generation success
+        long updateStart = System.nanoTime();
         try {
             verifyPDFGenerationAndUpdateCartReceipt(bizEventMessage, context, cart, pdfCartGeneration);
         } catch (UnableToQueueException | CartReceiptGenerationNotToRetryException e) {
@@ -155,16 +194,59 @@ public class GenerateCartReceiptPdf {
                     cart.getId(),
                     ReceiptStatusType.FAILED, e);
         }
-        documentdb.setValue(cart);
+        try {
+            saveGenerationOutcome(cartSnapshot, cart, context, cartReceiptEventReference);
+        } finally {
+            this.generationMetrics.recordStage(Stage.VERIFY_UPDATE, updateStart);
+        }
+    }
+
+    /**
+     * Save the outcome of the generation. The PDFs are already uploaded at this point, so when the cart was
+     * modified since it was read (i.e. by a concurrent attempt) the same changes are applied again on its current
+     * version, leaving the fields changed in the meantime untouched, instead of failing the message, as long as
+     * the cart is still waiting for generation.
+     * Otherwise the cart was completed in the meantime and the outcome of this attempt is discarded.
+     */
+    private void saveGenerationOutcome(
+            JsonNode cartSnapshot,
+            CartForReceipt cart,
+            ExecutionContext context,
+            String cartReceiptEventReference
+    ) throws UnableToSaveException, CartNotFoundException {
+        try {
+            this.cartReceiptCosmosService.patchCartForReceipt(cartSnapshot, cart);
+            return;
+        } catch (UnableToSaveException e) {
+            if (e.getStatusCode() != HttpStatus.SC_PRECONDITION_FAILED) {
+                throw e;
+            }
+        }
+
+        CartForReceipt currentCart = this.cartReceiptCosmosService.getCartForReceipt(cartReceiptEventReference);
+        if (isCartReceiptInInvalidState(currentCart)) {
+            logger.warn("[{}] Cart receipt with id {} was updated to status {} in the meantime, status {} of this attempt is discarded",
+                    context.getFunctionName(),
+                    cart.getId(),
+                    currentCart.getStatus(),
+                    cart.getStatus());
+            return;
+        }
+        logger.warn("[{}] Cart receipt with id {} was modified in the meantime, status {} is saved on its current version",
+                context.getFunctionName(),
+                cart.getId(),
+                cart.getStatus());
+        this.cartReceiptCosmosService.patchCartForReceipt(
+                DocumentPatchBuilder.snapshot(currentCart), DocumentPatchBuilder.rebase(cartSnapshot, cart, currentCart));
     }
 
     private boolean isCartNotValidForGeneration(
-            OutputBinding<CartForReceipt> documentdb,
+            JsonNode cartSnapshot,
             ExecutionContext context,
             CartForReceipt cart,
             List<BizEvent> listOfBizEvent,
             String cartReceiptEventReference
-    ) {
+    ) throws UnableToSaveException {
         Payload payload = cart.getPayload();
         if (isCartReceiptInInvalidState(cart)) {
             logger.info("[{}] Cart with id {} is discarded from generation because it is not in INSERTED " +
@@ -188,7 +270,7 @@ public class GenerateCartReceiptPdf {
             cart.setStatus(CartStatusType.FAILED);
             cart.setReasonErr(new ReasonError(HttpStatus.SC_INTERNAL_SERVER_ERROR, errorMessage));
             logger.error("[{}] Error generating PDF: {}", context.getFunctionName(), errorMessage);
-            documentdb.setValue(cart);
+            this.cartReceiptCosmosService.patchCartForReceipt(cartSnapshot, cart);
             return true;
         }
 
@@ -200,7 +282,7 @@ public class GenerateCartReceiptPdf {
             cart.setStatus(CartStatusType.FAILED);
             cart.setReasonErr(new ReasonError(HttpStatus.SC_INTERNAL_SERVER_ERROR, errorMessage));
             logger.error("[{}] Error generating PDF: {}", context.getFunctionName(), errorMessage);
-            documentdb.setValue(cart);
+            this.cartReceiptCosmosService.patchCartForReceipt(cartSnapshot, cart);
             return true;
         }
         return false;
@@ -218,6 +300,19 @@ public class GenerateCartReceiptPdf {
         }
     }
 
+    private void recordPdfOutcomes(PdfCartGeneration pdfCartGeneration) {
+        this.generationMetrics.recordPdfOutcomes(collectPdfs(pdfCartGeneration));
+    }
+
+    private List<PdfMetadata> collectPdfs(PdfCartGeneration pdfCartGeneration) {
+        List<PdfMetadata> pdfs = new ArrayList<>();
+        pdfs.add(pdfCartGeneration.getPayerMetadata());
+        if (pdfCartGeneration.getDebtorMetadataMap() != null) {
+            pdfs.addAll(pdfCartGeneration.getDebtorMetadataMap().values());
+        }
+        return pdfs;
+    }
+
     private void verifyPDFGenerationAndUpdateCartReceipt(
             String bizEventMessage,
             ExecutionContext context,
@@ -237,15 +332,28 @@ public class GenerateCartReceiptPdf {
         }
 
         CartStatusType cartReceiptStatusType;
+        //A rejection of the circuit breaker is not an attempt, it does not count toward the max number of retry
+        List<PdfMetadata> pdfs = collectPdfs(pdfCartGeneration);
+        boolean engineUnavailable = ReceiptGeneratorUtils.isPdfEngineUnavailable(pdfs);
         //Verify if the max number of retry have been passed
-        if (cart.getNumRetry() > MAX_NUMBER_RETRY) {
+        if (!engineUnavailable && cart.getNumRetry() > MAX_NUMBER_RETRY) {
             cartReceiptStatusType = CartStatusType.FAILED;
         } else {
             cartReceiptStatusType = CartStatusType.RETRY;
-            cart.setNumRetry(cart.getNumRetry() + 1);
+            Duration requeueDelay;
+            if (engineUnavailable) {
+                logger.warn("[{}] PDF Engine unavailable, cart {} requeued without consuming a retry",
+                        context.getFunctionName(),
+                        cart.getId());
+                requeueDelay = this.degradedMode.nextRequeueDelay();
+            } else {
+                //Back off exponentially on the retries already made
+                requeueDelay = this.requeueBackoff.nextDelay(cart.getNumRetry(), pdfs);
+                cart.setNumRetry(cart.getNumRetry() + 1);
+            }
             //Send decoded BizEvent to queue
-            Response<SendMessageResult> sendMessageResult =
-                    this.cartQueueClient.sendMessageToQueue(Base64.getMimeEncoder().encodeToString(bizEventMessage.getBytes()));
+            Response<SendMessageResult> sendMessageResult = this.cartQueueClient.sendMessageToQueue(
+                    Base64.getMimeEncoder().encodeToString(bizEventMessage.getBytes()), requeueDelay);
             if (sendMessageResult.getStatusCode() != com.microsoft.azure.functions.HttpStatus.CREATED.value()) {
                 throw new UnableToQueueException("Unable to queue due to error: " + sendMessageResult.getStatusCode());
             }
@@ -257,6 +365,35 @@ public class GenerateCartReceiptPdf {
                 cartReceiptStatusType);
     }
 
+    private boolean requeueInDegradedMode(String bizEventMessage, ExecutionContext context, String cartReceiptEventReference) {
+        Duration delay = this.degradedMode.nextRequeueDelay();
+        Response<SendMessageResult> sendMessageResult;
+        try {
+            sendMessageResult = this.cartQueueClient.sendMessageToQueue(
+                    Base64.getMimeEncoder().encodeToString(bizEventMessage.getBytes()), delay);
+        } catch (RuntimeException e) {
+            // the queue client reports the failed sends by throwing a QueueStorageException
+            logger.error("[{}] Unable to requeue cart receipt with cart reference {} in degraded mode, it is processed now",
+                    context.getFunctionName(),
+                    cartReceiptEventReference,
+                    e);
+            return false;
+        }
+        if (sendMessageResult.getStatusCode() != com.microsoft.azure.functions.HttpStatus.CREATED.value()) {
+            logger.error("[{}] Unable to requeue cart receipt with cart reference {} in degraded mode (status {}), it is processed now",
+                    context.getFunctionName(),
+                    cartReceiptEventReference,
+                    sendMessageResult.getStatusCode());
+            return false;
+        }
+        this.generationMetrics.recordDegradedRequeue();
+        logger.warn("[{}] PDF Engine unhealthy, cart receipt with cart reference {} requeued in {} without consuming a retry",
+                context.getFunctionName(),
+                cartReceiptEventReference,
+                delay);
+        return true;
+    }
+
     private boolean totalNoticeMismatch(
             List<BizEvent> listOfBizEvent,
             Payload payload
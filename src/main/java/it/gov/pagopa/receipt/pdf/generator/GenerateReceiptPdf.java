@@ -2,12 +2,12 @@ package it.gov.pagopa.receipt.pdf.generator;
 
 import com.azure.core.http.rest.Response;
 import com.azure.storage.queue.models.SendMessageResult;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.microsoft.azure.functions.ExecutionContext;
-import com.microsoft.azure.functions.OutputBinding;
-import com.microsoft.azure.functions.annotation.CosmosDBOutput;
 import com.microsoft.azure.functions.annotation.FunctionName;
 import com.microsoft.azure.functions.annotation.QueueTrigger;
 import it.gov.pagopa.receipt.pdf.generator.client.ReceiptQueueClient;
+import it.gov.pagopa.receipt.pdf.generator.client.impl.CircuitBreakerPdfEngineClient;
 import it.gov.pagopa.receipt.pdf.generator.client.impl.ReceiptQueueClientImpl;
 import it.gov.pagopa.receipt.pdf.generator.entity.event.BizEvent;
 import it.gov.pagopa.receipt.pdf.generator.entity.receipt.ReasonError;
@@ -17,19 +17,29 @@ import it.gov.pagopa.receipt.pdf.generator.exception.BizEventNotValidException;
 import it.gov.pagopa.receipt.pdf.generator.exception.ReceiptGenerationNotToRetryException;
 import it.gov.pagopa.receipt.pdf.generator.exception.ReceiptNotFoundException;
 import it.gov.pagopa.receipt.pdf.generator.exception.UnableToQueueException;
+import it.gov.pagopa.receipt.pdf.generator.exception.UnableToSaveException;
 import it.gov.pagopa.receipt.pdf.generator.model.PdfGeneration;
+import it.gov.pagopa.receipt.pdf.generator.model.PdfMetadata;
 import it.gov.pagopa.receipt.pdf.generator.service.GenerateReceiptPdfService;
 import it.gov.pagopa.receipt.pdf.generator.service.ReceiptCosmosService;
 import it.gov.pagopa.receipt.pdf.generator.service.impl.GenerateReceiptPdfServiceImpl;
 import it.gov.pagopa.receipt.pdf.generator.service.impl.ReceiptCosmosServiceImpl;
+import it.gov.pagopa.receipt.pdf.generator.utils.DegradedMode;
+import it.gov.pagopa.receipt.pdf.generator.utils.DocumentPatchBuilder;
+import it.gov.pagopa.receipt.pdf.generator.utils.GenerationMetrics;
+import it.gov.pagopa.receipt.pdf.generator.utils.GenerationMetrics.Stage;
 import it.gov.pagopa.receipt.pdf.generator.utils.ReceiptGeneratorUtils;
+import it.gov.pagopa.receipt.pdf.generator.utils.RequeueBackoff;
+import lombok.Setter;
 import org.apache.http.HttpStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.List;
 
@@ -40,16 +50,32 @@ public class GenerateReceiptPdf {
 
     private final Logger logger = LoggerFactory.getLogger(GenerateReceiptPdf.class);
 
+    static final String FUNCTION_NAME = "GenerateReceiptProcess";
+
     private static final int MAX_NUMBER_RETRY = Integer.parseInt(System.getenv().getOrDefault("COSMOS_RECEIPT_QUEUE_MAX_RETRY", "5"));
 
     private final GenerateReceiptPdfService generateReceiptPdfService;
     private final ReceiptCosmosService receiptCosmosService;
     private final ReceiptQueueClient queueService;
+    private final GenerationMetrics generationMetrics;
+    private final RequeueBackoff requeueBackoff;
+
+    /**
+     * While active the messages are requeued without calling the PDF Engine and without consuming a retry.
+     */
+    @Setter
+    private DegradedMode degradedMode;
 
     public GenerateReceiptPdf() {
-        this.generateReceiptPdfService = new GenerateReceiptPdfServiceImpl();
+        this.generationMetrics = GenerationMetrics.getInstance(FUNCTION_NAME);
+        this.requeueBackoff = RequeueBackoff.getInstance();
+        GenerateReceiptPdfServiceImpl generateReceiptPdfServiceImpl = new GenerateReceiptPdfServiceImpl();
+        generateReceiptPdfServiceImpl.setGenerationMetrics(this.generationMetrics);
+        this.generateReceiptPdfService = generateReceiptPdfServiceImpl;
         this.receiptCosmosService = new ReceiptCosmosServiceImpl();
         this.queueService = ReceiptQueueClientImpl.getInstance();
+        this.degradedMode = new DegradedMode(
+                () -> !CircuitBreakerPdfEngineClient.getInstance().getCircuitBreaker().isCallPermitted());
     }
 
     GenerateReceiptPdf(
@@ -60,6 +86,9 @@ public class GenerateReceiptPdf {
         this.generateReceiptPdfService = generateReceiptPdfService;
         this.receiptCosmosService = receiptCosmosService;
         this.queueService = queueService;
+        this.generationMetrics = GenerationMetrics.getInstance(FUNCTION_NAME);
+        this.requeueBackoff = RequeueBackoff.getInstance();
+        this.degradedMode = DegradedMode.disabled();
     }
 
     /**
@@ -84,7 +113,7 @@ public class GenerateReceiptPdf {
      * </ul>
      * If everything succeeded the receipt's status will be updated to GENERATED and saved to CosmosDB
      * <p>
-     * The bizEventMessage is re-sent to the queue in case of errors like:
+     * The bizEventMessage is re-sent to the queue, with a delay growing with the retries, in case of errors like:
      * <ul>
      *     <li> there is an error generating at least one pdf;
      *     <li> there is an error saving at least one pdf to blob storage;
@@ -96,43 +125,49 @@ public class GenerateReceiptPdf {
      *     <li> the receipt has not valid event data
      *     <li> the receipt's status is not INSERTED or RETRY
      * </ul>
-     * After too many retry the receipt's status will be updated to FAILED
+     * After too many retry the receipt's status will be updated to FAILED,
+     * the attempts rejected by the circuit breaker of the PDF Engine are requeued without being counted
+     * <p>
+     * While the PDF Engine is unhealthy the message is requeued with a longer delay before reading the receipt,
+     * without generating anything nor consuming a retry
      *
      * @param bizEventMessage BizEventMessage, with biz-event's data, triggering the function
-     * @param documentdb      Output binding that will update the receipt data with the pdfs metadata
      * @param context         Function context
      * @throws BizEventNotValidException thrown when an error occur on parsing the message from the queue to a {@link BizEvent}
      * @throws ReceiptNotFoundException  thrown when a receipt associated to the bizEvent is not found on Cosmos DB or the retrieved receipt is null
+     * @throws UnableToSaveException     thrown when the receipt cannot be saved on Cosmos DB, a receipt modified by someone else
+     *                                   in the meantime is read again and saved only if it is still waiting for generation
      */
-    @FunctionName("GenerateReceiptProcess")
+    @FunctionName(FUNCTION_NAME)
     public void processGenerateReceipt(
             @QueueTrigger(
                     name = "QueueReceiptWaitingForGen",
                     queueName = "%RECEIPT_QUEUE_TOPIC%",
                     connection = "RECEIPTS_STORAGE_CONN_STRING")
             String bizEventMessage,
-            @CosmosDBOutput(
-                    name = "ReceiptDatastore",
-                    databaseName = "db",
-                    containerName = "receipts",
-                    connection = "COSMOS_RECEIPTS_CONN_STRING")
-            OutputBinding<Receipt> documentdb,
             final ExecutionContext context
-    ) throws BizEventNotValidException, ReceiptNotFoundException, IOException {
+    ) throws BizEventNotValidException, ReceiptNotFoundException, IOException, UnableToSaveException {
 
         //Map queue bizEventMessage to BizEvent
-        List<BizEvent> listOfBizEvent = ReceiptGeneratorUtils.getBizEventListFromMessage(bizEventMessage, context.getFunctionName());
+        List<BizEvent> listOfBizEvent = this.generationMetrics.time(Stage.MESSAGE_PARSE,
+                () -> ReceiptGeneratorUtils.getBizEventListFromMessage(bizEventMessage, context.getFunctionName()));
 
         if (listOfBizEvent.isEmpty()) {
             return;
         }
         String receiptEventReference = ReceiptGeneratorUtils.getReceiptEventReference(listOfBizEvent.get(0));
 
+        //Shed the load while the PDF Engine is unhealthy, the message comes back later
+        if (this.degradedMode.isActive() && requeueInDegradedMode(bizEventMessage, context, receiptEventReference)) {
+            return;
+        }
+
         logger.info("[{}] function called at {} for receipt with bizEvent reference {}",
                 context.getFunctionName(), LocalDateTime.now(), receiptEventReference);
 
         //Retrieve receipt's data from CosmosDB
-        Receipt receipt = this.receiptCosmosService.getReceipt(receiptEventReference);
+        Receipt receipt = this.generationMetrics.time(Stage.COSMOS_READ,
+                () -> this.receiptCosmosService.getReceipt(receiptEventReference));
 
         //Verify receipt status
         if (isReceiptInInValidState(receipt)) {
@@ -143,6 +178,8 @@ public class GenerateReceiptPdf {
                     receipt.getEventData() == null);
             return;
         }
+        //Only the fields changed since now are saved
+        JsonNode receiptSnapshot = DocumentPatchBuilder.snapshot(receipt);
 
         String debtorCF = receipt.getEventData().getDebtorFiscalCode();
         if (debtorCF == null && receipt.getEventData().getPayerFiscalCode() == null) {
@@ -155,7 +192,7 @@ public class GenerateReceiptPdf {
             ReasonError reasonError = new ReasonError(HttpStatus.SC_INTERNAL_SERVER_ERROR, errorMessage);
             receipt.setReasonErr(reasonError);
             logger.error("[{}] Error generating PDF: {}", context.getFunctionName(), errorMessage);
-            documentdb.setValue(receipt);
+            this.receiptCosmosService.patchReceipt(receiptSnapshot, receipt);
             return;
         }
 
@@ -171,8 +208,11 @@ public class GenerateReceiptPdf {
         } finally {
             ReceiptGeneratorUtils.deleteTempFolder(workingDirPath, logger);
         }
+        List<PdfMetadata> pdfs = Arrays.asList(pdfGeneration.getPayerMetadata(), pdfGeneration.getDebtorMetadata());
+        this.generationMetrics.recordPdfOutcomes(pdfs);
 
         //Verify PDF generation success
+        long updateStart = System.nanoTime();
         boolean success;
         try {
             success = this.generateReceiptPdfService.verifyAndUpdateReceipt(receipt, pdfGeneration);
@@ -185,15 +225,27 @@ public class GenerateReceiptPdf {
                         receipt.getStatus());
             } else {
                 ReceiptStatusType receiptStatusType;
+                //A rejection of the circuit breaker is not an attempt, it does not count toward the max number of retry
+                boolean engineUnavailable = ReceiptGeneratorUtils.isPdfEngineUnavailable(pdfs);
                 //Verify if the max number of retry have been passed
-                if (receipt.getNumRetry() > MAX_NUMBER_RETRY) {
+                if (!engineUnavailable && receipt.getNumRetry() > MAX_NUMBER_RETRY) {
                     receiptStatusType = ReceiptStatusType.FAILED;
                 } else {
                     receiptStatusType = ReceiptStatusType.RETRY;
-                    receipt.setNumRetry(receipt.getNumRetry() + 1);
+                    Duration requeueDelay;
+                    if (engineUnavailable) {
+                        logger.warn("[{}] PDF Engine unavailable, receipt {} requeued without consuming a retry",
+                                context.getFunctionName(),
+                                receipt.getId());
+                        requeueDelay = this.degradedMode.nextRequeueDelay();
+                    } else {
+                        //Back off exponentially on the retries already made
+                        requeueDelay = this.requeueBackoff.nextDelay(receipt.getNumRetry(), pdfs);
+                        receipt.setNumRetry(receipt.getNumRetry() + 1);
+                    }
                     //Send decoded BizEvent to queue
-                    Response<SendMessageResult> sendMessageResult =
-                            this.queueService.sendMessageToQueue(Base64.getMimeEncoder().encodeToString(bizEventMessage.getBytes()));
+                    Response<SendMessageResult> sendMessageResult = this.queueService.sendMessageToQueue(
+                            Base64.getMimeEncoder().encodeToString(bizEventMessage.getBytes()), requeueDelay);
                     if (sendMessageResult.getStatusCode() != com.microsoft.azure.functions.HttpStatus.CREATED.value()) {
                         throw new UnableToQueueException("Unable to queue due to error: " +
                                 sendMessageResult.getStatusCode());
@@ -212,7 +264,79 @@ public class GenerateReceiptPdf {
                     receipt.getId(),
                     ReceiptStatusType.FAILED, e);
         }
-        documentdb.setValue(receipt);
+        try {
+            saveGenerationOutcome(receiptSnapshot, receipt, context, receiptEventReference);
+        } finally {
+            this.generationMetrics.recordStage(Stage.VERIFY_UPDATE, updateStart);
+        }
+    }
+
+    /**
+     * Save the outcome of the generation. The PDFs are already uploaded at this point, so when the receipt was
+     * modified since it was read (i.e. by a concurrent attempt) the same changes are applied again on its current
+     * version, leaving the fields changed in the meantime untouched, instead of failing the message, as long as
+     * the receipt is still waiting for generation.
+     * Otherwise the receipt was completed in the meantime and the outcome of this attempt is discarded.
+     */
+    private void saveGenerationOutcome(
+            JsonNode receiptSnapshot,
+            Receipt receipt,
+            ExecutionContext context,
+            String receiptEventReference
+    ) throws UnableToSaveException, ReceiptNotFoundException {
+        try {
+            this.receiptCosmosService.patchReceipt(receiptSnapshot, receipt);
+            return;
+        } catch (UnableToSaveException e) {
+            if (e.getStatusCode() != HttpStatus.SC_PRECONDITION_FAILED) {
+                throw e;
+            }
+        }
+
+        Receipt currentReceipt = this.receiptCosmosService.getReceipt(receiptEventReference);
+        if (isReceiptInInValidState(currentReceipt)) {
+            logger.warn("[{}] Receipt with id {} was updated to status {} in the meantime, status {} of this attempt is discarded",
+                    context.getFunctionName(),
+                    receipt.getEventId(),
+                    currentReceipt.getStatus(),
+                    receipt.getStatus());
+            return;
+        }
+        logger.warn("[{}] Receipt with id {} was modified in the meantime, status {} is saved on its current version",
+                context.getFunctionName(),
+                receipt.getEventId(),
+                receipt.getStatus());
+        this.receiptCosmosService.patchReceipt(
+                DocumentPatchBuilder.snapshot(currentReceipt), DocumentPatchBuilder.rebase(receiptSnapshot, receipt, currentReceipt));
+    }
+
+    private boolean requeueInDegradedMode(String bizEventMessage, ExecutionContext context, String receiptEventReference) {
+        Duration delay = this.degradedMode.nextRequeueDelay();
+        Response<SendMessageResult> sendMessageResult;
+        try {
+            sendMessageResult = this.queueService.sendMessageToQueue(
+                    Base64.getMimeEncoder().encodeToString(bizEventMessage.getBytes()), delay);
+        } catch (RuntimeException e) {
+            // the queue client reports the failed sends by throwing a QueueStorageException
+            logger.error("[{}] Unable to requeue receipt with bizEvent reference {} in degraded mode, it is processed now",
+                    context.getFunctionName(),
+                    receiptEventReference,
+                    e);
+            return false;
+        }
+        if (sendMessageResult.getStatusCode() != com.microsoft.azure.functions.HttpStatus.CREATED.value()) {
+            logger.error("[{}] Unable to requeue receipt with bizEvent reference {} in degraded mode (status {}), it is processed now",
+                    context.getFunctionName(),
+                    receiptEventReference,
+                    sendMessageResult.getStatusCode());
+            return false;
+        }
+        this.generationMetrics.recordDegradedRequeue();
+        logger.warn("[{}] PDF Engine unhealthy, receipt with bizEvent reference {} requeued in {} without consuming a retry",
+                context.getFunctionName(),
+                receiptEventReference,
+                delay);
+        return true;
     }
 
     private boolean isReceiptInInValidState(Receipt receipt) {
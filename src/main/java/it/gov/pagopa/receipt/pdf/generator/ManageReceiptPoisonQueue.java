@@ -4,6 +4,7 @@ import com.azure.core.http.rest.Response;
 import com.azure.storage.queue.models.SendMessageResult;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.microsoft.azure.functions.ExecutionContext;
 import com.microsoft.azure.functions.HttpStatus;
 import com.microsoft.azure.functions.OutputBinding;
@@ -20,9 +21,11 @@ import it.gov.pagopa.receipt.pdf.generator.entity.receipt.enumeration.ReceiptSta
 import it.gov.pagopa.receipt.pdf.generator.exception.Aes256Exception;
 import it.gov.pagopa.receipt.pdf.generator.exception.ReceiptNotFoundException;
 import it.gov.pagopa.receipt.pdf.generator.exception.UnableToQueueException;
+import it.gov.pagopa.receipt.pdf.generator.exception.UnableToSaveException;
 import it.gov.pagopa.receipt.pdf.generator.service.ReceiptCosmosService;
 import it.gov.pagopa.receipt.pdf.generator.service.impl.ReceiptCosmosServiceImpl;
 import it.gov.pagopa.receipt.pdf.generator.utils.Aes256Utils;
+import it.gov.pagopa.receipt.pdf.generator.utils.DocumentPatchBuilder;
 import it.gov.pagopa.receipt.pdf.generator.utils.ObjectMapperUtils;
 import it.gov.pagopa.receipt.pdf.generator.utils.ReceiptGeneratorUtils;
 import org.slf4j.Logger;
@@ -62,7 +65,6 @@ public class ManageReceiptPoisonQueue {
      * If invalid or already retried saves on CosmosDB receipt-message-errors collection
      *
      * @param errorMessage              payload of the message sent to the poison queue, triggering the function
-     * @param receiptsOutputBinding     Output binding that will update the receipt relative to the bizEvent
      * @param receiptErrorOutputBinding Output binding that will insert/update data with the errors not to retry within the function
      * @param context                   Function context
      */
@@ -73,12 +75,6 @@ public class ManageReceiptPoisonQueue {
                     queueName = "%RECEIPT_QUEUE_TOPIC_POISON%",
                     connection = "RECEIPTS_STORAGE_CONN_STRING")
             String errorMessage,
-            @CosmosDBOutput(
-                    name = "ReceiptDatastore",
-                    databaseName = "db",
-                    containerName = "receipts",
-                    connection = "COSMOS_RECEIPTS_CONN_STRING")
-            OutputBinding<Receipt> receiptsOutputBinding,
             @CosmosDBOutput(
                     name = "ReceiptMessageErrorsDatastore",
                     databaseName = "db",
@@ -125,18 +121,18 @@ public class ManageReceiptPoisonQueue {
                 logger.error("[{}] error for the function called at {} when attempting" +
                                 "to requeue BizEvent with id {}, saving to cosmos for review",
                         context.getFunctionName(), LocalDateTime.now(), bizEvent.getId(), e);
-                saveReceiptErrorAndUpdateReceipt(errorMessage, receiptsOutputBinding, receiptErrorOutputBinding, context, bizEvent);
+                saveReceiptErrorAndUpdateReceipt(errorMessage, receiptErrorOutputBinding, context, bizEvent);
             }
         } else {
-            saveReceiptErrorAndUpdateReceipt(errorMessage, receiptsOutputBinding, receiptErrorOutputBinding, context, bizEvent);
+            saveReceiptErrorAndUpdateReceipt(errorMessage, receiptErrorOutputBinding, context, bizEvent);
         }
     }
 
-    private void saveReceiptErrorAndUpdateReceipt(String errorMessage, OutputBinding<Receipt> receiptsOutputBinding, OutputBinding<ReceiptError> receiptErrorOutputBinding, ExecutionContext context, BizEvent bizEvent) {
+    private void saveReceiptErrorAndUpdateReceipt(String errorMessage, OutputBinding<ReceiptError> receiptErrorOutputBinding, ExecutionContext context, BizEvent bizEvent) {
         String bizEventReference = ReceiptGeneratorUtils.getReceiptEventReference(bizEvent);
         saveToReceiptError(context, errorMessage, bizEventReference, receiptErrorOutputBinding);
         if (bizEventReference != null) {
-            updateReceiptToReview(context, bizEventReference, receiptsOutputBinding);
+            updateReceiptToReview(context, bizEventReference);
         }
     }
 
@@ -160,19 +156,22 @@ public class ManageReceiptPoisonQueue {
         receiptErrorOutputBinding.setValue(receiptError);
     }
 
-    private void updateReceiptToReview(ExecutionContext context, String eventId,
-                                       OutputBinding<Receipt> receiptOutputBinding) {
+    private void updateReceiptToReview(ExecutionContext context, String eventId) {
         try {
             Receipt receipt = this.receiptCosmosService.getReceipt(eventId);
+            JsonNode receiptSnapshot = DocumentPatchBuilder.snapshot(receipt);
 
             receipt.setStatus(ReceiptStatusType.TO_REVIEW);
 
             logger.debug("[{}] updating receipt with id {} to status {}",
                     context.getFunctionName(), receipt.getId(), ReceiptStatusType.TO_REVIEW);
-            receiptOutputBinding.setValue(receipt);
+            this.receiptCosmosService.patchReceipt(receiptSnapshot, receipt);
         } catch (ReceiptNotFoundException e) {
             logger.error("[{}] error updating status of receipt with eventId {}, receipt not found",
                     context.getFunctionName(), eventId, e);
+        } catch (UnableToSaveException e) {
+            logger.error("[{}] error updating status of receipt with eventId {}, receipt not saved",
+                    context.getFunctionName(), eventId, e);
         }
     }
 }
\ No newline at end of file
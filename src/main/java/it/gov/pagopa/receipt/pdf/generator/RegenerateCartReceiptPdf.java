@@ -43,6 +43,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
+import static it.gov.pagopa.receipt.pdf.generator.utils.Constants.FORCE_PARAMETER;
 import static it.gov.pagopa.receipt.pdf.generator.utils.HelpdeskUtils.isBizEventInvalid;
 
 
@@ -81,6 +82,9 @@ public class RegenerateCartReceiptPdf {
 
     /**
      * This function will be invoked when a Http Trigger occurs
+     * <p>
+     * The PDFs whose template data is unchanged since the previous generation are not rendered again if they are
+     * still saved, only the cart receipt is updated. The query parameter {@code force=true} renders all the PDFs again.
      *
      * @return response with HttpStatus.OK
      */
@@ -137,9 +141,10 @@ public class RegenerateCartReceiptPdf {
                     "An error occurred while building cart receipt: " + e.getMessage()
             );
         }
-        CartStatusType originalStatus = addExistingCartInfoIfExist(cartId, context, cart);
+        CartForReceipt existingCart = addExistingCartInfoIfExist(cartId, context, cart);
+        CartStatusType originalStatus = existingCart != null ? existingCart.getStatus() : null;
 
-        PdfCartGeneration pdfGeneration = generatePDFReceipt(cart, bizEventList);
+        PdfCartGeneration pdfGeneration = generatePDFReceipt(cart, bizEventList, isForced(request) ? null : existingCart);
         try {
             boolean success = this.generateCartReceiptPdfService.verifyAndUpdateCartReceipt(cart, pdfGeneration);
             if (success) {
@@ -178,7 +183,7 @@ public class RegenerateCartReceiptPdf {
         return CartStatusType.NOT_TO_NOTIFY;
     }
 
-    private CartStatusType addExistingCartInfoIfExist(String cartId, ExecutionContext context, CartForReceipt cart) {
+    private CartForReceipt addExistingCartInfoIfExist(String cartId, ExecutionContext context, CartForReceipt cart) {
         try {
             CartForReceipt existingCart = this.cartReceiptCosmosService.getCartForReceipt(cartId);
             if (CartStatusType.IO_NOTIFIED.equals(existingCart.getStatus())) {
@@ -188,7 +193,7 @@ public class RegenerateCartReceiptPdf {
                 cart.getPayload().getCart().forEach(cartPayment -> cartPayment.setMessageDebtor(cartInfoMap.get(cartPayment.getBizEventId())));
                 cart.setNotified_at(existingCart.getNotified_at());
             }
-            return existingCart.getStatus();
+            return existingCart;
         } catch (CartNotFoundException e) {
             logger.info("[{}] Cart receipt not found with the provided cart id, a new receipt will be generated",
                     context.getFunctionName());
@@ -196,13 +201,19 @@ public class RegenerateCartReceiptPdf {
         return null;
     }
 
+    private boolean isForced(HttpRequestMessage<Optional<String>> request) {
+        Map<String, String> queryParameters = request.getQueryParameters();
+        return queryParameters != null && Boolean.parseBoolean(queryParameters.get(FORCE_PARAMETER));
+    }
+
     private PdfCartGeneration generatePDFReceipt(
             CartForReceipt receipt,
-            List<BizEvent> bizEventList
+            List<BizEvent> bizEventList,
+            CartForReceipt previousCart
     ) throws IOException {
         Path workingDirPath = ReceiptGeneratorUtils.createWorkingDirectory();
         try {
-            return this.generateCartReceiptPdfService.generateCartReceipts(receipt, bizEventList, workingDirPath);
+            return this.generateCartReceiptPdfService.regenerateCartReceipts(receipt, bizEventList, previousCart, workingDirPath);
         } finally {
             ReceiptGeneratorUtils.deleteTempFolder(workingDirPath, logger);
         }
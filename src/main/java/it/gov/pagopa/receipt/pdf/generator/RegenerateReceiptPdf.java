@@ -35,8 +35,10 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.time.LocalDateTime;
+import java.util.Map;
 import java.util.Optional;
 
+import static it.gov.pagopa.receipt.pdf.generator.utils.Constants.FORCE_PARAMETER;
 import static it.gov.pagopa.receipt.pdf.generator.utils.HelpdeskUtils.isBizEventInvalid;
 import static it.gov.pagopa.receipt.pdf.generator.utils.HelpdeskUtils.isReceiptStatusValid;
 
@@ -75,6 +77,9 @@ public class RegenerateReceiptPdf {
 
     /**
      * This function will be invoked when a Http Trigger occurs
+     * <p>
+     * The PDFs whose template data is unchanged since the previous generation are not rendered again if they are
+     * still saved, only the receipt is updated. The query parameter {@code force=true} renders all the PDFs again.
      *
      * @return response with HttpStatus.OK
      */
@@ -121,7 +126,8 @@ public class RegenerateReceiptPdf {
         }
 
         Receipt receipt = this.helpdeskService.createReceipt(bizEvent);
-        ReceiptStatusType originalStatus = addExistingReceiptInfoIfExist(context, bizEvent, receipt);
+        Receipt existingReceipt = addExistingReceiptInfoIfExist(context, bizEvent, receipt);
+        ReceiptStatusType originalStatus = existingReceipt != null ? existingReceipt.getStatus() : null;
         if (!isReceiptStatusValid(receipt)) {
             String errDetail = String.format(
                     "Failed to re-create receipt entity with eventId %s: %s",
@@ -132,7 +138,7 @@ public class RegenerateReceiptPdf {
             return buildErrorResponse(request, HttpStatus.INTERNAL_SERVER_ERROR, errDetail);
         }
 
-        PdfGeneration pdfGeneration = generatePDFReceipt(receipt, bizEvent);
+        PdfGeneration pdfGeneration = generatePDFReceipt(receipt, bizEvent, isForced(request) ? null : existingReceipt);
         try {
             boolean success = this.generateReceiptPdfService.verifyAndUpdateReceipt(receipt, pdfGeneration);
             if (success) {
@@ -164,7 +170,7 @@ public class RegenerateReceiptPdf {
                 .build();
     }
 
-    private ReceiptStatusType addExistingReceiptInfoIfExist(
+    private Receipt addExistingReceiptInfoIfExist(
             ExecutionContext context,
             BizEvent bizEvent,
             Receipt receipt
@@ -177,7 +183,7 @@ public class RegenerateReceiptPdf {
             // keep notification info if present to avoid data loss on regeneration
             receipt.setIoMessageData(existingReceipt.getIoMessageData());
             receipt.setNotified_at(existingReceipt.getNotified_at());
-            return existingReceipt.getStatus();
+            return existingReceipt;
         } catch (ReceiptNotFoundException e) {
             logger.info("[{}] Receipt not found with the provided biz event id, a new receipt will be generated",
                     context.getFunctionName());
@@ -192,10 +198,15 @@ public class RegenerateReceiptPdf {
         return ReceiptStatusType.NOT_TO_NOTIFY;
     }
 
-    private PdfGeneration generatePDFReceipt(Receipt receipt, BizEvent bizEvent) throws IOException {
+    private boolean isForced(HttpRequestMessage<Optional<String>> request) {
+        Map<String, String> queryParameters = request.getQueryParameters();
+        return queryParameters != null && Boolean.parseBoolean(queryParameters.get(FORCE_PARAMETER));
+    }
+
+    private PdfGeneration generatePDFReceipt(Receipt receipt, BizEvent bizEvent, Receipt previousReceipt) throws IOException {
         Path workingDirPath = ReceiptGeneratorUtils.createWorkingDirectory();
         try {
-            return this.generateReceiptPdfService.generateReceipts(receipt, bizEvent, workingDirPath);
+            return this.generateReceiptPdfService.regenerateReceipts(receipt, bizEvent, previousReceipt, workingDirPath);
         } finally {
             ReceiptGeneratorUtils.deleteTempFolder(workingDirPath, logger);
         }
@@ -2,6 +2,7 @@ package it.gov.pagopa.receipt.pdf.generator;
 
 import com.azure.core.http.rest.Response;
 import com.azure.storage.queue.models.SendMessageResult;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.microsoft.azure.functions.ExecutionContext;
 import com.microsoft.azure.functions.HttpStatus;
 import com.microsoft.azure.functions.OutputBinding;
@@ -18,17 +19,24 @@ import it.gov.pagopa.receipt.pdf.generator.entity.receipt.CartReceiptError;
 import it.gov.pagopa.receipt.pdf.generator.entity.receipt.enumeration.ReceiptErrorStatusType;
 import it.gov.pagopa.receipt.pdf.generator.exception.CartNotFoundException;
 import it.gov.pagopa.receipt.pdf.generator.exception.UnableToQueueException;
-import it.gov.pagopa.receipt.pdf.generator.exception.UnableToSaveException;
 import it.gov.pagopa.receipt.pdf.generator.service.CartReceiptCosmosService;
 import it.gov.pagopa.receipt.pdf.generator.service.impl.CartReceiptCosmosServiceImpl;
 import it.gov.pagopa.receipt.pdf.generator.utils.Aes256Utils;
+import it.gov.pagopa.receipt.pdf.generator.utils.DocumentPatchBuilder;
+import it.gov.pagopa.receipt.pdf.generator.utils.PdfGenerationExecutor;
 import it.gov.pagopa.receipt.pdf.generator.utils.ReceiptGeneratorUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Azure Functions with Azure CosmosDB trigger.
@@ -37,17 +45,23 @@ public class RetryReviewedCartPoisonMessages {
 
     private final Logger logger = LoggerFactory.getLogger(RetryReviewedCartPoisonMessages.class);
 
+    private static final int MAX_PARALLELISM = Integer.parseInt(
+            System.getenv().getOrDefault("RETRY_REVIEWED_MAX_PARALLELISM", "8"));
+
     private final CartReceiptCosmosService cartReceiptCosmosService;
     private final CartQueueClient cartQueueClient;
+    private final PdfGenerationExecutor pdfGenerationExecutor;
 
     public RetryReviewedCartPoisonMessages() {
         this.cartReceiptCosmosService = new CartReceiptCosmosServiceImpl();
         this.cartQueueClient = CartQueueClientImpl.getInstance();
+        this.pdfGenerationExecutor = PdfGenerationExecutor.getInstance();
     }
 
     RetryReviewedCartPoisonMessages(CartReceiptCosmosService cartReceiptCosmosService, CartQueueClient cartQueueClient) {
         this.cartReceiptCosmosService = cartReceiptCosmosService;
         this.cartQueueClient = cartQueueClient;
+        this.pdfGenerationExecutor = PdfGenerationExecutor.getInstance();
     }
 
     /**
@@ -57,6 +71,9 @@ public class RetryReviewedCartPoisonMessages {
      * to send it back to the provided output topic.
      * If succeeds saves the element with status REQUEUED and updated the relative cart-receipt's status to INSERTED
      * If fails updates the document back in status TO_REVIEW with an updated error description
+     * The carts of the whole batch are read with a single request and updated with a single bulk execution,
+     * payloads are decoded and events sent to the queue in parallel. Every reviewed error is saved exactly once,
+     * either REQUEUED or TO_REVIEW
      *
      * @param items   Reviewed Cart-Receipt Errors that triggered the function from the Cosmos database
      * @param context Function context
@@ -82,55 +99,156 @@ public class RetryReviewedCartPoisonMessages {
             OutputBinding<List<CartReceiptError>> documentdb,
             final ExecutionContext context) {
 
+        long batchStart = System.nanoTime();
         List<CartReceiptError> itemsDone = new ArrayList<>();
 
         logger.info("[{}] documentCaptorValue stat {} function - num errors reviewed triggered {}",
                 context.getFunctionName(), context.getInvocationId(), items.size());
 
-        //Retrieve receipt data from biz-event
+        //Process only errors in status REVIEWED
+        List<ReviewedError> reviewedErrors = new ArrayList<>();
         for (CartReceiptError cartReceiptError : items) {
-
-            //Process only errors in status REVIEWED
             if (cartReceiptError != null && cartReceiptError.getStatus().equals(ReceiptErrorStatusType.REVIEWED)) {
-
-                try {
-                    String decodedEventList = Aes256Utils.decrypt(cartReceiptError.getMessagePayload());
-
-                    //Find and update Receipt with bizEventId
-                    List<BizEvent> listOfBizEvents = ReceiptGeneratorUtils.getBizEventListFromMessage(decodedEventList, context.getFunctionName());
-                    String receiptEventReference = ReceiptGeneratorUtils.getCartReceiptEventReference(listOfBizEvents.get(0));
-                    updateReceiptToInserted(context, receiptEventReference);
-
-                    //Send decoded BizEvent to queue
-                    Response<SendMessageResult> sendMessageResult =
-                            this.cartQueueClient.sendMessageToQueue(Base64.getMimeEncoder().encodeToString(decodedEventList.getBytes()));
-                    if (sendMessageResult.getStatusCode() != HttpStatus.CREATED.value()) {
-                        throw new UnableToQueueException("Unable to queue due to error: " +
-                                sendMessageResult.getStatusCode());
-                    }
-
-                    cartReceiptError.setStatus(ReceiptErrorStatusType.REQUEUED);
-                } catch (Exception e) {
-                    //Error info
-                    logger.error("[{}] Error to process cartReceiptError with id {}",
-                            context.getFunctionName(), cartReceiptError.getId(), e);
-                    cartReceiptError.setMessageError(e.getMessage());
-                    cartReceiptError.setStatus(ReceiptErrorStatusType.TO_REVIEW);
-                }
-
+                reviewedErrors.add(new ReviewedError(cartReceiptError));
                 itemsDone.add(cartReceiptError);
             }
         }
 
+        //Decode all the errors in parallel
+        this.pdfGenerationExecutor.forEach(reviewedErrors, MAX_PARALLELISM, reviewedError -> decode(context, reviewedError),
+                (reviewedError, e) -> setToReview(context, reviewedError.cartReceiptError, e));
+        List<ReviewedError> decodedErrors = reviewedErrors.stream()
+                .filter(reviewedError -> reviewedError.cartId != null)
+                .toList();
+        long decodeEnd = System.nanoTime();
+
+        //Find and update the Carts of all the errors with transaction id
+        Map<String, Exception> updateErrors = updateCartsToInserted(context, decodedErrors);
+        List<ReviewedError> errorsToRequeue = new ArrayList<>();
+        for (ReviewedError reviewedError : decodedErrors) {
+            Exception updateError = updateErrors.get(reviewedError.cartId);
+            if (updateError != null) {
+                setToReview(context, reviewedError.cartReceiptError, updateError);
+            } else {
+                errorsToRequeue.add(reviewedError);
+            }
+        }
+        long updateEnd = System.nanoTime();
+
+        //Send decoded BizEvents to queue in parallel
+        this.pdfGenerationExecutor.forEach(errorsToRequeue, MAX_PARALLELISM, reviewedError -> requeue(context, reviewedError),
+                (reviewedError, e) -> setToReview(context, reviewedError.cartReceiptError, e));
+        long batchEnd = System.nanoTime();
+
+        logger.info("[{}] {} reviewed errors processed in {} ms (decode {} ms, carts update {} ms, requeue {} ms)",
+                context.getFunctionName(), itemsDone.size(),
+                TimeUnit.NANOSECONDS.toMillis(batchEnd - batchStart),
+                TimeUnit.NANOSECONDS.toMillis(decodeEnd - batchStart),
+                TimeUnit.NANOSECONDS.toMillis(updateEnd - decodeEnd),
+                TimeUnit.NANOSECONDS.toMillis(batchEnd - updateEnd));
+
         if (!itemsDone.isEmpty()) {
             documentdb.setValue(itemsDone);
         }
     }
 
-    private void updateReceiptToInserted(ExecutionContext context, String cartId) throws CartNotFoundException, UnableToSaveException {
-        CartForReceipt receipt = this.cartReceiptCosmosService.getCartForReceipt(cartId);
-        receipt.setStatus(CartStatusType.INSERTED);
-        logger.debug("[{}] updating cart-receipt with id {} to status {}", context.getFunctionName(), receipt.getId(), receipt.getStatus());
-        this.cartReceiptCosmosService.updateCartForReceipt(receipt);
+    /**
+     * Decrypt the payload of the reviewed error and find the id of its cart,
+     * on failure the error is set back to review
+     */
+    private void decode(ExecutionContext context, ReviewedError reviewedError) {
+        CartReceiptError cartReceiptError = reviewedError.cartReceiptError;
+        try {
+            String decodedEventList = Aes256Utils.decrypt(cartReceiptError.getMessagePayload());
+            List<BizEvent> listOfBizEvents = ReceiptGeneratorUtils.getBizEventListFromMessage(decodedEventList, context.getFunctionName());
+            String receiptEventReference = ReceiptGeneratorUtils.getCartReceiptEventReference(listOfBizEvents.get(0));
+            if (receiptEventReference == null) {
+                throw new CartNotFoundException("Cart not found, the biz-event has no transaction id");
+            }
+            reviewedError.decodedEventList = decodedEventList;
+            reviewedError.cartId = receiptEventReference;
+        } catch (Exception e) {
+            setToReview(context, cartReceiptError, e);
+        }
+    }
+
+    /**
+     * Send the decoded biz-events to the queue, setting the reviewed error as REQUEUED
+     * or back to review if the message is not queued
+     */
+    private void requeue(ExecutionContext context, ReviewedError reviewedError) {
+        CartReceiptError cartReceiptError = reviewedError.cartReceiptError;
+        try {
+            Response<SendMessageResult> sendMessageResult =
+                    this.cartQueueClient.sendMessageToQueue(Base64.getMimeEncoder().encodeToString(reviewedError.decodedEventList.getBytes()));
+            if (sendMessageResult.getStatusCode() != HttpStatus.CREATED.value()) {
+                throw new UnableToQueueException("Unable to queue due to error: " +
+                        sendMessageResult.getStatusCode());
+            }
+
+            cartReceiptError.setStatus(ReceiptErrorStatusType.REQUEUED);
+        } catch (Exception e) {
+            setToReview(context, cartReceiptError, e);
+        }
+    }
+
+    /**
+     * Read with a single request the carts of the reviewed errors, then save them in status INSERTED
+     * with a single bulk execution
+     *
+     * @return the error of each cart not updated, by cart id
+     */
+    private Map<String, Exception> updateCartsToInserted(ExecutionContext context, List<ReviewedError> reviewedErrors) {
+        Map<String, Exception> updateErrors = new HashMap<>();
+        if (reviewedErrors.isEmpty()) {
+            return updateErrors;
+        }
+        Set<String> cartIds = new LinkedHashSet<>();
+        reviewedErrors.forEach(reviewedError -> cartIds.add(reviewedError.cartId));
+
+        Map<String, CartForReceipt> carts;
+        try {
+            carts = this.cartReceiptCosmosService.getCartsForReceipt(cartIds);
+        } catch (Exception e) {
+            cartIds.forEach(cartId -> updateErrors.put(cartId, e));
+            return updateErrors;
+        }
+
+        Map<CartForReceipt, JsonNode> cartSnapshots = new IdentityHashMap<>();
+        for (String cartId : cartIds) {
+            CartForReceipt cart = carts.get(cartId);
+            if (cart == null) {
+                updateErrors.put(cartId, new CartNotFoundException(
+                        String.format("CartForReceipt not found with the event id %s", cartId)));
+                continue;
+            }
+            cartSnapshots.put(cart, DocumentPatchBuilder.snapshot(cart));
+            cart.setStatus(CartStatusType.INSERTED);
+            logger.debug("[{}] updating cart-receipt with id {} to status {}", context.getFunctionName(), cart.getId(), cart.getStatus());
+        }
+
+        updateErrors.putAll(this.cartReceiptCosmosService.patchCartsForReceipt(cartSnapshots));
+        return updateErrors;
+    }
+
+    private void setToReview(ExecutionContext context, CartReceiptError cartReceiptError, Exception e) {
+        //Error info
+        logger.error("[{}] Error to process cartReceiptError with id {}",
+                context.getFunctionName(), cartReceiptError.getId(), e);
+        cartReceiptError.setMessageError(e.getMessage());
+        cartReceiptError.setStatus(ReceiptErrorStatusType.TO_REVIEW);
+    }
+
+    /**
+     * Reviewed error being processed, the decoded fields are set only if the payload is valid
+     */
+    private static class ReviewedError {
+        private final CartReceiptError cartReceiptError;
+        private String decodedEventList;
+        private String cartId;
+
+        private ReviewedError(CartReceiptError cartReceiptError) {
+            this.cartReceiptError = cartReceiptError;
+        }
     }
 }
@@ -3,6 +3,7 @@ package it.gov.pagopa.receipt.pdf.generator;
 import com.azure.core.http.rest.Response;
 import com.azure.storage.queue.models.SendMessageResult;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.microsoft.azure.functions.ExecutionContext;
 import com.microsoft.azure.functions.HttpStatus;
 import com.microsoft.azure.functions.OutputBinding;
@@ -19,18 +20,25 @@ import it.gov.pagopa.receipt.pdf.generator.entity.receipt.enumeration.ReceiptErr
 import it.gov.pagopa.receipt.pdf.generator.entity.receipt.enumeration.ReceiptStatusType;
 import it.gov.pagopa.receipt.pdf.generator.exception.ReceiptNotFoundException;
 import it.gov.pagopa.receipt.pdf.generator.exception.UnableToQueueException;
-import it.gov.pagopa.receipt.pdf.generator.exception.UnableToSaveException;
 import it.gov.pagopa.receipt.pdf.generator.service.ReceiptCosmosService;
 import it.gov.pagopa.receipt.pdf.generator.service.impl.ReceiptCosmosServiceImpl;
 import it.gov.pagopa.receipt.pdf.generator.utils.Aes256Utils;
+import it.gov.pagopa.receipt.pdf.generator.utils.DocumentPatchBuilder;
 import it.gov.pagopa.receipt.pdf.generator.utils.ObjectMapperUtils;
+import it.gov.pagopa.receipt.pdf.generator.utils.PdfGenerationExecutor;
 import it.gov.pagopa.receipt.pdf.generator.utils.ReceiptGeneratorUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Azure Functions with Azure CosmosDB trigger.
@@ -39,16 +47,22 @@ public class RetryReviewedPoisonMessages {
 
      private final Logger logger = LoggerFactory.getLogger(RetryReviewedPoisonMessages.class);
 
+    private static final int MAX_PARALLELISM = Integer.parseInt(
+            System.getenv().getOrDefault("RETRY_REVIEWED_MAX_PARALLELISM", "8"));
+
     private final ReceiptCosmosService receiptCosmosService;
     private final ReceiptQueueClient queueService;
+    private final PdfGenerationExecutor pdfGenerationExecutor;
 
     public RetryReviewedPoisonMessages() {
         this.receiptCosmosService = new ReceiptCosmosServiceImpl();
         this.queueService = ReceiptQueueClientImpl.getInstance();
+        this.pdfGenerationExecutor = PdfGenerationExecutor.getInstance();
     }
     RetryReviewedPoisonMessages(ReceiptCosmosService receiptCosmosService, ReceiptQueueClient receiptQueueClient) {
         this.receiptCosmosService = receiptCosmosService;
         this.queueService = receiptQueueClient;
+        this.pdfGenerationExecutor = PdfGenerationExecutor.getInstance();
     }
 
     /**
@@ -58,6 +72,9 @@ public class RetryReviewedPoisonMessages {
      * to send it back to the provided output topic.
      * If succeeds saves the element with status REQUEUED and updated the relative receipt's status to INSERTED
      * If fails updates the document back in status TO_REVIEW with an updated error description
+     * The receipts of the whole batch are read with a single request and updated with a single bulk execution,
+     * payloads are decoded and events sent to the queue in parallel. Every reviewed error is saved exactly once,
+     * either REQUEUED or TO_REVIEW
      *
      * @param items      Reviewed Receipt Errors that triggered the function from the Cosmos database
      * @param context    Function context
@@ -83,55 +100,157 @@ public class RetryReviewedPoisonMessages {
             OutputBinding<List<ReceiptError>> documentdb,
             final ExecutionContext context) {
 
+        long batchStart = System.nanoTime();
         List<ReceiptError> itemsDone = new ArrayList<>();
 
          logger.info("[{}] documentCaptorValue stat {} function - num errors reviewed triggered {}",
                  context.getFunctionName(), context.getInvocationId(), items.size());
 
-        //Retrieve receipt data from biz-event
+        //Process only errors in status REVIEWED
+        List<ReviewedError> reviewedErrors = new ArrayList<>();
         for (ReceiptError receiptError : items) {
+            if (receiptError != null && receiptError.getStatus().equals(ReceiptErrorStatusType.REVIEWED)) {
+                reviewedErrors.add(new ReviewedError(receiptError));
+                itemsDone.add(receiptError);
+            }
+        }
+
+        //Decode all the errors in parallel
+        this.pdfGenerationExecutor.forEach(reviewedErrors, MAX_PARALLELISM, reviewedError -> decode(context, reviewedError),
+                (reviewedError, e) -> setToReview(context, reviewedError.receiptError, e));
+        List<ReviewedError> decodedErrors = reviewedErrors.stream()
+                .filter(reviewedError -> reviewedError.receiptEventReference != null)
+                .toList();
+        long decodeEnd = System.nanoTime();
 
-                //Process only errors in status REVIEWED
-                if (receiptError != null && receiptError.getStatus().equals(ReceiptErrorStatusType.REVIEWED)) {
-
-                    try {
-                        String decodedEventList = Aes256Utils.decrypt(receiptError.getMessagePayload());
-
-                        //Find and update Receipt with bizEventId
-                        List<BizEvent> listOfBizEvents = ObjectMapperUtils.mapBizEventListString(decodedEventList, new TypeReference<>() {});
-                        String receiptEventReference = ReceiptGeneratorUtils.getReceiptEventReference(listOfBizEvents.get(0));
-                        updateReceiptToInserted(context, receiptEventReference);
-
-                        //Send decoded BizEvent to queue
-                        Response<SendMessageResult> sendMessageResult =
-                            this.queueService.sendMessageToQueue(Base64.getMimeEncoder().encodeToString(decodedEventList.getBytes()));
-                        if (sendMessageResult.getStatusCode() != HttpStatus.CREATED.value()) {
-                            throw new UnableToQueueException("Unable to queue due to error: " +
-                                    sendMessageResult.getStatusCode());
-                        }
-
-                        receiptError.setStatus(ReceiptErrorStatusType.REQUEUED);
-                    } catch (Exception e) {
-                        //Error info
-                         logger.error("[{}] Error to process receiptError with id {}",
-                                 context.getFunctionName(), receiptError.getId(), e);
-                        receiptError.setMessageError(e.getMessage());
-                        receiptError.setStatus(ReceiptErrorStatusType.TO_REVIEW);
-                    }
-
-                    itemsDone.add(receiptError);
-               }
+        //Find and update the Receipts of all the errors with bizEventId
+        Map<String, Exception> updateErrors = updateReceiptsToInserted(context, decodedErrors);
+        List<ReviewedError> errorsToRequeue = new ArrayList<>();
+        for (ReviewedError reviewedError : decodedErrors) {
+            Exception updateError = updateErrors.get(reviewedError.receiptEventReference);
+            if (updateError != null) {
+                setToReview(context, reviewedError.receiptError, updateError);
+            } else {
+                errorsToRequeue.add(reviewedError);
+            }
         }
+        long updateEnd = System.nanoTime();
+
+        //Send decoded BizEvents to queue in parallel
+        this.pdfGenerationExecutor.forEach(errorsToRequeue, MAX_PARALLELISM, reviewedError -> requeue(context, reviewedError),
+                (reviewedError, e) -> setToReview(context, reviewedError.receiptError, e));
+        long batchEnd = System.nanoTime();
+
+        logger.info("[{}] {} reviewed errors processed in {} ms (decode {} ms, receipts update {} ms, requeue {} ms)",
+                context.getFunctionName(), itemsDone.size(),
+                TimeUnit.NANOSECONDS.toMillis(batchEnd - batchStart),
+                TimeUnit.NANOSECONDS.toMillis(decodeEnd - batchStart),
+                TimeUnit.NANOSECONDS.toMillis(updateEnd - decodeEnd),
+                TimeUnit.NANOSECONDS.toMillis(batchEnd - updateEnd));
 
         if(!itemsDone.isEmpty()){
             documentdb.setValue(itemsDone);
         }
     }
 
-    private void updateReceiptToInserted(ExecutionContext context, String bizEventId) throws ReceiptNotFoundException, UnableToSaveException {
-            Receipt receipt = this.receiptCosmosService.getReceipt(bizEventId);
+    /**
+     * Decrypt the payload of the reviewed error and find the biz-event id of its receipt,
+     * on failure the error is set back to review
+     */
+    private void decode(ExecutionContext context, ReviewedError reviewedError) {
+        ReceiptError receiptError = reviewedError.receiptError;
+        try {
+            String decodedEventList = Aes256Utils.decrypt(receiptError.getMessagePayload());
+            List<BizEvent> listOfBizEvents = ObjectMapperUtils.mapBizEventListString(decodedEventList, new TypeReference<>() {});
+            String receiptEventReference = ReceiptGeneratorUtils.getReceiptEventReference(listOfBizEvents.get(0));
+            if (receiptEventReference == null) {
+                throw new ReceiptNotFoundException("Receipt not found, the biz-event has no id");
+            }
+            reviewedError.decodedEventList = decodedEventList;
+            reviewedError.receiptEventReference = receiptEventReference;
+        } catch (Exception e) {
+            setToReview(context, receiptError, e);
+        }
+    }
+
+    /**
+     * Read with a single request the receipts of the reviewed errors, then save them in status INSERTED
+     * with a single bulk execution
+     *
+     * @return the error of each receipt not updated, by biz-event id
+     */
+    private Map<String, Exception> updateReceiptsToInserted(ExecutionContext context, List<ReviewedError> reviewedErrors) {
+        Map<String, Exception> updateErrors = new HashMap<>();
+        if (reviewedErrors.isEmpty()) {
+            return updateErrors;
+        }
+        Set<String> bizEventIds = new LinkedHashSet<>();
+        reviewedErrors.forEach(reviewedError -> bizEventIds.add(reviewedError.receiptEventReference));
+
+        Map<String, Receipt> receipts;
+        try {
+            receipts = this.receiptCosmosService.getReceipts(bizEventIds);
+        } catch (Exception e) {
+            bizEventIds.forEach(bizEventId -> updateErrors.put(bizEventId, e));
+            return updateErrors;
+        }
+
+        // the receipts are updated once in the map, their hash code would change with them
+        Map<Receipt, JsonNode> receiptSnapshots = new IdentityHashMap<>();
+        for (String bizEventId : bizEventIds) {
+            Receipt receipt = receipts.get(bizEventId);
+            if (receipt == null) {
+                updateErrors.put(bizEventId, new ReceiptNotFoundException(
+                        String.format("Receipt not found with the biz-event id %s", bizEventId)));
+                continue;
+            }
+            receiptSnapshots.put(receipt, DocumentPatchBuilder.snapshot(receipt));
             receipt.setStatus(ReceiptStatusType.INSERTED);
             logger.debug("[{}] updating receipt with id {} to status {}", context.getFunctionName(), receipt.getId(), ReceiptStatusType.INSERTED);
-            this.receiptCosmosService.updateReceipt(receipt);
+        }
+
+        updateErrors.putAll(this.receiptCosmosService.patchReceipts(receiptSnapshots));
+        return updateErrors;
+    }
+
+    /**
+     * Send the decoded biz-events to the queue, setting the reviewed error as REQUEUED
+     * or back to review if the message is not queued
+     */
+    private void requeue(ExecutionContext context, ReviewedError reviewedError) {
+        ReceiptError receiptError = reviewedError.receiptError;
+        try {
+            Response<SendMessageResult> sendMessageResult =
+                this.queueService.sendMessageToQueue(Base64.getMimeEncoder().encodeToString(reviewedError.decodedEventList.getBytes()));
+            if (sendMessageResult.getStatusCode() != HttpStatus.CREATED.value()) {
+                throw new UnableToQueueException("Unable to queue due to error: " +
+                        sendMessageResult.getStatusCode());
+            }
+
+            receiptError.setStatus(ReceiptErrorStatusType.REQUEUED);
+        } catch (Exception e) {
+            setToReview(context, receiptError, e);
+        }
+    }
+
+    private void setToReview(ExecutionContext context, ReceiptError receiptError, Exception e) {
+        //Error info
+        logger.error("[{}] Error to process receiptError with id {}",
+                context.getFunctionName(), receiptError.getId(), e);
+        receiptError.setMessageError(e.getMessage());
+        receiptError.setStatus(ReceiptErrorStatusType.TO_REVIEW);
+    }
+
+    /**
+     * Reviewed error being processed, the decoded fields are set only if the payload is valid
+     */
+    private static class ReviewedError {
+        private final ReceiptError receiptError;
+        private String decodedEventList;
+        private String receiptEventReference;
+
+        private ReviewedError(ReceiptError receiptError) {
+            this.receiptError = receiptError;
+        }
     }
 }
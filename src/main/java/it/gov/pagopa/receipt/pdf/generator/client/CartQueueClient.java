@@ -3,6 +3,8 @@ package it.gov.pagopa.receipt.pdf.generator.client;
 import com.azure.core.http.rest.Response;
 import com.azure.storage.queue.models.SendMessageResult;
 
+import java.time.Duration;
+
 public interface CartQueueClient {
 
     /**
@@ -12,4 +14,13 @@ public interface CartQueueClient {
      * This method sends a message to the cart queue for generating a PDF receipt.
      */
     Response<SendMessageResult> sendMessageToQueue(String messageText);
+
+    /**
+     * @param messageText       the message to send to the queue with the list of bizEvents
+     * @param visibilityTimeout the delay before the message becomes visible to the consumers
+     * @return the response from the queue service
+     * <p>
+     * This method sends a message to the cart queue overriding the configured delay.
+     */
+    Response<SendMessageResult> sendMessageToQueue(String messageText, Duration visibilityTimeout);
 }
@@ -3,6 +3,11 @@ package it.gov.pagopa.receipt.pdf.generator.client;
 import com.azure.cosmos.models.CosmosItemResponse;
 import it.gov.pagopa.receipt.pdf.generator.entity.cart.CartForReceipt;
 import it.gov.pagopa.receipt.pdf.generator.exception.CartNotFoundException;
+import it.gov.pagopa.receipt.pdf.generator.model.DocumentPatch;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 public interface CartReceiptsCosmosClient {
 
@@ -22,4 +27,31 @@ public interface CartReceiptsCosmosClient {
      * @return the updated cart-for-receipts document
      */
     CosmosItemResponse<CartForReceipt> updateCart(CartForReceipt receipt);
+
+    /**
+     * Write on CosmosDB database only the fields of the cart changed since it was read,
+     * on condition that the document has not been modified in the meantime
+     *
+     * @param cart  Cart Data to save, with the etag of the version read
+     * @param patch the fields changed since the cart was read
+     * @return the updated cart-for-receipts document
+     */
+    CosmosItemResponse<CartForReceipt> patchCart(CartForReceipt cart, DocumentPatch patch);
+
+    /**
+     * Retrieve with a single request the Cart For Receipt documents with the provided ids
+     *
+     * @param cartIds Biz-event transaction ids, that identify the carts
+     * @return the cart-for-receipts documents found, carts not found are missing from the list
+     */
+    List<CartForReceipt> getCartItems(Collection<String> cartIds);
+
+    /**
+     * Write on CosmosDB database, with the bulk executor, only the fields of each cart changed since it was read,
+     * each one on condition that the document has not been modified in the meantime
+     *
+     * @param patches the fields changed since each cart was read, by cart
+     * @return the status code of each write, by cart id
+     */
+    Map<String, Integer> patchCarts(Map<CartForReceipt, DocumentPatch> patches);
 }
@@ -4,8 +4,23 @@ import it.gov.pagopa.receipt.pdf.generator.model.request.PdfEngineRequest;
 import it.gov.pagopa.receipt.pdf.generator.model.response.PdfEngineResponse;
 
 import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
 
 public interface PdfEngineClient {
 
     PdfEngineResponse generatePDF(PdfEngineRequest pdfEngineRequest, Path workingDirPath);
+
+    /**
+     * Non-blocking variant of {@link #generatePDF(PdfEngineRequest, Path)}, the returned future never
+     * completes exceptionally: errors are reported through the response status code and message.
+     * <p>
+     * Implementations are not required to be truly asynchronous: a blocking transport may execute the call on the
+     * caller thread and return an already completed future, so callers fanning out several generations must not
+     * rely on this method alone to run them concurrently.
+     *
+     * @param pdfEngineRequest Request to the client
+     * @param workingDirPath   path to the temp folder used to store the generated PDF
+     * @return the future response with the PDF or error message and the status
+     */
+    CompletableFuture<PdfEngineResponse> generatePDFAsync(PdfEngineRequest pdfEngineRequest, Path workingDirPath);
 }
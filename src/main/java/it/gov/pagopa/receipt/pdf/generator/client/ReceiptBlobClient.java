@@ -17,4 +17,12 @@ public interface ReceiptBlobClient {
      * @return blob storage response with PDF metadata or error message and status
      */
     BlobStorageResponse savePdfToBlobStorage(InputStream pdf, String fileName);
+
+    /**
+     * Look up a PDF already saved in the blob storage, without downloading it
+     *
+     * @param fileName Filename the PDF was saved with
+     * @return blob storage response with PDF metadata and status 200 if the PDF exists, status 404 otherwise
+     */
+    BlobStorageResponse findPdfInBlobStorage(String fileName);
 }
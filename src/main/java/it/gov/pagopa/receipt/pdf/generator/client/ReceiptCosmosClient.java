@@ -3,6 +3,11 @@ package it.gov.pagopa.receipt.pdf.generator.client;
 import com.azure.cosmos.models.CosmosItemResponse;
 import it.gov.pagopa.receipt.pdf.generator.entity.receipt.Receipt;
 import it.gov.pagopa.receipt.pdf.generator.exception.ReceiptNotFoundException;
+import it.gov.pagopa.receipt.pdf.generator.model.DocumentPatch;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 public interface ReceiptCosmosClient {
 
@@ -22,4 +27,32 @@ public interface ReceiptCosmosClient {
      * @return receipt documents
      */
     CosmosItemResponse<Receipt> updateReceipt(Receipt receipt);
+
+    /**
+     * Write on CosmosDB database only the fields of the receipt changed since it was read,
+     * on condition that the document has not been modified in the meantime
+     *
+     * @param receipt Receipt to save, with the etag of the version read
+     * @param patch   the fields changed since the receipt was read
+     * @return receipt documents
+     */
+    CosmosItemResponse<Receipt> patchReceipt(Receipt receipt, DocumentPatch patch);
+
+    /**
+     * Retrieve with a single request the receipt documents of the provided events,
+     * the events not found by the request are then looked up one by one
+     *
+     * @param eventIds Biz-event ids
+     * @return the receipt documents found, receipts not found are missing from the list
+     */
+    List<Receipt> getReceiptDocuments(Collection<String> eventIds);
+
+    /**
+     * Write on CosmosDB database, with the bulk executor, only the fields of each receipt changed since it was read,
+     * each one on condition that the document has not been modified in the meantime
+     *
+     * @param patches the fields changed since each receipt was read, by receipt
+     * @return the status code of each write, by receipt event id
+     */
+    Map<String, Integer> patchReceipts(Map<Receipt, DocumentPatch> patches);
 }
@@ -3,7 +3,11 @@ package it.gov.pagopa.receipt.pdf.generator.client;
 import com.azure.core.http.rest.Response;
 import com.azure.storage.queue.models.SendMessageResult;
 
+import java.time.Duration;
+
 public interface ReceiptQueueClient {
 
     Response<SendMessageResult> sendMessageToQueue(String messageText);
+
+    Response<SendMessageResult> sendMessageToQueue(String messageText, Duration visibilityTimeout);
 }
@@ -1,8 +1,6 @@
 package it.gov.pagopa.receipt.pdf.generator.client.impl;
 
-import com.azure.cosmos.CosmosClientBuilder;
 import com.azure.cosmos.CosmosContainer;
-import com.azure.cosmos.CosmosDatabase;
 import com.azure.cosmos.CosmosException;
 import com.azure.cosmos.models.CosmosQueryRequestOptions;
 import com.azure.cosmos.models.PartitionKey;
@@ -21,7 +19,6 @@ public class BizEventCosmosClientImpl implements BizEventCosmosClient {
 
     private final CosmosContainer bizEventContainer;
 
-    @SuppressWarnings("resource") // CosmosClient lifecycle == singleton lifecycle; never closed on purpose
     private BizEventCosmosClientImpl() {
         String azureKey = System.getenv("COSMOS_BIZ_EVENT_KEY");
         String serviceEndpoint = System.getenv("COSMOS_BIZ_EVENT_SERVICE_ENDPOINT");
@@ -30,14 +27,8 @@ public class BizEventCosmosClientImpl implements BizEventCosmosClient {
         String databaseId = System.getenv("COSMOS_BIZ_EVENT_DB_NAME");
         String containerId = System.getenv("COSMOS_BIZ_EVENT_CONTAINER_NAME");
 
-        CosmosDatabase database = new CosmosClientBuilder()
-                .endpoint(serviceEndpoint)
-                .key(azureKey)
-                .preferredRegions(List.of(readRegion))
-                .buildClient()
-                .getDatabase(databaseId);
-
-        this.bizEventContainer = database.getContainer(containerId);
+        this.bizEventContainer = CosmosClientFactory.getInstance()
+                .getContainer(serviceEndpoint, azureKey, readRegion, databaseId, containerId);
     }
 
     /**
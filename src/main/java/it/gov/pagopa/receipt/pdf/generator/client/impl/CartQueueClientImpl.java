@@ -52,8 +52,21 @@ public class CartQueueClientImpl implements CartQueueClient {
      */
     public Response<SendMessageResult> sendMessageToQueue(String messageText) {
 
+        return sendMessageToQueue(messageText, Duration.of(cartQueueDelay, ChronoUnit.SECONDS));
+
+    }
+
+    /**
+     * Send string message to the queue, visible only after the given delay
+     *
+     * @param messageText       Biz-event encoded to base64 string
+     * @param visibilityTimeout delay before the message becomes visible
+     * @return response from the queue
+     */
+    public Response<SendMessageResult> sendMessageToQueue(String messageText, Duration visibilityTimeout) {
+
         return this.cartQueueClient.sendMessageWithResponse(
-                messageText, Duration.of(cartQueueDelay, ChronoUnit.SECONDS),
+                messageText, visibilityTimeout,
                 null, null, null);
 
     }
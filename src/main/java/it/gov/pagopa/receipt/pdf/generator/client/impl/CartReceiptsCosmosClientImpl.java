@@ -1,23 +1,36 @@
 package it.gov.pagopa.receipt.pdf.generator.client.impl;
 
 import com.azure.cosmos.ConsistencyLevel;
-import com.azure.cosmos.CosmosClientBuilder;
 import com.azure.cosmos.CosmosContainer;
-import com.azure.cosmos.CosmosDatabase;
 import com.azure.cosmos.CosmosException;
+import com.azure.cosmos.models.CosmosItemIdentity;
+import com.azure.cosmos.models.CosmosItemOperation;
+import com.azure.cosmos.models.CosmosItemRequestOptions;
 import com.azure.cosmos.models.CosmosItemResponse;
+import com.azure.cosmos.models.CosmosPatchItemRequestOptions;
 import com.azure.cosmos.models.PartitionKey;
 import it.gov.pagopa.receipt.pdf.generator.client.CartReceiptsCosmosClient;
 import it.gov.pagopa.receipt.pdf.generator.entity.cart.CartForReceipt;
 import it.gov.pagopa.receipt.pdf.generator.exception.CartNotFoundException;
+import it.gov.pagopa.receipt.pdf.generator.model.DocumentPatch;
+import it.gov.pagopa.receipt.pdf.generator.utils.DocumentPatchBuilder;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 public class CartReceiptsCosmosClientImpl implements CartReceiptsCosmosClient {
 
+    /**
+     * The CosmosClient is shared with the receipt container, the consistency level of the cart is set on each read
+     */
+    private static final CosmosItemRequestOptions READ_OPTIONS = new CosmosItemRequestOptions()
+            .setConsistencyLevel(ConsistencyLevel.BOUNDED_STALENESS);
+
     private final CosmosContainer cartForReceiptContainer;
 
-    @SuppressWarnings("resource") // CosmosClient lifecycle == singleton lifecycle; never closed on purpose
     private CartReceiptsCosmosClientImpl() {
         String azureKey = System.getenv("COSMOS_RECEIPT_KEY");
         String serviceEndpoint = System.getenv("COSMOS_RECEIPT_SERVICE_ENDPOINT");
@@ -26,15 +39,8 @@ public class CartReceiptsCosmosClientImpl implements CartReceiptsCosmosClient {
         String databaseId = System.getenv("COSMOS_RECEIPT_DB_NAME");
         String cartForReceiptContainerName = System.getenv("CART_FOR_RECEIPT_CONTAINER_NAME");
 
-        CosmosDatabase database = new CosmosClientBuilder()
-                .endpoint(serviceEndpoint)
-                .key(azureKey)
-                .consistencyLevel(ConsistencyLevel.BOUNDED_STALENESS)
-                .preferredRegions(List.of(readRegion))
-                .buildClient()
-                .getDatabase(databaseId);
-
-        this.cartForReceiptContainer = database.getContainer(cartForReceiptContainerName);
+        this.cartForReceiptContainer = CosmosClientFactory.getInstance()
+                .getContainer(serviceEndpoint, azureKey, readRegion, databaseId, cartForReceiptContainerName);
     }
 
     /**
@@ -65,7 +71,7 @@ public class CartReceiptsCosmosClientImpl implements CartReceiptsCosmosClient {
         //Query the container
         try {
             return cartForReceiptContainer
-                    .readItem(cartId, new PartitionKey(cartId), CartForReceipt.class)
+                    .readItem(cartId, new PartitionKey(cartId), READ_OPTIONS, CartForReceipt.class)
                     .getItem();
         } catch (CosmosException e) {
             if (e.getStatusCode() == 404) {
@@ -82,4 +88,57 @@ public class CartReceiptsCosmosClientImpl implements CartReceiptsCosmosClient {
     public CosmosItemResponse<CartForReceipt> updateCart(CartForReceipt receipt) {
         return cartForReceiptContainer.upsertItem(receipt);
     }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * A patch request accepts a limited number of operations, a wider change replaces the whole document
+     * on the same condition.
+     */
+    @Override
+    public CosmosItemResponse<CartForReceipt> patchCart(CartForReceipt cart, DocumentPatch patch) {
+        PartitionKey partitionKey = new PartitionKey(cart.getCartId());
+        if (patch.size() > DocumentPatchBuilder.MAX_PATCH_OPERATIONS) {
+            return cartForReceiptContainer.replaceItem(cart, cart.getId(), partitionKey,
+                    ifMatch(new CosmosItemRequestOptions(), cart.get_etag()));
+        }
+        return cartForReceiptContainer.patchItem(cart.getId(), partitionKey, patch.getOperations(),
+                ifMatch(new CosmosPatchItemRequestOptions(), cart.get_etag()), CartForReceipt.class);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The read many request does not accept a consistency level, the carts are read with the one of the account.
+     */
+    @Override
+    public List<CartForReceipt> getCartItems(Collection<String> cartIds) {
+        if (cartIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<CosmosItemIdentity> identities = cartIds.stream()
+                .distinct()
+                .map(cartId -> new CosmosItemIdentity(new PartitionKey(cartId), cartId))
+                .toList();
+
+        return cartForReceiptContainer.readMany(identities, CartForReceipt.class).getResults();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Integer> patchCarts(Map<CartForReceipt, DocumentPatch> patches) {
+        List<CosmosItemOperation> operations = new ArrayList<>(patches.size());
+        patches.forEach((cart, patch) -> operations.add(CosmosBulkPatches.toOperation(
+                cart, cart.getId(), cart.getCartId(), cart.get_etag(), patch)));
+        return CosmosBulkPatches.execute(cartForReceiptContainer, operations);
+    }
+
+    private static <T extends CosmosItemRequestOptions> T ifMatch(T options, String etag) {
+        if (etag != null) {
+            options.setIfMatchETag(etag);
+        }
+        return options;
+    }
 }
@@ -0,0 +1,147 @@
+package it.gov.pagopa.receipt.pdf.generator.client.impl;
+
+import it.gov.pagopa.receipt.pdf.generator.client.PdfEngineClient;
+import it.gov.pagopa.receipt.pdf.generator.entity.receipt.enumeration.ReasonErrorCode;
+import it.gov.pagopa.receipt.pdf.generator.model.request.PdfEngineRequest;
+import it.gov.pagopa.receipt.pdf.generator.model.response.PdfEngineResponse;
+import it.gov.pagopa.receipt.pdf.generator.utils.CircuitBreaker;
+import it.gov.pagopa.receipt.pdf.generator.utils.JmxMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.HttpStatus;
+
+import javax.management.JMException;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PDF Engine client guarded by a {@link CircuitBreaker}: while the engine is failing or too slow the calls
+ * are rejected without reaching it, with status {@link ReasonErrorCode#ERROR_PDF_ENGINE_UNAVAILABLE}.
+ * Only 5xx responses, timeouts and I/O errors count as failures.
+ * <p>
+ * The state of the breaker is registered with {@link JmxMetrics} as {@code type=PdfEngineCircuitBreaker}.
+ */
+@Slf4j
+public class CircuitBreakerPdfEngineClient implements PdfEngineClient {
+
+    /** Percentage of failed calls in the window opening the breaker. */
+    private static final int FAILURE_RATE_THRESHOLD = envInt("PDF_ENGINE_CB_FAILURE_RATE_THRESHOLD", 50);
+    /** Percentage of slow calls in the window opening the breaker. */
+    private static final int SLOW_CALL_RATE_THRESHOLD = envInt("PDF_ENGINE_CB_SLOW_CALL_RATE_THRESHOLD", 80);
+    /** Duration (ms) from which a call is slow. Keep below the socket timeout of the client. */
+    private static final long SLOW_CALL_DURATION_MS = envLong("PDF_ENGINE_CB_SLOW_CALL_DURATION_MS", 10_000L);
+    /** Number of last calls the rates are computed on. */
+    private static final int WINDOW_SIZE = envInt("PDF_ENGINE_CB_WINDOW_SIZE", 50);
+    /** Number of calls in the window before the rates are evaluated. */
+    private static final int MINIMUM_CALLS = envInt("PDF_ENGINE_CB_MINIMUM_CALLS", 20);
+    /** Time (ms) the breaker stays open before probing the engine. */
+    private static final long OPEN_DURATION_MS = envLong("PDF_ENGINE_CB_OPEN_DURATION_MS", 30_000L);
+    /** Number of probe calls let through while half-open. */
+    private static final int HALF_OPEN_CALLS = envInt("PDF_ENGINE_CB_HALF_OPEN_CALLS", 5);
+
+    private final PdfEngineClient delegate;
+    private final CircuitBreaker circuitBreaker;
+
+    private static final class Holder {
+        private static final CircuitBreakerPdfEngineClient INSTANCE = new CircuitBreakerPdfEngineClient(
+                PdfEngineClientImpl.getInstance(), buildDefaultCircuitBreaker()).register();
+    }
+
+    public static CircuitBreakerPdfEngineClient getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    CircuitBreakerPdfEngineClient(PdfEngineClient delegate, CircuitBreaker circuitBreaker) {
+        this.delegate = delegate;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PdfEngineResponse generatePDF(PdfEngineRequest pdfEngineRequest, Path workingDirPath) {
+        CircuitBreaker.Permit permit = this.circuitBreaker.tryAcquirePermission();
+        if (permit == null) {
+            return buildRejectedResponse();
+        }
+        long start = System.nanoTime();
+        PdfEngineResponse response = null;
+        try {
+            response = this.delegate.generatePDF(pdfEngineRequest, workingDirPath);
+            return response;
+        } finally {
+            this.circuitBreaker.onResult(permit, isSuccess(response), System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<PdfEngineResponse> generatePDFAsync(PdfEngineRequest pdfEngineRequest, Path workingDirPath) {
+        CircuitBreaker.Permit permit = this.circuitBreaker.tryAcquirePermission();
+        if (permit == null) {
+            return CompletableFuture.completedFuture(buildRejectedResponse());
+        }
+        long start = System.nanoTime();
+        return this.delegate.generatePDFAsync(pdfEngineRequest, workingDirPath)
+                .whenComplete((response, throwable) ->
+                        this.circuitBreaker.onResult(permit, isSuccess(response), System.nanoTime() - start));
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return this.circuitBreaker;
+    }
+
+    /**
+     * Only the failures of the engine count against the breaker: 5xx responses, timeouts and I/O errors
+     * (reported by the delegate as {@link HttpStatus#SC_INTERNAL_SERVER_ERROR}). 4xx responses are caused by
+     * the request and would open the breaker for the calls that are fine.
+     * The status returned by the engine is checked in place of the one reported on the receipt.
+     */
+    private static boolean isSuccess(PdfEngineResponse response) {
+        if (response == null) {
+            return false;
+        }
+        int statusCode = response.getEngineStatusCode() != 0 ? response.getEngineStatusCode() : response.getStatusCode();
+        return statusCode < HttpStatus.SC_INTERNAL_SERVER_ERROR;
+    }
+
+    private static PdfEngineResponse buildRejectedResponse() {
+        PdfEngineResponse response = new PdfEngineResponse();
+        response.setStatusCode(ReasonErrorCode.ERROR_PDF_ENGINE_UNAVAILABLE.getCode());
+        response.setErrorMessage("PDF Engine call rejected, the circuit breaker is open");
+        return response;
+    }
+
+    private static CircuitBreaker buildDefaultCircuitBreaker() {
+        CircuitBreaker.Settings settings = new CircuitBreaker.Settings(
+                FAILURE_RATE_THRESHOLD,
+                SLOW_CALL_RATE_THRESHOLD,
+                TimeUnit.MILLISECONDS.toNanos(SLOW_CALL_DURATION_MS),
+                WINDOW_SIZE,
+                MINIMUM_CALLS,
+                TimeUnit.MILLISECONDS.toNanos(OPEN_DURATION_MS),
+                HALF_OPEN_CALLS);
+        return new CircuitBreaker("PDF Engine", settings, System::nanoTime);
+    }
+
+    private CircuitBreakerPdfEngineClient register() {
+        try {
+            JmxMetrics.register(this.circuitBreaker.toMXBean(), "type=PdfEngineCircuitBreaker");
+        } catch (JMException e) {
+            // metrics are not worth failing the call for
+            log.warn("Unable to register the PDF Engine circuit breaker metrics", e);
+        }
+        return this;
+    }
+
+    private static int envInt(String name, int defaultValue) {
+        return Integer.parseInt(System.getenv().getOrDefault(name, Integer.toString(defaultValue)));
+    }
+
+    private static long envLong(String name, long defaultValue) {
+        return Long.parseLong(System.getenv().getOrDefault(name, Long.toString(defaultValue)));
+    }
+}
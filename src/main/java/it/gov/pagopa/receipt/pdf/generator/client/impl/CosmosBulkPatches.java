@@ -0,0 +1,91 @@
+package it.gov.pagopa.receipt.pdf.generator.client.impl;
+
+import com.azure.cosmos.CosmosContainer;
+import com.azure.cosmos.CosmosException;
+import com.azure.cosmos.models.CosmosBulkItemRequestOptions;
+import com.azure.cosmos.models.CosmosBulkOperationResponse;
+import com.azure.cosmos.models.CosmosBulkOperations;
+import com.azure.cosmos.models.CosmosBulkPatchItemRequestOptions;
+import com.azure.cosmos.models.CosmosItemOperation;
+import com.azure.cosmos.models.PartitionKey;
+import it.gov.pagopa.receipt.pdf.generator.model.DocumentPatch;
+import it.gov.pagopa.receipt.pdf.generator.utils.DocumentPatchBuilder;
+import org.apache.http.HttpStatus;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bulk patch writes shared by the receipt and cart Cosmos clients.
+ * <p>
+ * Each operation carries the partition key value of its document as context, so that the status code
+ * of every write can be attributed to its document whatever the order the bulk executor completes them.
+ */
+final class CosmosBulkPatches {
+
+    /**
+     * Hide from public usage.
+     */
+    private CosmosBulkPatches() {
+    }
+
+    /**
+     * Build the bulk operation writing the patch of a document, on condition of its etag.
+     * Patches wider than the operations accepted by a single request replace the whole document.
+     *
+     * @param document     the document to save
+     * @param id           the document id
+     * @param partitionKey the partition key value of the document, used as the operation context
+     * @param etag         the etag of the version read, no condition is set if null
+     * @param patch        the fields changed since the document was read
+     * @return the bulk operation
+     */
+    static <T> CosmosItemOperation toOperation(T document, String id, String partitionKey, String etag, DocumentPatch patch) {
+        PartitionKey partitionKeyValue = new PartitionKey(partitionKey);
+        if (patch.size() > DocumentPatchBuilder.MAX_PATCH_OPERATIONS) {
+            CosmosBulkItemRequestOptions options = new CosmosBulkItemRequestOptions();
+            if (etag != null) {
+                options.setIfMatchETag(etag);
+            }
+            return CosmosBulkOperations.getReplaceItemOperation(id, document, partitionKeyValue, options, partitionKey);
+        }
+        CosmosBulkPatchItemRequestOptions options = new CosmosBulkPatchItemRequestOptions();
+        if (etag != null) {
+            options.setIfMatchETag(etag);
+        }
+        return CosmosBulkOperations.getPatchItemOperation(id, partitionKeyValue, patch.getOperations(), options, partitionKey);
+    }
+
+    /**
+     * Run the operations with the bulk executor of the container
+     *
+     * @param container  the container of the documents
+     * @param operations the operations built with {@link #toOperation}
+     * @return the status code of each write, by partition key value of the document
+     */
+    static Map<String, Integer> execute(CosmosContainer container, List<CosmosItemOperation> operations) {
+        Map<String, Integer> statusCodes = new HashMap<>();
+        if (operations.isEmpty()) {
+            return statusCodes;
+        }
+        for (CosmosBulkOperationResponse<Object> response : container.executeBulkOperations(operations)) {
+            statusCodes.put(response.getOperation().getContext(), statusCode(response));
+        }
+        // operations without a response have not been executed
+        for (CosmosItemOperation operation : operations) {
+            statusCodes.putIfAbsent(operation.getContext(), HttpStatus.SC_INTERNAL_SERVER_ERROR);
+        }
+        return statusCodes;
+    }
+
+    private static int statusCode(CosmosBulkOperationResponse<Object> response) {
+        if (response.getException() instanceof CosmosException cosmosException) {
+            return cosmosException.getStatusCode();
+        }
+        if (response.getException() != null || response.getResponse() == null) {
+            return HttpStatus.SC_INTERNAL_SERVER_ERROR;
+        }
+        return response.getResponse().getStatusCode();
+    }
+}
@@ -0,0 +1,161 @@
+package it.gov.pagopa.receipt.pdf.generator.client.impl;
+
+import com.azure.cosmos.CosmosClient;
+import com.azure.cosmos.CosmosClientBuilder;
+import com.azure.cosmos.CosmosContainer;
+import com.azure.cosmos.DirectConnectionConfig;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Factory of the CosmosDB clients shared by the receipt, cart and biz-event Cosmos clients.
+ * <p>
+ * A single {@link CosmosClient} is built for each account endpoint, key and preferred region, so that containers
+ * of the same account share the connection pool, the address caches and the background threads of the SDK.
+ * Clients use direct mode and do not return the document on writes, the callers only check the status code.
+ * The first time a container is requested its connections are opened and its caches warmed up in the background:
+ * the invocation that builds the container does not wait for it, and its first requests open the connections
+ * they need as they would without the warm-up.
+ */
+@Slf4j
+public class CosmosClientFactory {
+
+    private static final int MAX_CONNECTIONS_PER_ENDPOINT = Integer.parseInt(
+            System.getenv().getOrDefault("COSMOS_DIRECT_MAX_CONNECTIONS_PER_ENDPOINT", "130"));
+    private static final int MAX_REQUESTS_PER_CONNECTION = Integer.parseInt(
+            System.getenv().getOrDefault("COSMOS_DIRECT_MAX_REQUESTS_PER_CONNECTION", "30"));
+    private static final long CONNECT_TIMEOUT_MS = Long.parseLong(
+            System.getenv().getOrDefault("COSMOS_DIRECT_CONNECT_TIMEOUT_MS", "2000"));
+    private static final long IDLE_ENDPOINT_TIMEOUT_MINUTES = Long.parseLong(
+            System.getenv().getOrDefault("COSMOS_DIRECT_IDLE_ENDPOINT_TIMEOUT_MINUTES", "60"));
+    private static final boolean OPEN_CONNECTIONS_ON_INIT = Boolean.parseBoolean(
+            System.getenv().getOrDefault("COSMOS_OPEN_CONNECTIONS_ON_INIT", "true"));
+
+    private final Map<ClientKey, CosmosClient> clients = new ConcurrentHashMap<>();
+    private final Set<ContainerKey> initializedContainers = ConcurrentHashMap.newKeySet();
+    private final ClientBuilder clientBuilder;
+    private final boolean openConnectionsOnInit;
+    private final Executor warmUpExecutor;
+
+    CosmosClientFactory(ClientBuilder clientBuilder, boolean openConnectionsOnInit, Executor warmUpExecutor) {
+        this.clientBuilder = clientBuilder;
+        this.openConnectionsOnInit = openConnectionsOnInit;
+        this.warmUpExecutor = warmUpExecutor;
+    }
+
+    /**
+     * Bill Pugh singleton holder: the JVM guarantees that the class is loaded
+     * (and therefore INSTANCE initialized) lazily and in a thread-safe way.
+     */
+    private static class SingletonHelper {
+        private static final CosmosClientFactory INSTANCE = new CosmosClientFactory(
+                CosmosClientFactory::buildClient,
+                OPEN_CONNECTIONS_ON_INIT,
+                Executors.newSingleThreadExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "cosmos-warm-up");
+                    thread.setDaemon(true);
+                    return thread;
+                }));
+    }
+
+    public static CosmosClientFactory getInstance() {
+        return SingletonHelper.INSTANCE;
+    }
+
+    /**
+     * Retrieve a container through the client shared by all the containers of the same account
+     *
+     * @param serviceEndpoint the account endpoint, the client is built on its first request
+     * @param key             the account key
+     * @param preferredRegion the preferred read region
+     * @param databaseId      the database name
+     * @param containerId     the container name
+     * @return the container
+     */
+    public CosmosContainer getContainer(
+            String serviceEndpoint,
+            String key,
+            String preferredRegion,
+            String databaseId,
+            String containerId
+    ) {
+        ClientKey clientKey = new ClientKey(serviceEndpoint, key, preferredRegion);
+        CosmosClient client = this.clients.computeIfAbsent(clientKey,
+                account -> this.clientBuilder.build(account.serviceEndpoint(), account.key(), account.preferredRegion()));
+        CosmosContainer container = client.getDatabase(databaseId).getContainer(containerId);
+
+        if (this.openConnectionsOnInit && this.initializedContainers.add(new ContainerKey(clientKey, databaseId, containerId))) {
+            warmUp(container, databaseId, containerId);
+        }
+        return container;
+    }
+
+    /**
+     * @return the number of clients built, one for each account endpoint, key and preferred region
+     */
+    public int getClientsCount() {
+        return this.clients.size();
+    }
+
+    private void warmUp(CosmosContainer container, String databaseId, String containerId) {
+        try {
+            this.warmUpExecutor.execute(() -> openConnectionsAndInitCaches(container, databaseId, containerId));
+        } catch (RejectedExecutionException e) {
+            log.warn("Unable to schedule the warm-up of container {}/{}", databaseId, containerId, e);
+        }
+    }
+
+    private static void openConnectionsAndInitCaches(CosmosContainer container, String databaseId, String containerId) {
+        long start = System.currentTimeMillis();
+        try {
+            container.openConnectionsAndInitCaches();
+            log.info("Connections opened for container {}/{} in {} ms", databaseId, containerId, System.currentTimeMillis() - start);
+        } catch (RuntimeException e) {
+            // the warm-up is an optimization, the first requests open the connections anyway
+            log.warn("Unable to open connections for container {}/{}", databaseId, containerId, e);
+        }
+    }
+
+    @SuppressWarnings("resource") // CosmosClient lifecycle == singleton lifecycle; never closed on purpose
+    private static CosmosClient buildClient(String serviceEndpoint, String key, String preferredRegion) {
+        DirectConnectionConfig directConnectionConfig = DirectConnectionConfig.getDefaultConfig()
+                .setMaxConnectionsPerEndpoint(MAX_CONNECTIONS_PER_ENDPOINT)
+                .setMaxRequestsPerConnection(MAX_REQUESTS_PER_CONNECTION)
+                .setConnectTimeout(Duration.ofMillis(CONNECT_TIMEOUT_MS))
+                .setIdleEndpointTimeout(Duration.ofMinutes(IDLE_ENDPOINT_TIMEOUT_MINUTES))
+                .setConnectionEndpointRediscoveryEnabled(true);
+
+        return new CosmosClientBuilder()
+                .endpoint(serviceEndpoint)
+                .key(key)
+                .preferredRegions(List.of(preferredRegion))
+                .directMode(directConnectionConfig)
+                .contentResponseOnWriteEnabled(false)
+                .buildClient();
+    }
+
+    private record ClientKey(String serviceEndpoint, String key, String preferredRegion) {
+
+        @Override
+        public String toString() {
+            // the account key is never printed
+            return this.serviceEndpoint + " (" + this.preferredRegion + ")";
+        }
+    }
+
+    private record ContainerKey(ClientKey clientKey, String databaseId, String containerId) {
+    }
+
+    @FunctionalInterface
+    interface ClientBuilder {
+        CosmosClient build(String serviceEndpoint, String key, String preferredRegion);
+    }
+}
@@ -2,42 +2,71 @@ package it.gov.pagopa.receipt.pdf.generator.client.impl;
 
 import it.gov.pagopa.receipt.pdf.generator.client.PdfEngineClient;
 import it.gov.pagopa.receipt.pdf.generator.model.PdfEngineErrorResponse;
+import it.gov.pagopa.receipt.pdf.generator.model.TemplateBundle;
 import it.gov.pagopa.receipt.pdf.generator.model.request.PdfEngineRequest;
 import it.gov.pagopa.receipt.pdf.generator.model.response.PdfEngineResponse;
+import it.gov.pagopa.receipt.pdf.generator.model.template.ReceiptPDFTemplate;
 import it.gov.pagopa.receipt.pdf.generator.utils.ObjectMapperUtils;
+import it.gov.pagopa.receipt.pdf.generator.utils.PdfEngineCallMetrics;
+import it.gov.pagopa.receipt.pdf.generator.utils.PdfEngineCallMetrics.Phase;
+import it.gov.pagopa.receipt.pdf.generator.utils.ReceiptTemplateJsonWriter;
+import it.gov.pagopa.receipt.pdf.generator.utils.TemplateBundleRegistry;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FileUtils;
 import org.apache.http.Header;
+import org.apache.http.HttpClientConnection;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
 import org.apache.http.HttpStatus;
 import org.apache.http.NoHttpResponseException;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.utils.HttpClientUtils;
 import org.apache.http.conn.ConnectTimeoutException;
 import org.apache.http.entity.ContentType;
+import org.apache.http.entity.HttpEntityWrapper;
 import org.apache.http.entity.mime.HttpMultipartMode;
+import org.apache.http.entity.mime.MIME;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
+import org.apache.http.entity.mime.content.AbstractContentBody;
+import org.apache.http.entity.mime.content.ByteArrayBody;
+import org.apache.http.entity.mime.content.ContentBody;
 import org.apache.http.entity.mime.content.StringBody;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.message.BasicHeader;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
 import org.apache.http.util.EntityUtils;
 
 import javax.net.ssl.SSLException;
 import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.SocketTimeoutException;
-import java.net.URL;
+import java.net.URI;
 import java.net.UnknownHostException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.channels.UnresolvedAddressException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 import static it.gov.pagopa.receipt.pdf.generator.utils.Constants.ZIP_FILE_NAME;
 
@@ -50,10 +79,9 @@ public class PdfEngineClientImpl implements PdfEngineClient {
     private static final String HEADER_AUTH_KEY = "Ocp-Apim-Subscription-Key";
     private static final String TEMPLATE_KEY = "template";
     private static final String DATA_KEY = "data";
+    private static final String CRLF = "\r\n";
 
-    private static final URL TEMPLATE_STREAM = PdfEngineClientImpl.class.getClassLoader().getResource(ZIP_FILE_NAME);
-
-    private final String pdfEngineEndpoint = System.getenv().getOrDefault("PDF_ENGINE_ENDPOINT", "");
+    private final String pdfEngineEndpoint;
     private final Header subKeyHeader = new BasicHeader(
             HEADER_AUTH_KEY,
             System.getenv().getOrDefault("OCP_APIM_SUBSCRIPTION_KEY", ""));
@@ -66,8 +94,13 @@ public class PdfEngineClientImpl implements PdfEngineClient {
     private static final int CONNECTION_REQUEST_TIMEOUT_MS = envInt("PDF_ENGINE_HTTP_CONN_REQUEST_TIMEOUT_MS", 2_000);
     /** SO_TIMEOUT: max inactivity while reading the response. */
     private static final int SOCKET_TIMEOUT_MS = envInt("PDF_ENGINE_HTTP_SOCKET_TIMEOUT_MS", 30_000);
-    /** Retries on transient I/O errors (see {@link #buildRetryHandler()}). */
+    /** Max time for the whole call on the async HTTP/2 client, which has no per-read timeout. */
+    private static final int ASYNC_REQUEST_TIMEOUT_MS = envInt("PDF_ENGINE_HTTP2_REQUEST_TIMEOUT_MS", SOCKET_TIMEOUT_MS);
+    /** Retries on transient I/O errors (see {@link #buildRetryHandler()} and {@link #isRetriable(Throwable, int)}). */
     private static final int RETRY_COUNT = envInt("PDF_ENGINE_HTTP_RETRY_COUNT", 2);
+    /** When enabled (the default) the PDF Engine is called through the non-blocking HTTP/2 client. */
+    private static final boolean HTTP2_ENABLED = Boolean.parseBoolean(
+            System.getenv().getOrDefault("PDF_ENGINE_HTTP2_ENABLED", "true"));
 
     // ---------- Connection pool ----------
     // HttpClient defaults are maxTotal=20, maxPerRoute=2.
@@ -87,6 +120,35 @@ public class PdfEngineClientImpl implements PdfEngineClient {
      */
     private final CloseableHttpClient httpClient;
 
+    /**
+     * Non-blocking HTTP/2 client, when set every call goes through it instead of {@link #httpClient}.
+     * Transient I/O errors are retried as by the retry handler of the pooled client.
+     */
+    @Setter
+    private HttpClient asyncHttpClient;
+
+    /**
+     * Shared in-memory template bundles, the zip is read from the classpath only once.
+     */
+    private final TemplateBundleRegistry templateBundleRegistry;
+
+    /**
+     * Phase breakdown of the calls, pool gauges and retry counters of the pooled client.
+     */
+    private final PdfEngineCallMetrics callMetrics;
+
+    /**
+     * When enabled the PDF is handed over as a stream bound to the HTTP response instead of a temp file.
+     */
+    @Setter
+    private boolean streamingEnabled = Boolean.parseBoolean(
+            System.getenv().getOrDefault("PDF_ENGINE_STREAMING_ENABLED", "false"));
+    /**
+     * Responses declaring a bigger length are staged on a temp file even when streaming is enabled.
+     */
+    @Setter
+    private long streamingMaxLength = envLong("PDF_ENGINE_STREAMING_MAX_LENGTH", 4L * 1024 * 1024);
+
     private static final class Holder {
         private static final PdfEngineClientImpl INSTANCE = new PdfEngineClientImpl();
     }
@@ -97,46 +159,102 @@ public class PdfEngineClientImpl implements PdfEngineClient {
 
     private PdfEngineClientImpl() {
         this(buildDefaultHttpClient());
+        if (HTTP2_ENABLED) {
+            this.asyncHttpClient = buildAsyncHttpClient();
+        }
     }
 
     /**
      * Visible for tests: allows injecting a mocked or custom client.
      */
     protected PdfEngineClientImpl(CloseableHttpClient httpClient) {
+        this(httpClient, System.getenv().getOrDefault("PDF_ENGINE_ENDPOINT", ""));
+    }
+
+    /**
+     * Visible for tests: pooled client calling the given endpoint.
+     */
+    protected PdfEngineClientImpl(String pdfEngineEndpoint) {
+        this(buildDefaultHttpClient(), pdfEngineEndpoint);
+    }
+
+    /**
+     * Visible for tests: allows injecting a mocked or custom client calling the given endpoint.
+     */
+    protected PdfEngineClientImpl(CloseableHttpClient httpClient, String pdfEngineEndpoint) {
         this.httpClient = httpClient;
+        this.pdfEngineEndpoint = pdfEngineEndpoint;
+        this.templateBundleRegistry = TemplateBundleRegistry.getInstance();
+        this.callMetrics = PdfEngineCallMetrics.getInstance();
     }
 
     /**
-     * Generate the client, builds the request and returns the response
+     * Generate the client, builds the request and returns the response.
+     * Blocking adapter over {@link #generatePDFAsync(PdfEngineRequest, Path)}.
      *
      * @param pdfEngineRequest Request to the client
      * @return response with the PDF or error message and the status
      */
     @Override
     public PdfEngineResponse generatePDF(PdfEngineRequest pdfEngineRequest, Path workingDirPath) {
-        //Generate client
-        try (InputStream templateStream = TEMPLATE_STREAM.openStream()) {
-            //Encode template and data
-            HttpPost request = buildMultipartRequest(pdfEngineRequest, templateStream);
+        return generatePDFAsync(pdfEngineRequest, workingDirPath).join();
+    }
 
-            return makeCall(request, workingDirPath);
+    /**
+     * {@inheritDoc}
+     * <p>
+     * With the HTTP/2 client (the default) the call does not hold the caller thread. When it is disabled
+     * the call is executed on the caller thread by the pooled blocking client and the returned future
+     * is already completed.
+     */
+    @Override
+    public CompletableFuture<PdfEngineResponse> generatePDFAsync(PdfEngineRequest pdfEngineRequest, Path workingDirPath) {
+        TemplateBundle templateBundle;
+        try {
+            templateBundle = this.templateBundleRegistry.getBundle(ZIP_FILE_NAME);
         } catch (IOException e) {
-            return createErrorResponse(e);
+            return CompletableFuture.completedFuture(createErrorResponse(e));
+        }
+
+        if (this.asyncHttpClient != null) {
+            HttpRequest asyncRequest;
+            try {
+                asyncRequest = buildAsyncMultipartRequest(pdfEngineRequest, templateBundle);
+            } catch (IOException e) {
+                return CompletableFuture.completedFuture(createErrorResponse(e));
+            }
+            return makeAsyncCall(asyncRequest, workingDirPath);
         }
+
+        //Encode template and data
+        HttpPost request = buildMultipartRequest(pdfEngineRequest, templateBundle);
+
+        return CompletableFuture.completedFuture(makeCall(request, workingDirPath));
     }
 
-    private HttpPost buildMultipartRequest(
+    /**
+     * Visible for tests: builds the multipart request of the blocking client.
+     */
+    protected HttpPost buildMultipartRequest(
             PdfEngineRequest pdfEngineRequest,
-            InputStream templateStream
-    ) throws IOException {
-        StringBody dataBody = new StringBody(pdfEngineRequest.getData(), ContentType.APPLICATION_JSON);
+            TemplateBundle templateBundle
+    ) {
+        //The template data is written straight into the request stream unless already serialized
+        ContentBody dataBody;
+        if (pdfEngineRequest.getEncodedData() != null) {
+            dataBody = new ByteArrayBody(pdfEngineRequest.getEncodedData(), ContentType.APPLICATION_JSON, null);
+        } else if (pdfEngineRequest.getData() != null) {
+            dataBody = new StringBody(pdfEngineRequest.getData(), ContentType.APPLICATION_JSON);
+        } else {
+            dataBody = new TemplateDataBody(pdfEngineRequest.getTemplate());
+        }
 
-        //Build the multipart request
-        HttpEntity entity = MultipartEntityBuilder.create()
+        //Build the multipart request, the template part is shared and never copied
+        HttpEntity entity = new RepeatableEntity(MultipartEntityBuilder.create()
                 .setMode(HttpMultipartMode.BROWSER_COMPATIBLE)
-                .addBinaryBody(TEMPLATE_KEY, templateStream.readAllBytes(), ContentType.create("application/zip"), ZIP_FILE_NAME)
+                .addPart(TEMPLATE_KEY, templateBundle.getContentBody())
                 .addPart(DATA_KEY, dataBody)
-                .build();
+                .build());
 
         //Set endpoint and auth key
         HttpPost request = new HttpPost(pdfEngineEndpoint);
@@ -152,16 +270,27 @@ public class PdfEngineClientImpl implements PdfEngineClient {
      * @return pdf engine response
      */
     private PdfEngineResponse makeCall(HttpPost request, Path workingDirPath) {
-        PdfEngineResponse pdfEngineResponse = new PdfEngineResponse();
+        CloseableHttpResponse response = null;
         //Execute call
-        try (CloseableHttpResponse response = this.httpClient.execute(request)) {
+        try {
+            response = this.httpClient.execute(request);
             //Retrieve response
             int statusCode = response.getStatusLine().getStatusCode();
             HttpEntity entityResponse = response.getEntity();
 
+            if (statusCode == HttpStatus.SC_OK && entityResponse != null && isStreamable(entityResponse)) {
+                PdfEngineResponse streamingResponse = handleStreamingResponse(response, entityResponse);
+                // the response is now released by whoever consumes the PDF stream
+                response = null;
+                return streamingResponse;
+            }
+
             //Handles response
+            PdfEngineResponse pdfEngineResponse;
             if (statusCode == HttpStatus.SC_OK && entityResponse != null) {
+                long downloadStart = System.nanoTime();
                 pdfEngineResponse = handleSuccessResponse(workingDirPath, entityResponse);
+                this.callMetrics.recordPhase(Phase.BODY_DOWNLOAD, downloadStart);
             } else {
                 pdfEngineResponse = handleErrorResponse(response, entityResponse);
             }
@@ -171,9 +300,39 @@ public class PdfEngineClientImpl implements PdfEngineClient {
         } catch (Exception e) {
             log.error("Error calling PDF Engine", e);
             return createErrorResponse(e);
+        } finally {
+            HttpClientUtils.closeQuietly(response);
         }
     }
 
+    /**
+     * A response can be streamed when streaming is enabled and its declared length, if any,
+     * does not exceed {@link #streamingMaxLength}. Bigger responses fall back to the temp file.
+     */
+    private boolean isStreamable(HttpEntity entityResponse) {
+        long contentLength = entityResponse.getContentLength();
+        return this.streamingEnabled && contentLength <= this.streamingMaxLength;
+    }
+
+    /**
+     * Handle success response from PDF Engine by handing over the response content without staging it on disk
+     *
+     * @param response       the response from PDF Engine, it is closed together with the returned stream
+     * @param entityResponse the response content from PDF Engine
+     * @return the response with the stream to the generated PDF
+     * @throws IOException if an error occur while opening the response content
+     */
+    private PdfEngineResponse handleStreamingResponse(
+            CloseableHttpResponse response,
+            HttpEntity entityResponse
+    ) throws IOException {
+        PdfEngineResponse pdfEngineResponse = new PdfEngineResponse();
+        pdfEngineResponse.setStatusCode(HttpStatus.SC_OK);
+        pdfEngineResponse.setPdfStream(new ResponseBoundInputStream(entityResponse.getContent(), response, this.callMetrics));
+        pdfEngineResponse.setPdfContentLength(entityResponse.getContentLength());
+        return pdfEngineResponse;
+    }
+
     /**
      * Handle success response from PDF Engine by saving the generated PDF in a temp file
      *
@@ -198,7 +357,8 @@ public class PdfEngineClientImpl implements PdfEngineClient {
     }
 
     /**
-     * Handles error response from the PDF Engine
+     * Handles error response from the PDF Engine, reported as an internal error keeping the engine status code apart.
+     * A successful response without body is reported as an internal error.
      *
      * @param response       Response from the PDF engine
      * @param entityResponse Response content from the PDF Engine
@@ -208,52 +368,58 @@ public class PdfEngineClientImpl implements PdfEngineClient {
             CloseableHttpResponse response,
             HttpEntity entityResponse
     ) throws IOException {
+        int statusCode = response.getStatusLine().getStatusCode();
+        if (statusCode == HttpStatus.SC_OK) {
+            statusCode = HttpStatus.SC_INTERNAL_SERVER_ERROR;
+        }
         //Verify if unauthorized
-        if (response != null &&
-                response.getStatusLine() != null &&
-                response.getStatusLine().getStatusCode() == HttpStatus.SC_UNAUTHORIZED
-        ) {
-            return createErrorResponse("Unauthorized call to PDF engine function");
+        if (statusCode == HttpStatus.SC_UNAUTHORIZED) {
+            return createErrorResponse(statusCode, "Unauthorized call to PDF engine function");
         }
 
         String errMsg = extractErrorMessageFormBody(entityResponse);
         if (errMsg == null) {
             errMsg = "Unknown error in PDF engine function";
         }
-        return createErrorResponse(errMsg);
+        return createErrorResponse(statusCode, errMsg);
     }
 
     private String extractErrorMessageFormBody(HttpEntity entityResponse) throws IOException {
         String errMsg = null;
         if (entityResponse != null) {
             //Handle JSON response
-            String jsonString = EntityUtils.toString(entityResponse, StandardCharsets.UTF_8);
+            errMsg = extractErrorMessage(EntityUtils.toString(entityResponse, StandardCharsets.UTF_8));
+        }
+        return errMsg;
+    }
 
-            if (!jsonString.isEmpty()) {
-                PdfEngineErrorResponse errorResponse = ObjectMapperUtils.mapString(jsonString, PdfEngineErrorResponse.class);
+    private String extractErrorMessage(String jsonString) throws IOException {
+        String errMsg = null;
+        if (!jsonString.isEmpty()) {
+            PdfEngineErrorResponse errorResponse = ObjectMapperUtils.mapString(jsonString, PdfEngineErrorResponse.class);
 
-                if (errorResponse != null &&
-                        errorResponse.getErrors() != null &&
-                        !errorResponse.getErrors().isEmpty() &&
-                        errorResponse.getErrors().get(0) != null
-                ) {
-                    errMsg = errorResponse.getErrors().get(0).getMessage();
-                }
+            if (errorResponse != null &&
+                    errorResponse.getErrors() != null &&
+                    !errorResponse.getErrors().isEmpty() &&
+                    errorResponse.getErrors().get(0) != null
+            ) {
+                errMsg = errorResponse.getErrors().get(0).getMessage();
             }
         }
         return errMsg;
     }
 
-    private PdfEngineResponse createErrorResponse(Exception e) {
+    private PdfEngineResponse createErrorResponse(Throwable e) {
         PdfEngineResponse pdfEngineResponse = new PdfEngineResponse();
         pdfEngineResponse.setStatusCode(HttpStatus.SC_INTERNAL_SERVER_ERROR);
         pdfEngineResponse.setErrorMessage(String.format("Exception thrown during pdf generation process: %s", e));
         return pdfEngineResponse;
     }
 
-    private PdfEngineResponse createErrorResponse(String errMsg) {
+    private PdfEngineResponse createErrorResponse(int engineStatusCode, String errMsg) {
         PdfEngineResponse pdfEngineResponse = new PdfEngineResponse();
         pdfEngineResponse.setStatusCode(HttpStatus.SC_INTERNAL_SERVER_ERROR);
+        pdfEngineResponse.setEngineStatusCode(engineStatusCode);
         pdfEngineResponse.setErrorMessage(errMsg);
         return pdfEngineResponse;
     }
@@ -265,6 +431,7 @@ public class PdfEngineClientImpl implements PdfEngineClient {
     /**
      * Builds the shared {@link CloseableHttpClient} with a pooled connection
      * manager, sensible timeouts and a retry handler for transient I/O errors.
+     * The pool and the request execution are instrumented with {@link PdfEngineCallMetrics}.
      */
     private static CloseableHttpClient buildDefaultHttpClient() {
         PoolingHttpClientConnectionManager connectionManager =
@@ -273,6 +440,9 @@ public class PdfEngineClientImpl implements PdfEngineClient {
         connectionManager.setDefaultMaxPerRoute(MAX_CONN_PER_ROUTE);
         connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MS);
 
+        PdfEngineCallMetrics callMetrics = PdfEngineCallMetrics.getInstance();
+        callMetrics.bindConnectionPool(connectionManager);
+
         RequestConfig requestConfig = RequestConfig.custom()
                 .setConnectTimeout(CONNECT_TIMEOUT_MS)
                 .setConnectionRequestTimeout(CONNECTION_REQUEST_TIMEOUT_MS)
@@ -280,8 +450,9 @@ public class PdfEngineClientImpl implements PdfEngineClient {
                 .build();
 
         return HttpClientBuilder.create()
-                .setConnectionManager(connectionManager)
+                .setConnectionManager(new TimedConnectionManager(connectionManager, callMetrics))
                 .setConnectionManagerShared(false)
+                .setRequestExecutor(new TimedRequestExecutor(callMetrics))
                 .setDefaultRequestConfig(requestConfig)
                 .setRetryHandler(buildRetryHandler())
                 .setConnectionTimeToLive(CONN_TTL_SECONDS, TimeUnit.SECONDS)
@@ -294,6 +465,7 @@ public class PdfEngineClientImpl implements PdfEngineClient {
      * Retry handler for transient I/O failures on APIM (connect timeouts, dropped keep-alive,
      * read timeouts). Excludes non-transient errors (auth/SSL/unknown host). Note: retries on
      * {@link SocketTimeoutException} assume PDF Engine is idempotent — disable if not.
+     * Every decision is counted by {@link PdfEngineCallMetrics}.
      */
     private static DefaultHttpRequestRetryHandler buildRetryHandler() {
         return new DefaultHttpRequestRetryHandler(
@@ -305,8 +477,14 @@ public class PdfEngineClientImpl implements PdfEngineClient {
             public boolean retryRequest(
                     IOException exception,
                     int executionCount,
-                    org.apache.http.protocol.HttpContext context
+                    HttpContext context
             ) {
+                boolean retry = isRetriable(exception, executionCount, context);
+                PdfEngineCallMetrics.getInstance().recordRetryDecision(retry);
+                return retry;
+            }
+
+            private boolean isRetriable(IOException exception, int executionCount, HttpContext context) {
                 if (executionCount > RETRY_COUNT) {
                     return false;
                 }
@@ -320,10 +498,296 @@ public class PdfEngineClientImpl implements PdfEngineClient {
         };
     }
 
+    // -----------------------------------------------------------------
+    // Async HTTP/2 transport
+    // -----------------------------------------------------------------
+
+    /**
+     * Builds the same browser-compatible multipart body of {@link #buildMultipartRequest(PdfEngineRequest, TemplateBundle)}
+     * for the non-blocking client, the template part is published straight from the shared bundle bytes.
+     */
+    private HttpRequest buildAsyncMultipartRequest(PdfEngineRequest pdfEngineRequest, TemplateBundle templateBundle) throws IOException {
+        String boundary = UUID.randomUUID().toString();
+        String templateHeader = "--" + boundary + CRLF
+                + "Content-Disposition: form-data; name=\"" + TEMPLATE_KEY + "\"; filename=\"" + ZIP_FILE_NAME + "\"" + CRLF
+                + "Content-Type: application/zip" + CRLF + CRLF;
+        String dataHeader = CRLF + "--" + boundary + CRLF
+                + "Content-Disposition: form-data; name=\"" + DATA_KEY + "\"" + CRLF + CRLF;
+        String closingBoundary = CRLF + "--" + boundary + "--" + CRLF;
+
+        return HttpRequest.newBuilder(URI.create(pdfEngineEndpoint))
+                .timeout(Duration.ofMillis(ASYNC_REQUEST_TIMEOUT_MS))
+                .header(HEADER_AUTH_KEY, subKeyHeader.getValue())
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.concat(
+                        HttpRequest.BodyPublishers.ofString(templateHeader, StandardCharsets.UTF_8),
+                        templateBundle.getContentPublisher(),
+                        HttpRequest.BodyPublishers.ofString(dataHeader, StandardCharsets.UTF_8),
+                        HttpRequest.BodyPublishers.ofByteArray(serializeData(pdfEngineRequest)),
+                        HttpRequest.BodyPublishers.ofString(closingBoundary, StandardCharsets.UTF_8)))
+                .build();
+    }
+
+    /**
+     * The JDK client needs the content up front, the template data is encoded once to UTF-8 bytes
+     * without building the intermediate JSON string
+     */
+    private static byte[] serializeData(PdfEngineRequest pdfEngineRequest) throws IOException {
+        if (pdfEngineRequest.getEncodedData() != null) {
+            return pdfEngineRequest.getEncodedData();
+        }
+        if (pdfEngineRequest.getData() != null) {
+            return pdfEngineRequest.getData().getBytes(StandardCharsets.UTF_8);
+        }
+        return ReceiptTemplateJsonWriter.writeValueAsBytes(pdfEngineRequest.getTemplate());
+    }
+
+    /**
+     * Calls the PDF Engine without blocking, the response body is handled by {@link #asyncBodyHandler(Path)}
+     */
+    private CompletableFuture<PdfEngineResponse> makeAsyncCall(HttpRequest request, Path workingDirPath) {
+        return sendAsync(request, workingDirPath, 1)
+                .exceptionally(throwable -> {
+                    Throwable cause = unwrap(throwable);
+                    log.error("Error calling PDF Engine", cause);
+                    return createErrorResponse(cause);
+                });
+    }
+
+    /**
+     * Sends the request, sending it again without blocking on transient I/O errors (see {@link #isRetriable(Throwable, int)})
+     */
+    private CompletableFuture<PdfEngineResponse> sendAsync(HttpRequest request, Path workingDirPath, int executionCount) {
+        return this.asyncHttpClient.sendAsync(request, asyncBodyHandler(workingDirPath))
+                .thenApply(HttpResponse::body)
+                .handle((response, throwable) -> {
+                    if (throwable == null) {
+                        return CompletableFuture.completedFuture(response);
+                    }
+                    Throwable cause = unwrap(throwable);
+                    boolean retry = isRetriable(cause, executionCount);
+                    if (cause instanceof IOException) {
+                        this.callMetrics.recordRetryDecision(retry);
+                    }
+                    if (retry) {
+                        log.warn("Transient error calling PDF Engine (attempt {}), sending the request again", executionCount, cause);
+                        return sendAsync(request, workingDirPath, executionCount + 1);
+                    }
+                    return CompletableFuture.<PdfEngineResponse>failedFuture(cause);
+                })
+                .thenCompose(Function.identity());
+    }
+
+    /**
+     * Same policy of {@link #buildRetryHandler()} for the errors of the HTTP/2 client: connect and request timeouts,
+     * dropped connections and streams are retried, unknown hosts and SSL errors are not.
+     * Note: as for the pooled client, retrying a timed out request assumes PDF Engine is idempotent.
+     */
+    static boolean isRetriable(Throwable cause, int executionCount) {
+        if (executionCount > RETRY_COUNT || !(cause instanceof IOException) || cause instanceof SSLException) {
+            return false;
+        }
+        for (Throwable current = cause; current != null; current = current.getCause()) {
+            if (current instanceof UnknownHostException || current instanceof UnresolvedAddressException) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        return throwable instanceof CompletionException && throwable.getCause() != null
+                ? throwable.getCause()
+                : throwable;
+    }
+
+    /**
+     * Maps the response body according to the status code: on success the PDF is streamed or saved to a temp file
+     * (same rules of the blocking client), otherwise the error message is extracted from the body
+     */
+    private HttpResponse.BodyHandler<PdfEngineResponse> asyncBodyHandler(Path workingDirPath) {
+        return responseInfo -> {
+            int statusCode = responseInfo.statusCode();
+            if (statusCode == HttpStatus.SC_UNAUTHORIZED) {
+                return HttpResponse.BodySubscribers.replacing(createErrorResponse(statusCode, "Unauthorized call to PDF engine function"));
+            }
+            if (statusCode != HttpStatus.SC_OK) {
+                return HttpResponse.BodySubscribers.mapping(
+                        HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8),
+                        body -> createErrorResponseFromBody(statusCode, body));
+            }
+
+            long contentLength = responseInfo.headers().firstValueAsLong("Content-Length").orElse(-1L);
+            if (this.streamingEnabled && contentLength <= this.streamingMaxLength) {
+                return HttpResponse.BodySubscribers.mapping(
+                        HttpResponse.BodySubscribers.ofInputStream(),
+                        pdfStream -> {
+                            PdfEngineResponse pdfEngineResponse = new PdfEngineResponse();
+                            pdfEngineResponse.setStatusCode(HttpStatus.SC_OK);
+                            pdfEngineResponse.setPdfStream(pdfStream);
+                            pdfEngineResponse.setPdfContentLength(contentLength);
+                            return pdfEngineResponse;
+                        });
+            }
+
+            File targetFile;
+            try {
+                targetFile = File.createTempFile("tempFile", ".pdf", workingDirPath.toFile());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return HttpResponse.BodySubscribers.mapping(
+                    HttpResponse.BodySubscribers.ofFile(targetFile.toPath()),
+                    pdfPath -> {
+                        PdfEngineResponse pdfEngineResponse = new PdfEngineResponse();
+                        pdfEngineResponse.setStatusCode(HttpStatus.SC_OK);
+                        pdfEngineResponse.setTempPdfPath(pdfPath.toAbsolutePath().toString());
+                        return pdfEngineResponse;
+                    });
+        };
+    }
+
+    private PdfEngineResponse createErrorResponseFromBody(int statusCode, String body) {
+        try {
+            String errMsg = extractErrorMessage(body);
+            return createErrorResponse(statusCode, errMsg != null ? errMsg : "Unknown error in PDF engine function");
+        } catch (IOException e) {
+            return createErrorResponse(e);
+        }
+    }
+
+    /**
+     * Builds the non-blocking client, HTTP/2 is negotiated with the PDF Engine (ALPN) and a single
+     * connection multiplexes all the concurrent renders, falling back to HTTP/1.1 if not supported.
+     */
+    private static HttpClient buildAsyncHttpClient() {
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(CONNECT_TIMEOUT_MS))
+                .build();
+    }
+
     // -----------------------------------------------------------------
     // Helpers
     // -----------------------------------------------------------------
 
+    /**
+     * Response content stream that releases the underlying HTTP response (and its pooled connection) on close.
+     * The body download lasts from its creation to its first close.
+     */
+    private static final class ResponseBoundInputStream extends FilterInputStream {
+
+        private final CloseableHttpResponse response;
+        private final PdfEngineCallMetrics callMetrics;
+        private final long downloadStart = System.nanoTime();
+        private boolean closed;
+
+        private ResponseBoundInputStream(InputStream content, CloseableHttpResponse response, PdfEngineCallMetrics callMetrics) {
+            super(content);
+            this.response = response;
+            this.callMetrics = callMetrics;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!this.closed) {
+                this.closed = true;
+                this.callMetrics.recordPhase(Phase.BODY_DOWNLOAD, this.downloadStart);
+            }
+            try {
+                super.close();
+            } finally {
+                this.response.close();
+            }
+        }
+    }
+
+    /**
+     * Request executor recording the upload of the request and the wait for the response headers.
+     */
+    private static final class TimedRequestExecutor extends HttpRequestExecutor {
+
+        private final PdfEngineCallMetrics callMetrics;
+
+        private TimedRequestExecutor(PdfEngineCallMetrics callMetrics) {
+            this.callMetrics = callMetrics;
+        }
+
+        @Override
+        protected org.apache.http.HttpResponse doSendRequest(
+                org.apache.http.HttpRequest request, HttpClientConnection conn, HttpContext context)
+                throws IOException, HttpException {
+            long start = System.nanoTime();
+            try {
+                return super.doSendRequest(request, conn, context);
+            } finally {
+                this.callMetrics.recordPhase(Phase.REQUEST_UPLOAD, start);
+            }
+        }
+
+        @Override
+        protected org.apache.http.HttpResponse doReceiveResponse(
+                org.apache.http.HttpRequest request, HttpClientConnection conn, HttpContext context)
+                throws IOException, HttpException {
+            long start = System.nanoTime();
+            try {
+                return super.doReceiveResponse(request, conn, context);
+            } finally {
+                this.callMetrics.recordPhase(Phase.TIME_TO_FIRST_BYTE, start);
+            }
+        }
+    }
+
+    /**
+     * Multipart part writing the template data with {@link ReceiptTemplateJsonWriter} directly into the request stream.
+     * Its length is unknown up front, so the request is sent with chunked transfer encoding.
+     */
+    private static final class TemplateDataBody extends AbstractContentBody {
+
+        private final ReceiptPDFTemplate template;
+
+        private TemplateDataBody(ReceiptPDFTemplate template) {
+            super(ContentType.APPLICATION_JSON);
+            this.template = template;
+        }
+
+        @Override
+        public String getFilename() {
+            return null;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            ReceiptTemplateJsonWriter.write(this.template, out);
+        }
+
+        @Override
+        public String getTransferEncoding() {
+            return MIME.ENC_8BIT;
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+    }
+
+    /**
+     * The multipart entity reports itself as not repeatable when its length is unknown, which would disable
+     * the retries of {@link #buildRetryHandler()}. Every part is backed by in-memory data and can be written again.
+     */
+    private static final class RepeatableEntity extends HttpEntityWrapper {
+
+        private RepeatableEntity(HttpEntity wrappedEntity) {
+            super(wrappedEntity);
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+    }
+
     private static int envInt(String name, int defaultValue) {
         return Integer.parseInt(System.getenv().getOrDefault(name, Integer.toString(defaultValue)));
     }
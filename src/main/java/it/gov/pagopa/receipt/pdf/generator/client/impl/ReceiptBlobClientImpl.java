@@ -77,4 +77,22 @@ public class ReceiptBlobClientImpl implements ReceiptBlobClient {
 
         return blobStorageResponse;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BlobStorageResponse findPdfInBlobStorage(String fileName) {
+        BlobClient blobClient = this.blobContainerClient.getBlobClient(fileName + FILE_EXTENSION);
+
+        BlobStorageResponse blobStorageResponse = new BlobStorageResponse();
+        if (Boolean.TRUE.equals(blobClient.exists())) {
+            blobStorageResponse.setDocumentName(blobClient.getBlobName());
+            blobStorageResponse.setDocumentUrl(blobClient.getBlobUrl());
+            blobStorageResponse.setStatusCode(HttpStatus.OK.value());
+        } else {
+            blobStorageResponse.setStatusCode(HttpStatus.NOT_FOUND.value());
+        }
+        return blobStorageResponse;
+    }
 }
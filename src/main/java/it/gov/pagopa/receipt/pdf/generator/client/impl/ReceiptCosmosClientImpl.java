@@ -1,28 +1,70 @@
 package it.gov.pagopa.receipt.pdf.generator.client.impl;
 
-import com.azure.cosmos.CosmosClientBuilder;
 import com.azure.cosmos.CosmosContainer;
-import com.azure.cosmos.CosmosDatabase;
 import com.azure.cosmos.CosmosException;
+import com.azure.cosmos.models.CosmosItemIdentity;
+import com.azure.cosmos.models.CosmosItemOperation;
+import com.azure.cosmos.models.CosmosItemRequestOptions;
 import com.azure.cosmos.models.CosmosItemResponse;
+import com.azure.cosmos.models.CosmosPatchItemRequestOptions;
 import com.azure.cosmos.models.CosmosQueryRequestOptions;
+import com.azure.cosmos.models.FeedResponse;
 import com.azure.cosmos.models.PartitionKey;
 import com.azure.cosmos.models.SqlParameter;
 import com.azure.cosmos.models.SqlQuerySpec;
 import it.gov.pagopa.receipt.pdf.generator.client.ReceiptCosmosClient;
 import it.gov.pagopa.receipt.pdf.generator.entity.receipt.Receipt;
 import it.gov.pagopa.receipt.pdf.generator.exception.ReceiptNotFoundException;
+import it.gov.pagopa.receipt.pdf.generator.model.DocumentPatch;
+import it.gov.pagopa.receipt.pdf.generator.utils.CosmosLookupMetrics;
+import it.gov.pagopa.receipt.pdf.generator.utils.CosmosLookupMetrics.LookupPath;
+import it.gov.pagopa.receipt.pdf.generator.utils.DocumentPatchBuilder;
+import lombok.Setter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * Client for the CosmosDB database
  */
 public class ReceiptCosmosClientImpl implements ReceiptCosmosClient {
 
+    private final Logger logger = LoggerFactory.getLogger(ReceiptCosmosClientImpl.class);
+
     private final CosmosContainer receiptContainer;
+    private final CosmosLookupMetrics lookupMetrics;
+    /**
+     * Event ids not found by the query fallback, with the nano time their entry expires at. The entries share
+     * the same TTL, so the insertion order is the expiration order: the expired ones are dropped from the head
+     * and the eldest one is evicted beyond the max size. Guarded by itself.
+     */
+    private final Map<String, Long> knownMisses = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > notFoundCacheMaxSize;
+        }
+    };
+
+    @Setter
+    private boolean queryFallbackEnabled = Boolean.parseBoolean(
+            System.getenv().getOrDefault("COSMOS_RECEIPT_QUERY_FALLBACK_ENABLED", "false"));
+    @Setter
+    private long notFoundCacheTtlMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(
+            System.getenv().getOrDefault("COSMOS_RECEIPT_NOT_FOUND_CACHE_TTL_SECONDS", "60")));
+    @Setter
+    private int notFoundCacheMaxSize = Integer.parseInt(
+            System.getenv().getOrDefault("COSMOS_RECEIPT_NOT_FOUND_CACHE_MAX_SIZE", "10000"));
 
-    @SuppressWarnings("resource") // CosmosClient lifecycle == singleton lifecycle; never closed on purpose
     private ReceiptCosmosClientImpl() {
         String azureKey = System.getenv("COSMOS_RECEIPT_KEY");
         String serviceEndpoint = System.getenv("COSMOS_RECEIPT_SERVICE_ENDPOINT");
@@ -31,14 +73,9 @@ public class ReceiptCosmosClientImpl implements ReceiptCosmosClient {
         String databaseId = System.getenv("COSMOS_RECEIPT_DB_NAME");
         String containerId = System.getenv("COSMOS_RECEIPT_CONTAINER_NAME");
 
-        CosmosDatabase database = new CosmosClientBuilder()
-                .endpoint(serviceEndpoint)
-                .key(azureKey)
-                .preferredRegions(List.of(readRegion))
-                .buildClient()
-                .getDatabase(databaseId);
-
-        this.receiptContainer = database.getContainer(containerId);
+        this.receiptContainer = CosmosClientFactory.getInstance()
+                .getContainer(serviceEndpoint, azureKey, readRegion, databaseId, containerId);
+        this.lookupMetrics = new CosmosLookupMetrics().register("receipt");
     }
 
     /**
@@ -47,6 +84,7 @@ public class ReceiptCosmosClientImpl implements ReceiptCosmosClient {
      */
     ReceiptCosmosClientImpl(CosmosContainer receiptContainer) {
         this.receiptContainer = receiptContainer;
+        this.lookupMetrics = new CosmosLookupMetrics();
     }
 
     /**
@@ -63,31 +101,113 @@ public class ReceiptCosmosClientImpl implements ReceiptCosmosClient {
 
     /**
      * {@inheritDoc}
+     * <p>
+     * Receipts are partitioned by event id, so the point read is the fast path. On a miss the event id is
+     * queried within its partition, which also finds the receipts whose id differs from the event id.
+     * The cross-partition query on the event id is run afterwards only if the legacy fallback is enabled,
+     * known misses are then kept for a short time so that retries and duplicates do not run the query again.
      */
     @Override
     public Receipt getReceiptDocument(String eventId) throws ReceiptNotFoundException {
+        long start = System.nanoTime();
         try {
-            return receiptContainer
-                    .readItem(eventId, new PartitionKey(eventId), Receipt.class)
-                    .getItem();
+            CosmosItemResponse<Receipt> response = receiptContainer.readItem(eventId, new PartitionKey(eventId), Receipt.class);
+            this.lookupMetrics.record(LookupPath.POINT_READ, true, response.getRequestCharge(), System.nanoTime() - start);
+            return response.getItem();
         } catch (CosmosException e) {
             if (e.getStatusCode() != 404) {
                 throw e;
             }
+            this.lookupMetrics.record(LookupPath.POINT_READ, false, e.getRequestCharge(), System.nanoTime() - start);
+        }
+
+        Receipt receipt = queryPartition(eventId);
+        if (receipt != null) {
+            return receipt;
         }
+        if (!this.queryFallbackEnabled) {
+            throw new ReceiptNotFoundException("Document not found in the defined container");
+        }
+        return queryReceiptDocument(eventId);
+    }
+
+    /**
+     * @return the counters of the lookup paths taken by {@link #getReceiptDocument(String)}
+     */
+    public CosmosLookupMetrics getLookupMetrics() {
+        return this.lookupMetrics;
+    }
+
+    private Receipt queryPartition(String eventId) {
+        CosmosQueryRequestOptions options = new CosmosQueryRequestOptions();
+        options.setPartitionKey(new PartitionKey(eventId));
+        return queryByEventId(eventId, options, LookupPath.PARTITION_QUERY);
+    }
 
+    private Receipt queryReceiptDocument(String eventId) throws ReceiptNotFoundException {
+        if (isKnownMiss(eventId, System.nanoTime())) {
+            this.lookupMetrics.record(LookupPath.NEGATIVE_CACHE, false, 0, 0);
+            throw new ReceiptNotFoundException("Document not found in the defined container");
+        }
+
+        Receipt receipt = queryByEventId(eventId, new CosmosQueryRequestOptions(), LookupPath.QUERY_FALLBACK);
+        logger.warn("Query fallback run for receipt with eventId {}: found {}", eventId, receipt != null);
+
+        if (receipt == null) {
+            addKnownMiss(eventId, System.nanoTime());
+            throw new ReceiptNotFoundException("Document not found in the defined container");
+        }
+        return receipt;
+    }
+
+    private Receipt queryByEventId(String eventId, CosmosQueryRequestOptions options, LookupPath path) {
+        long start = System.nanoTime();
         //Build query
         SqlQuerySpec querySpec = new SqlQuerySpec(
                 "SELECT * FROM c WHERE c.eventId = @eventId",
                 List.of(new SqlParameter("@eventId", eventId))
         );
 
-        //Query the container
-        return receiptContainer
-                .queryItems(querySpec, new CosmosQueryRequestOptions(), Receipt.class)
-                .stream()
-                .findFirst()
-                .orElseThrow(() -> new ReceiptNotFoundException("Document not found in the defined container"));
+        //Query the container, a cross-partition query may return empty pages before the matching one
+        double requestCharge = 0;
+        Receipt receipt = null;
+        for (FeedResponse<Receipt> page : receiptContainer
+                .queryItems(querySpec, options, Receipt.class)
+                .iterableByPage()) {
+            requestCharge += page.getRequestCharge();
+            if (!page.getResults().isEmpty()) {
+                receipt = page.getResults().get(0);
+                break;
+            }
+        }
+        this.lookupMetrics.record(path, receipt != null, requestCharge, System.nanoTime() - start);
+        return receipt;
+    }
+
+    private boolean isKnownMiss(String eventId, long now) {
+        synchronized (this.knownMisses) {
+            Long expiration = this.knownMisses.get(eventId);
+            if (expiration == null) {
+                return false;
+            }
+            if (expiration - now > 0) {
+                return true;
+            }
+            this.knownMisses.remove(eventId);
+            return false;
+        }
+    }
+
+    private void addKnownMiss(String eventId, long now) {
+        synchronized (this.knownMisses) {
+            Iterator<Long> expirations = this.knownMisses.values().iterator();
+            while (expirations.hasNext() && expirations.next() - now <= 0) {
+                expirations.remove();
+            }
+            // re-inserted so that the entry moves to the tail along with its new expiration
+            this.knownMisses.remove(eventId);
+            this.knownMisses.put(eventId, now + TimeUnit.MILLISECONDS.toNanos(this.notFoundCacheTtlMillis));
+        }
     }
 
     /**
@@ -97,4 +217,78 @@ public class ReceiptCosmosClientImpl implements ReceiptCosmosClient {
     public CosmosItemResponse<Receipt> updateReceipt(Receipt receipt) {
         return receiptContainer.upsertItem(receipt);
     }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * A patch request accepts a limited number of operations, a wider change replaces the whole document
+     * on the same condition.
+     */
+    @Override
+    public CosmosItemResponse<Receipt> patchReceipt(Receipt receipt, DocumentPatch patch) {
+        PartitionKey partitionKey = new PartitionKey(receipt.getEventId());
+        if (patch.size() > DocumentPatchBuilder.MAX_PATCH_OPERATIONS) {
+            return receiptContainer.replaceItem(receipt, receipt.getId(), partitionKey,
+                    ifMatch(new CosmosItemRequestOptions(), receipt.get_etag()));
+        }
+        return receiptContainer.patchItem(receipt.getId(), partitionKey, patch.getOperations(),
+                ifMatch(new CosmosPatchItemRequestOptions(), receipt.get_etag()), Receipt.class);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The receipts are read in a single request by id and event id, as the point read of
+     * {@link #getReceiptDocument(String)}. The event ids it does not find are then queried within their partition,
+     * so that the receipts whose id differs from the event id are found as well.
+     */
+    @Override
+    public List<Receipt> getReceiptDocuments(Collection<String> eventIds) {
+        if (eventIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<CosmosItemIdentity> identities = eventIds.stream()
+                .distinct()
+                .map(eventId -> new CosmosItemIdentity(new PartitionKey(eventId), eventId))
+                .toList();
+
+        FeedResponse<Receipt> response = receiptContainer.readMany(identities, Receipt.class);
+        logger.debug("Read {} of {} receipts in a single request, {} RU",
+                response.getResults().size(), identities.size(), response.getRequestCharge());
+        if (response.getResults().size() == identities.size()) {
+            return response.getResults();
+        }
+
+        List<Receipt> receipts = new ArrayList<>(response.getResults());
+        Set<String> foundEventIds = receipts.stream()
+                .map(Receipt::getEventId)
+                .collect(Collectors.toSet());
+        for (CosmosItemIdentity identity : identities) {
+            if (!foundEventIds.contains(identity.getId())) {
+                Receipt receipt = queryPartition(identity.getId());
+                if (receipt != null) {
+                    receipts.add(receipt);
+                }
+            }
+        }
+        return receipts;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Integer> patchReceipts(Map<Receipt, DocumentPatch> patches) {
+        List<CosmosItemOperation> operations = new ArrayList<>(patches.size());
+        patches.forEach((receipt, patch) -> operations.add(CosmosBulkPatches.toOperation(
+                receipt, receipt.getId(), receipt.getEventId(), receipt.get_etag(), patch)));
+        return CosmosBulkPatches.execute(receiptContainer, operations);
+    }
+
+    private static <T extends CosmosItemRequestOptions> T ifMatch(T options, String etag) {
+        if (etag != null) {
+            options.setIfMatchETag(etag);
+        }
+        return options;
+    }
 }
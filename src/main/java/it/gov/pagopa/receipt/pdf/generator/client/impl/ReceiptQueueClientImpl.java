@@ -52,8 +52,21 @@ public class ReceiptQueueClientImpl implements ReceiptQueueClient {
      */
     public Response<SendMessageResult> sendMessageToQueue(String messageText) {
 
+        return sendMessageToQueue(messageText, Duration.of(receiptQueueDelay, ChronoUnit.SECONDS));
+
+    }
+
+    /**
+     * Send string message to the queue, visible only after the given delay
+     *
+     * @param messageText       Biz-event encoded to base64 string
+     * @param visibilityTimeout delay before the message becomes visible
+     * @return response from the queue
+     */
+    public Response<SendMessageResult> sendMessageToQueue(String messageText, Duration visibilityTimeout) {
+
         return this.queueClient.sendMessageWithResponse(
-                messageText, Duration.of(receiptQueueDelay, ChronoUnit.SECONDS),
+                messageText, visibilityTimeout,
                 null, null, null);
 
     }
@@ -0,0 +1,92 @@
+package it.gov.pagopa.receipt.pdf.generator.client.impl;
+
+import it.gov.pagopa.receipt.pdf.generator.utils.PdfEngineCallMetrics;
+import it.gov.pagopa.receipt.pdf.generator.utils.PdfEngineCallMetrics.Phase;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connection manager delegating to the pool of the PDF Engine client,
+ * it records the wait for a connection lease and the time spent opening new connections (TCP connect and TLS handshake).
+ */
+final class TimedConnectionManager implements HttpClientConnectionManager {
+
+    private final HttpClientConnectionManager delegate;
+    private final PdfEngineCallMetrics callMetrics;
+
+    TimedConnectionManager(HttpClientConnectionManager delegate, PdfEngineCallMetrics callMetrics) {
+        this.delegate = delegate;
+        this.callMetrics = callMetrics;
+    }
+
+    @Override
+    public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+        this.callMetrics.observeRoute(route);
+        ConnectionRequest connectionRequest = this.delegate.requestConnection(route, state);
+        return new ConnectionRequest() {
+            @Override
+            public HttpClientConnection get(long timeout, TimeUnit timeUnit)
+                    throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                long start = System.nanoTime();
+                try {
+                    return connectionRequest.get(timeout, timeUnit);
+                } finally {
+                    callMetrics.recordPhase(Phase.LEASE_WAIT, start);
+                }
+            }
+
+            @Override
+            public boolean cancel() {
+                return connectionRequest.cancel();
+            }
+        };
+    }
+
+    @Override
+    public void releaseConnection(HttpClientConnection conn, Object newState, long validDuration, TimeUnit timeUnit) {
+        this.delegate.releaseConnection(conn, newState, validDuration, timeUnit);
+    }
+
+    @Override
+    public void connect(HttpClientConnection conn, HttpRoute route, int connectTimeout, HttpContext context) throws IOException {
+        long start = System.nanoTime();
+        try {
+            this.delegate.connect(conn, route, connectTimeout, context);
+        } finally {
+            this.callMetrics.recordPhase(Phase.CONNECT, start);
+        }
+    }
+
+    @Override
+    public void upgrade(HttpClientConnection conn, HttpRoute route, HttpContext context) throws IOException {
+        this.delegate.upgrade(conn, route, context);
+    }
+
+    @Override
+    public void routeComplete(HttpClientConnection conn, HttpRoute route, HttpContext context) throws IOException {
+        this.delegate.routeComplete(conn, route, context);
+    }
+
+    @Override
+    public void closeIdleConnections(long idletime, TimeUnit timeUnit) {
+        this.delegate.closeIdleConnections(idletime, timeUnit);
+    }
+
+    @Override
+    public void closeExpiredConnections() {
+        this.delegate.closeExpiredConnections();
+    }
+
+    @Override
+    public void shutdown() {
+        this.delegate.shutdown();
+    }
+}
@@ -23,4 +23,8 @@ public class CartForReceipt {
     private long inserted_at;
     private long generated_at;
     private long notified_at;
+    /**
+     * Version of the document read from CosmosDB, used as condition on its patch
+     */
+    private String _etag;
 }
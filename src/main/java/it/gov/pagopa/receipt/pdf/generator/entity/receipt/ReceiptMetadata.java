@@ -11,4 +11,8 @@ public class ReceiptMetadata {
 
     private String name;
     private String url;
+    /**
+     * Hash of the template data the PDF was rendered from, see {@link it.gov.pagopa.receipt.pdf.generator.utils.TemplateHash}
+     */
+    private String templateHash;
 }
@@ -3,6 +3,8 @@ package it.gov.pagopa.receipt.pdf.generator.entity.receipt.enumeration;
 public enum ReasonErrorCode {
     ERROR_BLOB_STORAGE(901),
     ERROR_PDF_ENGINE(700),
+    // the call was rejected by the circuit breaker, the PDF Engine was not reached (701 is the unexpected AES error)
+    ERROR_PDF_ENGINE_UNAVAILABLE(702),
     ERROR_TEMPLATE_PDF(903),
 
     // Helpdesk
@@ -1,13 +1,32 @@
 package it.gov.pagopa.receipt.pdf.generator.exception;
 
+import org.apache.http.HttpStatus;
+
 public class UnableToSaveException extends Exception {
 
+    private final int statusCode;
+
     /**
-     * Constructs new exception with provided message and cause
+     * Constructs new exception with provided message
      *
      * @param message Detail message
      */
     public UnableToSaveException(String message) {
+        this(message, HttpStatus.SC_INTERNAL_SERVER_ERROR);
+    }
+
+    /**
+     * Constructs new exception with provided message and status code
+     *
+     * @param message    Detail message
+     * @param statusCode the status code returned by CosmosDB
+     */
+    public UnableToSaveException(String message, int statusCode) {
         super(message);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
     }
 }
@@ -0,0 +1,32 @@
+package it.gov.pagopa.receipt.pdf.generator.model;
+
+import com.azure.cosmos.models.CosmosPatchOperations;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Model class for the changes made to a CosmosDB document since it was read
+ */
+@Getter
+@AllArgsConstructor
+public class DocumentPatch {
+
+    /**
+     * Patch operations on the changed top-level fields
+     */
+    private final CosmosPatchOperations operations;
+    /**
+     * Names of the changed top-level fields
+     */
+    private final List<String> changedFields;
+
+    public boolean isEmpty() {
+        return this.changedFields.isEmpty();
+    }
+
+    public int size() {
+        return this.changedFields.size();
+    }
+}
@@ -22,7 +22,10 @@ public class PdfCartGeneration {
     private Map<String, PdfMetadata> debtorMetadataMap;
     private PdfMetadata payerMetadata;
 
-    public void addDebtorMetadataToMap(String debtorFiscalCode, PdfMetadata debtorMetadata) {
+    /**
+     * Synchronized as the debtor PDFs of a cart can be generated concurrently
+     */
+    public synchronized void addDebtorMetadataToMap(String debtorFiscalCode, PdfMetadata debtorMetadata) {
         if (this.debtorMetadataMap == null) {
             this.debtorMetadataMap = new HashMap<>();
         }
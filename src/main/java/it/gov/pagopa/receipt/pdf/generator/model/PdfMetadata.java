@@ -1,5 +1,6 @@
 package it.gov.pagopa.receipt.pdf.generator.model;
 
+import it.gov.pagopa.receipt.pdf.generator.entity.receipt.enumeration.ReasonErrorCode;
 import lombok.*;
 
 /**
@@ -16,4 +17,10 @@ public class PdfMetadata {
     String errorMessage;
     String documentName;
     String documentUrl;
+    String templateHash;
+    /**
+     * Origin of a failure that has no {@link ReasonErrorCode} of its own, i.e. {@link ReasonErrorCode#ERROR_PDF_ENGINE}
+     * when the PDF Engine failed, null otherwise
+     */
+    ReasonErrorCode reasonErrorCode;
 }
@@ -0,0 +1,26 @@
+package it.gov.pagopa.receipt.pdf.generator.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.extern.jackson.Jacksonized;
+
+/**
+ * Model class for a PSP entry of the static PSP configuration (psp_config_file.json)
+ */
+@Getter
+@Builder
+@Jacksonized
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class PspConfiguration {
+
+    private final String logo;
+    private final String fiscalCode;
+    private final String name;
+    private final String companyName;
+    private final String address;
+    private final String buildingNumber;
+    private final String postalCode;
+    private final String city;
+    private final String province;
+}
@@ -0,0 +1,27 @@
+package it.gov.pagopa.receipt.pdf.generator.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.apache.http.entity.mime.content.ByteArrayBody;
+
+import java.net.http.HttpRequest;
+
+/**
+ * Model class for a template bundle loaded once and shared by every PDF Engine request
+ */
+@Getter
+@AllArgsConstructor
+public class TemplateBundle {
+
+    private final String name;
+    private final String contentHash;
+    private final int size;
+    /**
+     * Immutable multipart part wrapping the bundle bytes, it is written as is on every request
+     */
+    private final ByteArrayBody contentBody;
+    /**
+     * Reusable body publisher over the same bundle bytes, used by the async HTTP/2 client
+     */
+    private final HttpRequest.BodyPublisher contentPublisher;
+}
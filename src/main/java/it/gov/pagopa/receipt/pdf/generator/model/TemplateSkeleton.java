@@ -0,0 +1,66 @@
+package it.gov.pagopa.receipt.pdf.generator.model;
+
+import it.gov.pagopa.receipt.pdf.generator.entity.event.BizEvent;
+import it.gov.pagopa.receipt.pdf.generator.exception.TemplateDataMappingException;
+import it.gov.pagopa.receipt.pdf.generator.model.template.Item;
+import it.gov.pagopa.receipt.pdf.generator.model.template.Transaction;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Template parts shared by the payer and debtor variants of the same receipt or cart.
+ * <p>
+ * The transaction block and the cart items depend only on the biz-event, so they are built
+ * the first time a variant needs them and reused by the following ones. Parts are kept by biz-event
+ * instance, a skeleton must not outlive the generation of the receipt or cart it was created for.
+ * A part whose build fails is not kept, every variant that needs it fails in the same way.
+ * <p>
+ * The variants of a cart can be built concurrently, the skeleton is thread-safe.
+ */
+public class TemplateSkeleton {
+
+    private final Map<BizEvent, Transaction> transactions = Collections.synchronizedMap(new IdentityHashMap<>());
+    private final Map<BizEvent, Item> items = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    /**
+     * Retrieve the transaction block of the biz-event, building it on first access
+     *
+     * @param bizEvent the biz-event of the transaction
+     * @param builder  builds the transaction block, without amount and target of the template
+     * @return the shared transaction block, it must be copied before setting the variant fields
+     * @throws TemplateDataMappingException if the transaction block cannot be built
+     */
+    public Transaction getTransaction(BizEvent bizEvent, PartBuilder<Transaction> builder) throws TemplateDataMappingException {
+        return getOrBuild(this.transactions, bizEvent, builder);
+    }
+
+    /**
+     * Retrieve the cart item of the biz-event, building it on first access
+     *
+     * @param bizEvent the biz-event of the item
+     * @param builder  builds the cart item
+     * @return the shared cart item
+     * @throws TemplateDataMappingException if the cart item cannot be built
+     */
+    public Item getItem(BizEvent bizEvent, PartBuilder<Item> builder) throws TemplateDataMappingException {
+        return getOrBuild(this.items, bizEvent, builder);
+    }
+
+    private static <T> T getOrBuild(Map<BizEvent, T> parts, BizEvent bizEvent, PartBuilder<T> builder) throws TemplateDataMappingException {
+        T part = parts.get(bizEvent);
+        if (part == null) {
+            // variants built concurrently may build the same part twice, the result is identical
+            part = builder.build();
+            T previous = parts.putIfAbsent(bizEvent, part);
+            return previous != null ? previous : part;
+        }
+        return part;
+    }
+
+    @FunctionalInterface
+    public interface PartBuilder<T> {
+        T build() throws TemplateDataMappingException;
+    }
+}
@@ -1,5 +1,6 @@
 package it.gov.pagopa.receipt.pdf.generator.model.request;
 
+import it.gov.pagopa.receipt.pdf.generator.model.template.ReceiptPDFTemplate;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Getter;
@@ -16,6 +17,17 @@ import lombok.Setter;
 @NoArgsConstructor
 public class PdfEngineRequest {
 
+    /**
+     * Already serialized template data, when set it is sent in place of {@link #template}
+     */
     private String data;
+    /**
+     * Template data already encoded to UTF-8 JSON, when set it is sent as is in place of {@link #template}
+     */
+    private byte[] encodedData;
+    /**
+     * Template data serialized straight into the request body
+     */
+    private ReceiptPDFTemplate template;
     private boolean applySignature;
 }
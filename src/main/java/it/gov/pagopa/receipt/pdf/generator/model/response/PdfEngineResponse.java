@@ -4,6 +4,8 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 
+import java.io.InputStream;
+
 /**
  * Model class for PDF Engine client's response
  */
@@ -15,5 +17,19 @@ public class PdfEngineResponse {
     String tempPdfPath;
     int statusCode;
     String errorMessage;
+    /**
+     * Status of the error response returned by the PDF Engine, 0 if it did not respond.
+     * The {@link #statusCode} of an error stays 500, as recorded on the reason error of the receipt
+     */
+    int engineStatusCode;
+    /**
+     * Set in streaming mode in place of {@link #tempPdfPath}: the PDF read straight from the PDF Engine response.
+     * The stream holds the HTTP connection, it must be consumed and closed by the caller.
+     */
+    InputStream pdfStream;
+    /**
+     * Length declared by the PDF Engine for {@link #pdfStream}, negative if unknown
+     */
+    long pdfContentLength = -1;
 
 }
@@ -7,7 +7,7 @@ import lombok.Data;
 import static com.fasterxml.jackson.annotation.JsonInclude.*;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 @JsonInclude(Include.NON_NULL)
 public class Transaction {
 
@@ -4,6 +4,7 @@ import it.gov.pagopa.receipt.pdf.generator.entity.event.BizEvent;
 import it.gov.pagopa.receipt.pdf.generator.entity.receipt.Receipt;
 import it.gov.pagopa.receipt.pdf.generator.exception.TemplateDataMappingException;
 import it.gov.pagopa.receipt.pdf.generator.model.CartInfo;
+import it.gov.pagopa.receipt.pdf.generator.model.TemplateSkeleton;
 import it.gov.pagopa.receipt.pdf.generator.model.template.ReceiptPDFTemplate;
 
 import java.util.List;
@@ -26,6 +27,24 @@ public interface BuildTemplateService {
             Receipt receipt
     ) throws TemplateDataMappingException;
 
+    /**
+     * Maps a bizEvent to the json needed to compile the template,
+     * reusing the parts already built in the skeleton by the other variant of the same receipt
+     *
+     * @param bizEvent          Biz-event from queue message
+     * @param requestedByDebtor boolean that indicates the target of the template
+     * @param receipt           Receipt from CosmosDB
+     * @param skeleton          parts shared by the payer and debtor templates of the receipt
+     * @return {@link ReceiptPDFTemplate} compiled template
+     * @throws TemplateDataMappingException when mandatory fields are missing
+     */
+    ReceiptPDFTemplate buildTemplate(
+            BizEvent bizEvent,
+            boolean requestedByDebtor,
+            Receipt receipt,
+            TemplateSkeleton skeleton
+    ) throws TemplateDataMappingException;
+
     /**
      * Maps a list of bizEvents to the json needed to compile the template for cart receipts
      *
@@ -44,6 +63,28 @@ public interface BuildTemplateService {
             String amount,
             Map<String, CartInfo> cartInfoMap
     ) throws TemplateDataMappingException;
+
+    /**
+     * Maps a list of bizEvents to the json needed to compile the template for cart receipts,
+     * reusing the parts already built in the skeleton by the other variants of the same cart
+     *
+     * @param listOfBizEvents   List of Biz-events from queue message
+     * @param requestedByDebtor boolean that indicates the type of template
+     * @param eventId           the cart identifier
+     * @param amount            the total amount of the cart
+     * @param cartInfoMap       map that contains info about the cart items
+     * @param skeleton          parts shared by the payer and debtors templates of the cart
+     * @return {@link ReceiptPDFTemplate} compiled template
+     * @throws TemplateDataMappingException when mandatory fields are missing
+     */
+    ReceiptPDFTemplate buildCartTemplate(
+            List<BizEvent> listOfBizEvents,
+            boolean requestedByDebtor,
+            String eventId,
+            String amount,
+            Map<String, CartInfo> cartInfoMap,
+            TemplateSkeleton skeleton
+    ) throws TemplateDataMappingException;
 }
 
 
@@ -1,10 +1,14 @@
 package it.gov.pagopa.receipt.pdf.generator.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import it.gov.pagopa.receipt.pdf.generator.client.CartReceiptsCosmosClient;
 import it.gov.pagopa.receipt.pdf.generator.entity.cart.CartForReceipt;
 import it.gov.pagopa.receipt.pdf.generator.exception.CartNotFoundException;
 import it.gov.pagopa.receipt.pdf.generator.exception.UnableToSaveException;
 
+import java.util.Collection;
+import java.util.Map;
+
 public interface CartReceiptCosmosService {
 
     /**
@@ -23,4 +27,31 @@ public interface CartReceiptCosmosService {
      * @throws CartNotFoundException when no cart has been found
      */
     CartForReceipt getCartForReceipt(String cartId) throws CartNotFoundException;
+
+    /**
+     * Saves on CosmosDB only the fields of the cart changed since the snapshot, using {@link CartReceiptsCosmosClient}.
+     * Nothing is written if the cart has not changed.
+     *
+     * @param snapshot       the snapshot of the cart taken when it was read
+     * @param cartForReceipt the cart to save
+     * @throws UnableToSaveException if an error occur during save, with status 412 if the cart has been modified since it was read
+     */
+    void patchCartForReceipt(JsonNode snapshot, CartForReceipt cartForReceipt) throws UnableToSaveException;
+
+    /**
+     * Recovers with a single request the carts with the provided identifiers
+     *
+     * @param cartIds the cart identifiers
+     * @return the carts found by cart id, carts not found are missing from the map
+     */
+    Map<String, CartForReceipt> getCartsForReceipt(Collection<String> cartIds);
+
+    /**
+     * Saves on CosmosDB, with a single bulk execution, only the fields of each cart changed since its snapshot.
+     * Carts not changed are not written.
+     *
+     * @param snapshots the snapshot of each cart taken when it was read, by cart
+     * @return the error of each cart not saved, by cart id
+     */
+    Map<String, UnableToSaveException> patchCartsForReceipt(Map<CartForReceipt, JsonNode> snapshots);
 }
@@ -5,6 +5,7 @@ import it.gov.pagopa.receipt.pdf.generator.entity.event.BizEvent;
 import it.gov.pagopa.receipt.pdf.generator.exception.CartReceiptGenerationNotToRetryException;
 import it.gov.pagopa.receipt.pdf.generator.model.PdfCartGeneration;
 import it.gov.pagopa.receipt.pdf.generator.model.PdfGeneration;
+import it.gov.pagopa.receipt.pdf.generator.model.PdfMetadata;
 
 import java.nio.file.Path;
 import java.util.List;
@@ -13,6 +14,8 @@ public interface GenerateCartReceiptPdfService {
 
     /**
      * Handles conditionally the generation of the PDF's receipts based on the provided bizEvents
+     * <p>
+     * A concurrent call for the same cart receipt and the same PDFs to generate waits for the one in flight and gets its result
      *
      * @param cartForReceipt  the Cart receipt that hold the status of the elaboration
      * @param listOfBizEvents List of Biz-events from queue message
@@ -20,6 +23,26 @@ public interface GenerateCartReceiptPdfService {
      */
     PdfCartGeneration generateCartReceipts(CartForReceipt cartForReceipt, List<BizEvent> listOfBizEvents, Path workingDirPath);
 
+    /**
+     * Handles conditionally the regeneration of the PDF's receipts based on the provided bizEvents
+     * <p>
+     * A PDF whose template data has the same hash stored with the previous cart receipt is not rendered again
+     * if it is still saved: the saved PDF is returned, with the same {@link PdfMetadata} of a generated one
+     * <p>
+     * A regeneration is never shared with a concurrent generation in flight
+     *
+     * @param cartForReceipt  the Cart receipt that hold the status of the elaboration
+     * @param listOfBizEvents List of Biz-events to regenerate the cart receipt from
+     * @param previousCart    the Cart receipt as previously generated, null to render all the PDFs again
+     * @return {@link PdfCartGeneration} object with the result of the PDF generation and store or the relatives error messages
+     */
+    PdfCartGeneration regenerateCartReceipts(
+            CartForReceipt cartForReceipt,
+            List<BizEvent> listOfBizEvents,
+            CartForReceipt previousCart,
+            Path workingDirPath
+    );
+
     /**
      * Verifies if the PDF generation process succeeded or not, and update the cart receipt with the result
      * In case of errors updates the cart receipt status and error message.
@@ -4,6 +4,7 @@ import it.gov.pagopa.receipt.pdf.generator.entity.event.BizEvent;
 import it.gov.pagopa.receipt.pdf.generator.entity.receipt.Receipt;
 import it.gov.pagopa.receipt.pdf.generator.exception.ReceiptGenerationNotToRetryException;
 import it.gov.pagopa.receipt.pdf.generator.model.PdfGeneration;
+import it.gov.pagopa.receipt.pdf.generator.model.PdfMetadata;
 
 import java.nio.file.Path;
 
@@ -11,6 +12,8 @@ public interface GenerateReceiptPdfService {
 
     /**
      * Handles conditionally the generation of the PDF's receipts based on the provided bizEvent
+     * <p>
+     * A concurrent call for the same receipt and the same PDFs to generate waits for the one in flight and gets its result
      *
      * @param receipt the Receipt that hold the status of the elaboration
      * @param bizEvent Biz-event from queue message
@@ -18,6 +21,21 @@ public interface GenerateReceiptPdfService {
      */
     PdfGeneration generateReceipts(Receipt receipt, BizEvent bizEvent, Path workingDirPath);
 
+    /**
+     * Handles conditionally the regeneration of the PDF's receipts based on the provided bizEvent
+     * <p>
+     * A PDF whose template data has the same hash stored with the previous receipt is not rendered again
+     * if it is still saved: the saved PDF is returned, with the same {@link PdfMetadata} of a generated one
+     * <p>
+     * A regeneration is never shared with a concurrent generation in flight
+     *
+     * @param receipt         the Receipt that hold the status of the elaboration
+     * @param bizEvent        Biz-event to regenerate the receipt from
+     * @param previousReceipt the Receipt as previously generated, null to render all the PDFs again
+     * @return {@link PdfGeneration} object with the result of the PDF generation and store or the relatives error messages
+     */
+    PdfGeneration regenerateReceipts(Receipt receipt, BizEvent bizEvent, Receipt previousReceipt, Path workingDirPath);
+
     /**
      * Verifies if the PDF generation process succeeded or not, and update the receipt with the result
      * In case of errors updates the receipt status and error message.
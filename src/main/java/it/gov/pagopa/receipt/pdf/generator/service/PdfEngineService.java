@@ -4,8 +4,10 @@ import it.gov.pagopa.receipt.pdf.generator.client.PdfEngineClient;
 import it.gov.pagopa.receipt.pdf.generator.exception.PDFReceiptGenerationException;
 import it.gov.pagopa.receipt.pdf.generator.model.response.PdfEngineResponse;
 import it.gov.pagopa.receipt.pdf.generator.model.template.ReceiptPDFTemplate;
+import it.gov.pagopa.receipt.pdf.generator.utils.ReceiptTemplateJsonWriter;
 
 import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
 
 public interface PdfEngineService {
 
@@ -21,4 +23,18 @@ public interface PdfEngineService {
             ReceiptPDFTemplate template,
             Path workingDirPath
     ) throws PDFReceiptGenerationException;
+
+    /**
+     * Non-blocking variant of {@link #generatePDFReceipt(ReceiptPDFTemplate, Path)}, sending the template data
+     * already encoded (e.g. to compute its hash) as is
+     *
+     * @param templateData   template data for PDF generation, as encoded by {@link ReceiptTemplateJsonWriter}
+     * @param workingDirPath path to the temp folder used to store the generated PDF
+     * @return the future result of the invocation, completed exceptionally with a
+     * {@link PDFReceiptGenerationException} when an error occur while invoking the PDF Engine
+     */
+    CompletableFuture<PdfEngineResponse> generatePDFReceiptAsync(
+            byte[] templateData,
+            Path workingDirPath
+    );
 }
@@ -15,4 +15,12 @@ public interface ReceiptBlobStorageService {
      * @throws SavePDFToBlobException when an error occur while saving the PDF
      */
     PdfMetadata saveToBlobStorage(PdfEngineResponse pdfEngineResponse, String blobName) throws SavePDFToBlobException;
+
+    /**
+     * Look up a PDF already saved in receipt storage with the provided name
+     *
+     * @param blobName name of the blob
+     * @return the metadata with the reference to the saved blob, null if it does not exist or cannot be looked up
+     */
+    PdfMetadata findSavedPdf(String blobName);
 }
@@ -1,10 +1,14 @@
 package it.gov.pagopa.receipt.pdf.generator.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import it.gov.pagopa.receipt.pdf.generator.entity.receipt.Receipt;
 import it.gov.pagopa.receipt.pdf.generator.exception.ReceiptNotFoundException;
 import it.gov.pagopa.receipt.pdf.generator.client.ReceiptCosmosClient;
 import it.gov.pagopa.receipt.pdf.generator.exception.UnableToSaveException;
 
+import java.util.Collection;
+import java.util.Map;
+
 public interface ReceiptCosmosService {
 
     /**
@@ -21,4 +25,31 @@ public interface ReceiptCosmosService {
      * @param receipt Receipt to save
      */
     void updateReceipt(Receipt receipt) throws UnableToSaveException;
+
+    /**
+     * Saves on CosmosDB only the fields of the receipt changed since the snapshot, using {@link ReceiptCosmosClient}.
+     * Nothing is written if the receipt has not changed.
+     *
+     * @param snapshot the snapshot of the receipt taken when it was read
+     * @param receipt  Receipt to save
+     * @throws UnableToSaveException if an error occur during save, with status 412 if the receipt has been modified since it was read
+     */
+    void patchReceipt(JsonNode snapshot, Receipt receipt) throws UnableToSaveException;
+
+    /**
+     * Recovers with a single request the receipts of the provided events
+     *
+     * @param bizEventIds BizEvent ids relative to the receipts
+     * @return the receipts found by biz-event id, receipts not found are missing from the map
+     */
+    Map<String, Receipt> getReceipts(Collection<String> bizEventIds);
+
+    /**
+     * Saves on CosmosDB, with a single bulk execution, only the fields of each receipt changed since its snapshot.
+     * Receipts not changed are not written.
+     *
+     * @param snapshots the snapshot of each receipt taken when it was read, by receipt
+     * @return the error of each receipt not saved, by biz-event id
+     */
+    Map<String, UnableToSaveException> patchReceipts(Map<Receipt, JsonNode> snapshots);
 }
@@ -11,6 +11,7 @@ import it.gov.pagopa.receipt.pdf.generator.entity.receipt.enumeration.ReasonErro
 import it.gov.pagopa.receipt.pdf.generator.exception.PdfJsonMappingException;
 import it.gov.pagopa.receipt.pdf.generator.exception.TemplateDataMappingException;
 import it.gov.pagopa.receipt.pdf.generator.model.CartInfo;
+import it.gov.pagopa.receipt.pdf.generator.model.TemplateSkeleton;
 import it.gov.pagopa.receipt.pdf.generator.model.enumeration.TemplateDatasource;
 import it.gov.pagopa.receipt.pdf.generator.model.template.Cart;
 import it.gov.pagopa.receipt.pdf.generator.model.template.Debtor;
@@ -26,10 +27,9 @@ import it.gov.pagopa.receipt.pdf.generator.model.template.User;
 import it.gov.pagopa.receipt.pdf.generator.model.template.UserData;
 import it.gov.pagopa.receipt.pdf.generator.service.BuildTemplateService;
 import it.gov.pagopa.receipt.pdf.generator.utils.ObjectMapperUtils;
+import it.gov.pagopa.receipt.pdf.generator.utils.PspCatalogue;
 import it.gov.pagopa.receipt.pdf.generator.utils.TemplateDataField;
 
-import java.io.IOException;
-import java.io.InputStream;
 import java.math.BigDecimal;
 import java.text.NumberFormat;
 import java.time.DateTimeException;
@@ -39,27 +39,38 @@ import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeFormatterBuilder;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.TimeZone;
-import java.util.regex.Pattern;
 
 
 public class BuildTemplateServiceImpl implements BuildTemplateService {
 
 
-    private static final Pattern INVALID_FULL_NAME_PATTERN = Pattern.compile("^[^A-Za-z]+$");
-    private static final Pattern INVALID_CHARACTERS_IN_FULL_NAME_PATTERN = Pattern.compile("[,;:/]+");
     private static final String REF_TYPE_NOTICE = "codiceAvviso";
     private static final String REF_TYPE_IUV = "IUV";
 
     private static final String PAYMENT_METHOD_NAME_KEY = "PAYMENT_METHOD_NAME_MAP";
     private static final String BRAND_LOGO_MAP_ENV_KEY = "BRAND_LOGO_MAP";
-    private static final String PSP_CONFIG_FILE_JSON_FILE_NAME = "psp_config_file.json";
     private static final String RECEIPT_DATE_FORMAT = "dd MMMM yyyy, HH:mm:ss";
+    private static final String WISP_NOTICE_NUMBER_PREFIX = "351";
+    private static final String TIMESTAMP_PARSE_ERROR_MESSAGE =
+            "Error mapping bizEvent data to template, parse failed for property " + TemplateDataField.TRANSACTION_TIMESTAMP;
+
+    // Formatters are built once: DateTimeFormatter is immutable, NumberFormat is not thread-safe so it is thread-confined
+    private static final DateTimeFormatter ZONED_DATE_FORMATTER = new DateTimeFormatterBuilder()
+            .append(DateTimeFormatter.ofPattern(RECEIPT_DATE_FORMAT))
+            .toFormatter(Locale.ITALY)
+            .withZone(TimeZone.getTimeZone("Europe/Rome").toZoneId());
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern(RECEIPT_DATE_FORMAT).withLocale(Locale.ITALY);
+    private static final ThreadLocal<NumberFormat> CURRENCY_FORMAT = ThreadLocal.withInitial(() -> {
+        NumberFormat numberFormat = NumberFormat.getInstance(Locale.ITALY);
+        numberFormat.setMaximumFractionDigits(2);
+        numberFormat.setMinimumFractionDigits(2);
+        return numberFormat;
+    });
 
     /**
      * Hide from public usage.
@@ -67,7 +78,6 @@ public class BuildTemplateServiceImpl implements BuildTemplateService {
 
     private static final Map<String, String> paymentMethodNameMap;
     private static final Map<String, String> brandLogoMap;
-    private static final Map<String, Object> pspMap;
     public static final String MODEL_TYPE_IUV = "1";
     public static final String MODEL_TYPE_NOTICE = "2";
     public static final String DEBTOR_ANONIMO_CF = "ANONIMO";
@@ -92,15 +102,16 @@ public class BuildTemplateServiceImpl implements BuildTemplateService {
 
     }
 
-    static {
-        try (InputStream data = BuildTemplateServiceImpl.class.getClassLoader().getResourceAsStream(PSP_CONFIG_FILE_JSON_FILE_NAME)) {
-            if (data == null) {
-                throw new IOException("PSP config file not found");
-            }
-            pspMap = ObjectMapperUtils.mapString(new String(data.readAllBytes()), Map.class);
-        } catch (IOException e) {
-            throw new PdfJsonMappingException(e);
-        }
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ReceiptPDFTemplate buildTemplate(
+            BizEvent bizEvent,
+            boolean requestedByDebtor,
+            Receipt receipt
+    ) throws TemplateDataMappingException {
+        return buildTemplate(bizEvent, requestedByDebtor, receipt, new TemplateSkeleton());
     }
 
     /**
@@ -110,7 +121,8 @@ public class BuildTemplateServiceImpl implements BuildTemplateService {
     public ReceiptPDFTemplate buildTemplate(
             BizEvent bizEvent,
             boolean requestedByDebtor,
-            Receipt receipt
+            Receipt receipt,
+            TemplateSkeleton skeleton
     ) throws TemplateDataMappingException {
         return commonTemplate(
                 Collections.singletonList(bizEvent),
@@ -123,7 +135,8 @@ public class BuildTemplateServiceImpl implements BuildTemplateService {
                                 .debtorFiscalCode(receipt.getEventData().getDebtorFiscalCode())
                                 .subject(getItemSubject(receipt))
                                 .build()
-                )
+                ),
+                skeleton
         );
     }
 
@@ -137,13 +150,29 @@ public class BuildTemplateServiceImpl implements BuildTemplateService {
             String eventId,
             String amount,
             Map<String, CartInfo> cartInfoMap
+    ) throws TemplateDataMappingException {
+        return buildCartTemplate(listOfBizEvents, requestedByDebtor, eventId, amount, cartInfoMap, new TemplateSkeleton());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ReceiptPDFTemplate buildCartTemplate(
+            List<BizEvent> listOfBizEvents,
+            boolean requestedByDebtor,
+            String eventId,
+            String amount,
+            Map<String, CartInfo> cartInfoMap,
+            TemplateSkeleton skeleton
     ) throws TemplateDataMappingException {
         ReceiptPDFTemplate commonTemplate = commonTemplate(
                 listOfBizEvents,
                 requestedByDebtor,
                 validateCartServiceCustomerId(eventId),
                 getCartAmount(amount),
-                cartInfoMap
+                cartInfoMap,
+                skeleton
         );
 
         // hideFeesAndTotals in case is a cart receipt but requested by one of the debtors
@@ -157,7 +186,8 @@ public class BuildTemplateServiceImpl implements BuildTemplateService {
             boolean requestedByDebtor,
             String serviceCustomerId,
             String amount,
-            Map<String, CartInfo> cartInfoMap
+            Map<String, CartInfo> cartInfoMap,
+            TemplateSkeleton skeleton
     ) throws TemplateDataMappingException {
         BizEvent bizEvent = listOfBizEvents.get(0);
         if (bizEvent == null) {
@@ -169,19 +199,10 @@ public class BuildTemplateServiceImpl implements BuildTemplateService {
 
         return ReceiptPDFTemplate.builder()
                 .serviceCustomerId(serviceCustomerId)
-                .transaction(Transaction.builder()
-                        .timestamp(getTimestamp(bizEvent))
+                .transaction(skeleton.getTransaction(bizEvent, () -> buildTransaction(bizEvent))
+                        .toBuilder()
                         .amount(amount)
-                        .psp(getPsp(bizEvent))
-                        .rrn(getRnn(bizEvent))
-                        .paymentMethod(PaymentMethod.builder()
-                                .name(getPaymentMethodName(bizEvent))
-                                .logo(getPaymentMethodLogo(bizEvent))
-                                .accountHolder(getPaymentMethodAccountHolder(bizEvent))
-                                .build())
-                        .authCode(getAuthCode(bizEvent))
                         .requestedByDebtor(requestedByDebtor)
-                        .processedByPagoPA(getProcessedByPagoPA(bizEvent))
                         .build())
                 .user(requestedByDebtor ?
                         null :
@@ -191,37 +212,37 @@ public class BuildTemplateServiceImpl implements BuildTemplateService {
                                         .taxCode(getUserTaxCode(bizEvent))
                                         .build())
                                 .build())
-                .cart(buildCart(listOfBizEvents, cartInfoMap))
+                .cart(buildCart(listOfBizEvents, cartInfoMap, skeleton))
+                .build();
+    }
+
+    /**
+     * Build the transaction block shared by the variants, amount and target of the template are set on each copy
+     */
+    private Transaction buildTransaction(BizEvent bizEvent) throws TemplateDataMappingException {
+        return Transaction.builder()
+                .timestamp(getTimestamp(bizEvent))
+                .psp(getPsp(bizEvent))
+                .rrn(getRnn(bizEvent))
+                .paymentMethod(PaymentMethod.builder()
+                        .name(getPaymentMethodName(bizEvent))
+                        .logo(getPaymentMethodLogo(bizEvent))
+                        .accountHolder(getPaymentMethodAccountHolder(bizEvent))
+                        .build())
+                .authCode(getAuthCode(bizEvent))
+                .processedByPagoPA(getProcessedByPagoPA(bizEvent))
                 .build();
     }
 
     private Cart buildCart(
             List<BizEvent> listOfBizEvents,
-            Map<String, CartInfo> cartInfoMap
+            Map<String, CartInfo> cartInfoMap,
+            TemplateSkeleton skeleton
     ) throws TemplateDataMappingException {
         double amountPartial = 0;
-        List<Item> cartItems = new ArrayList<>();
+        List<Item> cartItems = new ArrayList<>(listOfBizEvents.size());
         for (BizEvent bizEvent : listOfBizEvents) {
-            CartInfo cartInfo = cartInfoMap.get(bizEvent.getId());
-            cartItems.add(
-                    Item.builder()
-                            .refNumber(RefNumber.builder()
-                                    .type(getRefNumberType(bizEvent))
-                                    .value(getRefNumberValue(bizEvent))
-                                    .build())
-                            .debtor(DEBTOR_ANONIMO_CF.equals(cartInfo.getDebtorFiscalCode()) ?
-                                    null : Debtor.builder()
-                                    .fullName(getDebtorFullName(bizEvent))
-                                    .taxCode(getDebtorTaxCode(bizEvent))
-                                    .build())
-                            .payee(Payee.builder()
-                                    .name(getPayeeName(bizEvent))
-                                    .taxCode(getPayeeTaxCode(bizEvent))
-                                    .build())
-                            .subject(cartInfo.getSubject())
-                            .amount(getItemAmount(bizEvent, true))
-                            .build()
-            );
+            cartItems.add(skeleton.getItem(bizEvent, () -> buildItem(bizEvent, cartInfoMap.get(bizEvent.getId()))));
             amountPartial = amountPartial + Double.parseDouble(getItemAmount(bizEvent, false));
         }
         return Cart.builder()
@@ -230,6 +251,26 @@ public class BuildTemplateServiceImpl implements BuildTemplateService {
                 .build();
     }
 
+    private Item buildItem(BizEvent bizEvent, CartInfo cartInfo) throws TemplateDataMappingException {
+        return Item.builder()
+                .refNumber(RefNumber.builder()
+                        .type(getRefNumberType(bizEvent))
+                        .value(getRefNumberValue(bizEvent))
+                        .build())
+                .debtor(DEBTOR_ANONIMO_CF.equals(cartInfo.getDebtorFiscalCode()) ?
+                        null : Debtor.builder()
+                        .fullName(getDebtorFullName(bizEvent))
+                        .taxCode(getDebtorTaxCode(bizEvent))
+                        .build())
+                .payee(Payee.builder()
+                        .name(getPayeeName(bizEvent))
+                        .taxCode(getPayeeTaxCode(bizEvent))
+                        .build())
+                .subject(cartInfo.getSubject())
+                .amount(getItemAmount(bizEvent, true))
+                .build();
+    }
+
     private String getServiceCustomerId(Receipt receipt) throws TemplateDataMappingException {
         if (receipt.getEventId() != null) {
             return receipt.getEventId();
@@ -348,9 +389,7 @@ public class BuildTemplateServiceImpl implements BuildTemplateService {
                         event.getTransactionDetails().getUser().getName() != null &&
                         event.getTransactionDetails().getUser().getSurname() != null
         ) {
-            return String.format("%s %s",
-                    event.getTransactionDetails().getUser().getName(),
-                    event.getTransactionDetails().getUser().getSurname());
+            return event.getTransactionDetails().getUser().getName() + " " + event.getTransactionDetails().getUser().getSurname();
         }
         if (event.getPayer() != null && event.getPayer().getFullName() != null) {
             return event.getPayer().getFullName();
@@ -376,7 +415,7 @@ public class BuildTemplateServiceImpl implements BuildTemplateService {
         if (event.getDebtorPosition() != null && event.getDebtorPosition().getModelType() != null) {
             if (event.getDebtorPosition().getModelType().equals(MODEL_TYPE_IUV) || (
                     event.getDebtorPosition().getNoticeNumber() != null &&
-                            event.getDebtorPosition().getNoticeNumber().matches(WISP_REGEX) &&
+                            isWispNoticeNumber(event.getDebtorPosition().getNoticeNumber()) &&
                             event.getDebtorPosition().getIuv() != null)) {
                 return REF_TYPE_IUV;
             }
@@ -391,7 +430,7 @@ public class BuildTemplateServiceImpl implements BuildTemplateService {
         if (event.getDebtorPosition() != null && event.getDebtorPosition().getModelType() != null) {
             if ((event.getDebtorPosition().getModelType().equals(MODEL_TYPE_IUV) || (
                     event.getDebtorPosition().getNoticeNumber() != null &&
-                            event.getDebtorPosition().getNoticeNumber().matches(WISP_REGEX))) &&
+                            isWispNoticeNumber(event.getDebtorPosition().getNoticeNumber()))) &&
                     event.getDebtorPosition().getIuv() != null) {
                 return event.getDebtorPosition().getIuv();
             }
@@ -449,44 +488,41 @@ public class BuildTemplateServiceImpl implements BuildTemplateService {
                         event.getTransactionDetails().getTransaction().getFee() != 0L
         ) {
             // Fee in transactionDetails is defined in cents (es. 25500 not 255.00)
-            return currencyFormat(String.valueOf(event.getTransactionDetails().getTransaction().getFee() / 100.00));
+            return currencyFormat(BigDecimal.valueOf(event.getTransactionDetails().getTransaction().getFee(), 2));
         }
         return null;
     }
 
     private PSP getPsp(BizEvent event) throws TemplateDataMappingException {
         if (event.getPsp() != null && event.getPsp().getIdPsp() != null) {
-            LinkedHashMap<String, String> info = (LinkedHashMap<String, String>) pspMap
-                    .getOrDefault(event.getPsp().getIdPsp(), new LinkedHashMap<>());
+            PSP configuredPsp = PspCatalogue.getInstance().getPspTemplate(event.getPsp().getIdPsp()).orElse(null);
 
-          if (info.isEmpty()) {
+          if (configuredPsp == null) {
             throw new TemplateDataMappingException(String.format(TemplateDataField.ERROR_PSP_NOT_CONFIGURED, event.getPsp().getIdPsp()), ReasonErrorCode.ERROR_TEMPLATE_PDF.getCode());
           }
 
           String pspFee = getPspFee(event);
-            return PSP.builder()
-                    .name(getOrThrow(info, "name", TemplateDataField.TRANSACTION_PSP_NAME))
+            return configuredPsp.toBuilder()
+                    .name(getOrThrow(configuredPsp.getName(), TemplateDataField.TRANSACTION_PSP_NAME))
                     .fee(PSPFee.builder()
                             .amount(pspFee)
                             .build())
-                    .companyName(getOrThrow(info, "companyName", TemplateDataField.TRANSACTION_PSP_COMPANY_NAME))
-                    .address(getOrThrow(info, "address", TemplateDataField.TRANSACTION_PSP_ADDRESS))
-                    .city(getOrThrow(info, "city", TemplateDataField.TRANSACTION_PSP_CITY))
-                    .province(getOrThrow(info, "province", TemplateDataField.TRANSACTION_PSP_PROVINCE))
-                    .buildingNumber(getOrThrow(info, "buildingNumber", TemplateDataField.TRANSACTION_PSP_BUILDING_NUMBER))
-                    .postalCode(getOrThrow(info, "postalCode", TemplateDataField.TRANSACTION_PSP_POSTAL_CODE))
-                    .logo(pspFee != null ? getOrThrow(info, "logo", TemplateDataField.TRANSACTION_PSP_LOGO) : info.get("logo"))
+                    .companyName(getOrThrow(configuredPsp.getCompanyName(), TemplateDataField.TRANSACTION_PSP_COMPANY_NAME))
+                    .address(getOrThrow(configuredPsp.getAddress(), TemplateDataField.TRANSACTION_PSP_ADDRESS))
+                    .city(getOrThrow(configuredPsp.getCity(), TemplateDataField.TRANSACTION_PSP_CITY))
+                    .province(getOrThrow(configuredPsp.getProvince(), TemplateDataField.TRANSACTION_PSP_PROVINCE))
+                    .buildingNumber(getOrThrow(configuredPsp.getBuildingNumber(), TemplateDataField.TRANSACTION_PSP_BUILDING_NUMBER))
+                    .postalCode(getOrThrow(configuredPsp.getPostalCode(), TemplateDataField.TRANSACTION_PSP_POSTAL_CODE))
+                    .logo(pspFee != null ? getOrThrow(configuredPsp.getLogo(), TemplateDataField.TRANSACTION_PSP_LOGO) : configuredPsp.getLogo())
                     .build();
         }
         throw new TemplateDataMappingException(formatErrorMessage(TemplateDataField.TRANSACTION_PSP, TemplateDatasource.PSP_STATIC_CONFIG), ReasonErrorCode.ERROR_TEMPLATE_PDF.getCode());
     }
 
     private String getOrThrow(
-            LinkedHashMap<String, String> map,
-            String key,
+            String value,
             String errorKey
     ) throws TemplateDataMappingException {
-        String value = map.get(key);
         if (value == null) {
             throw new TemplateDataMappingException(formatErrorMessage(errorKey, TemplateDatasource.PSP_STATIC_CONFIG), ReasonErrorCode.ERROR_TEMPLATE_PDF.getCode());
         }
@@ -508,33 +544,26 @@ public class BuildTemplateServiceImpl implements BuildTemplateService {
     }
 
     private String currencyFormat(String value) {
-        BigDecimal valueToFormat = new BigDecimal(value);
-        NumberFormat numberFormat = NumberFormat.getInstance(Locale.ITALY);
-        numberFormat.setMaximumFractionDigits(2);
-        numberFormat.setMinimumFractionDigits(2);
-        return numberFormat.format(valueToFormat);
+        return currencyFormat(new BigDecimal(value));
+    }
+
+    private String currencyFormat(BigDecimal value) {
+        return CURRENCY_FORMAT.get().format(value);
     }
 
     private String dateFormatZoned(String date) throws TemplateDataMappingException {
-        DateTimeFormatter formatter = new DateTimeFormatterBuilder()
-                .append(DateTimeFormatter.ofPattern(RECEIPT_DATE_FORMAT))
-                .toFormatter(Locale.ITALY)
-                .withZone(TimeZone.getTimeZone("Europe/Rome").toZoneId());
         try {
-            return OffsetDateTime.parse(date).format(formatter);
+            return ZONED_DATE_FORMATTER.format(OffsetDateTime.parse(date));
         } catch (DateTimeException e) {
-            String errMsg = String.format("Error mapping bizEvent data to template, parse failed for property %s", TemplateDataField.TRANSACTION_TIMESTAMP);
-            throw new TemplateDataMappingException(errMsg, ReasonErrorCode.ERROR_TEMPLATE_PDF.getCode(), e);
+            throw new TemplateDataMappingException(TIMESTAMP_PARSE_ERROR_MESSAGE, ReasonErrorCode.ERROR_TEMPLATE_PDF.getCode(), e);
         }
     }
 
     private String dateFormat(String date) throws TemplateDataMappingException {
-        DateTimeFormatter simpleDateFormat = DateTimeFormatter.ofPattern(RECEIPT_DATE_FORMAT).withLocale(Locale.ITALY);
         try {
-            return LocalDateTime.parse(date).format(simpleDateFormat);
+            return DATE_FORMATTER.format(LocalDateTime.parse(date));
         } catch (DateTimeException e) {
-            String errMsg = String.format("Error mapping bizEvent data to template, parse failed for property %s", TemplateDataField.TRANSACTION_TIMESTAMP);
-            throw new TemplateDataMappingException(errMsg, ReasonErrorCode.ERROR_TEMPLATE_PDF.getCode(), e);
+            throw new TemplateDataMappingException(TIMESTAMP_PARSE_ERROR_MESSAGE, ReasonErrorCode.ERROR_TEMPLATE_PDF.getCode(), e);
         }
     }
 
@@ -542,17 +571,59 @@ public class BuildTemplateServiceImpl implements BuildTemplateService {
         return String.format(TemplateDataField.ERROR_MAPPING_MESSAGE, dataSource.getName(), missingProperty);
     }
 
+    /**
+     * Same result of the former regex based implementation: null when the name is equal to the fiscal code or
+     * has no latin letter at all, otherwise every run of {@code , ; : /} is replaced by a single space.
+     * The string is copied only when it contains such characters.
+     */
     private String formatFullName(String fullName, String fiscalCode) {
         if (fullName == null || fullName.equals(fiscalCode)) {
             return null;
         }
 
-        if (INVALID_FULL_NAME_PATTERN.matcher(fullName).matches()) {
+        int firstInvalid = -1;
+        boolean hasLetter = false;
+        for (int i = 0; i < fullName.length(); i++) {
+            char c = fullName.charAt(i);
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z')) {
+                hasLetter = true;
+            } else if (firstInvalid < 0 && isInvalidFullNameCharacter(c)) {
+                firstInvalid = i;
+            }
+        }
+        if (!hasLetter && !fullName.isEmpty()) {
             return null;
         }
+        if (firstInvalid < 0) {
+            return fullName;
+        }
+
+        StringBuilder builder = new StringBuilder(fullName.length()).append(fullName, 0, firstInvalid);
+        boolean previousInvalid = false;
+        for (int i = firstInvalid; i < fullName.length(); i++) {
+            char c = fullName.charAt(i);
+            if (isInvalidFullNameCharacter(c)) {
+                if (!previousInvalid) {
+                    builder.append(' ');
+                }
+                previousInvalid = true;
+            } else {
+                builder.append(c);
+                previousInvalid = false;
+            }
+        }
+        return builder.toString();
+    }
 
-        return INVALID_CHARACTERS_IN_FULL_NAME_PATTERN.matcher(fullName).replaceAll(" ");
+    private static boolean isInvalidFullNameCharacter(char c) {
+        return c == ',' || c == ';' || c == ':' || c == '/';
     }
 
-}
+    /**
+     * Same check of {@link #WISP_REGEX} on the (numeric) notice number, without compiling the regex on every call
+     */
+    private static boolean isWispNoticeNumber(String noticeNumber) {
+        return noticeNumber.startsWith(WISP_NOTICE_NUMBER_PREFIX);
+    }
 
+}
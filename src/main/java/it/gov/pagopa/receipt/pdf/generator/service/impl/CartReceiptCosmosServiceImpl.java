@@ -1,16 +1,25 @@
 package it.gov.pagopa.receipt.pdf.generator.service.impl;
 
+import com.azure.cosmos.CosmosException;
 import com.azure.cosmos.models.CosmosItemResponse;
+import com.fasterxml.jackson.databind.JsonNode;
 import it.gov.pagopa.receipt.pdf.generator.client.CartReceiptsCosmosClient;
 import it.gov.pagopa.receipt.pdf.generator.client.impl.CartReceiptsCosmosClientImpl;
 import it.gov.pagopa.receipt.pdf.generator.entity.cart.CartForReceipt;
 import it.gov.pagopa.receipt.pdf.generator.exception.CartNotFoundException;
 import it.gov.pagopa.receipt.pdf.generator.exception.UnableToSaveException;
+import it.gov.pagopa.receipt.pdf.generator.model.DocumentPatch;
 import it.gov.pagopa.receipt.pdf.generator.service.CartReceiptCosmosService;
+import it.gov.pagopa.receipt.pdf.generator.utils.DocumentPatchBuilder;
 import org.apache.http.HttpStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 public class CartReceiptCosmosServiceImpl implements CartReceiptCosmosService {
     private final Logger logger = LoggerFactory.getLogger(CartReceiptCosmosServiceImpl.class);
     private final CartReceiptsCosmosClient cartReceiptsCosmosClient;
@@ -63,4 +72,79 @@ public class CartReceiptCosmosServiceImpl implements CartReceiptCosmosService {
         }
         return cart;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void patchCartForReceipt(JsonNode snapshot, CartForReceipt cartForReceipt) throws UnableToSaveException {
+        DocumentPatch patch = DocumentPatchBuilder.diff(snapshot, cartForReceipt);
+        if (patch.isEmpty()) {
+            return;
+        }
+        int statusCode;
+
+        try {
+            CosmosItemResponse<CartForReceipt> response = this.cartReceiptsCosmosClient.patchCart(cartForReceipt, patch);
+            statusCode = response.getStatusCode();
+        } catch (CosmosException e) {
+            statusCode = e.getStatusCode();
+            logger.error(String.format("Patch of fields %s of cart with id %s on cosmos failed", patch.getChangedFields(), cartForReceipt.getCartId()), e);
+        } catch (Exception e) {
+            statusCode = HttpStatus.SC_INTERNAL_SERVER_ERROR;
+            logger.error(String.format("Patch of fields %s of cart with id %s on cosmos failed", patch.getChangedFields(), cartForReceipt.getCartId()), e);
+        }
+
+        if (statusCode != com.microsoft.azure.functions.HttpStatus.OK.value()) {
+            String errorMsg = String.format("Save cart with id %s on cosmos failed with status %s", cartForReceipt.getCartId(), statusCode);
+            throw new UnableToSaveException(errorMsg, statusCode);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, CartForReceipt> getCartsForReceipt(Collection<String> cartIds) {
+        Map<String, CartForReceipt> carts = new HashMap<>();
+        for (CartForReceipt cart : this.cartReceiptsCosmosClient.getCartItems(cartIds)) {
+            carts.put(cart.getCartId(), cart);
+        }
+        return carts;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, UnableToSaveException> patchCartsForReceipt(Map<CartForReceipt, JsonNode> snapshots) {
+        Map<CartForReceipt, DocumentPatch> patches = new LinkedHashMap<>();
+        snapshots.forEach((cart, snapshot) -> {
+            DocumentPatch patch = DocumentPatchBuilder.diff(snapshot, cart);
+            if (!patch.isEmpty()) {
+                patches.put(cart, patch);
+            }
+        });
+        Map<String, UnableToSaveException> errors = new HashMap<>();
+        if (patches.isEmpty()) {
+            return errors;
+        }
+
+        Map<String, Integer> statusCodes;
+        try {
+            statusCodes = this.cartReceiptsCosmosClient.patchCarts(patches);
+        } catch (Exception e) {
+            logger.error(String.format("Bulk patch of %s carts on cosmos failed", patches.size()), e);
+            statusCodes = new HashMap<>();
+        }
+
+        for (CartForReceipt cart : patches.keySet()) {
+            int statusCode = statusCodes.getOrDefault(cart.getCartId(), HttpStatus.SC_INTERNAL_SERVER_ERROR);
+            if (statusCode != com.microsoft.azure.functions.HttpStatus.OK.value()) {
+                String errorMsg = String.format("Save cart with id %s on cosmos failed with status %s", cart.getCartId(), statusCode);
+                errors.put(cart.getCartId(), new UnableToSaveException(errorMsg, statusCode));
+            }
+        }
+        return errors;
+    }
 }
@@ -8,32 +8,45 @@ import it.gov.pagopa.receipt.pdf.generator.entity.receipt.ReasonError;
 import it.gov.pagopa.receipt.pdf.generator.entity.receipt.ReceiptMetadata;
 import it.gov.pagopa.receipt.pdf.generator.entity.receipt.enumeration.ReasonErrorCode;
 import it.gov.pagopa.receipt.pdf.generator.exception.CartReceiptGenerationNotToRetryException;
+import it.gov.pagopa.receipt.pdf.generator.exception.GeneratePDFException;
 import it.gov.pagopa.receipt.pdf.generator.exception.PDFReceiptGenerationException;
 import it.gov.pagopa.receipt.pdf.generator.model.CartInfo;
 import it.gov.pagopa.receipt.pdf.generator.model.PdfCartGeneration;
 import it.gov.pagopa.receipt.pdf.generator.model.PdfMetadata;
+import it.gov.pagopa.receipt.pdf.generator.model.TemplateSkeleton;
 import it.gov.pagopa.receipt.pdf.generator.model.response.PdfEngineResponse;
 import it.gov.pagopa.receipt.pdf.generator.model.template.ReceiptPDFTemplate;
 import it.gov.pagopa.receipt.pdf.generator.service.BuildTemplateService;
 import it.gov.pagopa.receipt.pdf.generator.service.GenerateCartReceiptPdfService;
 import it.gov.pagopa.receipt.pdf.generator.service.PdfEngineService;
 import it.gov.pagopa.receipt.pdf.generator.service.ReceiptBlobStorageService;
+import it.gov.pagopa.receipt.pdf.generator.utils.GenerationMetrics;
+import it.gov.pagopa.receipt.pdf.generator.utils.GenerationMetrics.Stage;
+import it.gov.pagopa.receipt.pdf.generator.utils.PdfGenerationExecutor;
+import it.gov.pagopa.receipt.pdf.generator.utils.ReceiptTemplateJsonWriter;
+import it.gov.pagopa.receipt.pdf.generator.utils.SingleFlight;
+import it.gov.pagopa.receipt.pdf.generator.utils.TemplateHash;
+import lombok.Setter;
 import org.apache.http.HttpStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.nio.file.Path;
-import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 import static it.gov.pagopa.receipt.pdf.generator.utils.Constants.ALREADY_CREATED;
 import static it.gov.pagopa.receipt.pdf.generator.utils.Constants.FISCAL_CODE_ANONYMOUS;
-import static it.gov.pagopa.receipt.pdf.generator.utils.Constants.BLOB_NAME_DATE_PATTERN;
+import static it.gov.pagopa.receipt.pdf.generator.utils.Constants.BLOB_NAME_HASH_LENGTH;
 import static it.gov.pagopa.receipt.pdf.generator.utils.Constants.DEBTOR_TEMPLATE_SUFFIX;
 import static it.gov.pagopa.receipt.pdf.generator.utils.Constants.PAYER_TEMPLATE_SUFFIX;
 import static it.gov.pagopa.receipt.pdf.generator.utils.Constants.TEMPLATE_PREFIX;
@@ -43,14 +56,39 @@ public class GenerateCartReceiptPdfServiceImpl implements GenerateCartReceiptPdf
 
     private final Logger logger = LoggerFactory.getLogger(GenerateCartReceiptPdfServiceImpl.class);
 
+    /**
+     * Generations in flight in the JVM, shared by the concurrent duplicates of the queued generations
+     */
+    private static final SingleFlight<String, PdfCartGeneration> IN_FLIGHT_GENERATIONS =
+            new SingleFlight<String, PdfCartGeneration>().register("GenerateCartReceipts");
+
     private final PdfEngineService pdfEngineService;
     private final ReceiptBlobStorageService receiptBlobStorageService;
     private final BuildTemplateService buildTemplateService;
+    private final PdfGenerationExecutor pdfGenerationExecutor;
+    /**
+     * Max number of templates of the same cart built at the same time, 1 to build them one after the other
+     */
+    @Setter
+    private int cartGenerationParallelism = Integer.parseInt(
+            System.getenv().getOrDefault("PDF_CART_GENERATION_PARALLELISM", "4"));
+    /**
+     * Metrics of the function using the service, the stage durations are not exported until it is set
+     */
+    @Setter
+    private GenerationMetrics generationMetrics = GenerationMetrics.detached();
+    /**
+     * When enabled a concurrent duplicate of an in-flight generation waits for it and reuses its result
+     */
+    @Setter
+    private boolean singleFlightEnabled = Boolean.parseBoolean(
+            System.getenv().getOrDefault("PDF_GENERATION_SINGLE_FLIGHT_ENABLED", "true"));
 
     public GenerateCartReceiptPdfServiceImpl() {
         this.pdfEngineService = new PdfEngineServiceImpl();
         this.receiptBlobStorageService = new ReceiptBlobStorageServiceImpl();
         this.buildTemplateService = new BuildTemplateServiceImpl();
+        this.pdfGenerationExecutor = PdfGenerationExecutor.getInstance();
     }
 
     GenerateCartReceiptPdfServiceImpl(
@@ -61,6 +99,7 @@ public class GenerateCartReceiptPdfServiceImpl implements GenerateCartReceiptPdf
         this.pdfEngineService = pdfEngineService;
         this.receiptBlobStorageService = receiptBlobStorageService;
         this.buildTemplateService = buildTemplateService;
+        this.pdfGenerationExecutor = PdfGenerationExecutor.getInstance();
     }
 
     /**
@@ -71,6 +110,51 @@ public class GenerateCartReceiptPdfServiceImpl implements GenerateCartReceiptPdf
             CartForReceipt cartForReceipt,
             List<BizEvent> listOfBizEvents,
             Path workingDirPath
+    ) {
+        if (!this.singleFlightEnabled) {
+            return doGenerateCartReceipts(cartForReceipt, listOfBizEvents, null, workingDirPath);
+        }
+        return IN_FLIGHT_GENERATIONS.execute(buildGenerationKey(cartForReceipt),
+                () -> doGenerateCartReceipts(cartForReceipt, listOfBizEvents, null, workingDirPath));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PdfCartGeneration regenerateCartReceipts(
+            CartForReceipt cartForReceipt,
+            List<BizEvent> listOfBizEvents,
+            CartForReceipt previousCart,
+            Path workingDirPath
+    ) {
+        // a regeneration renders from data that may differ from the queued generation, it is never shared
+        return doGenerateCartReceipts(cartForReceipt, listOfBizEvents, previousCart, workingDirPath);
+    }
+
+    /**
+     * The duplicates share the generation only if they have the same PDFs to generate:
+     * the key is the cart id followed by the PDFs already created
+     */
+    private String buildGenerationKey(CartForReceipt cartForReceipt) {
+        Payload payload = cartForReceipt.getPayload();
+        StringBuilder generationKey = new StringBuilder(String.valueOf(cartForReceipt.getCartId()));
+        if (receiptAlreadyCreated(payload.getMdAttachPayer())) {
+            generationKey.append("|payer");
+        }
+        for (CartPayment cartPayment : payload.getCart()) {
+            if (receiptAlreadyCreated(cartPayment.getMdAttach())) {
+                generationKey.append('|').append(cartPayment.getBizEventId());
+            }
+        }
+        return generationKey.toString();
+    }
+
+    private PdfCartGeneration doGenerateCartReceipts(
+            CartForReceipt cartForReceipt,
+            List<BizEvent> listOfBizEvents,
+            CartForReceipt previousCart,
+            Path workingDirPath
     ) {
         PdfCartGeneration pdfCartGeneration = new PdfCartGeneration();
         Payload payload = cartForReceipt.getPayload();
@@ -80,21 +164,30 @@ public class GenerateCartReceiptPdfServiceImpl implements GenerateCartReceiptPdf
         // group data for easy access during generation
         Map<String, CartInfo> cartInfoMap = groupCartInfoByBizEventId(cart);
         Map<String, BizEvent> bizEventMap = mapBizEventListById(listOfBizEvents);
-
+        // payer and debtors templates share the transaction and cart item parts
+        TemplateSkeleton skeleton = new TemplateSkeleton();
+        boolean retry = cartForReceipt.getNumRetry() > 0;
+        Map<String, ReceiptMetadata> previousDebtorMetadataMap = previousCart != null
+                ? mapDebtorMetadataByBizEventId(previousCart.getPayload().getCart())
+                : Collections.emptyMap();
+
+        List<Runnable> generationTasks = new ArrayList<>();
+        List<CompletableFuture<Void>> generations = Collections.synchronizedList(new ArrayList<>());
         if (payerCF != null) {
             if (receiptAlreadyCreated(payload.getMdAttachPayer())) {
                 pdfCartGeneration.setPayerMetadata(PdfMetadata.builder().statusCode(ALREADY_CREATED).build());
             } else {
                 //Generate payer's complete PDF
-                PdfMetadata generationResult = generateAndSavePDFReceipt(
+                generationTasks.add(() -> generations.add(generateAndSavePDFReceiptIsolated(
                         listOfBizEvents,
                         false,
                         cartForReceipt.getCartId(),
                         payload.getTotalAmount(),
                         cartInfoMap,
-                        workingDirPath
-                );
-                pdfCartGeneration.setPayerMetadata(generationResult);
+                        workingDirPath,
+                        skeleton,
+                        maybeSaved(retry, previousCart != null ? previousCart.getPayload().getMdAttachPayer() : null)
+                ).thenAccept(pdfCartGeneration::setPayerMetadata)));
             }
         }
 
@@ -110,18 +203,24 @@ public class GenerateCartReceiptPdfServiceImpl implements GenerateCartReceiptPdf
             } else {
 
                 //Generate debtor's partial PDF
-                PdfMetadata generationResult = generateAndSavePDFReceipt(
+                generationTasks.add(() -> generations.add(generateAndSavePDFReceiptIsolated(
                         Collections.singletonList(bizEventMap.get(bizEventId)),
                         true,
                         cartForReceipt.getCartId(),
                         cartPayment.getAmount(),
                         Collections.singletonMap(bizEventId, cartInfoMap.get(bizEventId)),
-                        workingDirPath
-                );
-                pdfCartGeneration.addDebtorMetadataToMap(bizEventId, generationResult);
+                        workingDirPath,
+                        skeleton,
+                        maybeSaved(retry, previousDebtorMetadataMap.get(bizEventId))
+                ).thenAccept(debtorMetadata -> pdfCartGeneration.addDebtorMetadataToMap(bizEventId, debtorMetadata))));
             }
         });
 
+        // the invoking thread takes part in building the templates, so with parallelism 1 they are built one after the other,
+        // while the PDFs are rendered by the non-blocking PDF Engine calls: only the invoking thread waits for all of them
+        this.pdfGenerationExecutor.runAll(generationTasks, this.cartGenerationParallelism);
+        CompletableFuture.allOf(generations.toArray(CompletableFuture[]::new)).join();
+
         return pdfCartGeneration;
     }
 
@@ -198,36 +297,154 @@ public class GenerateCartReceiptPdfServiceImpl implements GenerateCartReceiptPdf
         return true;
     }
 
-    private PdfMetadata generateAndSavePDFReceipt(
+    /**
+     * Generates the PDF reporting any unexpected failure on its own metadata,
+     * so that it does not affect the other PDFs of the cart generated concurrently.
+     */
+    private CompletableFuture<PdfMetadata> generateAndSavePDFReceiptIsolated(
             List<BizEvent> listOfBizEvents,
             boolean requestedByDebtor,
             String eventId,
             String amount,
             Map<String, CartInfo> cartInfoMap,
-            Path workingDirPath
+            Path workingDirPath,
+            TemplateSkeleton skeleton,
+            Predicate<String> maybeSaved
     ) {
         try {
-            ReceiptPDFTemplate template = this.buildTemplateService.buildCartTemplate(
+            return generateAndSavePDFReceipt(listOfBizEvents, requestedByDebtor, eventId, amount, cartInfoMap, workingDirPath, skeleton, maybeSaved)
+                    .exceptionally(throwable -> buildUnexpectedErrorMetadata(eventId, throwable));
+        } catch (RuntimeException e) {
+            return CompletableFuture.completedFuture(buildUnexpectedErrorMetadata(eventId, e));
+        }
+    }
+
+    /**
+     * Builds the template and, unless the PDF has already been saved, renders it with a non-blocking
+     * PDF Engine call and uploads it on the shared executor.
+     * The errors on building, rendering or saving the PDF are reported on the metadata.
+     */
+    private CompletableFuture<PdfMetadata> generateAndSavePDFReceipt(
+            List<BizEvent> listOfBizEvents,
+            boolean requestedByDebtor,
+            String eventId,
+            String amount,
+            Map<String, CartInfo> cartInfoMap,
+            Path workingDirPath,
+            TemplateSkeleton skeleton,
+            Predicate<String> maybeSaved
+    ) {
+        try {
+            ReceiptPDFTemplate template = this.generationMetrics.time(Stage.TEMPLATE_BUILD, () -> this.buildTemplateService.buildCartTemplate(
                     listOfBizEvents,
                     requestedByDebtor,
                     eventId,
                     amount,
-                    cartInfoMap
-            );
-            String blobName = buildBlobName(requestedByDebtor, eventId, listOfBizEvents);
-            PdfEngineResponse pdfEngineResponse = this.pdfEngineService.generatePDFReceipt(template, workingDirPath);
-            return this.receiptBlobStorageService.saveToBlobStorage(pdfEngineResponse, blobName);
+                    cartInfoMap,
+                    skeleton
+            ));
+            byte[] templateData = encodeTemplate(template);
+            String templateHash = buildTemplateHash(templateData);
+            String blobName = buildBlobName(requestedByDebtor, eventId, listOfBizEvents, templateHash);
+            if (maybeSaved.test(templateHash)) {
+                PdfMetadata savedPdf = findSavedPdf(blobName);
+                if (savedPdf != null) {
+                    savedPdf.setTemplateHash(templateHash);
+                    return CompletableFuture.completedFuture(savedPdf);
+                }
+            }
+            long engineCallStart = System.nanoTime();
+            CompletableFuture<PdfEngineResponse> engineCall = this.pdfEngineService.generatePDFReceiptAsync(templateData, workingDirPath)
+                    .whenComplete((response, throwable) -> this.generationMetrics.recordStage(Stage.ENGINE_CALL, engineCallStart));
+            // the engine call is complete when the chain fails, so its state tells where the failure came from
+            return engineCall
+                    .thenCompose(pdfEngineResponse -> this.pdfGenerationExecutor
+                            .submit(() -> savePdf(pdfEngineResponse, blobName, templateHash)))
+                    .exceptionally(throwable -> buildErrorMetadata(eventId, throwable, engineCall.isCompletedExceptionally()));
         } catch (PDFReceiptGenerationException e) {
+            return CompletableFuture.completedFuture(buildErrorMetadata(eventId, e, false));
+        }
+    }
+
+    private PdfMetadata savePdf(PdfEngineResponse pdfEngineResponse, String blobName, String templateHash) {
+        try {
+            PdfMetadata savedPdf = this.generationMetrics.time(Stage.BLOB_UPLOAD,
+                    () -> this.receiptBlobStorageService.saveToBlobStorage(pdfEngineResponse, blobName));
+            savedPdf.setTemplateHash(templateHash);
+            return savedPdf;
+        } catch (PDFReceiptGenerationException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private PdfMetadata buildErrorMetadata(String eventId, Throwable throwable, boolean engineFailure) {
+        Throwable cause = unwrap(throwable);
+        if (cause instanceof PDFReceiptGenerationException e) {
             logger.error("An error occurred when generating or saving the PDF cart receipt with eventId {}", eventId, e);
-            return PdfMetadata.builder().statusCode(e.getStatusCode()).errorMessage(e.getMessage()).build();
+            return PdfMetadata.builder()
+                    .statusCode(e.getStatusCode())
+                    .errorMessage(e.getMessage())
+                    .reasonErrorCode(engineFailure ? ReasonErrorCode.ERROR_PDF_ENGINE : null)
+                    .build();
         }
+        return buildUnexpectedErrorMetadata(eventId, cause);
     }
 
-    private String buildBlobName(boolean requestedByDebtor, String eventId, List<BizEvent> listOfBizEvents) {
-        String dateFormatted = LocalDate.now().format(DateTimeFormatter.ofPattern(BLOB_NAME_DATE_PATTERN));
+    private PdfMetadata buildUnexpectedErrorMetadata(String eventId, Throwable throwable) {
+        Throwable cause = unwrap(throwable);
+        logger.error("An unexpected error occurred when generating or saving the PDF cart receipt with eventId {}", eventId, cause);
+        return PdfMetadata.builder()
+                .statusCode(HttpStatus.SC_INTERNAL_SERVER_ERROR)
+                .errorMessage(cause.getMessage())
+                .build();
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        return throwable instanceof CompletionException && throwable.getCause() != null
+                ? throwable.getCause()
+                : throwable;
+    }
+
+    private String buildBlobName(boolean requestedByDebtor, String eventId, List<BizEvent> listOfBizEvents, String templateHash) {
         String id = requestedByDebtor ? listOfBizEvents.get(0).getId() : eventId;
         String templateSuffix = requestedByDebtor ? DEBTOR_TEMPLATE_SUFFIX : PAYER_TEMPLATE_SUFFIX;
-        return String.format("%s-%s-%s-%s-c", TEMPLATE_PREFIX, dateFormatted, id, templateSuffix);
+        return String.format("%s-%s-%s-%s-c", TEMPLATE_PREFIX, templateHash.substring(0, BLOB_NAME_HASH_LENGTH), id, templateSuffix);
+    }
+
+    /**
+     * A PDF may have already been saved: on retry by a previous attempt that failed afterwards,
+     * e.g. on another PDF or on the save of the document, and on regeneration by the previous generation
+     * if the hash of its template data is unchanged. The blob names are content-addressed, so the saved PDF is reused
+     */
+    private static Predicate<String> maybeSaved(boolean retry, ReceiptMetadata previousMetadata) {
+        String previousTemplateHash = previousMetadata != null ? previousMetadata.getTemplateHash() : null;
+        return templateHash -> retry || templateHash.equals(previousTemplateHash);
+    }
+
+    private PdfMetadata findSavedPdf(String blobName) {
+        PdfMetadata savedPdf = this.generationMetrics.time(Stage.BLOB_PROBE,
+                () -> this.receiptBlobStorageService.findSavedPdf(blobName));
+        this.generationMetrics.recordBlobProbe(savedPdf != null);
+        return savedPdf;
+    }
+
+    /**
+     * The template data is encoded once: the same bytes are hashed and sent to the PDF Engine
+     */
+    private byte[] encodeTemplate(ReceiptPDFTemplate template) throws GeneratePDFException {
+        try {
+            return ReceiptTemplateJsonWriter.writeValueAsBytes(template);
+        } catch (IOException e) {
+            throw new GeneratePDFException("Unable to encode the PDF template data", HttpStatus.SC_INTERNAL_SERVER_ERROR, e);
+        }
+    }
+
+    private String buildTemplateHash(byte[] templateData) throws GeneratePDFException {
+        try {
+            return TemplateHash.of(templateData);
+        } catch (IOException e) {
+            throw new GeneratePDFException("Unable to compute the hash of the PDF content", HttpStatus.SC_INTERNAL_SERVER_ERROR, e);
+        }
     }
 
     private boolean isDebtorFiscalCodeToIgnore(String debtorFiscalCode, Payload payload) {
@@ -238,6 +455,7 @@ public class GenerateCartReceiptPdfServiceImpl implements GenerateCartReceiptPdf
         ReceiptMetadata receiptMetadata = new ReceiptMetadata();
         receiptMetadata.setName(payerMetadata.getDocumentName());
         receiptMetadata.setUrl(payerMetadata.getDocumentUrl());
+        receiptMetadata.setTemplateHash(payerMetadata.getTemplateHash());
         return receiptMetadata;
     }
 
@@ -249,6 +467,16 @@ public class GenerateCartReceiptPdfServiceImpl implements GenerateCartReceiptPdf
                 ));
     }
 
+    private Map<String, ReceiptMetadata> mapDebtorMetadataByBizEventId(List<CartPayment> cart) {
+        Map<String, ReceiptMetadata> debtorMetadataMap = new HashMap<>();
+        for (CartPayment cartPayment : cart) {
+            if (cartPayment.getMdAttach() != null) {
+                debtorMetadataMap.put(cartPayment.getBizEventId(), cartPayment.getMdAttach());
+            }
+        }
+        return debtorMetadataMap;
+    }
+
     private Map<String, CartInfo> groupCartInfoByBizEventId(List<CartPayment> cart) {
         return cart.stream()
                 .collect(Collectors.toMap(
@@ -5,27 +5,39 @@ import it.gov.pagopa.receipt.pdf.generator.entity.receipt.ReasonError;
 import it.gov.pagopa.receipt.pdf.generator.entity.receipt.Receipt;
 import it.gov.pagopa.receipt.pdf.generator.entity.receipt.ReceiptMetadata;
 import it.gov.pagopa.receipt.pdf.generator.entity.receipt.enumeration.ReasonErrorCode;
+import it.gov.pagopa.receipt.pdf.generator.exception.GeneratePDFException;
 import it.gov.pagopa.receipt.pdf.generator.exception.PDFReceiptGenerationException;
 import it.gov.pagopa.receipt.pdf.generator.exception.ReceiptGenerationNotToRetryException;
 import it.gov.pagopa.receipt.pdf.generator.model.PdfGeneration;
 import it.gov.pagopa.receipt.pdf.generator.model.PdfMetadata;
+import it.gov.pagopa.receipt.pdf.generator.model.TemplateSkeleton;
 import it.gov.pagopa.receipt.pdf.generator.model.response.PdfEngineResponse;
 import it.gov.pagopa.receipt.pdf.generator.model.template.ReceiptPDFTemplate;
 import it.gov.pagopa.receipt.pdf.generator.service.BuildTemplateService;
 import it.gov.pagopa.receipt.pdf.generator.service.GenerateReceiptPdfService;
 import it.gov.pagopa.receipt.pdf.generator.service.PdfEngineService;
 import it.gov.pagopa.receipt.pdf.generator.service.ReceiptBlobStorageService;
+import it.gov.pagopa.receipt.pdf.generator.utils.GenerationMetrics;
+import it.gov.pagopa.receipt.pdf.generator.utils.GenerationMetrics.Stage;
+import it.gov.pagopa.receipt.pdf.generator.utils.PdfGenerationExecutor;
+import it.gov.pagopa.receipt.pdf.generator.utils.ReceiptTemplateJsonWriter;
+import it.gov.pagopa.receipt.pdf.generator.utils.SingleFlight;
+import it.gov.pagopa.receipt.pdf.generator.utils.TemplateHash;
+import lombok.Setter;
 import org.apache.http.HttpStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.nio.file.Path;
-import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 import static it.gov.pagopa.receipt.pdf.generator.utils.Constants.ALREADY_CREATED;
 import static it.gov.pagopa.receipt.pdf.generator.utils.Constants.FISCAL_CODE_ANONYMOUS;
-import static it.gov.pagopa.receipt.pdf.generator.utils.Constants.BLOB_NAME_DATE_PATTERN;
+import static it.gov.pagopa.receipt.pdf.generator.utils.Constants.BLOB_NAME_HASH_LENGTH;
 import static it.gov.pagopa.receipt.pdf.generator.utils.Constants.DEBTOR_TEMPLATE_SUFFIX;
 import static it.gov.pagopa.receipt.pdf.generator.utils.Constants.PAYER_TEMPLATE_SUFFIX;
 import static it.gov.pagopa.receipt.pdf.generator.utils.Constants.TEMPLATE_PREFIX;
@@ -35,14 +47,39 @@ public class GenerateReceiptPdfServiceImpl implements GenerateReceiptPdfService
 
     private final Logger logger = LoggerFactory.getLogger(GenerateReceiptPdfServiceImpl.class);
 
+    /**
+     * Generations in flight in the JVM, shared by the concurrent duplicates of the queued generations
+     */
+    private static final SingleFlight<String, PdfGeneration> IN_FLIGHT_GENERATIONS =
+            new SingleFlight<String, PdfGeneration>().register("GenerateReceipts");
+
     private final PdfEngineService pdfEngineService;
     private final ReceiptBlobStorageService receiptBlobStorageService;
     private final BuildTemplateService buildTemplateService;
+    private final PdfGenerationExecutor pdfGenerationExecutor;
+    /**
+     * When disabled payer and debtor PDFs are generated one after the other
+     */
+    @Setter
+    private boolean parallelGenerationEnabled = Boolean.parseBoolean(
+            System.getenv().getOrDefault("PDF_PARALLEL_GENERATION_ENABLED", "true"));
+    /**
+     * Metrics of the function using the service, the stage durations are not exported until it is set
+     */
+    @Setter
+    private GenerationMetrics generationMetrics = GenerationMetrics.detached();
+    /**
+     * When enabled a concurrent duplicate of an in-flight generation waits for it and reuses its result
+     */
+    @Setter
+    private boolean singleFlightEnabled = Boolean.parseBoolean(
+            System.getenv().getOrDefault("PDF_GENERATION_SINGLE_FLIGHT_ENABLED", "true"));
 
     public GenerateReceiptPdfServiceImpl() {
         this.pdfEngineService = new PdfEngineServiceImpl();
         this.receiptBlobStorageService = new ReceiptBlobStorageServiceImpl();
         this.buildTemplateService = new BuildTemplateServiceImpl();
+        this.pdfGenerationExecutor = PdfGenerationExecutor.getInstance();
     }
 
     GenerateReceiptPdfServiceImpl(
@@ -53,6 +90,7 @@ public class GenerateReceiptPdfServiceImpl implements GenerateReceiptPdfService
         this.pdfEngineService = pdfEngineService;
         this.receiptBlobStorageService = receiptBlobStorageService;
         this.buildTemplateService = buildTemplateService;
+        this.pdfGenerationExecutor = PdfGenerationExecutor.getInstance();
     }
 
     /**
@@ -60,7 +98,34 @@ public class GenerateReceiptPdfServiceImpl implements GenerateReceiptPdfService
      */
     @Override
     public PdfGeneration generateReceipts(Receipt receipt, BizEvent bizEvent, Path workingDirPath) {
+        if (!this.singleFlightEnabled) {
+            return doGenerateReceipts(receipt, bizEvent, null, workingDirPath);
+        }
+        // the duplicates share the generation only if they have the same PDFs to generate
+        String generationKey = String.format("%s|%s|%s",
+                receipt.getEventId(),
+                receiptAlreadyCreated(receipt.getMdAttach()),
+                receiptAlreadyCreated(receipt.getMdAttachPayer()));
+        return IN_FLIGHT_GENERATIONS.execute(generationKey,
+                () -> doGenerateReceipts(receipt, bizEvent, null, workingDirPath));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PdfGeneration regenerateReceipts(Receipt receipt, BizEvent bizEvent, Receipt previousReceipt, Path workingDirPath) {
+        // a regeneration renders from data that may differ from the queued generation, it is never shared
+        return doGenerateReceipts(receipt, bizEvent, previousReceipt, workingDirPath);
+    }
+
+    private PdfGeneration doGenerateReceipts(Receipt receipt, BizEvent bizEvent, Receipt previousReceipt, Path workingDirPath) {
         PdfGeneration pdfGeneration = new PdfGeneration();
+        // payer and debtor templates share the transaction and cart item parts
+        TemplateSkeleton skeleton = new TemplateSkeleton();
+        boolean retry = receipt.getNumRetry() > 0;
+        Predicate<String> debtorMaybeSaved = maybeSaved(retry, previousReceipt != null ? previousReceipt.getMdAttach() : null);
+        Predicate<String> payerMaybeSaved = maybeSaved(retry, previousReceipt != null ? previousReceipt.getMdAttachPayer() : null);
 
         String debtorCF = receipt.getEventData().getDebtorFiscalCode();
         String payerCF = receipt.getEventData().getPayerFiscalCode();
@@ -74,7 +139,8 @@ public class GenerateReceiptPdfServiceImpl implements GenerateReceiptPdfService
                     pdfGeneration.setDebtorMetadata(PdfMetadata.builder().statusCode(ALREADY_CREATED).build());
                     return pdfGeneration;
                 }
-                PdfMetadata generationResult = generateAndSavePDFReceipt(bizEvent, receipt, PAYER_TEMPLATE_SUFFIX, false, workingDirPath);
+                PdfMetadata generationResult = generateAndSavePDFReceipt(
+                        bizEvent, receipt, PAYER_TEMPLATE_SUFFIX, false, workingDirPath, skeleton, debtorMaybeSaved).join();
                 pdfGeneration.setDebtorMetadata(generationResult);
                 return pdfGeneration;
             }
@@ -82,9 +148,15 @@ public class GenerateReceiptPdfServiceImpl implements GenerateReceiptPdfService
             //Generate payer's complete PDF
             if (receiptAlreadyCreated(receipt.getMdAttachPayer())) {
                 pdfGeneration.setPayerMetadata(PdfMetadata.builder().statusCode(ALREADY_CREATED).build());
+            } else if (this.parallelGenerationEnabled && isDebtorToGenerate(receipt, debtorCF)) {
+                //Generate payer's complete PDF and debtor's partial PDF concurrently
+                generatePayerAndDebtorInParallel(receipt, bizEvent, workingDirPath, pdfGeneration, skeleton,
+                        payerMaybeSaved, debtorMaybeSaved);
+                return pdfGeneration;
             } else {
 
-                PdfMetadata generationResult = generateAndSavePDFReceipt(bizEvent, receipt, PAYER_TEMPLATE_SUFFIX, false, workingDirPath);
+                PdfMetadata generationResult = generateAndSavePDFReceipt(
+                        bizEvent, receipt, PAYER_TEMPLATE_SUFFIX, false, workingDirPath, skeleton, payerMaybeSaved).join();
                 pdfGeneration.setPayerMetadata(generationResult);
             }
         } else {
@@ -95,13 +167,76 @@ public class GenerateReceiptPdfServiceImpl implements GenerateReceiptPdfService
         if (receiptAlreadyCreated(receipt.getMdAttach())) {
             pdfGeneration.setDebtorMetadata(PdfMetadata.builder().statusCode(ALREADY_CREATED).build());
         } else if (!FISCAL_CODE_ANONYMOUS.equals(debtorCF)) {
-            PdfMetadata generationResult = generateAndSavePDFReceipt(bizEvent, receipt, DEBTOR_TEMPLATE_SUFFIX, true, workingDirPath);
+            PdfMetadata generationResult = generateAndSavePDFReceipt(
+                    bizEvent, receipt, DEBTOR_TEMPLATE_SUFFIX, true, workingDirPath, skeleton, debtorMaybeSaved).join();
             pdfGeneration.setDebtorMetadata(generationResult);
         }
 
         return pdfGeneration;
     }
 
+    private boolean isDebtorToGenerate(Receipt receipt, String debtorCF) {
+        return !receiptAlreadyCreated(receipt.getMdAttach()) && !FISCAL_CODE_ANONYMOUS.equals(debtorCF);
+    }
+
+    /**
+     * Builds the debtor template on the shared executor while the payer template is built by the invoking thread,
+     * then both PDFs are rendered concurrently by the non-blocking PDF Engine calls and only the invoking thread
+     * waits for the combined result.
+     * Each chain is isolated: an unexpected failure on one of them is reported only on its own metadata.
+     */
+    private void generatePayerAndDebtorInParallel(
+            Receipt receipt,
+            BizEvent bizEvent,
+            Path workingDirPath,
+            PdfGeneration pdfGeneration,
+            TemplateSkeleton skeleton,
+            Predicate<String> payerMaybeSaved,
+            Predicate<String> debtorMaybeSaved
+    ) {
+        CompletableFuture<PdfMetadata> debtorFuture = this.pdfGenerationExecutor
+                .submit(() -> generateAndSavePDFReceipt(
+                        bizEvent, receipt, DEBTOR_TEMPLATE_SUFFIX, true, workingDirPath, skeleton, debtorMaybeSaved))
+                .thenCompose(Function.identity())
+                .exceptionally(e -> buildUnexpectedErrorMetadata(receipt, e));
+
+        CompletableFuture<PdfMetadata> payerFuture;
+        try {
+            payerFuture = generateAndSavePDFReceipt(
+                    bizEvent, receipt, PAYER_TEMPLATE_SUFFIX, false, workingDirPath, skeleton, payerMaybeSaved);
+        } catch (RuntimeException e) {
+            payerFuture = CompletableFuture.completedFuture(buildUnexpectedErrorMetadata(receipt, e));
+        }
+
+        payerFuture.thenCombine(debtorFuture, (payerMetadata, debtorMetadata) -> {
+            pdfGeneration.setPayerMetadata(payerMetadata);
+            pdfGeneration.setDebtorMetadata(debtorMetadata);
+            return pdfGeneration;
+        }).join();
+    }
+
+    private PdfMetadata buildErrorMetadata(Receipt receipt, Throwable throwable, boolean engineFailure) {
+        Throwable cause = unwrap(throwable);
+        if (cause instanceof PDFReceiptGenerationException e) {
+            logger.error("An error occurred when generating or saving the PDF receipt with eventId {}", receipt.getEventId(), e);
+            return PdfMetadata.builder()
+                    .statusCode(e.getStatusCode())
+                    .errorMessage(e.getMessage())
+                    .reasonErrorCode(engineFailure ? ReasonErrorCode.ERROR_PDF_ENGINE : null)
+                    .build();
+        }
+        return buildUnexpectedErrorMetadata(receipt, cause);
+    }
+
+    private PdfMetadata buildUnexpectedErrorMetadata(Receipt receipt, Throwable throwable) {
+        Throwable cause = unwrap(throwable);
+        logger.error("An unexpected error occurred when generating or saving the PDF receipt with eventId {}", receipt.getEventId(), cause);
+        return PdfMetadata.builder()
+                .statusCode(HttpStatus.SC_INTERNAL_SERVER_ERROR)
+                .errorMessage(cause.getMessage())
+                .build();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -124,6 +259,7 @@ public class GenerateReceiptPdfServiceImpl implements GenerateReceiptPdfService
                 ReceiptMetadata receiptMetadata = new ReceiptMetadata();
                 receiptMetadata.setName(debtorMetadata.getDocumentName());
                 receiptMetadata.setUrl(debtorMetadata.getDocumentUrl());
+                receiptMetadata.setTemplateHash(debtorMetadata.getTemplateHash());
 
                 receipt.setMdAttach(receiptMetadata);
             } else if (debtorMetadata.getStatusCode() != ALREADY_CREATED) {
@@ -151,6 +287,7 @@ public class GenerateReceiptPdfServiceImpl implements GenerateReceiptPdfService
             ReceiptMetadata receiptMetadata = new ReceiptMetadata();
             receiptMetadata.setName(payerMetadata.getDocumentName());
             receiptMetadata.setUrl(payerMetadata.getDocumentUrl());
+            receiptMetadata.setTemplateHash(payerMetadata.getTemplateHash());
 
             receipt.setMdAttachPayer(receiptMetadata);
         } else if (payerMetadata.getStatusCode() != ALREADY_CREATED) {
@@ -176,22 +313,98 @@ public class GenerateReceiptPdfServiceImpl implements GenerateReceiptPdfService
         return receipt.getEventData() != null && !FISCAL_CODE_ANONYMOUS.equals(receipt.getEventData().getDebtorFiscalCode());
     }
 
-    private PdfMetadata generateAndSavePDFReceipt(
+    /**
+     * Builds the template on the calling thread, then renders the PDF without holding any thread while the
+     * PDF Engine works on it and uploads it on the shared executor.
+     * The returned future never completes exceptionally: the failures of the rendering and of the upload
+     * are reported on the metadata.
+     */
+    private CompletableFuture<PdfMetadata> generateAndSavePDFReceipt(
             BizEvent bizEvent,
             Receipt receipt,
             String templateSuffix,
             boolean isGeneratingDebtor,
-            Path workingDirPath
+            Path workingDirPath,
+            TemplateSkeleton skeleton,
+            Predicate<String> maybeSaved
     ) {
         try {
-            ReceiptPDFTemplate template = this.buildTemplateService.buildTemplate(bizEvent, isGeneratingDebtor, receipt);
-            String dateFormatted = LocalDate.now().format(DateTimeFormatter.ofPattern(BLOB_NAME_DATE_PATTERN));
-            String blobName = String.format("%s-%s-%s-%s", TEMPLATE_PREFIX, dateFormatted, receipt.getEventId(), templateSuffix);
-            PdfEngineResponse pdfEngineResponse = this.pdfEngineService.generatePDFReceipt(template, workingDirPath);
-            return this.receiptBlobStorageService.saveToBlobStorage(pdfEngineResponse, blobName);
+            ReceiptPDFTemplate template = this.generationMetrics.time(Stage.TEMPLATE_BUILD,
+                    () -> this.buildTemplateService.buildTemplate(bizEvent, isGeneratingDebtor, receipt, skeleton));
+            byte[] templateData = encodeTemplate(template);
+            String templateHash = buildTemplateHash(templateData);
+            String blobName = String.format("%s-%s-%s-%s",
+                    TEMPLATE_PREFIX, templateHash.substring(0, BLOB_NAME_HASH_LENGTH), receipt.getEventId(), templateSuffix);
+            if (maybeSaved.test(templateHash)) {
+                PdfMetadata savedPdf = findSavedPdf(blobName);
+                if (savedPdf != null) {
+                    savedPdf.setTemplateHash(templateHash);
+                    return CompletableFuture.completedFuture(savedPdf);
+                }
+            }
+            long engineCallStart = System.nanoTime();
+            CompletableFuture<PdfEngineResponse> engineCall = this.pdfEngineService.generatePDFReceiptAsync(templateData, workingDirPath)
+                    .whenComplete((response, throwable) -> this.generationMetrics.recordStage(Stage.ENGINE_CALL, engineCallStart));
+            // the engine call is complete when the chain fails, so its state tells where the failure came from
+            return engineCall
+                    .thenCompose(pdfEngineResponse -> this.pdfGenerationExecutor
+                            .submit(() -> savePdf(pdfEngineResponse, blobName, templateHash)))
+                    .exceptionally(throwable -> buildErrorMetadata(receipt, throwable, engineCall.isCompletedExceptionally()));
         } catch (PDFReceiptGenerationException e) {
-            logger.error("An error occurred when generating or saving the PDF receipt with eventId {}", receipt.getEventId(), e);
-            return PdfMetadata.builder().statusCode(e.getStatusCode()).errorMessage(e.getMessage()).build();
+            return CompletableFuture.completedFuture(buildErrorMetadata(receipt, e, false));
+        }
+    }
+
+    private PdfMetadata savePdf(PdfEngineResponse pdfEngineResponse, String blobName, String templateHash) {
+        try {
+            PdfMetadata savedPdf = this.generationMetrics.time(Stage.BLOB_UPLOAD,
+                    () -> this.receiptBlobStorageService.saveToBlobStorage(pdfEngineResponse, blobName));
+            savedPdf.setTemplateHash(templateHash);
+            return savedPdf;
+        } catch (PDFReceiptGenerationException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * A PDF may have already been saved: on retry by a previous attempt that failed afterwards,
+     * e.g. on another PDF or on the save of the document, and on regeneration by the previous generation
+     * if the hash of its template data is unchanged. The blob names are content-addressed, so the saved PDF is reused
+     */
+    private static Predicate<String> maybeSaved(boolean retry, ReceiptMetadata previousMetadata) {
+        String previousTemplateHash = previousMetadata != null ? previousMetadata.getTemplateHash() : null;
+        return templateHash -> retry || templateHash.equals(previousTemplateHash);
+    }
+
+    private PdfMetadata findSavedPdf(String blobName) {
+        PdfMetadata savedPdf = this.generationMetrics.time(Stage.BLOB_PROBE,
+                () -> this.receiptBlobStorageService.findSavedPdf(blobName));
+        this.generationMetrics.recordBlobProbe(savedPdf != null);
+        return savedPdf;
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        return throwable instanceof CompletionException && throwable.getCause() != null
+                ? throwable.getCause()
+                : throwable;
+    }
+
+    /**
+     * The template data is encoded once: the same bytes are hashed and sent to the PDF Engine
+     */
+    private byte[] encodeTemplate(ReceiptPDFTemplate template) throws GeneratePDFException {
+        try {
+            return ReceiptTemplateJsonWriter.writeValueAsBytes(template);
+        } catch (IOException e) {
+            throw new GeneratePDFException("Unable to encode the PDF template data", HttpStatus.SC_INTERNAL_SERVER_ERROR, e);
+        }
+    }
+
+    private String buildTemplateHash(byte[] templateData) throws GeneratePDFException {
+        try {
+            return TemplateHash.of(templateData);
+        } catch (IOException e) {
+            throw new GeneratePDFException("Unable to compute the hash of the PDF content", HttpStatus.SC_INTERNAL_SERVER_ERROR, e);
         }
     }
 }
@@ -1,26 +1,25 @@
 package it.gov.pagopa.receipt.pdf.generator.service.impl;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import it.gov.pagopa.receipt.pdf.generator.client.PdfEngineClient;
-import it.gov.pagopa.receipt.pdf.generator.client.impl.PdfEngineClientImpl;
-import it.gov.pagopa.receipt.pdf.generator.entity.receipt.enumeration.ReasonErrorCode;
+import it.gov.pagopa.receipt.pdf.generator.client.impl.CircuitBreakerPdfEngineClient;
 import it.gov.pagopa.receipt.pdf.generator.exception.GeneratePDFException;
 import it.gov.pagopa.receipt.pdf.generator.exception.PDFReceiptGenerationException;
 import it.gov.pagopa.receipt.pdf.generator.model.request.PdfEngineRequest;
 import it.gov.pagopa.receipt.pdf.generator.model.response.PdfEngineResponse;
 import it.gov.pagopa.receipt.pdf.generator.model.template.ReceiptPDFTemplate;
 import it.gov.pagopa.receipt.pdf.generator.service.PdfEngineService;
-import it.gov.pagopa.receipt.pdf.generator.utils.ObjectMapperUtils;
 import org.apache.http.HttpStatus;
 
 import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class PdfEngineServiceImpl implements PdfEngineService {
 
     private final PdfEngineClient pdfEngineClient;
 
     public PdfEngineServiceImpl() {
-        this.pdfEngineClient = PdfEngineClientImpl.getInstance();
+        this.pdfEngineClient = CircuitBreakerPdfEngineClient.getInstance();
     }
 
     PdfEngineServiceImpl(PdfEngineClient pdfEngineClient) {
@@ -35,14 +34,45 @@ public class PdfEngineServiceImpl implements PdfEngineService {
             ReceiptPDFTemplate template,
             Path workingDirPath
     ) throws PDFReceiptGenerationException {
-        PdfEngineRequest request = new PdfEngineRequest();
+        PdfEngineRequest request = buildRequest(template);
+
+        PdfEngineResponse pdfEngineResponse = this.pdfEngineClient.generatePDF(request, workingDirPath);
 
-        //Build the request
-        request.setData(parseTemplateDataToString(template));
+        return verifyResponse(pdfEngineResponse);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<PdfEngineResponse> generatePDFReceiptAsync(
+            byte[] templateData,
+            Path workingDirPath
+    ) {
+        PdfEngineRequest request = new PdfEngineRequest();
+        request.setEncodedData(templateData);
         request.setApplySignature(false);
 
-        PdfEngineResponse pdfEngineResponse = this.pdfEngineClient.generatePDF(request, workingDirPath);
+        return this.pdfEngineClient.generatePDFAsync(request, workingDirPath)
+                .thenApply(pdfEngineResponse -> {
+                    try {
+                        return verifyResponse(pdfEngineResponse);
+                    } catch (GeneratePDFException e) {
+                        throw new CompletionException(e);
+                    }
+                });
+    }
+
+    private PdfEngineRequest buildRequest(ReceiptPDFTemplate template) {
+        PdfEngineRequest request = new PdfEngineRequest();
 
+        //Build the request, the template is serialized by the client directly into the request body
+        request.setTemplate(template);
+        request.setApplySignature(false);
+        return request;
+    }
+
+    private PdfEngineResponse verifyResponse(PdfEngineResponse pdfEngineResponse) throws GeneratePDFException {
         if (pdfEngineResponse.getStatusCode() != HttpStatus.SC_OK) {
             String errMsg = String.format("PDF-Engine response KO (%s): %s", pdfEngineResponse.getStatusCode(), pdfEngineResponse.getErrorMessage());
             throw new GeneratePDFException(errMsg, pdfEngineResponse.getStatusCode());
@@ -50,13 +80,4 @@ public class PdfEngineServiceImpl implements PdfEngineService {
 
         return pdfEngineResponse;
     }
-
-
-    private String parseTemplateDataToString(ReceiptPDFTemplate template) throws GeneratePDFException {
-        try {
-            return ObjectMapperUtils.writeValueAsString(template);
-        } catch (JsonProcessingException e) {
-            throw new GeneratePDFException("Error preparing input data for receipt PDF template", ReasonErrorCode.ERROR_PDF_ENGINE.getCode(), e);
-        }
-    }
 }
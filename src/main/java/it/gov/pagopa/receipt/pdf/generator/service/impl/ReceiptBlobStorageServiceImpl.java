@@ -8,15 +8,25 @@ import it.gov.pagopa.receipt.pdf.generator.model.PdfMetadata;
 import it.gov.pagopa.receipt.pdf.generator.model.response.BlobStorageResponse;
 import it.gov.pagopa.receipt.pdf.generator.model.response.PdfEngineResponse;
 import it.gov.pagopa.receipt.pdf.generator.service.ReceiptBlobStorageService;
+import it.gov.pagopa.receipt.pdf.generator.utils.MinLengthInputStream;
 import lombok.Setter;
+import org.apache.commons.io.IOUtils;
 import org.apache.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.InputStream;
 
 public class ReceiptBlobStorageServiceImpl implements ReceiptBlobStorageService {
 
+    private static final String MIN_LENGTH_ERROR_MESSAGE = "Minimum file size not reached";
+    private static final String UPLOAD_ERROR_MESSAGE = "Error saving pdf to blob storage";
+
+    private final Logger logger = LoggerFactory.getLogger(ReceiptBlobStorageServiceImpl.class);
+
     private final ReceiptBlobClient receiptBlobClient;
     @Setter
     private long minFileLength = Long.parseLong(
@@ -38,19 +48,9 @@ public class ReceiptBlobStorageServiceImpl implements ReceiptBlobStorageService
             PdfEngineResponse pdfEngineResponse,
             String blobName
     ) throws SavePDFToBlobException {
-        String tempPdfPath = pdfEngineResponse.getTempPdfPath();
-
-        if (new File(tempPdfPath).length() < minFileLength) {
-            throw new SavePDFToBlobException("Minimum file size not reached", ReasonErrorCode.ERROR_BLOB_STORAGE.getCode());
-        }
-
-        BlobStorageResponse blobStorageResponse;
-        //Save to Blob Storage
-        try (BufferedInputStream pdfStream = new BufferedInputStream(new FileInputStream(tempPdfPath))) {
-            blobStorageResponse = this.receiptBlobClient.savePdfToBlobStorage(pdfStream, blobName);
-        } catch (Exception e) {
-            throw new SavePDFToBlobException("Error saving pdf to blob storage", ReasonErrorCode.ERROR_BLOB_STORAGE.getCode(), e);
-        }
+        BlobStorageResponse blobStorageResponse = pdfEngineResponse.getPdfStream() != null
+                ? saveStreamToBlobStorage(pdfEngineResponse, blobName)
+                : saveTempFileToBlobStorage(pdfEngineResponse.getTempPdfPath(), blobName);
 
         if (blobStorageResponse.getStatusCode() != com.microsoft.azure.functions.HttpStatus.CREATED.value()) {
             String errMsg = String.format("Error saving pdf to blob storage, storage responded with status %s",
@@ -65,4 +65,69 @@ public class ReceiptBlobStorageServiceImpl implements ReceiptBlobStorageService
                 .statusCode(HttpStatus.SC_OK)
                 .build();
     }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * A failed look up is reported as a missing PDF, so that the caller generates it again.
+     */
+    @Override
+    public PdfMetadata findSavedPdf(String blobName) {
+        BlobStorageResponse blobStorageResponse;
+        try {
+            blobStorageResponse = this.receiptBlobClient.findPdfInBlobStorage(blobName);
+        } catch (Exception e) {
+            logger.warn("Unable to look up the saved pdf {}, it will be generated again", blobName, e);
+            return null;
+        }
+        if (blobStorageResponse.getStatusCode() != HttpStatus.SC_OK) {
+            return null;
+        }
+        return PdfMetadata.builder()
+                .documentName(blobStorageResponse.getDocumentName())
+                .documentUrl(blobStorageResponse.getDocumentUrl())
+                .statusCode(HttpStatus.SC_OK)
+                .build();
+    }
+
+    private BlobStorageResponse saveTempFileToBlobStorage(String tempPdfPath, String blobName) throws SavePDFToBlobException {
+        if (new File(tempPdfPath).length() < minFileLength) {
+            throw new SavePDFToBlobException(MIN_LENGTH_ERROR_MESSAGE, ReasonErrorCode.ERROR_BLOB_STORAGE.getCode());
+        }
+
+        //Save to Blob Storage
+        try (BufferedInputStream pdfStream = new BufferedInputStream(new FileInputStream(tempPdfPath))) {
+            return this.receiptBlobClient.savePdfToBlobStorage(pdfStream, blobName);
+        } catch (Exception e) {
+            throw new SavePDFToBlobException(UPLOAD_ERROR_MESSAGE, ReasonErrorCode.ERROR_BLOB_STORAGE.getCode(), e);
+        }
+    }
+
+    /**
+     * Upload the PDF while it is read from the PDF Engine response, the minimum length is verified
+     * on the bytes as they pass so that a too short PDF fails the upload
+     */
+    private BlobStorageResponse saveStreamToBlobStorage(
+            PdfEngineResponse pdfEngineResponse,
+            String blobName
+    ) throws SavePDFToBlobException {
+        InputStream engineStream = pdfEngineResponse.getPdfStream();
+        try {
+            long declaredLength = pdfEngineResponse.getPdfContentLength();
+            if (declaredLength >= 0 && declaredLength < minFileLength) {
+                throw new SavePDFToBlobException(MIN_LENGTH_ERROR_MESSAGE, ReasonErrorCode.ERROR_BLOB_STORAGE.getCode());
+            }
+
+            MinLengthInputStream pdfStream = new MinLengthInputStream(engineStream, minFileLength);
+            try {
+                return this.receiptBlobClient.savePdfToBlobStorage(pdfStream, blobName);
+            } catch (Exception e) {
+                String errMsg = pdfStream.isBelowMinLength() ? MIN_LENGTH_ERROR_MESSAGE : UPLOAD_ERROR_MESSAGE;
+                throw new SavePDFToBlobException(errMsg, ReasonErrorCode.ERROR_BLOB_STORAGE.getCode(), e);
+            }
+        } finally {
+            // releases the PDF Engine connection, a failure here does not affect the upload outcome
+            IOUtils.closeQuietly(engineStream);
+        }
+    }
 }
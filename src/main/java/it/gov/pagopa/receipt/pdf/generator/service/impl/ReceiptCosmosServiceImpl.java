@@ -1,16 +1,25 @@
 package it.gov.pagopa.receipt.pdf.generator.service.impl;
 
+import com.azure.cosmos.CosmosException;
 import com.azure.cosmos.models.CosmosItemResponse;
+import com.fasterxml.jackson.databind.JsonNode;
 import it.gov.pagopa.receipt.pdf.generator.client.ReceiptCosmosClient;
 import it.gov.pagopa.receipt.pdf.generator.client.impl.ReceiptCosmosClientImpl;
 import it.gov.pagopa.receipt.pdf.generator.entity.receipt.Receipt;
 import it.gov.pagopa.receipt.pdf.generator.exception.ReceiptNotFoundException;
 import it.gov.pagopa.receipt.pdf.generator.exception.UnableToSaveException;
+import it.gov.pagopa.receipt.pdf.generator.model.DocumentPatch;
 import it.gov.pagopa.receipt.pdf.generator.service.ReceiptCosmosService;
+import it.gov.pagopa.receipt.pdf.generator.utils.DocumentPatchBuilder;
 import org.apache.http.HttpStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 public class ReceiptCosmosServiceImpl implements ReceiptCosmosService {
     private final Logger logger = LoggerFactory.getLogger(ReceiptCosmosServiceImpl.class);
     private final ReceiptCosmosClient receiptCosmosClient;
@@ -63,4 +72,79 @@ public class ReceiptCosmosServiceImpl implements ReceiptCosmosService {
             throw new UnableToSaveException(errorMsg);
         }
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void patchReceipt(JsonNode snapshot, Receipt receipt) throws UnableToSaveException {
+        DocumentPatch patch = DocumentPatchBuilder.diff(snapshot, receipt);
+        if (patch.isEmpty()) {
+            return;
+        }
+        int statusCode;
+
+        try {
+            CosmosItemResponse<Receipt> response = receiptCosmosClient.patchReceipt(receipt, patch);
+            statusCode = response.getStatusCode();
+        } catch (CosmosException e) {
+            statusCode = e.getStatusCode();
+            logger.error(String.format("Patch of fields %s of receipt with eventId %s on cosmos failed", patch.getChangedFields(), receipt.getEventId()), e);
+        } catch (Exception e) {
+            statusCode = HttpStatus.SC_INTERNAL_SERVER_ERROR;
+            logger.error(String.format("Patch of fields %s of receipt with eventId %s on cosmos failed", patch.getChangedFields(), receipt.getEventId()), e);
+        }
+
+        if (statusCode != com.microsoft.azure.functions.HttpStatus.OK.value()) {
+            String errorMsg = String.format("Save receipt with eventId %s on cosmos failed with status %s", receipt.getEventId(), statusCode);
+            throw new UnableToSaveException(errorMsg, statusCode);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Receipt> getReceipts(Collection<String> bizEventIds) {
+        Map<String, Receipt> receipts = new HashMap<>();
+        for (Receipt receipt : receiptCosmosClient.getReceiptDocuments(bizEventIds)) {
+            receipts.put(receipt.getEventId(), receipt);
+        }
+        return receipts;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, UnableToSaveException> patchReceipts(Map<Receipt, JsonNode> snapshots) {
+        Map<Receipt, DocumentPatch> patches = new LinkedHashMap<>();
+        snapshots.forEach((receipt, snapshot) -> {
+            DocumentPatch patch = DocumentPatchBuilder.diff(snapshot, receipt);
+            if (!patch.isEmpty()) {
+                patches.put(receipt, patch);
+            }
+        });
+        Map<String, UnableToSaveException> errors = new HashMap<>();
+        if (patches.isEmpty()) {
+            return errors;
+        }
+
+        Map<String, Integer> statusCodes;
+        try {
+            statusCodes = receiptCosmosClient.patchReceipts(patches);
+        } catch (Exception e) {
+            logger.error(String.format("Bulk patch of %s receipts on cosmos failed", patches.size()), e);
+            statusCodes = new HashMap<>();
+        }
+
+        for (Receipt receipt : patches.keySet()) {
+            int statusCode = statusCodes.getOrDefault(receipt.getEventId(), HttpStatus.SC_INTERNAL_SERVER_ERROR);
+            if (statusCode != com.microsoft.azure.functions.HttpStatus.OK.value()) {
+                String errorMsg = String.format("Save receipt with eventId %s on cosmos failed with status %s", receipt.getEventId(), statusCode);
+                errors.put(receipt.getEventId(), new UnableToSaveException(errorMsg, statusCode));
+            }
+        }
+        return errors;
+    }
 }
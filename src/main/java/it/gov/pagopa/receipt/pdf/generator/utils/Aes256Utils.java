@@ -7,9 +7,13 @@ import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.spec.KeySpec;
 import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class Aes256Utils {
 
@@ -17,6 +21,7 @@ public class Aes256Utils {
     private static final String AES_SALT = System.getenv().getOrDefault("AES_SALT", "");
     private static final int KEY_LENGTH = 256;
     private static final int ITERATION_COUNT = 65536;
+    private static final int IV_LENGTH = 16;
     public static final String PBKDF_2_WITH_HMAC_SHA_256 = "PBKDF2WithHmacSHA256";
     public static final String AES_CBC_PKCS_5_PADDING = "AES/CBC/PKCS5Padding";
 
@@ -24,6 +29,32 @@ public class Aes256Utils {
 
     private static final int AES_UNEXPECTED_ERROR = 701;
 
+    /**
+     * Max number of keys derived from pairs other than the configured one kept at the same time
+     */
+    static final int MAX_OTHER_DERIVED_KEYS = 4;
+
+    private static final KeySource CONFIGURED_KEY_SOURCE = new KeySource(AES_SECRET_KEY, AES_SALT);
+    /**
+     * Key derived from the configured pair, the PBKDF2 stretching runs only once
+     */
+    private static volatile SecretKeySpec configuredKey;
+    /**
+     * Keys derived from the other pairs, i.e. rotated keys, the least recently used is evicted beyond
+     * {@link #MAX_OTHER_DERIVED_KEYS}. Guarded by itself.
+     */
+    private static final Map<KeySource, SecretKeySpec> OTHER_DERIVED_KEYS = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<KeySource, SecretKeySpec> eldest) {
+            return size() > MAX_OTHER_DERIVED_KEYS;
+        }
+    };
+    private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+    /**
+     * Cipher is not thread-safe, each thread re-initializes its own instance on every call
+     */
+    private static final ThreadLocal<Cipher> CIPHER = ThreadLocal.withInitial(Aes256Utils::newCipher);
+
 
     /**
      * Hide from public usage.
@@ -32,22 +63,30 @@ public class Aes256Utils {
     }
 
     public static String encrypt(String strToEncrypt) throws Aes256Exception {
+        return encrypt(strToEncrypt, AES_SECRET_KEY, AES_SALT);
+    }
+
+    /**
+     * Encrypt the string with the key derived from the provided secret and salt,
+     * used to encrypt with a rotated key not yet configured as default
+     *
+     * @param strToEncrypt the string to encrypt
+     * @param secretKey    the secret used to derive the key
+     * @param salt         the salt used to derive the key
+     * @return the Base64 of the IV followed by the cipher text
+     * @throws Aes256Exception if the encryption fails
+     */
+    public static String encrypt(String strToEncrypt, String secretKey, String salt) throws Aes256Exception {
 
         try {
 
-            SecureRandom secureRandom = new SecureRandom();
-            byte[] iv = new byte[16];
-            secureRandom.nextBytes(iv);
+            byte[] iv = new byte[IV_LENGTH];
+            SECURE_RANDOM.nextBytes(iv);
             IvParameterSpec ivspec = new IvParameterSpec(iv);
 
-            SecretKeyFactory factory = SecretKeyFactory.getInstance(PBKDF_2_WITH_HMAC_SHA_256);
-            KeySpec spec = new PBEKeySpec(AES_SECRET_KEY.toCharArray(), AES_SALT.getBytes(), ITERATION_COUNT, KEY_LENGTH);
-            SecretKey tmp = factory.generateSecret(spec);
-            SecretKeySpec secretKeySpec = new SecretKeySpec(tmp.getEncoded(), ALGORITHM);
-
             //Padding vulnerability rule java:S5542 ignored because encryption is used inside application workflow
-            Cipher cipher = Cipher.getInstance(AES_CBC_PKCS_5_PADDING);
-            cipher.init(Cipher.ENCRYPT_MODE, secretKeySpec, ivspec);
+            Cipher cipher = CIPHER.get();
+            cipher.init(Cipher.ENCRYPT_MODE, getDerivedKey(secretKey, salt), ivspec);
 
             byte[] cipherText = cipher.doFinal(strToEncrypt.getBytes(StandardCharsets.UTF_8));
             byte[] encryptedData = new byte[iv.length + cipherText.length];
@@ -61,29 +100,95 @@ public class Aes256Utils {
     }
 
     public static String decrypt(String strToDecrypt) throws Aes256Exception {
+        return decrypt(strToDecrypt, AES_SECRET_KEY, AES_SALT);
+    }
+
+    /**
+     * Decrypt the string with the key derived from the provided secret and salt,
+     * used to read messages encrypted with a key that has been rotated
+     *
+     * @param strToDecrypt the Base64 of the IV followed by the cipher text
+     * @param secretKey    the secret used to derive the key
+     * @param salt         the salt used to derive the key
+     * @return the decrypted string
+     * @throws Aes256Exception if the decryption fails
+     */
+    public static String decrypt(String strToDecrypt, String secretKey, String salt) throws Aes256Exception {
         try{
             byte[] encryptedData = Base64.getDecoder().decode(strToDecrypt);
-            byte[] iv = new byte[16];
-            System.arraycopy(encryptedData, 0, iv, 0, iv.length);
-            IvParameterSpec ivspec = new IvParameterSpec(iv);
-
-            SecretKeyFactory factory = SecretKeyFactory.getInstance(PBKDF_2_WITH_HMAC_SHA_256);
-            KeySpec spec = new PBEKeySpec(AES_SECRET_KEY.toCharArray(), AES_SALT.getBytes(), ITERATION_COUNT, KEY_LENGTH);
-            SecretKey tmp = factory.generateSecret(spec);
-            SecretKeySpec secretKeySpec = new SecretKeySpec(tmp.getEncoded(), ALGORITHM);
+            IvParameterSpec ivspec = new IvParameterSpec(encryptedData, 0, IV_LENGTH);
 
             //Padding vulnerability rule java:S5542 ignored because decryption is used inside application workflow
-            Cipher cipher = Cipher.getInstance(AES_CBC_PKCS_5_PADDING);
-            cipher.init(Cipher.DECRYPT_MODE, secretKeySpec, ivspec);
-
-            byte[] cipherText = new byte[encryptedData.length - 16];
-            System.arraycopy(encryptedData, 16, cipherText, 0, cipherText.length);
+            Cipher cipher = CIPHER.get();
+            cipher.init(Cipher.DECRYPT_MODE, getDerivedKey(secretKey, salt), ivspec);
 
-            byte[] decryptedText = cipher.doFinal(cipherText);
+            byte[] decryptedText = cipher.doFinal(encryptedData, IV_LENGTH, encryptedData.length - IV_LENGTH);
             return new String(decryptedText, StandardCharsets.UTF_8);
         } catch (Exception e) {
             throw new Aes256Exception("Unexpected error when decrypting the given string", AES_UNEXPECTED_ERROR, e);
         }
     }
-}
 
+    /**
+     * Drop the cached derived keys, to be called when a key is rotated out
+     */
+    public static void clearDerivedKeys() {
+        configuredKey = null;
+        synchronized (OTHER_DERIVED_KEYS) {
+            OTHER_DERIVED_KEYS.clear();
+        }
+    }
+
+    /**
+     * @return the number of (secret key, salt) pairs currently derived
+     */
+    public static int getDerivedKeysCount() {
+        synchronized (OTHER_DERIVED_KEYS) {
+            return (configuredKey != null ? 1 : 0) + OTHER_DERIVED_KEYS.size();
+        }
+    }
+
+    private static SecretKeySpec getDerivedKey(String secretKey, String salt) throws GeneralSecurityException {
+        KeySource keySource = new KeySource(secretKey, salt);
+        if (CONFIGURED_KEY_SOURCE.equals(keySource)) {
+            SecretKeySpec derivedKey = configuredKey;
+            if (derivedKey == null) {
+                // concurrent first calls may derive the same key twice, the result is identical
+                derivedKey = deriveKey(secretKey, salt);
+                configuredKey = derivedKey;
+            }
+            return derivedKey;
+        }
+
+        SecretKeySpec derivedKey;
+        synchronized (OTHER_DERIVED_KEYS) {
+            derivedKey = OTHER_DERIVED_KEYS.get(keySource);
+        }
+        if (derivedKey == null) {
+            // derived outside the lock, so that the other pairs are not blocked by the stretching
+            derivedKey = deriveKey(secretKey, salt);
+            synchronized (OTHER_DERIVED_KEYS) {
+                OTHER_DERIVED_KEYS.put(keySource, derivedKey);
+            }
+        }
+        return derivedKey;
+    }
+
+    private static SecretKeySpec deriveKey(String secretKey, String salt) throws GeneralSecurityException {
+        SecretKeyFactory factory = SecretKeyFactory.getInstance(PBKDF_2_WITH_HMAC_SHA_256);
+        KeySpec spec = new PBEKeySpec(secretKey.toCharArray(), salt.getBytes(StandardCharsets.UTF_8), ITERATION_COUNT, KEY_LENGTH);
+        SecretKey tmp = factory.generateSecret(spec);
+        return new SecretKeySpec(tmp.getEncoded(), ALGORITHM);
+    }
+
+    private static Cipher newCipher() {
+        try {
+            return Cipher.getInstance(AES_CBC_PKCS_5_PADDING);
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record KeySource(String secretKey, String salt) {
+    }
+}
@@ -0,0 +1,278 @@
+package it.gov.pagopa.receipt.pdf.generator.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Count-based circuit breaker, it trips on the failure rate or on the slow call rate of the last calls.
+ * <p>
+ * While CLOSED every call is permitted and its outcome recorded in a sliding window. Once the window holds the
+ * minimum number of calls and one of the rates reaches its threshold the breaker goes OPEN and rejects every call.
+ * After the open duration it goes HALF_OPEN and permits a limited number of probe calls: their rates close the
+ * breaker again or send it back to OPEN.
+ * <p>
+ * Every permission carries the state generation it was granted in: the outcome of a call is recorded only if the
+ * breaker has not changed state since then, so a slow call admitted while CLOSED cannot be counted as a probe.
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    /**
+     * Circuit breaker state and rates, as exposed over JMX
+     */
+    public interface CircuitBreakerMXBean {
+        String getState();
+
+        /**
+         * @return 0 when CLOSED, 1 when OPEN, 2 when HALF_OPEN
+         */
+        int getStateCode();
+
+        double getFailureRate();
+
+        double getSlowCallRate();
+
+        long getRejectedCalls();
+
+        long getOpenedCount();
+    }
+
+    /**
+     * @param failureRateThreshold  percentage of failed calls opening the breaker
+     * @param slowCallRateThreshold percentage of slow calls opening the breaker
+     * @param slowCallDurationNanos duration from which a call is slow
+     * @param windowSize            number of calls in the sliding window
+     * @param minimumCalls          number of calls required before the rates are evaluated
+     * @param openDurationNanos     time spent OPEN before probing
+     * @param halfOpenCalls         number of probe calls permitted while HALF_OPEN
+     */
+    /**
+     * Permission to make a call, to be handed back with its outcome to {@link #onResult(Permit, boolean, long)}
+     *
+     * @param generation the state generation the permission was granted in
+     * @param probe      true if it is one of the probe calls permitted while HALF_OPEN
+     */
+    public record Permit(long generation, boolean probe) {
+    }
+
+    public record Settings(
+            int failureRateThreshold,
+            int slowCallRateThreshold,
+            long slowCallDurationNanos,
+            int windowSize,
+            int minimumCalls,
+            long openDurationNanos,
+            int halfOpenCalls
+    ) {
+    }
+
+    private final String name;
+    private final Settings settings;
+    private final LongSupplier nanoClock;
+
+    private final boolean[] windowFailures;
+    private final boolean[] windowSlowCalls;
+    private int windowIndex;
+    private int windowCalls;
+    private int windowFailureCount;
+    private int windowSlowCallCount;
+
+    private State state = State.CLOSED;
+    private long generation;
+    private long openedAt;
+    private int halfOpenPermitted;
+    private int halfOpenCompleted;
+    private int halfOpenFailures;
+    private int halfOpenSlowCalls;
+    private long rejectedCalls;
+    private long openedCount;
+
+    /**
+     * @param name      the name of the protected resource, used in the logs
+     * @param settings  the thresholds of the breaker
+     * @param nanoClock the time source, i.e. {@link System#nanoTime()}
+     */
+    public CircuitBreaker(String name, Settings settings, LongSupplier nanoClock) {
+        this.name = name;
+        this.settings = settings;
+        this.nanoClock = nanoClock;
+        this.windowFailures = new boolean[settings.windowSize()];
+        this.windowSlowCalls = new boolean[settings.windowSize()];
+    }
+
+    /**
+     * Ask the permission to make a call, every permitted call must be followed by {@link #onResult(Permit, boolean, long)}
+     *
+     * @return the permission if the call can be made, null if it is rejected
+     */
+    public synchronized Permit tryAcquirePermission() {
+        if (this.state == State.OPEN && this.nanoClock.getAsLong() - this.openedAt >= this.settings.openDurationNanos()) {
+            transitionTo(State.HALF_OPEN);
+        }
+        if (this.state == State.CLOSED) {
+            return new Permit(this.generation, false);
+        }
+        if (this.state == State.HALF_OPEN && this.halfOpenPermitted < this.settings.halfOpenCalls()) {
+            this.halfOpenPermitted++;
+            return new Permit(this.generation, true);
+        }
+        this.rejectedCalls++;
+        return null;
+    }
+
+    /**
+     * Tell, without acquiring it, if a permission would be granted now
+     *
+     * @return false while the breaker is rejecting calls
+     */
+    public synchronized boolean isCallPermitted() {
+        if (this.state == State.OPEN) {
+            return this.nanoClock.getAsLong() - this.openedAt >= this.settings.openDurationNanos();
+        }
+        return this.state == State.CLOSED || this.halfOpenPermitted < this.settings.halfOpenCalls();
+    }
+
+    /**
+     * Record the outcome of a permitted call
+     *
+     * @param permit        the permission the call was made with
+     * @param success       true if the call succeeded
+     * @param durationNanos the duration of the call
+     */
+    public synchronized void onResult(Permit permit, boolean success, long durationNanos) {
+        if (permit.generation() != this.generation) {
+            // outcomes of calls permitted before the last state change are ignored
+            return;
+        }
+        boolean slow = durationNanos >= this.settings.slowCallDurationNanos();
+        if (this.state == State.CLOSED) {
+            recordInWindow(!success, slow);
+            if (this.windowCalls >= this.settings.minimumCalls()
+                    && isAboveThresholds(this.windowFailureCount, this.windowSlowCallCount, this.windowCalls)) {
+                transitionTo(State.OPEN);
+            }
+        } else if (this.state == State.HALF_OPEN && permit.probe()) {
+            this.halfOpenCompleted++;
+            this.halfOpenFailures += success ? 0 : 1;
+            this.halfOpenSlowCalls += slow ? 1 : 0;
+            if (this.halfOpenCompleted >= this.settings.halfOpenCalls()) {
+                transitionTo(isAboveThresholds(this.halfOpenFailures, this.halfOpenSlowCalls, this.halfOpenCompleted)
+                        ? State.OPEN
+                        : State.CLOSED);
+            }
+        }
+    }
+
+    public synchronized State getState() {
+        return this.state;
+    }
+
+    /**
+     * @return the failure rate of the sliding window, in percentage
+     */
+    public synchronized double getFailureRate() {
+        return rate(this.windowFailureCount, this.windowCalls);
+    }
+
+    /**
+     * @return the slow call rate of the sliding window, in percentage
+     */
+    public synchronized double getSlowCallRate() {
+        return rate(this.windowSlowCallCount, this.windowCalls);
+    }
+
+    public synchronized long getRejectedCalls() {
+        return this.rejectedCalls;
+    }
+
+    public synchronized long getOpenedCount() {
+        return this.openedCount;
+    }
+
+    /**
+     * @return the view of the breaker to register over JMX
+     */
+    public CircuitBreakerMXBean toMXBean() {
+        return new CircuitBreakerMXBean() {
+            @Override
+            public String getState() {
+                return CircuitBreaker.this.getState().name();
+            }
+
+            @Override
+            public int getStateCode() {
+                return CircuitBreaker.this.getState().ordinal();
+            }
+
+            @Override
+            public double getFailureRate() {
+                return CircuitBreaker.this.getFailureRate();
+            }
+
+            @Override
+            public double getSlowCallRate() {
+                return CircuitBreaker.this.getSlowCallRate();
+            }
+
+            @Override
+            public long getRejectedCalls() {
+                return CircuitBreaker.this.getRejectedCalls();
+            }
+
+            @Override
+            public long getOpenedCount() {
+                return CircuitBreaker.this.getOpenedCount();
+            }
+        };
+    }
+
+    private void recordInWindow(boolean failure, boolean slow) {
+        if (this.windowCalls == this.windowFailures.length) {
+            this.windowFailureCount -= this.windowFailures[this.windowIndex] ? 1 : 0;
+            this.windowSlowCallCount -= this.windowSlowCalls[this.windowIndex] ? 1 : 0;
+        } else {
+            this.windowCalls++;
+        }
+        this.windowFailures[this.windowIndex] = failure;
+        this.windowSlowCalls[this.windowIndex] = slow;
+        this.windowFailureCount += failure ? 1 : 0;
+        this.windowSlowCallCount += slow ? 1 : 0;
+        this.windowIndex = (this.windowIndex + 1) % this.windowFailures.length;
+    }
+
+    private boolean isAboveThresholds(int failures, int slowCalls, int calls) {
+        return rate(failures, calls) >= this.settings.failureRateThreshold()
+                || rate(slowCalls, calls) >= this.settings.slowCallRateThreshold();
+    }
+
+    private static double rate(int count, int total) {
+        return total == 0 ? 0 : count * 100.0 / total;
+    }
+
+    private void transitionTo(State newState) {
+        log.warn("Circuit breaker of {} from {} to {} (failure rate {}%, slow call rate {}%)",
+                this.name, this.state, newState, getFailureRate(), getSlowCallRate());
+        this.state = newState;
+        this.generation++;
+        this.halfOpenPermitted = 0;
+        this.halfOpenCompleted = 0;
+        this.halfOpenFailures = 0;
+        this.halfOpenSlowCalls = 0;
+        if (newState == State.OPEN) {
+            this.openedAt = this.nanoClock.getAsLong();
+            this.openedCount++;
+        } else if (newState == State.CLOSED) {
+            this.windowIndex = 0;
+            this.windowCalls = 0;
+            this.windowFailureCount = 0;
+            this.windowSlowCallCount = 0;
+        }
+    }
+}
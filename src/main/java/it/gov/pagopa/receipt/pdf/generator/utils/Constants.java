@@ -6,9 +6,16 @@ public class Constants {
     public static final String TEMPLATE_PREFIX = "pagopa-ricevuta";
     public static final String PAYER_TEMPLATE_SUFFIX = "p";
     public static final String DEBTOR_TEMPLATE_SUFFIX = "d";
-    public static final String BLOB_NAME_DATE_PATTERN = "yyMMdd";
+    /**
+     * Number of hex characters of the content hash in the blob names
+     */
+    public static final int BLOB_NAME_HASH_LENGTH = 16;
     public static final String FISCAL_CODE_ANONYMOUS = "ANONIMO";
     public static final int ALREADY_CREATED = 208;
+    /**
+     * Query parameter of the regeneration functions to render again also the PDFs whose template data is unchanged
+     */
+    public static final String FORCE_PARAMETER = "force";
 
     private Constants() {
     }
@@ -0,0 +1,152 @@
+package it.gov.pagopa.receipt.pdf.generator.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.management.JMException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the paths used to look up a document on CosmosDB, with the request units and the time spent on each one.
+ * <p>
+ * Used to see how often the expensive paths (i.e. cross-partition queries) are taken compared to the point reads.
+ * The counters of each path are registered with {@link JmxMetrics} by {@link #register(String)}
+ * as {@code type=CosmosLookup,container=<container>,path=<path>}.
+ */
+@Slf4j
+public class CosmosLookupMetrics {
+
+    /**
+     * Read-only view of the counters of a path, as exposed over JMX
+     */
+    public interface LookupPathMXBean {
+        long getCount();
+
+        long getFoundCount();
+
+        double getRequestCharge();
+
+        long getElapsedMillis();
+    }
+
+    public enum LookupPath {
+        /**
+         * Read by id and partition key
+         */
+        POINT_READ,
+        /**
+         * Query on the event id within its partition, run when the point read does not find the document
+         */
+        PARTITION_QUERY,
+        /**
+         * Legacy cross-partition query run when the document is not found in its partition
+         */
+        QUERY_FALLBACK,
+        /**
+         * Miss served from the negative cache, nothing is requested to CosmosDB
+         */
+        NEGATIVE_CACHE
+    }
+
+    private final Map<LookupPath, PathCounters> counters = new EnumMap<>(LookupPath.class);
+
+    public CosmosLookupMetrics() {
+        for (LookupPath path : LookupPath.values()) {
+            this.counters.put(path, new PathCounters());
+        }
+    }
+
+    /**
+     * Register the counters over JMX
+     *
+     * @param container the name of the looked up container, used as label
+     * @return these metrics
+     */
+    public CosmosLookupMetrics register(String container) {
+        try {
+            for (Map.Entry<LookupPath, PathCounters> pathCounters : this.counters.entrySet()) {
+                JmxMetrics.register(pathCounters.getValue(), "type=CosmosLookup,container=" + container + ",path=" + pathCounters.getKey());
+            }
+        } catch (JMException e) {
+            // metrics are not worth failing the lookup for
+            log.warn("Unable to register the lookup metrics of container {}", container, e);
+        }
+        return this;
+    }
+
+    /**
+     * Record a lookup on the provided path
+     *
+     * @param path          the path taken
+     * @param found         true if the document was found
+     * @param requestCharge the request units consumed
+     * @param elapsedNanos  the time spent on the path
+     */
+    public void record(LookupPath path, boolean found, double requestCharge, long elapsedNanos) {
+        PathCounters pathCounters = this.counters.get(path);
+        pathCounters.count.increment();
+        if (found) {
+            pathCounters.found.increment();
+        }
+        pathCounters.requestCharge.add(requestCharge);
+        pathCounters.elapsedNanos.add(elapsedNanos);
+    }
+
+    /**
+     * @return the number of lookups on the path
+     */
+    public long getCount(LookupPath path) {
+        return this.counters.get(path).getCount();
+    }
+
+    /**
+     * @return the number of lookups on the path that found the document
+     */
+    public long getFoundCount(LookupPath path) {
+        return this.counters.get(path).getFoundCount();
+    }
+
+    /**
+     * @return the total request units consumed by the path
+     */
+    public double getRequestCharge(LookupPath path) {
+        return this.counters.get(path).getRequestCharge();
+    }
+
+    /**
+     * @return the total time spent on the path, in milliseconds
+     */
+    public long getElapsedMillis(LookupPath path) {
+        return this.counters.get(path).getElapsedMillis();
+    }
+
+    private static class PathCounters implements LookupPathMXBean {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder found = new LongAdder();
+        private final DoubleAdder requestCharge = new DoubleAdder();
+        private final LongAdder elapsedNanos = new LongAdder();
+
+        @Override
+        public long getCount() {
+            return this.count.sum();
+        }
+
+        @Override
+        public long getFoundCount() {
+            return this.found.sum();
+        }
+
+        @Override
+        public double getRequestCharge() {
+            return this.requestCharge.sum();
+        }
+
+        @Override
+        public long getElapsedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(this.elapsedNanos.sum());
+        }
+    }
+}
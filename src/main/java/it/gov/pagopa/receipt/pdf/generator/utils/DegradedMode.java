@@ -0,0 +1,51 @@
+package it.gov.pagopa.receipt.pdf.generator.utils;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Load shedding mode of the generation functions: while the PDF Engine is known to be unhealthy the messages are
+ * requeued with a longer, jittered visibility delay instead of being processed, and their retries are not consumed.
+ * <p>
+ * The jitter spreads the requeued messages over time, so they do not come back all at once when the engine recovers.
+ */
+public class DegradedMode {
+
+    private static final boolean ENABLED = Boolean.parseBoolean(
+            System.getenv().getOrDefault("PDF_ENGINE_DEGRADED_MODE_ENABLED", "true"));
+    private static final long REQUEUE_DELAY_SECONDS = Long.parseLong(
+            System.getenv().getOrDefault("PDF_ENGINE_DEGRADED_REQUEUE_DELAY_SECONDS", "60"));
+    private static final long REQUEUE_JITTER_SECONDS = Long.parseLong(
+            System.getenv().getOrDefault("PDF_ENGINE_DEGRADED_REQUEUE_JITTER_SECONDS", "60"));
+
+    private final BooleanSupplier engineUnhealthy;
+
+    /**
+     * @param engineUnhealthy tells if the PDF Engine is currently known to be unhealthy
+     */
+    public DegradedMode(BooleanSupplier engineUnhealthy) {
+        this.engineUnhealthy = engineUnhealthy;
+    }
+
+    /**
+     * @return a mode that never sheds load, for components not bound to the PDF Engine health
+     */
+    public static DegradedMode disabled() {
+        return new DegradedMode(() -> false);
+    }
+
+    /**
+     * @return true if the messages must be requeued without being processed
+     */
+    public boolean isActive() {
+        return ENABLED && this.engineUnhealthy.getAsBoolean();
+    }
+
+    /**
+     * @return the visibility delay of a message requeued because the PDF Engine is unhealthy
+     */
+    public Duration nextRequeueDelay() {
+        return Duration.ofSeconds(REQUEUE_DELAY_SECONDS + ThreadLocalRandom.current().nextLong(REQUEUE_JITTER_SECONDS + 1));
+    }
+}
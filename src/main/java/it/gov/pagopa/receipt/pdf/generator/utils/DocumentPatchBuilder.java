@@ -0,0 +1,127 @@
+package it.gov.pagopa.receipt.pdf.generator.utils;
+
+import com.azure.cosmos.models.CosmosPatchOperations;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import it.gov.pagopa.receipt.pdf.generator.exception.PdfJsonMappingException;
+import it.gov.pagopa.receipt.pdf.generator.model.DocumentPatch;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Builds the patch of a CosmosDB document comparing its current state with a snapshot taken when it was read.
+ * <p>
+ * Changes are detected on the top-level fields, a changed field is written as a whole. System properties
+ * (i.e. _etag) and the id are never patched.
+ */
+public class DocumentPatchBuilder {
+
+    /**
+     * Max number of operations accepted by CosmosDB in a single patch request
+     */
+    public static final int MAX_PATCH_OPERATIONS = 10;
+
+    private static final String ID_FIELD = "id";
+    private static final String SYSTEM_PROPERTY_PREFIX = "_";
+
+    /**
+     * Hide from public usage.
+     */
+    private DocumentPatchBuilder() {
+    }
+
+    /**
+     * Take the snapshot of the document, to be called before changing it
+     *
+     * @param document the document as read from CosmosDB
+     * @return the snapshot of the document
+     */
+    public static JsonNode snapshot(Object document) {
+        return ObjectMapperUtils.valueToTree(document);
+    }
+
+    /**
+     * Build the patch with the top-level fields changed since the snapshot
+     *
+     * @param snapshot the snapshot taken when the document was read
+     * @param document the current document
+     * @return the patch, empty if nothing changed
+     */
+    public static DocumentPatch diff(JsonNode snapshot, Object document) {
+        JsonNode current = ObjectMapperUtils.valueToTree(document);
+        CosmosPatchOperations operations = CosmosPatchOperations.create();
+        List<String> changedFields = changedFields(snapshot, current);
+        for (String field : changedFields) {
+            JsonNode value = current.path(field);
+            if (value instanceof MissingNode) {
+                operations.remove(path(field));
+            } else {
+                operations.set(path(field), value);
+            }
+        }
+        return new DocumentPatch(operations, changedFields);
+    }
+
+    /**
+     * Apply the top-level fields changed since the snapshot on another version of the document, i.e. the one
+     * re-read after a conflict, so that saving it does not overwrite the fields changed in the meantime
+     * even when the whole document is replaced
+     *
+     * @param snapshot the snapshot taken when the document was read
+     * @param document the current document
+     * @param latest   the latest version of the document
+     * @param <T>      the document class
+     * @return a copy of the latest version with the changes of the document, its system properties included
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T rebase(JsonNode snapshot, T document, T latest) {
+        JsonNode current = ObjectMapperUtils.valueToTree(document);
+        ObjectNode rebased = (ObjectNode) ObjectMapperUtils.valueToTree(latest);
+        for (String field : changedFields(snapshot, current)) {
+            JsonNode value = current.path(field);
+            if (value instanceof MissingNode) {
+                rebased.remove(field);
+            } else {
+                rebased.set(field, value);
+            }
+        }
+        try {
+            return (T) ObjectMapperUtils.treeToValue(rebased, latest.getClass());
+        } catch (JsonProcessingException e) {
+            throw new PdfJsonMappingException(e);
+        }
+    }
+
+    private static List<String> changedFields(JsonNode snapshot, JsonNode current) {
+        List<String> changedFields = new ArrayList<>();
+
+        Iterator<String> currentFields = current.fieldNames();
+        while (currentFields.hasNext()) {
+            String field = currentFields.next();
+            if (isPatchable(field) && !current.get(field).equals(snapshot.path(field))) {
+                changedFields.add(field);
+            }
+        }
+
+        Iterator<String> snapshotFields = snapshot.fieldNames();
+        while (snapshotFields.hasNext()) {
+            String field = snapshotFields.next();
+            if (isPatchable(field) && current.path(field) instanceof MissingNode) {
+                changedFields.add(field);
+            }
+        }
+        return changedFields;
+    }
+
+    private static boolean isPatchable(String field) {
+        return !ID_FIELD.equals(field) && !field.startsWith(SYSTEM_PROPERTY_PREFIX);
+    }
+
+    private static String path(String field) {
+        return "/" + field;
+    }
+}
@@ -0,0 +1,244 @@
+package it.gov.pagopa.receipt.pdf.generator.utils;
+
+import it.gov.pagopa.receipt.pdf.generator.entity.receipt.enumeration.ReasonErrorCode;
+import it.gov.pagopa.receipt.pdf.generator.model.PdfMetadata;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.HttpStatus;
+
+import javax.management.JMException;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static it.gov.pagopa.receipt.pdf.generator.utils.Constants.ALREADY_CREATED;
+
+/**
+ * Latency of each stage of the PDF generation, PDFs generated per message and their outcomes, labeled by function.
+ * <p>
+ * The metrics of a function are registered with {@link JmxMetrics}:
+ * <ul>
+ *     <li> {@code type=StageLatency,function=<name>,stage=<stage>} histogram of the stage duration, in milliseconds
+ *     <li> {@code type=PdfsPerMessage,function=<name>} histogram of the PDFs generated for each message
+ *     <li> {@code type=PdfOutcome,function=<name>,outcome=<outcome>} count of the PDFs generated with the outcome,
+ *     {@code GENERATED}, the {@link ReasonErrorCode} of the failure or {@code OTHER_ERROR}
+ *     <li> {@code type=DegradedRequeues,function=<name>} count of the messages requeued without being processed
+ *     because the PDF Engine was unhealthy
+ *     <li> {@code type=BlobProbe,function=<name>,result=<HIT|MISS>} count of the look ups, made on retry, of a PDF
+ *     already saved by a previous attempt
+ * </ul>
+ */
+@Slf4j
+public class GenerationMetrics {
+
+    public enum Stage {
+        MESSAGE_PARSE,
+        COSMOS_READ,
+        TEMPLATE_BUILD,
+        /**
+         * Look up on retry of the PDF saved by a previous attempt
+         */
+        BLOB_PROBE,
+        ENGINE_CALL,
+        BLOB_UPLOAD,
+        /**
+         * Verify of the generated PDFs, requeue on failure and save of the document
+         */
+        VERIFY_UPDATE
+    }
+
+    /**
+     * A stage of the generation, returning a value and throwing at most one checked exception
+     */
+    @FunctionalInterface
+    public interface StageCall<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    /**
+     * Read-only view of an outcome counter, as exposed over JMX
+     */
+    public interface OutcomeCounterMXBean {
+        long getCount();
+    }
+
+    public static final String OUTCOME_GENERATED = "GENERATED";
+    public static final String OUTCOME_OTHER_ERROR = "OTHER_ERROR";
+
+    private static final double[] LATENCY_BOUNDS_MILLIS = {1, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000};
+    private static final double[] PDFS_PER_MESSAGE_BOUNDS = {0, 1, 2, 3, 5, 10, 20, 50};
+
+    private final String functionName;
+    private final Map<Stage, Histogram> stageLatencies = new EnumMap<>(Stage.class);
+    private final Histogram pdfsPerMessage = new Histogram("PDFs generated for each message", PDFS_PER_MESSAGE_BOUNDS);
+    private final Map<String, OutcomeCounter> outcomes = new LinkedHashMap<>();
+    private final OutcomeCounter degradedRequeues = new OutcomeCounter();
+    private final OutcomeCounter blobProbeHits = new OutcomeCounter();
+    private final OutcomeCounter blobProbeMisses = new OutcomeCounter();
+
+    GenerationMetrics(String functionName) {
+        this.functionName = functionName;
+        for (Stage stage : Stage.values()) {
+            this.stageLatencies.put(stage, new Histogram(stage + " duration in milliseconds", LATENCY_BOUNDS_MILLIS));
+        }
+        this.outcomes.put(OUTCOME_GENERATED, new OutcomeCounter());
+        for (ReasonErrorCode reasonErrorCode : ReasonErrorCode.values()) {
+            this.outcomes.put(reasonErrorCode.name(), new OutcomeCounter());
+        }
+        this.outcomes.put(OUTCOME_OTHER_ERROR, new OutcomeCounter());
+    }
+
+    /**
+     * Bill Pugh singleton holder: the JVM guarantees that the class is loaded
+     * (and therefore INSTANCES initialized) lazily and in a thread-safe way.
+     */
+    private static class SingletonHelper {
+        private static final Map<String, GenerationMetrics> INSTANCES = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Retrieve the metrics of the function, registering them over JMX on first access
+     *
+     * @param functionName the name of the function, used as label
+     * @return the shared metrics of the function
+     */
+    public static GenerationMetrics getInstance(String functionName) {
+        return SingletonHelper.INSTANCES.computeIfAbsent(functionName, name -> new GenerationMetrics(name).register());
+    }
+
+    /**
+     * @return metrics kept only by the returned instance, for components not bound to a function
+     */
+    public static GenerationMetrics detached() {
+        return new GenerationMetrics("detached");
+    }
+
+    /**
+     * Run the stage, recording its duration whether it completes or fails
+     *
+     * @param stage the stage
+     * @param call  the stage execution
+     * @return the value returned by the stage
+     * @throws E the exception thrown by the stage
+     */
+    public <T, E extends Exception> T time(Stage stage, StageCall<T, E> call) throws E {
+        long start = System.nanoTime();
+        try {
+            return call.call();
+        } finally {
+            recordStage(stage, start);
+        }
+    }
+
+    /**
+     * Record the duration of a stage
+     *
+     * @param stage      the stage
+     * @param startNanos the {@link System#nanoTime()} at the start of the stage
+     */
+    public void recordStage(Stage stage, long startNanos) {
+        this.stageLatencies.get(stage).record((System.nanoTime() - startNanos) / 1_000_000.0);
+    }
+
+    /**
+     * Record the outcome of the PDFs generated for a message and their number,
+     * PDFs already created by a previous attempt are not counted
+     *
+     * @param pdfs the metadata of the PDFs of the message, null entries are ignored
+     */
+    public void recordPdfOutcomes(Collection<PdfMetadata> pdfs) {
+        int generated = 0;
+        for (PdfMetadata pdf : pdfs) {
+            if (pdf == null || pdf.getStatusCode() == ALREADY_CREATED) {
+                continue;
+            }
+            generated++;
+            this.outcomes.get(toOutcome(pdf.getStatusCode())).count.increment();
+        }
+        this.pdfsPerMessage.record(generated);
+    }
+
+    /**
+     * Record a message requeued without being processed because the PDF Engine was unhealthy
+     */
+    public void recordDegradedRequeue() {
+        this.degradedRequeues.count.increment();
+    }
+
+    /**
+     * Record the look up of a PDF already saved by a previous attempt
+     *
+     * @param hit true if the PDF was found and reused
+     */
+    public void recordBlobProbe(boolean hit) {
+        (hit ? this.blobProbeHits : this.blobProbeMisses).count.increment();
+    }
+
+    public Histogram getStageLatency(Stage stage) {
+        return this.stageLatencies.get(stage);
+    }
+
+    public Histogram getPdfsPerMessage() {
+        return this.pdfsPerMessage;
+    }
+
+    public long getOutcomeCount(String outcome) {
+        return this.outcomes.get(outcome).getCount();
+    }
+
+    public long getDegradedRequeues() {
+        return this.degradedRequeues.getCount();
+    }
+
+    public long getBlobProbeHits() {
+        return this.blobProbeHits.getCount();
+    }
+
+    public long getBlobProbeMisses() {
+        return this.blobProbeMisses.getCount();
+    }
+
+    private static String toOutcome(int statusCode) {
+        if (statusCode == HttpStatus.SC_OK) {
+            return OUTCOME_GENERATED;
+        }
+        for (ReasonErrorCode reasonErrorCode : ReasonErrorCode.values()) {
+            if (reasonErrorCode.getCode() == statusCode) {
+                return reasonErrorCode.name();
+            }
+        }
+        return OUTCOME_OTHER_ERROR;
+    }
+
+    private GenerationMetrics register() {
+        String function = ",function=" + this.functionName;
+        try {
+            for (Map.Entry<Stage, Histogram> stageLatency : this.stageLatencies.entrySet()) {
+                JmxMetrics.register(stageLatency.getValue(), "type=StageLatency" + function + ",stage=" + stageLatency.getKey());
+            }
+            JmxMetrics.register(this.pdfsPerMessage, "type=PdfsPerMessage" + function);
+            for (Map.Entry<String, OutcomeCounter> outcome : this.outcomes.entrySet()) {
+                JmxMetrics.register(outcome.getValue(), "type=PdfOutcome" + function + ",outcome=" + outcome.getKey());
+            }
+            JmxMetrics.register(this.degradedRequeues, "type=DegradedRequeues" + function);
+            JmxMetrics.register(this.blobProbeHits, "type=BlobProbe" + function + ",result=HIT");
+            JmxMetrics.register(this.blobProbeMisses, "type=BlobProbe" + function + ",result=MISS");
+        } catch (JMException e) {
+            // metrics are not worth failing the generation for
+            log.warn("Unable to register the generation metrics of function {}", this.functionName, e);
+        }
+        return this;
+    }
+
+    private static class OutcomeCounter implements OutcomeCounterMXBean {
+
+        private final LongAdder count = new LongAdder();
+
+        @Override
+        public long getCount() {
+            return this.count.sum();
+        }
+    }
+}
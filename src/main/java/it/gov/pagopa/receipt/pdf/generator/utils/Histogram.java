@@ -0,0 +1,159 @@
+package it.gov.pagopa.receipt.pdf.generator.utils;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ReflectionException;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram with fixed bucket bounds, exposed over JMX in the Prometheus layout:
+ * one cumulative counter per bucket ({@code Bucket_<bound>} and {@code Bucket_Inf}), plus {@code Count} and {@code Sum}.
+ * <p>
+ * Recording is lock-free, so the histogram can be shared by all the invocations running in the JVM.
+ */
+public class Histogram implements DynamicMBean {
+
+    private static final String COUNT = "Count";
+    private static final String SUM = "Sum";
+    private static final String BUCKET_PREFIX = "Bucket_";
+    private static final String BUCKET_INF = BUCKET_PREFIX + "Inf";
+
+    private final double[] bounds;
+    private final LongAdder[] buckets;
+    private final LongAdder count = new LongAdder();
+    private final DoubleAdder sum = new DoubleAdder();
+    private final MBeanInfo mBeanInfo;
+
+    /**
+     * @param description the description of the recorded values, with their unit
+     * @param bounds      the upper bounds of the buckets, in ascending order and without the infinite one
+     */
+    public Histogram(String description, double... bounds) {
+        this.bounds = bounds.clone();
+        this.buckets = new LongAdder[bounds.length + 1];
+        for (int i = 0; i < this.buckets.length; i++) {
+            this.buckets[i] = new LongAdder();
+        }
+
+        MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[this.buckets.length + 2];
+        attributes[0] = new MBeanAttributeInfo(COUNT, long.class.getName(), "Number of recorded values", true, false, false);
+        attributes[1] = new MBeanAttributeInfo(SUM, double.class.getName(), "Sum of the recorded values", true, false, false);
+        for (int i = 0; i < this.buckets.length; i++) {
+            attributes[i + 2] = new MBeanAttributeInfo(bucketName(i), long.class.getName(),
+                    "Number of recorded values less than or equal to the bound", true, false, false);
+        }
+        this.mBeanInfo = new MBeanInfo(Histogram.class.getName(), description, attributes, null, null, null);
+    }
+
+    /**
+     * Record a value
+     *
+     * @param value the value, in the unit of the bounds
+     */
+    public void record(double value) {
+        int bucket = 0;
+        while (bucket < this.bounds.length && value > this.bounds[bucket]) {
+            bucket++;
+        }
+        this.buckets[bucket].increment();
+        this.count.increment();
+        this.sum.add(value);
+    }
+
+    /**
+     * @return the number of recorded values
+     */
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    /**
+     * @return the sum of the recorded values
+     */
+    public double getSum() {
+        return this.sum.sum();
+    }
+
+    /**
+     * @param bound the upper bound of a bucket, {@link Double#POSITIVE_INFINITY} for the last one
+     * @return the number of recorded values less than or equal to the bound
+     */
+    public long getCumulativeCount(double bound) {
+        long cumulative = 0;
+        for (int i = 0; i < this.buckets.length; i++) {
+            cumulative += this.buckets[i].sum();
+            if (i < this.bounds.length && this.bounds[i] == bound) {
+                return cumulative;
+            }
+        }
+        if (bound == Double.POSITIVE_INFINITY) {
+            return cumulative;
+        }
+        throw new IllegalArgumentException("No bucket with bound " + bound);
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        if (COUNT.equals(attribute)) {
+            return getCount();
+        }
+        if (SUM.equals(attribute)) {
+            return getSum();
+        }
+        if (BUCKET_INF.equals(attribute)) {
+            return getCumulativeCount(Double.POSITIVE_INFINITY);
+        }
+        for (int i = 0; i < this.bounds.length; i++) {
+            if (bucketName(i).equals(attribute)) {
+                return getCumulativeCount(this.bounds[i]);
+            }
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            try {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (AttributeNotFoundException e) {
+                // unknown attributes are left out of the list, as defined by the interface
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Read-only attribute " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        return this.mBeanInfo;
+    }
+
+    private String bucketName(int index) {
+        if (index == this.bounds.length) {
+            return BUCKET_INF;
+        }
+        double bound = this.bounds[index];
+        return BUCKET_PREFIX + (bound == Math.rint(bound) ? String.valueOf((long) bound) : String.valueOf(bound).replace('.', '_'));
+    }
+}
@@ -0,0 +1,37 @@
+package it.gov.pagopa.receipt.pdf.generator.utils;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Registration of the application metrics on the platform MBean server,
+ * where the Prometheus JMX agent shipped with the image exports them.
+ */
+public final class JmxMetrics {
+
+    public static final String DOMAIN = "it.gov.pagopa.receipt.pdf.generator";
+
+    /**
+     * Hide from public usage.
+     */
+    private JmxMetrics() {
+    }
+
+    /**
+     * Register the MBean, replacing the one already registered with the same name (i.e. by a previous class loader)
+     *
+     * @param mBean         the MBean
+     * @param keyProperties the key properties of the name, starting with the type (e.g. {@code type=Foo,function=bar})
+     * @throws JMException if the name is not valid or the MBean is not compliant
+     */
+    public static void register(Object mBean, String keyProperties) throws JMException {
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName(DOMAIN + ":" + keyProperties);
+        if (mBeanServer.isRegistered(objectName)) {
+            mBeanServer.unregisterMBean(objectName);
+        }
+        mBeanServer.registerMBean(mBean, objectName);
+    }
+}
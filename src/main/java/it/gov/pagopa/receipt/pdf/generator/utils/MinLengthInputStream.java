@@ -0,0 +1,78 @@
+package it.gov.pagopa.receipt.pdf.generator.utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream that counts the bytes read from the wrapped stream and, once the end of the stream is reached,
+ * fails if less than the expected minimum length has been read.
+ * <p>
+ * Used to validate the PDF content while it is uploaded, without staging it on disk first.
+ */
+public class MinLengthInputStream extends FilterInputStream {
+
+    private final long minLength;
+    private long count;
+    private boolean belowMinLength;
+
+    public MinLengthInputStream(InputStream in, long minLength) {
+        super(in);
+        this.minLength = minLength;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int result = super.read();
+        if (result == -1) {
+            checkMinLength();
+        } else {
+            this.count++;
+        }
+        return result;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int result = super.read(b, off, len);
+        if (result == -1) {
+            checkMinLength();
+        } else {
+            this.count += result;
+        }
+        return result;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        this.count += skipped;
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * @return the number of bytes read so far
+     */
+    public long getCount() {
+        return this.count;
+    }
+
+    /**
+     * @return true if the end of the stream was reached before the minimum length
+     */
+    public boolean isBelowMinLength() {
+        return this.belowMinLength;
+    }
+
+    private void checkMinLength() throws IOException {
+        if (this.count < this.minLength) {
+            this.belowMinLength = true;
+            throw new IOException(String.format("Minimum length not reached: %s bytes read, %s expected", this.count, this.minLength));
+        }
+    }
+}
@@ -2,9 +2,12 @@ package it.gov.pagopa.receipt.pdf.generator.utils;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import it.gov.pagopa.receipt.pdf.generator.entity.event.BizEvent;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 public class ObjectMapperUtils {
@@ -49,4 +52,38 @@ public class ObjectMapperUtils {
     public static List<BizEvent> mapBizEventListString(final String string, TypeReference<List<BizEvent>> outClass) throws JsonProcessingException {
         return objectMapper.readValue(string, outClass);
     }
+
+    /**
+     * Maps the content of a stream to object of defined type, without reading it into a string first
+     *
+     * @param stream  Stream to map
+     * @param outType Type to be mapped to
+     * @param <T>     Defined type
+     * @return object of the defined type
+     */
+    public static <T> T mapStream(final InputStream stream, TypeReference<T> outType) throws IOException {
+        return objectMapper.readValue(stream, outType);
+    }
+
+    /**
+     * Maps an object to its JSON tree, as it is written on the documents
+     *
+     * @param value Object to be mapped
+     * @return the JSON tree of the object
+     */
+    public static JsonNode valueToTree(Object value) {
+        return objectMapper.valueToTree(value);
+    }
+
+    /**
+     * Maps a JSON tree to object of defined Class
+     *
+     * @param tree     JSON tree to map
+     * @param outClass Class to be mapped to
+     * @param <T>      Defined Class
+     * @return object of the defined Class
+     */
+    public static <T> T treeToValue(JsonNode tree, Class<T> outClass) throws JsonProcessingException {
+        return objectMapper.treeToValue(tree, outClass);
+    }
 }
@@ -0,0 +1,226 @@
+package it.gov.pagopa.receipt.pdf.generator.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+
+import javax.management.JMException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Breakdown of the calls to the PDF Engine made by the pooled client, gauges of its connection pool and retry counters.
+ * <p>
+ * Registered with {@link JmxMetrics}:
+ * <ul>
+ *     <li> {@code type=PdfEngineCallPhase,phase=<phase>} histogram of the phase duration, in milliseconds
+ *     <li> {@code type=PdfEngineConnectionPool,route=<host_port>} leased, pending, available and max connections
+ *     of the route, {@code route=total} for the whole pool
+ *     <li> {@code type=PdfEngineRetries} requests retried and failures not retried by the retry handler
+ * </ul>
+ * A slow render shows up in the time to first byte, pool starvation in the lease wait and in the pending gauge.
+ */
+@Slf4j
+public class PdfEngineCallMetrics {
+
+    public enum Phase {
+        /**
+         * Wait for a connection from the pool, bounded by the connection request timeout
+         */
+        LEASE_WAIT,
+        /**
+         * TCP connect and TLS handshake, only for the calls opening a new connection
+         */
+        CONNECT,
+        /**
+         * Write of the request line, headers and multipart body
+         */
+        REQUEST_UPLOAD,
+        /**
+         * From the request sent to the response headers received, i.e. the render time of the PDF Engine
+         */
+        TIME_TO_FIRST_BYTE,
+        /**
+         * Read of the response body, for streamed PDFs it lasts until the consumer closes the stream
+         */
+        BODY_DOWNLOAD
+    }
+
+    /**
+     * Connection pool gauges, as exposed over JMX
+     */
+    public interface ConnectionPoolMXBean {
+        int getLeased();
+
+        int getPending();
+
+        int getAvailable();
+
+        int getMax();
+    }
+
+    /**
+     * Retry handler counters, as exposed over JMX
+     */
+    public interface RetriesMXBean {
+        long getRetried();
+
+        long getNotRetried();
+    }
+
+    private static final double[] LATENCY_BOUNDS_MILLIS = {1, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000};
+
+    private final Map<Phase, Histogram> phaseLatencies = new EnumMap<>(Phase.class);
+    private final Retries retries = new Retries();
+    private final Set<HttpRoute> observedRoutes = ConcurrentHashMap.newKeySet();
+    private final boolean exported;
+    private volatile PoolingHttpClientConnectionManager connectionPool;
+
+    PdfEngineCallMetrics(boolean exported) {
+        this.exported = exported;
+        for (Phase phase : Phase.values()) {
+            this.phaseLatencies.put(phase, new Histogram(phase + " duration in milliseconds", LATENCY_BOUNDS_MILLIS));
+        }
+        if (exported) {
+            register(() -> {
+                for (Map.Entry<Phase, Histogram> phaseLatency : this.phaseLatencies.entrySet()) {
+                    JmxMetrics.register(phaseLatency.getValue(), "type=PdfEngineCallPhase,phase=" + phaseLatency.getKey());
+                }
+                JmxMetrics.register(this.retries, "type=PdfEngineRetries");
+            });
+        }
+    }
+
+    /**
+     * Bill Pugh singleton holder: the JVM guarantees that the class is loaded
+     * (and therefore INSTANCE initialized) lazily and in a thread-safe way.
+     */
+    private static class SingletonHelper {
+        private static final PdfEngineCallMetrics INSTANCE = new PdfEngineCallMetrics(true);
+    }
+
+    public static PdfEngineCallMetrics getInstance() {
+        return SingletonHelper.INSTANCE;
+    }
+
+    /**
+     * Record the duration of a phase
+     *
+     * @param phase      the phase
+     * @param startNanos the {@link System#nanoTime()} at the start of the phase
+     */
+    public void recordPhase(Phase phase, long startNanos) {
+        this.phaseLatencies.get(phase).record((System.nanoTime() - startNanos) / 1_000_000.0);
+    }
+
+    /**
+     * Record the decision of the retry handler on a failed request
+     *
+     * @param retried true if the request is going to be retried
+     */
+    public void recordRetryDecision(boolean retried) {
+        (retried ? this.retries.retried : this.retries.notRetried).increment();
+    }
+
+    /**
+     * Expose the gauges of the pool, the routes are added as they are requested with {@link #observeRoute(HttpRoute)}
+     *
+     * @param connectionPool the connection pool of the client
+     */
+    public void bindConnectionPool(PoolingHttpClientConnectionManager connectionPool) {
+        this.connectionPool = connectionPool;
+        if (this.exported) {
+            register(() -> JmxMetrics.register(new ConnectionPool(connectionPool::getTotalStats), "type=PdfEngineConnectionPool,route=total"));
+        }
+    }
+
+    /**
+     * Expose the gauges of the route the first time it is requested
+     *
+     * @param route the route of a connection request
+     */
+    public void observeRoute(HttpRoute route) {
+        if (!this.exported || this.connectionPool == null || !this.observedRoutes.add(route)) {
+            return;
+        }
+        PoolingHttpClientConnectionManager pool = this.connectionPool;
+        String routeName = (route.getTargetHost().getHostName() + "_" + route.getTargetHost().getPort()).replaceAll("\\W", "_");
+        register(() -> JmxMetrics.register(new ConnectionPool(() -> pool.getStats(route)), "type=PdfEngineConnectionPool,route=" + routeName));
+    }
+
+    public Histogram getPhaseLatency(Phase phase) {
+        return this.phaseLatencies.get(phase);
+    }
+
+    public long getRetried() {
+        return this.retries.getRetried();
+    }
+
+    public long getNotRetried() {
+        return this.retries.getNotRetried();
+    }
+
+    private static void register(JmxRegistration registration) {
+        try {
+            registration.run();
+        } catch (JMException e) {
+            // metrics are not worth failing the call for
+            log.warn("Unable to register the PDF Engine call metrics", e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface JmxRegistration {
+        void run() throws JMException;
+    }
+
+    private static class ConnectionPool implements ConnectionPoolMXBean {
+
+        private final Supplier<PoolStats> stats;
+
+        private ConnectionPool(Supplier<PoolStats> stats) {
+            this.stats = stats;
+        }
+
+        @Override
+        public int getLeased() {
+            return this.stats.get().getLeased();
+        }
+
+        @Override
+        public int getPending() {
+            return this.stats.get().getPending();
+        }
+
+        @Override
+        public int getAvailable() {
+            return this.stats.get().getAvailable();
+        }
+
+        @Override
+        public int getMax() {
+            return this.stats.get().getMax();
+        }
+    }
+
+    private static class Retries implements RetriesMXBean {
+
+        private final LongAdder retried = new LongAdder();
+        private final LongAdder notRetried = new LongAdder();
+
+        @Override
+        public long getRetried() {
+            return this.retried.sum();
+        }
+
+        @Override
+        public long getNotRetried() {
+            return this.notRetried.sum();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package it.gov.pagopa.receipt.pdf.generator.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Bounded executor shared by the receipt and cart generation services to run the
+ * template build, PDF Engine call and blob upload of different PDFs concurrently,
+ * and by the retry-reviewed processors to handle the items of a trigger batch concurrently.
+ * <p>
+ * The pool size caps the number of tasks run in parallel by the whole JVM, on top of the
+ * work done by the invoking threads. Fan-outs (i.e. carts, retry-reviewed batches) can hold only a share of the pool,
+ * defined by a global number of permits, so that they cannot starve single receipts.
+ */
+@Slf4j
+public class PdfGenerationExecutor {
+
+    private static final int MAX_PARALLELISM = Integer.parseInt(
+            System.getenv().getOrDefault("PDF_GENERATION_MAX_PARALLELISM", "16"));
+    private static final int FAN_OUT_GLOBAL_LIMIT = Integer.parseInt(
+            System.getenv().getOrDefault("PDF_CART_GENERATION_GLOBAL_LIMIT", String.valueOf(Math.max(1, MAX_PARALLELISM / 2))));
+
+    private final ExecutorService executorService;
+    private final Semaphore fanOutPermits;
+
+    PdfGenerationExecutor(ExecutorService executorService, int fanOutGlobalLimit) {
+        this.executorService = executorService;
+        this.fanOutPermits = new Semaphore(fanOutGlobalLimit);
+    }
+
+    /**
+     * Bill Pugh singleton holder: the JVM guarantees that the class is loaded
+     * (and therefore INSTANCE initialized) lazily and in a thread-safe way.
+     */
+    private static class SingletonHelper {
+        private static final PdfGenerationExecutor INSTANCE = new PdfGenerationExecutor(
+                Executors.newFixedThreadPool(MAX_PARALLELISM, new DaemonThreadFactory()),
+                FAN_OUT_GLOBAL_LIMIT);
+    }
+
+    public static PdfGenerationExecutor getInstance() {
+        return SingletonHelper.INSTANCE;
+    }
+
+    /**
+     * Submit a generation task to the shared pool
+     *
+     * @param task the task to execute
+     * @param <T>  the task result type
+     * @return the future result of the task
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(task, this.executorService);
+    }
+
+    /**
+     * Run all the tasks with at most {@code maxParallelism} of them in flight, returning when all of them completed.
+     * <p>
+     * Tasks are expected to handle their own errors, unexpected exceptions are logged and do not stop the others.
+     *
+     * @param tasks          the tasks to execute
+     * @param maxParallelism max number of tasks executed at the same time, invoking thread included
+     * @see #forEach(Collection, int, Consumer, BiConsumer)
+     */
+    public void runAll(Collection<Runnable> tasks, int maxParallelism) {
+        forEach(tasks, maxParallelism, Runnable::run,
+                (task, e) -> log.error("Unexpected error running PDF generation task", e));
+    }
+
+    /**
+     * Apply the action to every item, with at most {@code maxParallelism} items in flight, returning when all of
+     * them completed.
+     * <p>
+     * The invoking thread takes part in the work, so the items always progress even when no pool thread is available.
+     * Pool threads are used only while shared fan-out permits are available, each one drains the same item queue.
+     * Each item is handed to exactly one thread, therefore its state can be updated without further synchronization
+     * and is visible to the invoking thread once this method returns.
+     * If the action fails unexpectedly the item is passed to the error handler, on the same thread,
+     * so that every item ends up handled exactly once.
+     *
+     * @param items          the items to handle
+     * @param maxParallelism max number of items handled at the same time, invoking thread included
+     * @param action         the action to apply to each item
+     * @param onError        the handler of the items whose action threw an exception
+     * @param <T>            the item type
+     */
+    public <T> void forEach(
+            Collection<T> items,
+            int maxParallelism,
+            Consumer<T> action,
+            BiConsumer<T, RuntimeException> onError
+    ) {
+        Queue<T> queue = new ConcurrentLinkedQueue<>(items);
+        int helpers = Math.min(maxParallelism, items.size()) - 1;
+
+        List<CompletableFuture<Void>> helperFutures = new ArrayList<>();
+        for (int i = 0; i < helpers && this.fanOutPermits.tryAcquire(); i++) {
+            try {
+                helperFutures.add(CompletableFuture
+                        .runAsync(() -> drain(queue, action, onError), this.executorService)
+                        .whenComplete((result, throwable) -> this.fanOutPermits.release()));
+            } catch (RejectedExecutionException e) {
+                this.fanOutPermits.release();
+                break;
+            }
+        }
+
+        drain(queue, action, onError);
+        helperFutures.forEach(CompletableFuture::join);
+    }
+
+    /**
+     * @return the fan-out permits not currently held
+     */
+    public int getAvailableFanOutPermits() {
+        return this.fanOutPermits.availablePermits();
+    }
+
+    private static <T> void drain(Queue<T> queue, Consumer<T> action, BiConsumer<T, RuntimeException> onError) {
+        T item;
+        while ((item = queue.poll()) != null) {
+            try {
+                action.accept(item);
+            } catch (RuntimeException e) {
+                try {
+                    onError.accept(item, e);
+                } catch (RuntimeException handlerException) {
+                    log.error("Unexpected error handling the failure of a fan-out item", handlerException);
+                }
+            }
+        }
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "pdf-generation-" + this.counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
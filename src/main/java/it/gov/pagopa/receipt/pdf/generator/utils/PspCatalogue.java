@@ -0,0 +1,124 @@
+package it.gov.pagopa.receipt.pdf.generator.utils;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import it.gov.pagopa.receipt.pdf.generator.exception.PdfJsonMappingException;
+import it.gov.pagopa.receipt.pdf.generator.model.PspConfiguration;
+import it.gov.pagopa.receipt.pdf.generator.model.template.PSP;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Typed and immutable index of the static PSP configuration, keyed by idPsp.
+ * <p>
+ * The configuration file is parsed on first access instead of at class initialization of the template service.
+ * The {@link PSP} template object of each requested idPsp is built once and memoized. Only configured PSPs are
+ * memoized, so the memo never grows beyond the index whatever idPsp the events carry.
+ */
+@Slf4j
+public class PspCatalogue {
+
+    private static final String PSP_CONFIG_FILE_JSON_FILE_NAME = "psp_config_file.json";
+    private static final TypeReference<Map<String, PspConfiguration>> INDEX_TYPE = new TypeReference<>() {
+    };
+
+    private final Map<String, PspConfiguration> index;
+    private final Map<String, PSP> pspTemplates = new ConcurrentHashMap<>();
+
+    PspCatalogue(Map<String, PspConfiguration> index) {
+        this.index = Map.copyOf(index);
+    }
+
+    /**
+     * Bill Pugh singleton holder: the JVM guarantees that the class is loaded
+     * (and therefore INSTANCE initialized) lazily and in a thread-safe way.
+     */
+    private static class SingletonHelper {
+        private static final PspCatalogue INSTANCE = load(PSP_CONFIG_FILE_JSON_FILE_NAME);
+    }
+
+    public static PspCatalogue getInstance() {
+        return SingletonHelper.INSTANCE;
+    }
+
+    /**
+     * Build a catalogue from a classpath resource, mapping the JSON straight from the stream into typed entries
+     *
+     * @param resourceName the name of the classpath resource
+     * @return the catalogue
+     * @throws PdfJsonMappingException if the resource does not exist or cannot be parsed
+     */
+    public static PspCatalogue load(String resourceName) {
+        long start = System.nanoTime();
+        try (InputStream data = PspCatalogue.class.getClassLoader().getResourceAsStream(resourceName)) {
+            if (data == null) {
+                throw new IOException("PSP config file not found");
+            }
+            PspCatalogue catalogue = read(data);
+            log.info("PSP catalogue {} loaded: {} PSPs in {} ms", resourceName, catalogue.size(), (System.nanoTime() - start) / 1_000_000);
+            return catalogue;
+        } catch (IOException e) {
+            throw new PdfJsonMappingException(e);
+        }
+    }
+
+    /**
+     * Build a catalogue from the JSON configuration content
+     *
+     * @param data the configuration content, not closed by this method
+     * @return the catalogue
+     * @throws IOException if the content cannot be parsed
+     */
+    public static PspCatalogue read(InputStream data) throws IOException {
+        return new PspCatalogue(ObjectMapperUtils.mapStream(data, INDEX_TYPE));
+    }
+
+    /**
+     * Retrieve the PSP template object for the provided idPsp.
+     * <p>
+     * The memoized instance is never handed out: each call returns a copy that the caller can freely update
+     * with per-request data such as the fee.
+     *
+     * @param idPsp the PSP identifier
+     * @return a copy of the memoized PSP, empty if the PSP is not configured
+     */
+    public Optional<PSP> getPspTemplate(String idPsp) {
+        PspConfiguration configuration = this.index.get(idPsp);
+        if (configuration == null) {
+            return Optional.empty();
+        }
+        return Optional.of(this.pspTemplates.computeIfAbsent(idPsp, id -> toPsp(configuration)).toBuilder().build());
+    }
+
+    /**
+     * @param idPsp the PSP identifier
+     * @return the typed configuration entry, empty if the PSP is not configured
+     */
+    public Optional<PspConfiguration> getConfiguration(String idPsp) {
+        return Optional.ofNullable(this.index.get(idPsp));
+    }
+
+    /**
+     * @return the number of configured PSPs
+     */
+    public int size() {
+        return this.index.size();
+    }
+
+    private static PSP toPsp(PspConfiguration configuration) {
+        return PSP.builder()
+                .name(configuration.getName())
+                .companyName(configuration.getCompanyName())
+                .address(configuration.getAddress())
+                .city(configuration.getCity())
+                .province(configuration.getProvince())
+                .buildingNumber(configuration.getBuildingNumber())
+                .postalCode(configuration.getPostalCode())
+                .logo(configuration.getLogo())
+                .build();
+    }
+}
@@ -4,8 +4,11 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import it.gov.pagopa.receipt.pdf.generator.entity.event.BizEvent;
 import it.gov.pagopa.receipt.pdf.generator.entity.receipt.ReceiptMetadata;
+import it.gov.pagopa.receipt.pdf.generator.entity.receipt.enumeration.ReasonErrorCode;
 import it.gov.pagopa.receipt.pdf.generator.exception.BizEventNotValidException;
+import it.gov.pagopa.receipt.pdf.generator.model.PdfMetadata;
 import org.apache.commons.io.FileUtils;
+import org.apache.http.HttpStatus;
 import org.slf4j.Logger;
 
 import java.io.File;
@@ -16,8 +19,11 @@ import java.nio.file.Path;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.Collection;
 import java.util.List;
 
+import static it.gov.pagopa.receipt.pdf.generator.utils.Constants.ALREADY_CREATED;
+
 public class ReceiptGeneratorUtils {
 
     private static final String WORKING_DIRECTORY_PATH = System.getenv().getOrDefault("WORKING_DIRECTORY_PATH", "");
@@ -87,4 +93,25 @@ public class ReceiptGeneratorUtils {
                 && !receiptMetadata.getUrl().isEmpty()
                 && !receiptMetadata.getName().isEmpty();
     }
+
+    /**
+     * Tell if the failed PDFs of a message were all rejected by the circuit breaker of the PDF Engine,
+     * i.e. the engine was not reached and the failure says nothing about the receipt
+     *
+     * @param pdfs the metadata of the PDFs of the message, null entries are ignored
+     * @return true if at least one PDF was rejected and no PDF failed for another reason
+     */
+    public static boolean isPdfEngineUnavailable(Collection<PdfMetadata> pdfs) {
+        boolean rejected = false;
+        for (PdfMetadata pdf : pdfs) {
+            if (pdf == null || pdf.getStatusCode() == HttpStatus.SC_OK || pdf.getStatusCode() == ALREADY_CREATED) {
+                continue;
+            }
+            if (pdf.getStatusCode() != ReasonErrorCode.ERROR_PDF_ENGINE_UNAVAILABLE.getCode()) {
+                return false;
+            }
+            rejected = true;
+        }
+        return rejected;
+    }
 }
@@ -0,0 +1,223 @@
+package it.gov.pagopa.receipt.pdf.generator.utils;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import it.gov.pagopa.receipt.pdf.generator.model.template.Cart;
+import it.gov.pagopa.receipt.pdf.generator.model.template.Debtor;
+import it.gov.pagopa.receipt.pdf.generator.model.template.Item;
+import it.gov.pagopa.receipt.pdf.generator.model.template.PSP;
+import it.gov.pagopa.receipt.pdf.generator.model.template.PSPFee;
+import it.gov.pagopa.receipt.pdf.generator.model.template.Payee;
+import it.gov.pagopa.receipt.pdf.generator.model.template.PaymentMethod;
+import it.gov.pagopa.receipt.pdf.generator.model.template.ReceiptPDFTemplate;
+import it.gov.pagopa.receipt.pdf.generator.model.template.RefNumber;
+import it.gov.pagopa.receipt.pdf.generator.model.template.Transaction;
+import it.gov.pagopa.receipt.pdf.generator.model.template.User;
+import it.gov.pagopa.receipt.pdf.generator.model.template.UserData;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Reflection-free JSON writer of {@link ReceiptPDFTemplate}, it writes the template with a {@link JsonGenerator}
+ * straight into the provided stream without building the JSON string first.
+ * <p>
+ * The output is the same of the {@code ObjectMapper} serialization: null fields are omitted
+ * (the template classes are all annotated with {@code @JsonInclude(NON_NULL)}).
+ * Any field added to the template classes must be added here as well.
+ */
+public class ReceiptTemplateJsonWriter {
+
+    private static final JsonFactory JSON_FACTORY = JsonFactory.builder().build();
+    private static final int BUFFER_INITIAL_SIZE = 4096;
+
+    /**
+     * Hide from public usage.
+     */
+    private ReceiptTemplateJsonWriter() {
+    }
+
+    /**
+     * Write the template as UTF-8 JSON, the stream is flushed but not closed
+     *
+     * @param template the template to write, a null template is written as JSON null
+     * @param out      the target stream
+     * @throws IOException if the stream cannot be written
+     */
+    public static void write(ReceiptPDFTemplate template, OutputStream out) throws IOException {
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+            writeTemplate(generator, template);
+        }
+    }
+
+    /**
+     * Write the template as UTF-8 JSON into a new array
+     *
+     * @param template the template to write, a null template is written as JSON null
+     * @return the encoded template
+     * @throws IOException if the template cannot be written
+     */
+    public static byte[] writeValueAsBytes(ReceiptPDFTemplate template) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_INITIAL_SIZE);
+        write(template, out);
+        return out.toByteArray();
+    }
+
+    private static void writeTemplate(JsonGenerator generator, ReceiptPDFTemplate template) throws IOException {
+        if (template == null) {
+            generator.writeNull();
+            return;
+        }
+        generator.writeStartObject();
+        writeString(generator, "serviceCustomerId", template.getServiceCustomerId());
+        if (template.getTransaction() != null) {
+            generator.writeFieldName("transaction");
+            writeTransaction(generator, template.getTransaction());
+        }
+        if (template.getUser() != null) {
+            generator.writeFieldName("user");
+            writeUser(generator, template.getUser());
+        }
+        if (template.getCart() != null) {
+            generator.writeFieldName("cart");
+            writeCart(generator, template.getCart());
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeTransaction(JsonGenerator generator, Transaction transaction) throws IOException {
+        generator.writeStartObject();
+        writeString(generator, "timestamp", transaction.getTimestamp());
+        writeString(generator, "amount", transaction.getAmount());
+        if (transaction.getPsp() != null) {
+            generator.writeFieldName("psp");
+            writePsp(generator, transaction.getPsp());
+        }
+        writeString(generator, "rrn", transaction.getRrn());
+        writeString(generator, "authCode", transaction.getAuthCode());
+        if (transaction.getPaymentMethod() != null) {
+            generator.writeFieldName("paymentMethod");
+            writePaymentMethod(generator, transaction.getPaymentMethod());
+        }
+        generator.writeBooleanField("requestedByDebtor", transaction.isRequestedByDebtor());
+        generator.writeBooleanField("processedByPagoPA", transaction.isProcessedByPagoPA());
+        generator.writeEndObject();
+    }
+
+    private static void writePsp(JsonGenerator generator, PSP psp) throws IOException {
+        generator.writeStartObject();
+        writeString(generator, "name", psp.getName());
+        if (psp.getFee() != null) {
+            generator.writeFieldName("fee");
+            writePspFee(generator, psp.getFee());
+        }
+        writeString(generator, "companyName", psp.getCompanyName());
+        writeString(generator, "logo", psp.getLogo());
+        writeString(generator, "address", psp.getAddress());
+        writeString(generator, "buildingNumber", psp.getBuildingNumber());
+        writeString(generator, "postalCode", psp.getPostalCode());
+        writeString(generator, "city", psp.getCity());
+        writeString(generator, "province", psp.getProvince());
+        generator.writeEndObject();
+    }
+
+    private static void writePspFee(JsonGenerator generator, PSPFee fee) throws IOException {
+        generator.writeStartObject();
+        writeString(generator, "amount", fee.getAmount());
+        generator.writeEndObject();
+    }
+
+    private static void writePaymentMethod(JsonGenerator generator, PaymentMethod paymentMethod) throws IOException {
+        generator.writeStartObject();
+        writeString(generator, "name", paymentMethod.getName());
+        writeString(generator, "logo", paymentMethod.getLogo());
+        writeString(generator, "accountHolder", paymentMethod.getAccountHolder());
+        generator.writeEndObject();
+    }
+
+    private static void writeUser(JsonGenerator generator, User user) throws IOException {
+        generator.writeStartObject();
+        if (user.getData() != null) {
+            generator.writeFieldName("data");
+            writeUserData(generator, user.getData());
+        }
+        writeString(generator, "email", user.getEmail());
+        generator.writeEndObject();
+    }
+
+    private static void writeUserData(JsonGenerator generator, UserData userData) throws IOException {
+        generator.writeStartObject();
+        writeString(generator, "fullName", userData.getFullName());
+        writeString(generator, "taxCode", userData.getTaxCode());
+        generator.writeEndObject();
+    }
+
+    private static void writeCart(JsonGenerator generator, Cart cart) throws IOException {
+        generator.writeStartObject();
+        List<Item> items = cart.getItems();
+        if (items != null) {
+            generator.writeArrayFieldStart("items");
+            for (Item item : items) {
+                writeItem(generator, item);
+            }
+            generator.writeEndArray();
+        }
+        writeString(generator, "amountPartial", cart.getAmountPartial());
+        generator.writeBooleanField("hideFeesAndTotals", cart.isHideFeesAndTotals());
+        generator.writeEndObject();
+    }
+
+    private static void writeItem(JsonGenerator generator, Item item) throws IOException {
+        if (item == null) {
+            generator.writeNull();
+            return;
+        }
+        generator.writeStartObject();
+        if (item.getRefNumber() != null) {
+            generator.writeFieldName("refNumber");
+            writeRefNumber(generator, item.getRefNumber());
+        }
+        if (item.getDebtor() != null) {
+            generator.writeFieldName("debtor");
+            writeDebtor(generator, item.getDebtor());
+        }
+        if (item.getPayee() != null) {
+            generator.writeFieldName("payee");
+            writePayee(generator, item.getPayee());
+        }
+        writeString(generator, "subject", item.getSubject());
+        writeString(generator, "amount", item.getAmount());
+        generator.writeEndObject();
+    }
+
+    private static void writeRefNumber(JsonGenerator generator, RefNumber refNumber) throws IOException {
+        generator.writeStartObject();
+        writeString(generator, "type", refNumber.getType());
+        writeString(generator, "value", refNumber.getValue());
+        generator.writeEndObject();
+    }
+
+    private static void writeDebtor(JsonGenerator generator, Debtor debtor) throws IOException {
+        generator.writeStartObject();
+        writeString(generator, "fullName", debtor.getFullName());
+        writeString(generator, "taxCode", debtor.getTaxCode());
+        generator.writeEndObject();
+    }
+
+    private static void writePayee(JsonGenerator generator, Payee payee) throws IOException {
+        generator.writeStartObject();
+        writeString(generator, "name", payee.getName());
+        writeString(generator, "taxCode", payee.getTaxCode());
+        generator.writeEndObject();
+    }
+
+    private static void writeString(JsonGenerator generator, String fieldName, String value) throws IOException {
+        if (value != null) {
+            generator.writeStringField(fieldName, value);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package it.gov.pagopa.receipt.pdf.generator.utils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import it.gov.pagopa.receipt.pdf.generator.entity.receipt.enumeration.ReasonErrorCode;
+import it.gov.pagopa.receipt.pdf.generator.exception.PdfJsonMappingException;
+import it.gov.pagopa.receipt.pdf.generator.model.PdfMetadata;
+import org.apache.http.HttpStatus;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static it.gov.pagopa.receipt.pdf.generator.utils.Constants.ALREADY_CREATED;
+
+/**
+ * Visibility delay of the messages requeued after a failed generation: exponential backoff on the number of retries
+ * with equal jitter, so the failed messages neither come back at once nor in sync.
+ * <p>
+ * The delay is random between half and the whole of {@code min(max, base * 2^numRetry)} seconds, and at least 1 second
+ * when the ceiling is not 0. The base depends on the {@link ReasonErrorCode} of the failure, i.e.
+ * {@code {"ERROR_BLOB_STORAGE": 2, "ERROR_PDF_ENGINE": 30}} in {@code REQUEUE_BACKOFF_BASE_SECONDS_MAP}, and is
+ * {@code REQUEUE_BACKOFF_BASE_SECONDS} for the other failures. The failures of the PDF Engine, marked by
+ * {@link PdfMetadata#getReasonErrorCode()}, count as {@link ReasonErrorCode#ERROR_PDF_ENGINE}.
+ */
+public class RequeueBackoff {
+
+    /**
+     * Max visibility timeout of a message of an Azure Storage queue
+     */
+    public static final long QUEUE_MAX_DELAY_SECONDS = Duration.ofDays(7).getSeconds();
+
+    private final long defaultBaseSeconds;
+    private final Map<ReasonErrorCode, Long> baseSeconds;
+    private final long maxSeconds;
+
+    /**
+     * @param defaultBaseSeconds the base of the failures without a configured one
+     * @param baseSeconds        the base of each {@link ReasonErrorCode}
+     * @param maxSeconds         the cap of the delay, at most {@link #QUEUE_MAX_DELAY_SECONDS}
+     */
+    public RequeueBackoff(long defaultBaseSeconds, Map<ReasonErrorCode, Long> baseSeconds, long maxSeconds) {
+        this.defaultBaseSeconds = defaultBaseSeconds;
+        this.baseSeconds = baseSeconds.isEmpty() ? new EnumMap<>(ReasonErrorCode.class) : new EnumMap<>(baseSeconds);
+        this.maxSeconds = Math.min(maxSeconds, QUEUE_MAX_DELAY_SECONDS);
+    }
+
+    /**
+     * Bill Pugh singleton holder: the JVM guarantees that the class is loaded
+     * (and therefore INSTANCE initialized) lazily and in a thread-safe way.
+     */
+    private static class SingletonHelper {
+        private static final RequeueBackoff INSTANCE = fromEnvironment();
+    }
+
+    public static RequeueBackoff getInstance() {
+        return SingletonHelper.INSTANCE;
+    }
+
+    /**
+     * Compute the delay of a message, the longest base among the failed PDFs is used
+     *
+     * @param numRetry the retries already made for the message
+     * @param pdfs     the metadata of the PDFs of the message, null entries are ignored
+     * @return the visibility delay of the requeued message
+     */
+    public Duration nextDelay(int numRetry, Collection<PdfMetadata> pdfs) {
+        long base = 0;
+        for (PdfMetadata pdf : pdfs) {
+            if (pdf != null && pdf.getStatusCode() != HttpStatus.SC_OK && pdf.getStatusCode() != ALREADY_CREATED) {
+                base = Math.max(base, getBaseSeconds(pdf));
+            }
+        }
+        long ceiling = getCeilingSeconds(numRetry, base > 0 ? base : this.defaultBaseSeconds);
+        long floor = (ceiling + 1) / 2;
+        return Duration.ofSeconds(floor + ThreadLocalRandom.current().nextLong(ceiling - floor + 1));
+    }
+
+    /**
+     * @param pdf the metadata of a failed PDF
+     * @return the backoff base of the failure, in seconds
+     */
+    long getBaseSeconds(PdfMetadata pdf) {
+        for (Map.Entry<ReasonErrorCode, Long> base : this.baseSeconds.entrySet()) {
+            if (base.getKey().getCode() == pdf.getStatusCode()) {
+                return base.getValue();
+            }
+        }
+        if (pdf.getReasonErrorCode() != null) {
+            return this.baseSeconds.getOrDefault(pdf.getReasonErrorCode(), this.defaultBaseSeconds);
+        }
+        return this.defaultBaseSeconds;
+    }
+
+    /**
+     * @return the upper bound of the jittered delay, {@code min(max, base * 2^numRetry)} seconds
+     */
+    long getCeilingSeconds(int numRetry, long base) {
+        int exponent = Math.max(numRetry, 0);
+        if (base <= 0) {
+            return 0;
+        }
+        if (exponent >= Long.SIZE - 1 || base > (this.maxSeconds >> exponent)) {
+            return this.maxSeconds;
+        }
+        return base << exponent;
+    }
+
+    private static RequeueBackoff fromEnvironment() {
+        long defaultBaseSeconds = Long.parseLong(System.getenv().getOrDefault("REQUEUE_BACKOFF_BASE_SECONDS", "1"));
+        long maxSeconds = Long.parseLong(System.getenv().getOrDefault(
+                "REQUEUE_BACKOFF_MAX_SECONDS", String.valueOf(QUEUE_MAX_DELAY_SECONDS)));
+        Map<ReasonErrorCode, Long> baseSeconds = new EnumMap<>(ReasonErrorCode.class);
+        try {
+            Map<?, ?> configured = ObjectMapperUtils.mapString(System.getenv().getOrDefault(
+                    "REQUEUE_BACKOFF_BASE_SECONDS_MAP", "{\"ERROR_BLOB_STORAGE\":2,\"ERROR_PDF_ENGINE\":30}"), Map.class);
+            for (Map.Entry<?, ?> entry : configured.entrySet()) {
+                baseSeconds.put(ReasonErrorCode.valueOf(entry.getKey().toString()), ((Number) entry.getValue()).longValue());
+            }
+        } catch (JsonProcessingException e) {
+            throw new PdfJsonMappingException(e);
+        }
+        return new RequeueBackoff(defaultBaseSeconds, baseSeconds, maxSeconds);
+    }
+}
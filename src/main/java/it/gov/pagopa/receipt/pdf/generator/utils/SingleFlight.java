@@ -0,0 +1,126 @@
+package it.gov.pagopa.receipt.pdf.generator.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.management.JMException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Keyed single-flight registry: while a call is in flight for a key, the concurrent calls with the same key
+ * wait for it and share its result (or its exception) instead of running again.
+ * <p>
+ * Only concurrent calls are collapsed, nothing is cached once the call completes.
+ * Once registered with {@link #register(String)}, the executed and collapsed calls are exposed as
+ * {@code type=SingleFlight,name=<name>}.
+ *
+ * @param <K> the type of the key
+ * @param <V> the type of the shared result
+ */
+@Slf4j
+public class SingleFlight<K, V> {
+
+    /**
+     * Single-flight counters, as exposed over JMX
+     */
+    public interface SingleFlightMXBean {
+        long getExecuted();
+
+        long getCollapsed();
+
+        int getInFlight();
+    }
+
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder collapsed = new LongAdder();
+
+    /**
+     * Run the call, or wait for the one in flight with the same key
+     *
+     * @param key  the key identifying the work
+     * @param call the work to run when none is in flight for the key
+     * @return the result of the call, shared by all the concurrent callers
+     */
+    public V execute(K key, Supplier<V> call) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> leader = this.inFlight.putIfAbsent(key, flight);
+        if (leader != null) {
+            this.collapsed.increment();
+            return await(leader);
+        }
+
+        this.executed.increment();
+        try {
+            V result = call.get();
+            flight.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            this.inFlight.remove(key, flight);
+        }
+    }
+
+    public long getExecuted() {
+        return this.executed.sum();
+    }
+
+    public long getCollapsed() {
+        return this.collapsed.sum();
+    }
+
+    public int getInFlight() {
+        return this.inFlight.size();
+    }
+
+    /**
+     * Register the counters over JMX
+     *
+     * @param name the name of the registry, used as label
+     * @return this registry
+     */
+    public SingleFlight<K, V> register(String name) {
+        try {
+            JmxMetrics.register(new SingleFlightMXBean() {
+                @Override
+                public long getExecuted() {
+                    return SingleFlight.this.getExecuted();
+                }
+
+                @Override
+                public long getCollapsed() {
+                    return SingleFlight.this.getCollapsed();
+                }
+
+                @Override
+                public int getInFlight() {
+                    return SingleFlight.this.getInFlight();
+                }
+            }, "type=SingleFlight,name=" + name);
+        } catch (JMException e) {
+            // metrics are not worth failing the generation for
+            log.warn("Unable to register the single-flight metrics of {}", name, e);
+        }
+        return this;
+    }
+
+    private static <V> V await(CompletableFuture<V> leader) {
+        try {
+            return leader.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package it.gov.pagopa.receipt.pdf.generator.utils;
+
+import it.gov.pagopa.receipt.pdf.generator.model.TemplateBundle;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.mime.content.ByteArrayBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpRequest;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registry of the template bundles sent to the PDF Engine.
+ * <p>
+ * Each bundle is read from the classpath only the first time it is requested, then it is kept in memory
+ * as an immutable multipart part shared by every request. More than one bundle (i.e. template version)
+ * can be registered at the same time, each one is identified by its resource name and by its content hash.
+ */
+@Slf4j
+public class TemplateBundleRegistry {
+
+    private static final ContentType ZIP_CONTENT_TYPE = ContentType.create("application/zip");
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    private final Map<String, TemplateBundle> bundles = new ConcurrentHashMap<>();
+    private final AtomicLong servedFromMemory = new AtomicLong();
+    private final AtomicLong bytesSaved = new AtomicLong();
+
+    TemplateBundleRegistry() {
+    }
+
+    /**
+     * Bill Pugh singleton holder: the JVM guarantees that the class is loaded
+     * (and therefore INSTANCE initialized) lazily and in a thread-safe way.
+     */
+    private static class SingletonHelper {
+        private static final TemplateBundleRegistry INSTANCE = new TemplateBundleRegistry();
+    }
+
+    public static TemplateBundleRegistry getInstance() {
+        return SingletonHelper.INSTANCE;
+    }
+
+    /**
+     * Retrieve the bundle with the provided resource name, loading it from the classpath on first access
+     *
+     * @param name the name of the classpath resource (e.g. template.zip)
+     * @return the shared bundle
+     * @throws IOException if the resource does not exist or cannot be read
+     */
+    public TemplateBundle getBundle(String name) throws IOException {
+        TemplateBundle bundle = this.bundles.get(name);
+        if (bundle != null) {
+            this.servedFromMemory.incrementAndGet();
+            this.bytesSaved.addAndGet(bundle.getSize());
+            return bundle;
+        }
+        return loadIfAbsent(name);
+    }
+
+    /**
+     * Retrieve the content hash of the bundle with the provided resource name, loading it from the classpath
+     * on first access. Unlike {@link #getBundle(String)} it is not counted as a request served from memory
+     *
+     * @param name the name of the classpath resource (e.g. template.zip)
+     * @return the hex encoded SHA-256 of the bundle content
+     * @throws IOException if the resource does not exist or cannot be read
+     */
+    public String getContentHash(String name) throws IOException {
+        TemplateBundle bundle = this.bundles.get(name);
+        return bundle != null ? bundle.getContentHash() : loadIfAbsent(name).getContentHash();
+    }
+
+    /**
+     * Register a bundle from an in-memory content, replacing any previous bundle with the same name
+     *
+     * @param name    the name of the bundle
+     * @param content the zip content, the array is copied so the caller can reuse it
+     * @return the registered bundle
+     */
+    public TemplateBundle register(String name, byte[] content) {
+        TemplateBundle bundle = buildBundle(name, content.clone());
+        this.bundles.put(name, bundle);
+        return bundle;
+    }
+
+    /**
+     * Retrieve an already loaded bundle by its content hash
+     *
+     * @param contentHash hex encoded SHA-256 of the bundle content
+     * @return the bundle if loaded, empty otherwise
+     */
+    public Optional<TemplateBundle> findByContentHash(String contentHash) {
+        return this.bundles.values().stream()
+                .filter(bundle -> bundle.getContentHash().equals(contentHash))
+                .findFirst();
+    }
+
+    public Collection<TemplateBundle> getLoadedBundles() {
+        return Collections.unmodifiableCollection(this.bundles.values());
+    }
+
+    /**
+     * Bytes that each request no longer allocates by reading the bundle from the classpath
+     *
+     * @param name the name of the bundle
+     * @return the bundle size, 0 if the bundle is not loaded yet
+     */
+    public long getBytesSavedPerRequest(String name) {
+        TemplateBundle bundle = this.bundles.get(name);
+        return bundle != null ? bundle.getSize() : 0L;
+    }
+
+    /**
+     * @return the total bytes not re-read since startup, summed over all the requests served from memory
+     */
+    public long getTotalBytesSaved() {
+        return this.bytesSaved.get();
+    }
+
+    /**
+     * @return the number of requests served without reading the bundle from the classpath
+     */
+    public long getServedFromMemoryCount() {
+        return this.servedFromMemory.get();
+    }
+
+    private TemplateBundle loadIfAbsent(String name) throws IOException {
+        try {
+            return this.bundles.computeIfAbsent(name, this::loadBundle);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private TemplateBundle loadBundle(String name) {
+        try (InputStream templateStream = TemplateBundleRegistry.class.getClassLoader().getResourceAsStream(name)) {
+            if (templateStream == null) {
+                throw new UncheckedIOException(new IOException(String.format("Template bundle %s not found", name)));
+            }
+            TemplateBundle bundle = buildBundle(name, templateStream.readAllBytes());
+            log.info("Template bundle {} loaded ({} bytes, hash {})", name, bundle.getSize(), bundle.getContentHash());
+            return bundle;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static TemplateBundle buildBundle(String name, byte[] content) {
+        return new TemplateBundle(
+                name,
+                hash(content),
+                content.length,
+                new ByteArrayBody(content, ZIP_CONTENT_TYPE, name),
+                HttpRequest.BodyPublishers.ofByteArray(content)
+        );
+    }
+
+    private static String hash(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance(HASH_ALGORITHM).digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
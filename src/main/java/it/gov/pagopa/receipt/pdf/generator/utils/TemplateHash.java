@@ -0,0 +1,52 @@
+package it.gov.pagopa.receipt.pdf.generator.utils;
+
+import it.gov.pagopa.receipt.pdf.generator.model.template.ReceiptPDFTemplate;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+import static it.gov.pagopa.receipt.pdf.generator.utils.Constants.ZIP_FILE_NAME;
+
+/**
+ * Stable hash of the content of a PDF: SHA-256 of the template bundle rendering it and of the template data,
+ * as written by {@link ReceiptTemplateJsonWriter}.
+ * <p>
+ * The same receipt data rendered with the same bundle always has the same hash, so it can address the generated PDF.
+ * The hash is computed on the same encoded data sent to the PDF Engine, so the template is serialized only once.
+ */
+public class TemplateHash {
+
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    /**
+     * Hide from public usage.
+     */
+    private TemplateHash() {
+    }
+
+    /**
+     * Compute the hash of the PDF content
+     *
+     * @param templateData the template data of the PDF, as encoded by {@link ReceiptTemplateJsonWriter#writeValueAsBytes(ReceiptPDFTemplate)}
+     * @return the hex encoded hash
+     * @throws IOException if the template bundle cannot be loaded
+     */
+    public static String of(byte[] templateData) throws IOException {
+        MessageDigest digest = newDigest();
+        digest.update(TemplateBundleRegistry.getInstance().getContentHash(ZIP_FILE_NAME)
+                .getBytes(StandardCharsets.UTF_8));
+        digest.update(templateData);
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,11 +1,11 @@
 package it.gov.pagopa.receipt.pdf.generator;
 
 import com.azure.core.http.rest.Response;
+import com.azure.storage.queue.models.QueueStorageException;
 import com.azure.storage.queue.models.SendMessageResult;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.microsoft.azure.functions.ExecutionContext;
 import com.microsoft.azure.functions.HttpStatus;
-import com.microsoft.azure.functions.OutputBinding;
 import it.gov.pagopa.receipt.pdf.generator.client.CartQueueClient;
 import it.gov.pagopa.receipt.pdf.generator.entity.cart.CartForReceipt;
 import it.gov.pagopa.receipt.pdf.generator.entity.cart.CartPayment;
@@ -27,15 +27,18 @@ import it.gov.pagopa.receipt.pdf.generator.entity.event.enumeration.BizEventStat
 import it.gov.pagopa.receipt.pdf.generator.exception.BizEventNotValidException;
 import it.gov.pagopa.receipt.pdf.generator.exception.CartNotFoundException;
 import it.gov.pagopa.receipt.pdf.generator.exception.CartReceiptGenerationNotToRetryException;
+import it.gov.pagopa.receipt.pdf.generator.exception.UnableToSaveException;
 import it.gov.pagopa.receipt.pdf.generator.model.PdfCartGeneration;
 import it.gov.pagopa.receipt.pdf.generator.service.CartReceiptCosmosService;
 import it.gov.pagopa.receipt.pdf.generator.service.GenerateCartReceiptPdfService;
+import it.gov.pagopa.receipt.pdf.generator.utils.DegradedMode;
 import it.gov.pagopa.receipt.pdf.generator.utils.ObjectMapperUtils;
 import lombok.SneakyThrows;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.EnumSource;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -54,6 +57,8 @@ import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 @ExtendWith(MockitoExtension.class)
@@ -72,8 +77,6 @@ class GenerateCartReceiptPdfTest {
     @Mock
     private CartQueueClient cartQueueClientMock;
 
-    @Mock
-    private OutputBinding<CartForReceipt> cartForReceiptsBindingMock;
     @Mock
     private ExecutionContext executionContextMock;
     @Mock
@@ -97,7 +100,6 @@ class GenerateCartReceiptPdfTest {
         assertDoesNotThrow(() ->
                 sut.processGenerateCartReceipt(
                         buildQueueBizEventList(totalNotice),
-                        cartForReceiptsBindingMock,
                         executionContextMock)
         );
 
@@ -110,8 +112,8 @@ class GenerateCartReceiptPdfTest {
         verify(cartReceiptCosmosServiceMock).getCartForReceipt(anyString());
         verify(generateCartReceiptPdfServiceMock).generateCartReceipts(any(), any(), any());
         verify(generateCartReceiptPdfServiceMock).verifyAndUpdateCartReceipt(any(), any());
-        verify(cartForReceiptsBindingMock).setValue(any());
-        verify(cartQueueClientMock, never()).sendMessageToQueue(any());
+        verify(cartReceiptCosmosServiceMock).patchCartForReceipt(any(), any());
+        verify(cartQueueClientMock, never()).sendMessageToQueue(any(), any());
     }
 
     @Test
@@ -120,15 +122,14 @@ class GenerateCartReceiptPdfTest {
         assertThrows(BizEventNotValidException.class,
                 () -> sut.processGenerateCartReceipt(
                         "invalid biz event list",
-                        cartForReceiptsBindingMock,
                         executionContextMock)
         );
 
         verify(cartReceiptCosmosServiceMock, never()).getCartForReceipt(anyString());
         verify(generateCartReceiptPdfServiceMock, never()).generateCartReceipts(any(), any(), any());
         verify(generateCartReceiptPdfServiceMock, never()).verifyAndUpdateCartReceipt(any(), any());
-        verify(cartForReceiptsBindingMock, never()).setValue(any());
-        verify(cartQueueClientMock, never()).sendMessageToQueue(any());
+        verify(cartReceiptCosmosServiceMock, never()).patchCartForReceipt(any(), any());
+        verify(cartQueueClientMock, never()).sendMessageToQueue(any(), any());
     }
 
     @Test
@@ -137,15 +138,14 @@ class GenerateCartReceiptPdfTest {
         assertDoesNotThrow(() ->
                 sut.processGenerateCartReceipt(
                         "[]",
-                        cartForReceiptsBindingMock,
                         executionContextMock)
         );
 
         verify(cartReceiptCosmosServiceMock, never()).getCartForReceipt(anyString());
         verify(generateCartReceiptPdfServiceMock, never()).generateCartReceipts(any(), any(), any());
         verify(generateCartReceiptPdfServiceMock, never()).verifyAndUpdateCartReceipt(any(), any());
-        verify(cartForReceiptsBindingMock, never()).setValue(any());
-        verify(cartQueueClientMock, never()).sendMessageToQueue(any());
+        verify(cartReceiptCosmosServiceMock, never()).patchCartForReceipt(any(), any());
+        verify(cartQueueClientMock, never()).sendMessageToQueue(any(), any());
     }
 
     @Test
@@ -157,15 +157,14 @@ class GenerateCartReceiptPdfTest {
                 CartNotFoundException.class,
                 () -> sut.processGenerateCartReceipt(
                         buildQueueBizEventList(2),
-                        cartForReceiptsBindingMock,
                         executionContextMock)
         );
 
         verify(cartReceiptCosmosServiceMock).getCartForReceipt(anyString());
         verify(generateCartReceiptPdfServiceMock, never()).generateCartReceipts(any(), any(), any());
         verify(generateCartReceiptPdfServiceMock, never()).verifyAndUpdateCartReceipt(any(), any());
-        verify(cartForReceiptsBindingMock, never()).setValue(any());
-        verify(cartQueueClientMock, never()).sendMessageToQueue(any());
+        verify(cartReceiptCosmosServiceMock, never()).patchCartForReceipt(any(), any());
+        verify(cartQueueClientMock, never()).sendMessageToQueue(any(), any());
     }
 
     @ParameterizedTest
@@ -180,15 +179,14 @@ class GenerateCartReceiptPdfTest {
         assertDoesNotThrow(() ->
                 sut.processGenerateCartReceipt(
                         buildQueueBizEventList(totalNotice),
-                        cartForReceiptsBindingMock,
                         executionContextMock)
         );
 
         verify(cartReceiptCosmosServiceMock).getCartForReceipt(anyString());
         verify(generateCartReceiptPdfServiceMock, never()).generateCartReceipts(any(), any(), any());
         verify(generateCartReceiptPdfServiceMock, never()).verifyAndUpdateCartReceipt(any(), any());
-        verify(cartForReceiptsBindingMock, never()).setValue(any());
-        verify(cartQueueClientMock, never()).sendMessageToQueue(any());
+        verify(cartReceiptCosmosServiceMock, never()).patchCartForReceipt(any(), any());
+        verify(cartQueueClientMock, never()).sendMessageToQueue(any(), any());
     }
 
     @Test
@@ -201,15 +199,14 @@ class GenerateCartReceiptPdfTest {
         assertDoesNotThrow(() ->
                 sut.processGenerateCartReceipt(
                         buildQueueBizEventList(totalNotice),
-                        cartForReceiptsBindingMock,
                         executionContextMock)
         );
 
         verify(cartReceiptCosmosServiceMock).getCartForReceipt(anyString());
         verify(generateCartReceiptPdfServiceMock, never()).generateCartReceipts(any(), any(), any());
         verify(generateCartReceiptPdfServiceMock, never()).verifyAndUpdateCartReceipt(any(), any());
-        verify(cartForReceiptsBindingMock, never()).setValue(any());
-        verify(cartQueueClientMock, never()).sendMessageToQueue(any());
+        verify(cartReceiptCosmosServiceMock, never()).patchCartForReceipt(any(), any());
+        verify(cartQueueClientMock, never()).sendMessageToQueue(any(), any());
     }
 
     @Test
@@ -223,7 +220,6 @@ class GenerateCartReceiptPdfTest {
         assertDoesNotThrow(() ->
                 sut.processGenerateCartReceipt(
                         buildQueueBizEventList(3),
-                        cartForReceiptsBindingMock,
                         executionContextMock)
         );
 
@@ -237,8 +233,8 @@ class GenerateCartReceiptPdfTest {
         verify(cartReceiptCosmosServiceMock).getCartForReceipt(anyString());
         verify(generateCartReceiptPdfServiceMock, never()).generateCartReceipts(any(), any(), any());
         verify(generateCartReceiptPdfServiceMock, never()).verifyAndUpdateCartReceipt(any(), any());
-        verify(cartForReceiptsBindingMock).setValue(any());
-        verify(cartQueueClientMock, never()).sendMessageToQueue(any());
+        verify(cartReceiptCosmosServiceMock).patchCartForReceipt(any(), any());
+        verify(cartQueueClientMock, never()).sendMessageToQueue(any(), any());
     }
 
     @Test
@@ -252,7 +248,6 @@ class GenerateCartReceiptPdfTest {
         assertDoesNotThrow(() ->
                 sut.processGenerateCartReceipt(
                         buildQueueBizEventList(totalNotice),
-                        cartForReceiptsBindingMock,
                         executionContextMock)
         );
 
@@ -266,8 +261,8 @@ class GenerateCartReceiptPdfTest {
         verify(cartReceiptCosmosServiceMock).getCartForReceipt(anyString());
         verify(generateCartReceiptPdfServiceMock, never()).generateCartReceipts(any(), any(), any());
         verify(generateCartReceiptPdfServiceMock, never()).verifyAndUpdateCartReceipt(any(), any());
-        verify(cartForReceiptsBindingMock).setValue(any());
-        verify(cartQueueClientMock, never()).sendMessageToQueue(any());
+        verify(cartReceiptCosmosServiceMock).patchCartForReceipt(any(), any());
+        verify(cartQueueClientMock, never()).sendMessageToQueue(any(), any());
     }
 
     @Test
@@ -280,13 +275,12 @@ class GenerateCartReceiptPdfTest {
         doReturn(cart).when(cartReceiptCosmosServiceMock).getCartForReceipt(ID_TRANSACTION);
         doReturn(new PdfCartGeneration()).when(generateCartReceiptPdfServiceMock).generateCartReceipts(any(), any(), any());
         doReturn(false).when(generateCartReceiptPdfServiceMock).verifyAndUpdateCartReceipt(any(), any());
-        doReturn(queueResponseMock).when(cartQueueClientMock).sendMessageToQueue(any());
+        doReturn(queueResponseMock).when(cartQueueClientMock).sendMessageToQueue(any(), any());
         doReturn(com.microsoft.azure.functions.HttpStatus.CREATED.value()).when(queueResponseMock).getStatusCode();
 
         assertDoesNotThrow(() ->
                 sut.processGenerateCartReceipt(
                         buildQueueBizEventList(totalNotice),
-                        cartForReceiptsBindingMock,
                         executionContextMock)
         );
 
@@ -298,8 +292,47 @@ class GenerateCartReceiptPdfTest {
         verify(cartReceiptCosmosServiceMock).getCartForReceipt(anyString());
         verify(generateCartReceiptPdfServiceMock).generateCartReceipts(any(), any(), any());
         verify(generateCartReceiptPdfServiceMock).verifyAndUpdateCartReceipt(any(), any());
-        verify(cartForReceiptsBindingMock).setValue(any());
-        verify(cartQueueClientMock).sendMessageToQueue(any());
+        verify(cartReceiptCosmosServiceMock).patchCartForReceipt(any(), any());
+        verify(cartQueueClientMock).sendMessageToQueue(any(), any());
+    }
+
+    @Test
+    @SneakyThrows
+    void processGenerateCartReceiptInDegradedModeRequeuesWithoutProcessing() {
+        int totalNotice = 2;
+        sut.setDegradedMode(new DegradedMode(() -> true));
+        doReturn(queueResponseMock).when(cartQueueClientMock).sendMessageToQueue(any(), any());
+        doReturn(com.microsoft.azure.functions.HttpStatus.CREATED.value()).when(queueResponseMock).getStatusCode();
+
+        assertDoesNotThrow(() ->
+                sut.processGenerateCartReceipt(
+                        buildQueueBizEventList(totalNotice),
+                        executionContextMock)
+        );
+
+        verify(cartQueueClientMock).sendMessageToQueue(any(), any());
+        verify(cartReceiptCosmosServiceMock, never()).getCartForReceipt(anyString());
+        verify(generateCartReceiptPdfServiceMock, never()).generateCartReceipts(any(), any(), any());
+        verify(cartReceiptCosmosServiceMock, never()).patchCartForReceipt(any(), any());
+    }
+
+    @Test
+    @SneakyThrows
+    void processGenerateCartReceiptInDegradedModeProcessesNowIfTheRequeueThrows() {
+        int totalNotice = 2;
+        sut.setDegradedMode(new DegradedMode(() -> true));
+        doThrow(mock(QueueStorageException.class)).when(cartQueueClientMock).sendMessageToQueue(any(), any());
+        CartForReceipt cart = buildCartForReceipt(CF_PAYER, CF_DEBTOR, totalNotice, CartStatusType.FAILED);
+        doReturn(cart).when(cartReceiptCosmosServiceMock).getCartForReceipt(ID_TRANSACTION);
+
+        assertDoesNotThrow(() ->
+                sut.processGenerateCartReceipt(
+                        buildQueueBizEventList(totalNotice),
+                        executionContextMock)
+        );
+
+        verify(cartQueueClientMock).sendMessageToQueue(any(), any());
+        verify(cartReceiptCosmosServiceMock).getCartForReceipt(anyString());
     }
 
     @Test
@@ -312,13 +345,12 @@ class GenerateCartReceiptPdfTest {
         doReturn(cart).when(cartReceiptCosmosServiceMock).getCartForReceipt(ID_TRANSACTION);
         doReturn(new PdfCartGeneration()).when(generateCartReceiptPdfServiceMock).generateCartReceipts(any(), any(), any());
         doReturn(false).when(generateCartReceiptPdfServiceMock).verifyAndUpdateCartReceipt(any(), any());
-        doReturn(queueResponseMock).when(cartQueueClientMock).sendMessageToQueue(any());
+        doReturn(queueResponseMock).when(cartQueueClientMock).sendMessageToQueue(any(), any());
         doReturn(HttpStatus.INTERNAL_SERVER_ERROR.value()).when(queueResponseMock).getStatusCode();
 
         assertDoesNotThrow(() ->
                 sut.processGenerateCartReceipt(
                         buildQueueBizEventList(totalNotice),
-                        cartForReceiptsBindingMock,
                         executionContextMock)
         );
 
@@ -330,8 +362,8 @@ class GenerateCartReceiptPdfTest {
         verify(cartReceiptCosmosServiceMock).getCartForReceipt(anyString());
         verify(generateCartReceiptPdfServiceMock).generateCartReceipts(any(), any(), any());
         verify(generateCartReceiptPdfServiceMock).verifyAndUpdateCartReceipt(any(), any());
-        verify(cartForReceiptsBindingMock).setValue(any());
-        verify(cartQueueClientMock).sendMessageToQueue(any());
+        verify(cartReceiptCosmosServiceMock).patchCartForReceipt(any(), any());
+        verify(cartQueueClientMock).sendMessageToQueue(any(), any());
     }
 
     @Test
@@ -349,7 +381,6 @@ class GenerateCartReceiptPdfTest {
         assertDoesNotThrow(() ->
                 sut.processGenerateCartReceipt(
                         buildQueueBizEventList(totalNotice),
-                        cartForReceiptsBindingMock,
                         executionContextMock)
         );
 
@@ -361,8 +392,8 @@ class GenerateCartReceiptPdfTest {
         verify(cartReceiptCosmosServiceMock).getCartForReceipt(anyString());
         verify(generateCartReceiptPdfServiceMock).generateCartReceipts(any(), any(), any());
         verify(generateCartReceiptPdfServiceMock).verifyAndUpdateCartReceipt(any(), any());
-        verify(cartForReceiptsBindingMock).setValue(any());
-        verify(cartQueueClientMock, never()).sendMessageToQueue(any());
+        verify(cartReceiptCosmosServiceMock).patchCartForReceipt(any(), any());
+        verify(cartQueueClientMock, never()).sendMessageToQueue(any(), any());
     }
 
     @Test
@@ -381,7 +412,6 @@ class GenerateCartReceiptPdfTest {
         assertDoesNotThrow(() ->
                 sut.processGenerateCartReceipt(
                         buildQueueBizEventList(totalNotice),
-                        cartForReceiptsBindingMock,
                         executionContextMock)
         );
 
@@ -393,8 +423,74 @@ class GenerateCartReceiptPdfTest {
         verify(cartReceiptCosmosServiceMock).getCartForReceipt(anyString());
         verify(generateCartReceiptPdfServiceMock).generateCartReceipts(any(), any(), any());
         verify(generateCartReceiptPdfServiceMock).verifyAndUpdateCartReceipt(any(), any());
-        verify(cartForReceiptsBindingMock).setValue(any());
-        verify(cartQueueClientMock, never()).sendMessageToQueue(any());
+        verify(cartReceiptCosmosServiceMock).patchCartForReceipt(any(), any());
+        verify(cartQueueClientMock, never()).sendMessageToQueue(any(), any());
+    }
+
+    @Test
+    @SneakyThrows
+    void processGenerateCartReceiptSaveConflictReappliedOnCurrentCart() {
+        int totalNotice = 2;
+        CartForReceipt cart = buildCartForReceipt(CF_PAYER, CF_DEBTOR, totalNotice, CartStatusType.INSERTED);
+        cart.set_etag("read etag");
+        CartForReceipt currentCart = buildCartForReceipt(CF_PAYER, CF_DEBTOR, totalNotice, CartStatusType.INSERTED);
+        currentCart.set_etag("current etag");
+        currentCart.setNotified_at(42L);
+
+        doReturn(cart, currentCart).when(cartReceiptCosmosServiceMock).getCartForReceipt(ID_TRANSACTION);
+        doReturn(new PdfCartGeneration()).when(generateCartReceiptPdfServiceMock).generateCartReceipts(any(), any(), any());
+        doReturn(true).when(generateCartReceiptPdfServiceMock).verifyAndUpdateCartReceipt(any(), any());
+        doThrow(new UnableToSaveException("conflict", HttpStatus.PRECONDITION_FAILED.value()))
+                .doNothing()
+                .when(cartReceiptCosmosServiceMock).patchCartForReceipt(any(), any());
+
+        sut.processGenerateCartReceipt(buildQueueBizEventList(totalNotice), executionContextMock);
+
+        ArgumentCaptor<CartForReceipt> savedCaptor = ArgumentCaptor.forClass(CartForReceipt.class);
+        verify(cartReceiptCosmosServiceMock, times(2)).getCartForReceipt(anyString());
+        verify(cartReceiptCosmosServiceMock, times(2)).patchCartForReceipt(any(), savedCaptor.capture());
+        CartForReceipt rebasedCart = savedCaptor.getAllValues().get(1);
+        assertEquals(CartStatusType.GENERATED, rebasedCart.getStatus());
+        assertEquals("current etag", rebasedCart.get_etag());
+        assertEquals(42L, rebasedCart.getNotified_at());
+        verify(cartQueueClientMock, never()).sendMessageToQueue(any(), any());
+    }
+
+    @Test
+    @SneakyThrows
+    void processGenerateCartReceiptSaveConflictOnCompletedCartDiscarded() {
+        int totalNotice = 2;
+        CartForReceipt cart = buildCartForReceipt(CF_PAYER, CF_DEBTOR, totalNotice, CartStatusType.INSERTED);
+        CartForReceipt currentCart = buildCartForReceipt(CF_PAYER, CF_DEBTOR, totalNotice, CartStatusType.GENERATED);
+
+        doReturn(cart, currentCart).when(cartReceiptCosmosServiceMock).getCartForReceipt(ID_TRANSACTION);
+        doReturn(new PdfCartGeneration()).when(generateCartReceiptPdfServiceMock).generateCartReceipts(any(), any(), any());
+        doReturn(true).when(generateCartReceiptPdfServiceMock).verifyAndUpdateCartReceipt(any(), any());
+        doThrow(new UnableToSaveException("conflict", HttpStatus.PRECONDITION_FAILED.value()))
+                .when(cartReceiptCosmosServiceMock).patchCartForReceipt(any(), any());
+
+        sut.processGenerateCartReceipt(buildQueueBizEventList(totalNotice), executionContextMock);
+
+        verify(cartReceiptCosmosServiceMock, times(2)).getCartForReceipt(anyString());
+        verify(cartReceiptCosmosServiceMock).patchCartForReceipt(any(), any());
+    }
+
+    @Test
+    @SneakyThrows
+    void processGenerateCartReceiptSaveErrorNotConflictThrows() {
+        int totalNotice = 2;
+        CartForReceipt cart = buildCartForReceipt(CF_PAYER, CF_DEBTOR, totalNotice, CartStatusType.INSERTED);
+        String bizEventList = buildQueueBizEventList(totalNotice);
+
+        doReturn(cart).when(cartReceiptCosmosServiceMock).getCartForReceipt(ID_TRANSACTION);
+        doReturn(new PdfCartGeneration()).when(generateCartReceiptPdfServiceMock).generateCartReceipts(any(), any(), any());
+        doReturn(true).when(generateCartReceiptPdfServiceMock).verifyAndUpdateCartReceipt(any(), any());
+        doThrow(new UnableToSaveException("error", HttpStatus.INTERNAL_SERVER_ERROR.value()))
+                .when(cartReceiptCosmosServiceMock).patchCartForReceipt(any(), any());
+
+        assertThrows(UnableToSaveException.class, () -> sut.processGenerateCartReceipt(bizEventList, executionContextMock));
+
+        verify(cartReceiptCosmosServiceMock).getCartForReceipt(anyString());
     }
 
     private CartForReceipt buildCartForReceipt(
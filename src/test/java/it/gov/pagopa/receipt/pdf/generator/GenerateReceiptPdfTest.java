@@ -1,10 +1,10 @@
 package it.gov.pagopa.receipt.pdf.generator;
 
 import com.azure.core.http.rest.Response;
+import com.azure.storage.queue.models.QueueStorageException;
 import com.azure.storage.queue.models.SendMessageResult;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.microsoft.azure.functions.ExecutionContext;
-import com.microsoft.azure.functions.OutputBinding;
 import it.gov.pagopa.receipt.pdf.generator.client.ReceiptQueueClient;
 import it.gov.pagopa.receipt.pdf.generator.entity.event.BizEvent;
 import it.gov.pagopa.receipt.pdf.generator.entity.event.Creditor;
@@ -21,13 +21,17 @@ import it.gov.pagopa.receipt.pdf.generator.entity.event.WalletItem;
 import it.gov.pagopa.receipt.pdf.generator.entity.event.enumeration.BizEventStatusType;
 import it.gov.pagopa.receipt.pdf.generator.entity.receipt.EventData;
 import it.gov.pagopa.receipt.pdf.generator.entity.receipt.Receipt;
+import it.gov.pagopa.receipt.pdf.generator.entity.receipt.enumeration.ReasonErrorCode;
 import it.gov.pagopa.receipt.pdf.generator.entity.receipt.enumeration.ReceiptStatusType;
 import it.gov.pagopa.receipt.pdf.generator.exception.BizEventNotValidException;
 import it.gov.pagopa.receipt.pdf.generator.exception.ReceiptGenerationNotToRetryException;
 import it.gov.pagopa.receipt.pdf.generator.exception.ReceiptNotFoundException;
+import it.gov.pagopa.receipt.pdf.generator.exception.UnableToSaveException;
 import it.gov.pagopa.receipt.pdf.generator.model.PdfGeneration;
+import it.gov.pagopa.receipt.pdf.generator.model.PdfMetadata;
 import it.gov.pagopa.receipt.pdf.generator.service.GenerateReceiptPdfService;
 import it.gov.pagopa.receipt.pdf.generator.service.ReceiptCosmosService;
+import it.gov.pagopa.receipt.pdf.generator.utils.DegradedMode;
 import it.gov.pagopa.receipt.pdf.generator.utils.ObjectMapperUtils;
 import lombok.SneakyThrows;
 import org.apache.http.HttpStatus;
@@ -35,21 +39,27 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.EnumSource;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 @ExtendWith(MockitoExtension.class)
@@ -68,8 +78,6 @@ class GenerateReceiptPdfTest {
     @Mock
     private ReceiptCosmosService receiptCosmosServiceMock;
     @Mock
-    private OutputBinding<Receipt> documentReceiptsMock;
-    @Mock
     private ReceiptQueueClient queueServiceMock;
     @Mock
     private ExecutionContext executionContextMock;
@@ -88,7 +96,7 @@ class GenerateReceiptPdfTest {
         doReturn(new PdfGeneration()).when(generateReceiptPdfServiceMock).generateReceipts(any(), any(), any());
         doReturn(true).when(generateReceiptPdfServiceMock).verifyAndUpdateReceipt(any(), any());
 
-        sut.processGenerateReceipt(BIZ_EVENT_VALID_MESSAGE, documentReceiptsMock, executionContextMock);
+        sut.processGenerateReceipt(BIZ_EVENT_VALID_MESSAGE, executionContextMock);
 
         assertEquals(ReceiptStatusType.GENERATED, receipt.getStatus());
         assertNotEquals(ORIGINAL_GENERATED_AT, receipt.getGenerated_at());
@@ -99,21 +107,21 @@ class GenerateReceiptPdfTest {
         verify(receiptCosmosServiceMock).getReceipt(anyString());
         verify(generateReceiptPdfServiceMock).generateReceipts(any(), any(), any());
         verify(generateReceiptPdfServiceMock).verifyAndUpdateReceipt(any(), any());
-        verify(documentReceiptsMock).setValue(any());
-        verify(queueServiceMock, never()).sendMessageToQueue(any());
+        verify(receiptCosmosServiceMock).patchReceipt(any(), any());
+        verify(queueServiceMock, never()).sendMessageToQueue(any(), any());
     }
 
     @Test
     @SneakyThrows
     void generatePDFFailParsingBizEventMessage() {
         assertThrows(BizEventNotValidException.class,
-                () -> sut.processGenerateReceipt(BIZ_EVENT_INVALID_MESSAGE, documentReceiptsMock, executionContextMock));
+                () -> sut.processGenerateReceipt(BIZ_EVENT_INVALID_MESSAGE, executionContextMock));
 
         verify(receiptCosmosServiceMock, never()).getReceipt(anyString());
         verify(generateReceiptPdfServiceMock, never()).generateReceipts(any(), any(), any());
         verify(generateReceiptPdfServiceMock, never()).verifyAndUpdateReceipt(any(), any());
-        verify(documentReceiptsMock, never()).setValue(any());
-        verify(queueServiceMock, never()).sendMessageToQueue(any());
+        verify(receiptCosmosServiceMock, never()).patchReceipt(any(), any());
+        verify(queueServiceMock, never()).sendMessageToQueue(any(), any());
     }
 
     @Test
@@ -122,13 +130,13 @@ class GenerateReceiptPdfTest {
         doThrow(ReceiptNotFoundException.class).when(receiptCosmosServiceMock).getReceipt(anyString());
 
         assertThrows(ReceiptNotFoundException.class,
-                () -> sut.processGenerateReceipt(BIZ_EVENT_VALID_MESSAGE, documentReceiptsMock, executionContextMock));
+                () -> sut.processGenerateReceipt(BIZ_EVENT_VALID_MESSAGE, executionContextMock));
 
         verify(receiptCosmosServiceMock).getReceipt(anyString());
         verify(generateReceiptPdfServiceMock, never()).generateReceipts(any(), any(), any());
         verify(generateReceiptPdfServiceMock, never()).verifyAndUpdateReceipt(any(), any());
-        verify(documentReceiptsMock, never()).setValue(any());
-        verify(queueServiceMock, never()).sendMessageToQueue(any());
+        verify(receiptCosmosServiceMock, never()).patchReceipt(any(), any());
+        verify(queueServiceMock, never()).sendMessageToQueue(any(), any());
     }
 
     @Test
@@ -136,13 +144,13 @@ class GenerateReceiptPdfTest {
     void generatePDFDiscardedReceiptWithNullEventData() {
         doReturn(new Receipt()).when(receiptCosmosServiceMock).getReceipt(anyString());
 
-        sut.processGenerateReceipt(BIZ_EVENT_VALID_MESSAGE, documentReceiptsMock, executionContextMock);
+        sut.processGenerateReceipt(BIZ_EVENT_VALID_MESSAGE, executionContextMock);
 
         verify(receiptCosmosServiceMock).getReceipt(anyString());
         verify(generateReceiptPdfServiceMock, never()).generateReceipts(any(), any(), any());
         verify(generateReceiptPdfServiceMock, never()).verifyAndUpdateReceipt(any(), any());
-        verify(documentReceiptsMock, never()).setValue(any());
-        verify(queueServiceMock, never()).sendMessageToQueue(any());
+        verify(receiptCosmosServiceMock, never()).patchReceipt(any(), any());
+        verify(queueServiceMock, never()).sendMessageToQueue(any(), any());
     }
 
     @ParameterizedTest
@@ -153,13 +161,13 @@ class GenerateReceiptPdfTest {
 
         doReturn(receipt).when(receiptCosmosServiceMock).getReceipt(anyString());
 
-        sut.processGenerateReceipt(BIZ_EVENT_VALID_MESSAGE, documentReceiptsMock, executionContextMock);
+        sut.processGenerateReceipt(BIZ_EVENT_VALID_MESSAGE, executionContextMock);
 
         verify(receiptCosmosServiceMock).getReceipt(anyString());
         verify(generateReceiptPdfServiceMock, never()).generateReceipts(any(), any(), any());
         verify(generateReceiptPdfServiceMock, never()).verifyAndUpdateReceipt(any(), any());
-        verify(documentReceiptsMock, never()).setValue(any());
-        verify(queueServiceMock, never()).sendMessageToQueue(any());
+        verify(receiptCosmosServiceMock, never()).patchReceipt(any(), any());
+        verify(queueServiceMock, never()).sendMessageToQueue(any(), any());
     }
 
     @Test
@@ -177,7 +185,7 @@ class GenerateReceiptPdfTest {
 
         doReturn(receipt).when(receiptCosmosServiceMock).getReceipt(anyString());
 
-        sut.processGenerateReceipt(BIZ_EVENT_VALID_MESSAGE, documentReceiptsMock, executionContextMock);
+        sut.processGenerateReceipt(BIZ_EVENT_VALID_MESSAGE, executionContextMock);
 
         assertEquals(ReceiptStatusType.FAILED, receipt.getStatus());
         assertEquals(ORIGINAL_GENERATED_AT, receipt.getGenerated_at());
@@ -189,8 +197,8 @@ class GenerateReceiptPdfTest {
         verify(receiptCosmosServiceMock).getReceipt(anyString());
         verify(generateReceiptPdfServiceMock, never()).generateReceipts(any(), any(), any());
         verify(generateReceiptPdfServiceMock, never()).verifyAndUpdateReceipt(any(), any());
-        verify(documentReceiptsMock).setValue(any());
-        verify(queueServiceMock, never()).sendMessageToQueue(any());
+        verify(receiptCosmosServiceMock).patchReceipt(any(), any());
+        verify(queueServiceMock, never()).sendMessageToQueue(any(), any());
     }
 
     @Test
@@ -204,9 +212,9 @@ class GenerateReceiptPdfTest {
         doReturn(false).when(generateReceiptPdfServiceMock).verifyAndUpdateReceipt(any(), any());
         Response<SendMessageResult> response = mock(Response.class);
         doReturn(com.microsoft.azure.functions.HttpStatus.CREATED.value()).when(response).getStatusCode();
-        doReturn(response).when(queueServiceMock).sendMessageToQueue(any());
+        doReturn(response).when(queueServiceMock).sendMessageToQueue(any(), any());
 
-        sut.processGenerateReceipt(BIZ_EVENT_VALID_MESSAGE, documentReceiptsMock, executionContextMock);
+        sut.processGenerateReceipt(BIZ_EVENT_VALID_MESSAGE, executionContextMock);
 
         assertEquals(ReceiptStatusType.RETRY, receipt.getStatus());
         assertEquals(ORIGINAL_GENERATED_AT, receipt.getGenerated_at());
@@ -216,8 +224,65 @@ class GenerateReceiptPdfTest {
         verify(receiptCosmosServiceMock).getReceipt(anyString());
         verify(generateReceiptPdfServiceMock).generateReceipts(any(), any(), any());
         verify(generateReceiptPdfServiceMock).verifyAndUpdateReceipt(any(), any());
-        verify(documentReceiptsMock).setValue(any());
-        verify(queueServiceMock).sendMessageToQueue(any());
+        verify(receiptCosmosServiceMock).patchReceipt(any(), any());
+        verify(queueServiceMock).sendMessageToQueue(any(), any());
+    }
+
+    @Test
+    @SneakyThrows
+    void generatePDFRejectedByCircuitBreakerGoesToRetryWithoutConsumingRetry() {
+        int numRetry = 6;
+        Receipt receipt = buildReceiptWithStatus(ReceiptStatusType.RETRY, numRetry, BIZ_EVENT_ID_FIRST);
+        PdfGeneration pdfGeneration = PdfGeneration.builder()
+                .payerMetadata(PdfMetadata.builder().statusCode(ReasonErrorCode.ERROR_PDF_ENGINE_UNAVAILABLE.getCode()).build())
+                .build();
+
+        doReturn(receipt).when(receiptCosmosServiceMock).getReceipt(anyString());
+        doReturn(pdfGeneration).when(generateReceiptPdfServiceMock).generateReceipts(any(), any(), any());
+        doReturn(false).when(generateReceiptPdfServiceMock).verifyAndUpdateReceipt(any(), any());
+        Response<SendMessageResult> response = mock(Response.class);
+        doReturn(com.microsoft.azure.functions.HttpStatus.CREATED.value()).when(response).getStatusCode();
+        doReturn(response).when(queueServiceMock).sendMessageToQueue(any(), any());
+
+        sut.processGenerateReceipt(BIZ_EVENT_VALID_MESSAGE, executionContextMock);
+
+        assertEquals(ReceiptStatusType.RETRY, receipt.getStatus());
+        assertEquals(numRetry, receipt.getNumRetry());
+
+        verify(receiptCosmosServiceMock).patchReceipt(any(), any());
+        verify(queueServiceMock).sendMessageToQueue(any(), any());
+    }
+
+    @Test
+    @SneakyThrows
+    void generatePDFInDegradedModeRequeuesWithoutProcessing() {
+        sut.setDegradedMode(new DegradedMode(() -> true));
+        Response<SendMessageResult> response = mock(Response.class);
+        doReturn(com.microsoft.azure.functions.HttpStatus.CREATED.value()).when(response).getStatusCode();
+        doReturn(response).when(queueServiceMock).sendMessageToQueue(any(), any());
+
+        sut.processGenerateReceipt(BIZ_EVENT_VALID_MESSAGE, executionContextMock);
+
+        ArgumentCaptor<Duration> delayCaptor = ArgumentCaptor.forClass(Duration.class);
+        verify(queueServiceMock).sendMessageToQueue(any(), delayCaptor.capture());
+        assertTrue(delayCaptor.getValue().getSeconds() >= 60);
+        verify(receiptCosmosServiceMock, never()).getReceipt(anyString());
+        verify(generateReceiptPdfServiceMock, never()).generateReceipts(any(), any(), any());
+        verify(receiptCosmosServiceMock, never()).patchReceipt(any(), any());
+    }
+
+    @Test
+    @SneakyThrows
+    void generatePDFInDegradedModeProcessesNowIfTheRequeueThrows() {
+        sut.setDegradedMode(new DegradedMode(() -> true));
+        doThrow(mock(QueueStorageException.class)).when(queueServiceMock).sendMessageToQueue(any(), any());
+        Receipt receipt = buildReceiptWithStatus(ReceiptStatusType.FAILED, 0, BIZ_EVENT_ID_FIRST);
+        doReturn(receipt).when(receiptCosmosServiceMock).getReceipt(anyString());
+
+        assertDoesNotThrow(() -> sut.processGenerateReceipt(BIZ_EVENT_VALID_MESSAGE, executionContextMock));
+
+        verify(queueServiceMock).sendMessageToQueue(any(), any());
+        verify(receiptCosmosServiceMock).getReceipt(anyString());
     }
 
     @Test
@@ -230,7 +295,7 @@ class GenerateReceiptPdfTest {
         doReturn(new PdfGeneration()).when(generateReceiptPdfServiceMock).generateReceipts(any(), any(), any());
         doReturn(false).when(generateReceiptPdfServiceMock).verifyAndUpdateReceipt(any(), any());
 
-        sut.processGenerateReceipt(BIZ_EVENT_VALID_MESSAGE, documentReceiptsMock, executionContextMock);
+        sut.processGenerateReceipt(BIZ_EVENT_VALID_MESSAGE, executionContextMock);
 
         assertEquals(ReceiptStatusType.FAILED, receipt.getStatus());
         assertEquals(ORIGINAL_GENERATED_AT, receipt.getGenerated_at());
@@ -240,8 +305,8 @@ class GenerateReceiptPdfTest {
         verify(receiptCosmosServiceMock).getReceipt(anyString());
         verify(generateReceiptPdfServiceMock).generateReceipts(any(), any(), any());
         verify(generateReceiptPdfServiceMock).verifyAndUpdateReceipt(any(), any());
-        verify(documentReceiptsMock).setValue(any());
-        verify(queueServiceMock, never()).sendMessageToQueue(any());
+        verify(receiptCosmosServiceMock).patchReceipt(any(), any());
+        verify(queueServiceMock, never()).sendMessageToQueue(any(), any());
     }
 
     @Test
@@ -254,7 +319,7 @@ class GenerateReceiptPdfTest {
         doReturn(new PdfGeneration()).when(generateReceiptPdfServiceMock).generateReceipts(any(), any(), any());
         doThrow(ReceiptGenerationNotToRetryException.class).when(generateReceiptPdfServiceMock).verifyAndUpdateReceipt(any(), any());
 
-        sut.processGenerateReceipt(BIZ_EVENT_VALID_MESSAGE, documentReceiptsMock, executionContextMock);
+        sut.processGenerateReceipt(BIZ_EVENT_VALID_MESSAGE, executionContextMock);
 
         assertEquals(ReceiptStatusType.FAILED, receipt.getStatus());
         assertEquals(ORIGINAL_GENERATED_AT, receipt.getGenerated_at());
@@ -264,8 +329,69 @@ class GenerateReceiptPdfTest {
         verify(receiptCosmosServiceMock).getReceipt(anyString());
         verify(generateReceiptPdfServiceMock).generateReceipts(any(), any(), any());
         verify(generateReceiptPdfServiceMock).verifyAndUpdateReceipt(any(), any());
-        verify(documentReceiptsMock).setValue(any());
-        verify(queueServiceMock, never()).sendMessageToQueue(any());
+        verify(receiptCosmosServiceMock).patchReceipt(any(), any());
+        verify(queueServiceMock, never()).sendMessageToQueue(any(), any());
+    }
+
+    @Test
+    @SneakyThrows
+    void generatePDFSaveConflictReappliedOnCurrentReceipt() {
+        Receipt receipt = buildReceiptWithStatus(ReceiptStatusType.INSERTED, 0, BIZ_EVENT_ID_FIRST);
+        receipt.set_etag("read etag");
+        Receipt currentReceipt = buildReceiptWithStatus(ReceiptStatusType.INSERTED, 0, BIZ_EVENT_ID_FIRST);
+        currentReceipt.set_etag("current etag");
+        currentReceipt.setNotified_at(42L);
+
+        doReturn(receipt, currentReceipt).when(receiptCosmosServiceMock).getReceipt(anyString());
+        doReturn(new PdfGeneration()).when(generateReceiptPdfServiceMock).generateReceipts(any(), any(), any());
+        doReturn(true).when(generateReceiptPdfServiceMock).verifyAndUpdateReceipt(any(), any());
+        doThrow(new UnableToSaveException("conflict", HttpStatus.SC_PRECONDITION_FAILED))
+                .doNothing()
+                .when(receiptCosmosServiceMock).patchReceipt(any(), any());
+
+        sut.processGenerateReceipt(BIZ_EVENT_VALID_MESSAGE, executionContextMock);
+
+        ArgumentCaptor<Receipt> savedCaptor = ArgumentCaptor.forClass(Receipt.class);
+        verify(receiptCosmosServiceMock, times(2)).getReceipt(anyString());
+        verify(receiptCosmosServiceMock, times(2)).patchReceipt(any(), savedCaptor.capture());
+        Receipt rebasedReceipt = savedCaptor.getAllValues().get(1);
+        assertEquals(ReceiptStatusType.GENERATED, rebasedReceipt.getStatus());
+        assertEquals("current etag", rebasedReceipt.get_etag());
+        assertEquals(42L, rebasedReceipt.getNotified_at());
+    }
+
+    @Test
+    @SneakyThrows
+    void generatePDFSaveConflictOnCompletedReceiptDiscarded() {
+        Receipt receipt = buildReceiptWithStatus(ReceiptStatusType.INSERTED, 0, BIZ_EVENT_ID_FIRST);
+        Receipt currentReceipt = buildReceiptWithStatus(ReceiptStatusType.GENERATED, 0, BIZ_EVENT_ID_FIRST);
+
+        doReturn(receipt, currentReceipt).when(receiptCosmosServiceMock).getReceipt(anyString());
+        doReturn(new PdfGeneration()).when(generateReceiptPdfServiceMock).generateReceipts(any(), any(), any());
+        doReturn(true).when(generateReceiptPdfServiceMock).verifyAndUpdateReceipt(any(), any());
+        doThrow(new UnableToSaveException("conflict", HttpStatus.SC_PRECONDITION_FAILED))
+                .when(receiptCosmosServiceMock).patchReceipt(any(), any());
+
+        sut.processGenerateReceipt(BIZ_EVENT_VALID_MESSAGE, executionContextMock);
+
+        verify(receiptCosmosServiceMock, times(2)).getReceipt(anyString());
+        verify(receiptCosmosServiceMock).patchReceipt(any(), any());
+    }
+
+    @Test
+    @SneakyThrows
+    void generatePDFSaveErrorNotConflictThrows() {
+        Receipt receipt = buildReceiptWithStatus(ReceiptStatusType.INSERTED, 0, BIZ_EVENT_ID_FIRST);
+
+        doReturn(receipt).when(receiptCosmosServiceMock).getReceipt(anyString());
+        doReturn(new PdfGeneration()).when(generateReceiptPdfServiceMock).generateReceipts(any(), any(), any());
+        doReturn(true).when(generateReceiptPdfServiceMock).verifyAndUpdateReceipt(any(), any());
+        doThrow(new UnableToSaveException("error", HttpStatus.SC_INTERNAL_SERVER_ERROR))
+                .when(receiptCosmosServiceMock).patchReceipt(any(), any());
+
+        assertThrows(UnableToSaveException.class, () -> sut.processGenerateReceipt(BIZ_EVENT_VALID_MESSAGE, executionContextMock));
+
+        verify(receiptCosmosServiceMock).getReceipt(anyString());
     }
 
     private Receipt buildReceiptWithStatus(ReceiptStatusType receiptStatusType, int numRetry, String id) {
@@ -16,6 +16,7 @@ import it.gov.pagopa.receipt.pdf.generator.entity.receipt.enumeration.ReceiptErr
 import it.gov.pagopa.receipt.pdf.generator.entity.receipt.enumeration.ReceiptStatusType;
 import it.gov.pagopa.receipt.pdf.generator.exception.Aes256Exception;
 import it.gov.pagopa.receipt.pdf.generator.exception.ReceiptNotFoundException;
+import it.gov.pagopa.receipt.pdf.generator.exception.UnableToSaveException;
 import it.gov.pagopa.receipt.pdf.generator.service.ReceiptCosmosService;
 import it.gov.pagopa.receipt.pdf.generator.service.impl.ReceiptCosmosServiceImpl;
 import it.gov.pagopa.receipt.pdf.generator.utils.Aes256Utils;
@@ -75,13 +76,13 @@ class ManageReceiptPoisonQueueTest {
         when(response.getStatusCode()).thenReturn(HttpStatus.SC_CREATED);
         when(queueMock.sendMessageToQueue(anyString())).thenReturn(response);
 
-        function = spy(new ManageReceiptPoisonQueue(mock(ReceiptCosmosServiceImpl.class), queueMock));
+        ReceiptCosmosService receiptCosmosService = mock(ReceiptCosmosServiceImpl.class);
+        function = spy(new ManageReceiptPoisonQueue(receiptCosmosService, queueMock));
 
-        OutputBinding<Receipt> receiptOutput = (OutputBinding<Receipt>) mock(OutputBinding.class);
         OutputBinding<ReceiptError> errorToCosmos = (OutputBinding<ReceiptError>) mock(OutputBinding.class);
 
         assertDoesNotThrow(() -> function.processManageReceiptPoisonQueue(
-                VALID_CONTENT_TO_RETRY, receiptOutput, errorToCosmos, context));
+                VALID_CONTENT_TO_RETRY, errorToCosmos, context));
 
         verify(queueMock).sendMessageToQueue(messageCaptor.capture());
         BizEvent captured = ObjectMapperUtils.mapBizEventListString(
@@ -91,11 +92,11 @@ class ManageReceiptPoisonQueueTest {
         assertTrue(captured.getAttemptedPoisonRetry());
 
         verifyNoInteractions(errorToCosmos);
-        verifyNoInteractions(receiptOutput);
+        verify(receiptCosmosService, never()).patchReceipt(any(), any());
     }
 
     @Test
-    void successRunWithValidPayloadNotToRetry() throws Aes256Exception, ReceiptNotFoundException {
+    void successRunWithValidPayloadNotToRetry() throws Aes256Exception, ReceiptNotFoundException, UnableToSaveException {
         ReceiptQueueClientImpl queueMock = mock(ReceiptQueueClientImpl.class);
 
         ReceiptCosmosService receiptCosmosService = mock(ReceiptCosmosService.class);
@@ -103,11 +104,10 @@ class ManageReceiptPoisonQueueTest {
 
         function = spy(new ManageReceiptPoisonQueue(receiptCosmosService, queueMock));
 
-        OutputBinding<Receipt> receiptOutput = (OutputBinding<Receipt>) mock(OutputBinding.class);
         OutputBinding<ReceiptError> receiptErrorOutput = (OutputBinding<ReceiptError>) mock(OutputBinding.class);
 
         assertDoesNotThrow(() -> function.processManageReceiptPoisonQueue(
-                VALID_CONTENT_NOT_TO_RETRY, receiptOutput, receiptErrorOutput, context));
+                VALID_CONTENT_NOT_TO_RETRY, receiptErrorOutput, context));
 
         verify(receiptErrorOutput).setValue(receiptErrorCaptor.capture());
         ReceiptError receiptErrorCaptor = this.receiptErrorCaptor.getValue();
@@ -116,20 +116,20 @@ class ManageReceiptPoisonQueueTest {
         assertEquals(BIZ_EVENT_ID, receiptErrorCaptor.getBizEventId());
         assertEquals(ReceiptErrorStatusType.TO_REVIEW, receiptErrorCaptor.getStatus());
 
-        verify(receiptOutput).setValue(receiptCaptor.capture());
+        verify(receiptCosmosService).patchReceipt(any(), receiptCaptor.capture());
         Receipt receiptCaptor = this.receiptCaptor.getValue();
         assertEquals(BIZ_EVENT_ID, receiptCaptor.getEventId());
         assertEquals(ReceiptStatusType.TO_REVIEW, receiptCaptor.getStatus());
     }
 
     @Test
-    void successRunWithInvalidPayload() throws Aes256Exception {
-        function = spy(new ManageReceiptPoisonQueue(mock(ReceiptCosmosService.class), mock(ReceiptQueueClientImpl.class)));
+    void successRunWithInvalidPayload() throws Aes256Exception, UnableToSaveException {
+        ReceiptCosmosService receiptCosmosService = mock(ReceiptCosmosService.class);
+        function = spy(new ManageReceiptPoisonQueue(receiptCosmosService, mock(ReceiptQueueClientImpl.class)));
 
-        OutputBinding<Receipt> receiptOutput = (OutputBinding<Receipt>) mock(OutputBinding.class);
         OutputBinding<ReceiptError> errorToCosmos = (OutputBinding<ReceiptError>) mock(OutputBinding.class);
 
-        assertDoesNotThrow(() -> function.processManageReceiptPoisonQueue(INVALID_MESSAGE, receiptOutput, errorToCosmos, context));
+        assertDoesNotThrow(() -> function.processManageReceiptPoisonQueue(INVALID_MESSAGE, errorToCosmos, context));
 
         verify(errorToCosmos).setValue(receiptErrorCaptor.capture());
         ReceiptError captured = receiptErrorCaptor.getValue();
@@ -138,11 +138,11 @@ class ManageReceiptPoisonQueueTest {
         assertNull(captured.getBizEventId());
         assertEquals(ReceiptErrorStatusType.TO_REVIEW, captured.getStatus());
 
-        verifyNoInteractions(receiptOutput);
+        verify(receiptCosmosService, never()).patchReceipt(any(), any());
     }
 
     @Test
-    void KoRunForRequeueError() throws Aes256Exception, ReceiptNotFoundException {
+    void KoRunForRequeueError() throws Aes256Exception, ReceiptNotFoundException, UnableToSaveException {
         ReceiptQueueClientImpl queueMock = mock(ReceiptQueueClientImpl.class);
         Response<SendMessageResult> response = mock(Response.class);
         when(response.getStatusCode()).thenReturn(HttpStatus.SC_BAD_REQUEST);
@@ -153,10 +153,9 @@ class ManageReceiptPoisonQueueTest {
 
         function = spy(new ManageReceiptPoisonQueue(receiptCosmosService, queueMock));
 
-        OutputBinding<Receipt> receiptOutput = (OutputBinding<Receipt>) mock(OutputBinding.class);
         OutputBinding<ReceiptError> errorToCosmos = (OutputBinding<ReceiptError>) mock(OutputBinding.class);
 
-        assertDoesNotThrow(() -> function.processManageReceiptPoisonQueue(VALID_CONTENT_TO_RETRY, receiptOutput, errorToCosmos, context));
+        assertDoesNotThrow(() -> function.processManageReceiptPoisonQueue(VALID_CONTENT_TO_RETRY, errorToCosmos, context));
 
         verify(errorToCosmos).setValue(receiptErrorCaptor.capture());
         ReceiptError captured = receiptErrorCaptor.getValue();
@@ -165,14 +164,14 @@ class ManageReceiptPoisonQueueTest {
         assertEquals(BIZ_EVENT_ID, captured.getBizEventId());
         assertEquals(ReceiptErrorStatusType.TO_REVIEW, captured.getStatus());
 
-        verify(receiptOutput).setValue(receiptCaptor.capture());
+        verify(receiptCosmosService).patchReceipt(any(), receiptCaptor.capture());
         Receipt receiptCaptor = this.receiptCaptor.getValue();
         assertEquals(BIZ_EVENT_ID, receiptCaptor.getEventId());
         assertEquals(ReceiptStatusType.TO_REVIEW, receiptCaptor.getStatus());
     }
 
     @Test
-    void successRunWithReceiptNotFound() throws Aes256Exception, ReceiptNotFoundException {
+    void successRunWithReceiptNotFound() throws Aes256Exception, ReceiptNotFoundException, UnableToSaveException {
         ReceiptQueueClientImpl queueMock = mock(ReceiptQueueClientImpl.class);
         Response<SendMessageResult> response = mock(Response.class);
         when(response.getStatusCode()).thenReturn(HttpStatus.SC_BAD_REQUEST);
@@ -183,10 +182,9 @@ class ManageReceiptPoisonQueueTest {
 
         function = spy(new ManageReceiptPoisonQueue(receiptCosmosService, queueMock));
 
-        OutputBinding<Receipt> receiptOutput = (OutputBinding<Receipt>) mock(OutputBinding.class);
         OutputBinding<ReceiptError> errorToCosmos = (OutputBinding<ReceiptError>) mock(OutputBinding.class);
 
-        assertDoesNotThrow(() -> function.processManageReceiptPoisonQueue(VALID_CONTENT_TO_RETRY, receiptOutput, errorToCosmos, context));
+        assertDoesNotThrow(() -> function.processManageReceiptPoisonQueue(VALID_CONTENT_TO_RETRY, errorToCosmos, context));
 
         verify(errorToCosmos).setValue(receiptErrorCaptor.capture());
         ReceiptError captured = receiptErrorCaptor.getValue();
@@ -195,11 +193,11 @@ class ManageReceiptPoisonQueueTest {
         assertEquals(BIZ_EVENT_ID, captured.getBizEventId());
         assertEquals(ReceiptErrorStatusType.TO_REVIEW, captured.getStatus());
 
-        verifyNoInteractions(receiptOutput);
+        verify(receiptCosmosService, never()).patchReceipt(any(), any());
     }
 
     @Test
-    void successRunWithValidPayloadMultipleItemsNotToRetry() throws Aes256Exception, ReceiptNotFoundException {
+    void successRunWithValidPayloadMultipleItemsNotToRetry() throws Aes256Exception, ReceiptNotFoundException, UnableToSaveException {
         ReceiptQueueClientImpl queueMock = mock(ReceiptQueueClientImpl.class);
 
         ReceiptCosmosService receiptCosmosService = mock(ReceiptCosmosService.class);
@@ -207,11 +205,10 @@ class ManageReceiptPoisonQueueTest {
 
         function = spy(new ManageReceiptPoisonQueue(receiptCosmosService, queueMock));
 
-        OutputBinding<Receipt> receiptOutput = (OutputBinding<Receipt>) mock(OutputBinding.class);
         OutputBinding<ReceiptError> receiptErrorOutput = (OutputBinding<ReceiptError>) mock(OutputBinding.class);
 
         assertDoesNotThrow(() -> function.processManageReceiptPoisonQueue(
-                VALID_CONTENT_MULTIPLE_ITEMS_NOT_TO_RETRY, receiptOutput, receiptErrorOutput, context));
+                VALID_CONTENT_MULTIPLE_ITEMS_NOT_TO_RETRY, receiptErrorOutput, context));
 
         verify(receiptErrorOutput).setValue(receiptErrorCaptor.capture());
         ReceiptError receiptErrorCaptor = this.receiptErrorCaptor.getValue();
@@ -220,7 +217,7 @@ class ManageReceiptPoisonQueueTest {
         assertEquals(BIZ_EVENT_ID, receiptErrorCaptor.getBizEventId());
         assertEquals(ReceiptErrorStatusType.TO_REVIEW, receiptErrorCaptor.getStatus());
 
-        verify(receiptOutput).setValue(receiptCaptor.capture());
+        verify(receiptCosmosService).patchReceipt(any(), receiptCaptor.capture());
         Receipt receiptCaptor = this.receiptCaptor.getValue();
         assertEquals(ID_TRANSACTION, receiptCaptor.getEventId());
         assertEquals(ReceiptStatusType.TO_REVIEW, receiptCaptor.getStatus());
@@ -0,0 +1,33 @@
+package it.gov.pagopa.receipt.pdf.generator;
+
+import it.gov.pagopa.receipt.pdf.generator.client.CartQueueClient;
+import it.gov.pagopa.receipt.pdf.generator.client.ReceiptQueueClient;
+import it.gov.pagopa.receipt.pdf.generator.service.CartReceiptCosmosService;
+import it.gov.pagopa.receipt.pdf.generator.service.GenerateCartReceiptPdfService;
+import it.gov.pagopa.receipt.pdf.generator.service.GenerateReceiptPdfService;
+import it.gov.pagopa.receipt.pdf.generator.service.ReceiptCosmosService;
+
+/**
+ * Functions wired to the provided services, used to run the generation flows without Azure resources.
+ */
+public final class OfflineFunctions {
+
+    private OfflineFunctions() {
+    }
+
+    public static GenerateReceiptPdf generateReceiptPdf(
+            GenerateReceiptPdfService generateReceiptPdfService,
+            ReceiptCosmosService receiptCosmosService,
+            ReceiptQueueClient receiptQueueClient
+    ) {
+        return new GenerateReceiptPdf(generateReceiptPdfService, receiptCosmosService, receiptQueueClient);
+    }
+
+    public static GenerateCartReceiptPdf generateCartReceiptPdf(
+            GenerateCartReceiptPdfService generateCartReceiptPdfService,
+            CartReceiptCosmosService cartReceiptCosmosService,
+            CartQueueClient cartQueueClient
+    ) {
+        return new GenerateCartReceiptPdf(generateCartReceiptPdfService, cartReceiptCosmosService, cartQueueClient);
+    }
+}
@@ -42,8 +42,10 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
+import static it.gov.pagopa.receipt.pdf.generator.utils.Constants.FORCE_PARAMETER;
 import static it.gov.pagopa.receipt.pdf.generator.utils.ObjectMapperUtilsTest.getBizEventFromFile;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -53,6 +55,8 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.ArgumentMatchers.same;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
@@ -105,7 +109,7 @@ class RegenerateCartReceiptPdfTest {
         doReturn(bizEventList).when(bizEventCosmosClient).getAllCartBizEventDocument(anyString());
         doReturn(newCart).when(helpdeskServiceMock).buildCart(any());
         doReturn(existingCart).when(cartReceiptCosmosServiceMock).getCartForReceipt(anyString());
-        doReturn(new PdfCartGeneration()).when(generateCartReceiptPdfServiceMock).generateCartReceipts(any(), anyList(), any());
+        doReturn(new PdfCartGeneration()).when(generateCartReceiptPdfServiceMock).regenerateCartReceipts(any(), anyList(), any(), any());
         doReturn(true).when(generateCartReceiptPdfServiceMock).verifyAndUpdateCartReceipt(any(), any());
 
         // test execution
@@ -120,7 +124,8 @@ class RegenerateCartReceiptPdfTest {
         assertEquals(HttpStatus.SC_OK, response.getStatusCode());
 
         verify(bizEventCosmosClient).getAllCartBizEventDocument(anyString());
-        verify(generateCartReceiptPdfServiceMock).generateCartReceipts(any(), anyList(), any());
+        // the PDFs of the existing cart can be reused if their template data is unchanged
+        verify(generateCartReceiptPdfServiceMock).regenerateCartReceipts(any(), anyList(), same(existingCart), any());
         verify(generateCartReceiptPdfServiceMock).verifyAndUpdateCartReceipt(any(), any());
         verify(documentdb).setValue(receiptBindingCaptor.capture());
 
@@ -133,6 +138,33 @@ class RegenerateCartReceiptPdfTest {
         });
     }
 
+    @Test
+    @SneakyThrows
+    void regeneratePDFWithForceRendersAllThePdfsAgain() {
+        List<BizEvent> bizEventList = buildBizEvents();
+
+        CartForReceipt existingCart = buildExistingCart(bizEventList);
+        CartForReceipt newCart = buildCart(bizEventList, CartStatusType.INSERTED);
+
+        doReturn(Map.of(FORCE_PARAMETER, "true")).when(requestMock).getQueryParameters();
+        doReturn(bizEventList).when(bizEventCosmosClient).getAllCartBizEventDocument(anyString());
+        doReturn(newCart).when(helpdeskServiceMock).buildCart(any());
+        doReturn(existingCart).when(cartReceiptCosmosServiceMock).getCartForReceipt(anyString());
+        doReturn(new PdfCartGeneration()).when(generateCartReceiptPdfServiceMock).regenerateCartReceipts(any(), anyList(), any(), any());
+        doReturn(true).when(generateCartReceiptPdfServiceMock).verifyAndUpdateCartReceipt(any(), any());
+
+        HttpResponseMessage response = assertDoesNotThrow(() -> sut.run(
+                requestMock,
+                newCart.getCartId(),
+                documentdb,
+                executionContextMock
+        ));
+
+        assertEquals(HttpStatus.SC_OK, response.getStatusCode());
+        verify(generateCartReceiptPdfServiceMock).regenerateCartReceipts(any(), anyList(), isNull(), any());
+        verify(documentdb).setValue(any());
+    }
+
     @Test
     @SneakyThrows
     void regeneratePDFSuccessWithoutExistingReceipt() {
@@ -143,7 +175,7 @@ class RegenerateCartReceiptPdfTest {
         doReturn(bizEventList).when(bizEventCosmosClient).getAllCartBizEventDocument(anyString());
         doReturn(newCart).when(helpdeskServiceMock).buildCart(any());
         doThrow(CartNotFoundException.class).when(cartReceiptCosmosServiceMock).getCartForReceipt(anyString());
-        doReturn(new PdfCartGeneration()).when(generateCartReceiptPdfServiceMock).generateCartReceipts(any(), anyList(), any());
+        doReturn(new PdfCartGeneration()).when(generateCartReceiptPdfServiceMock).regenerateCartReceipts(any(), anyList(), any(), any());
         doReturn(true).when(generateCartReceiptPdfServiceMock).verifyAndUpdateCartReceipt(any(), any());
 
         // test execution
@@ -158,7 +190,7 @@ class RegenerateCartReceiptPdfTest {
         assertEquals(HttpStatus.SC_OK, response.getStatusCode());
 
         verify(bizEventCosmosClient).getAllCartBizEventDocument(anyString());
-        verify(generateCartReceiptPdfServiceMock).generateCartReceipts(any(), anyList(), any());
+        verify(generateCartReceiptPdfServiceMock).regenerateCartReceipts(any(), anyList(), any(), any());
         verify(generateCartReceiptPdfServiceMock).verifyAndUpdateCartReceipt(any(), any());
         verify(documentdb).setValue(receiptBindingCaptor.capture());
 
@@ -191,7 +223,7 @@ class RegenerateCartReceiptPdfTest {
         assertEquals("BizEvents for cart 1 not found", body.getDetail());
 
         verify(cartReceiptCosmosServiceMock, never()).getCartForReceipt(anyString());
-        verify(generateCartReceiptPdfServiceMock, never()).generateCartReceipts(any(), any(), any());
+        verify(generateCartReceiptPdfServiceMock, never()).regenerateCartReceipts(any(), any(), any(), any());
         verify(generateCartReceiptPdfServiceMock, never()).verifyAndUpdateCartReceipt(any(), any());
         verify(documentdb, never()).setValue(receiptBindingCaptor.capture());
     }
@@ -220,7 +252,7 @@ class RegenerateCartReceiptPdfTest {
         assertEquals("Biz event is in invalid status " + status, body.getDetail());
 
         verify(cartReceiptCosmosServiceMock, never()).getCartForReceipt(anyString());
-        verify(generateCartReceiptPdfServiceMock, never()).generateCartReceipts(any(), any(), any());
+        verify(generateCartReceiptPdfServiceMock, never()).regenerateCartReceipts(any(), any(), any(), any());
         verify(generateCartReceiptPdfServiceMock, never()).verifyAndUpdateCartReceipt(any(), any());
         verify(documentdb, never()).setValue(receiptBindingCaptor.capture());
     }
@@ -250,7 +282,7 @@ class RegenerateCartReceiptPdfTest {
         assertEquals("Biz event is in invalid because debtor's and payer's identifiers are missing or not valid", body.getDetail());
 
         verify(cartReceiptCosmosServiceMock, never()).getCartForReceipt(anyString());
-        verify(generateCartReceiptPdfServiceMock, never()).generateCartReceipts(any(), any(), any());
+        verify(generateCartReceiptPdfServiceMock, never()).regenerateCartReceipts(any(), any(), any(), any());
         verify(generateCartReceiptPdfServiceMock, never()).verifyAndUpdateCartReceipt(any(), any());
         verify(documentdb, never()).setValue(receiptBindingCaptor.capture());
     }
@@ -282,7 +314,7 @@ class RegenerateCartReceiptPdfTest {
         assertEquals("Biz event is in invalid because it is from e-commerce and e-commerce filter is enabled", body.getDetail());
 
         verify(cartReceiptCosmosServiceMock, never()).getCartForReceipt(anyString());
-        verify(generateCartReceiptPdfServiceMock, never()).generateCartReceipts(any(), any(), any());
+        verify(generateCartReceiptPdfServiceMock, never()).regenerateCartReceipts(any(), any(), any(), any());
         verify(generateCartReceiptPdfServiceMock, never()).verifyAndUpdateCartReceipt(any(), any());
         verify(documentdb, never()).setValue(receiptBindingCaptor.capture());
     }
@@ -312,7 +344,7 @@ class RegenerateCartReceiptPdfTest {
         assertEquals("Biz event is in invalid because contain either an invalid amount value or it is a legacy cart element", body.getDetail());
 
         verify(cartReceiptCosmosServiceMock, never()).getCartForReceipt(anyString());
-        verify(generateCartReceiptPdfServiceMock, never()).generateCartReceipts(any(), any(), any());
+        verify(generateCartReceiptPdfServiceMock, never()).regenerateCartReceipts(any(), any(), any(), any());
         verify(generateCartReceiptPdfServiceMock, never()).verifyAndUpdateCartReceipt(any(), any());
         verify(documentdb, never()).setValue(receiptBindingCaptor.capture());
     }
@@ -341,7 +373,7 @@ class RegenerateCartReceiptPdfTest {
         assertEquals("Failed to regenerate cart, the expected total notice 1 does not match the number of biz events 5", body.getDetail());
 
         verify(cartReceiptCosmosServiceMock, never()).getCartForReceipt(anyString());
-        verify(generateCartReceiptPdfServiceMock, never()).generateCartReceipts(any(), any(), any());
+        verify(generateCartReceiptPdfServiceMock, never()).regenerateCartReceipts(any(), any(), any(), any());
         verify(generateCartReceiptPdfServiceMock, never()).verifyAndUpdateCartReceipt(any(), any());
         verify(documentdb, never()).setValue(receiptBindingCaptor.capture());
     }
@@ -369,7 +401,7 @@ class RegenerateCartReceiptPdfTest {
         assertTrue(body.getDetail().startsWith("An error occurred while building cart receipt:"));
 
         verify(cartReceiptCosmosServiceMock, never()).getCartForReceipt(anyString());
-        verify(generateCartReceiptPdfServiceMock, never()).generateCartReceipts(any(), any(), any());
+        verify(generateCartReceiptPdfServiceMock, never()).regenerateCartReceipts(any(), any(), any(), any());
         verify(generateCartReceiptPdfServiceMock, never()).verifyAndUpdateCartReceipt(any(), any());
         verify(documentdb, never()).setValue(receiptBindingCaptor.capture());
     }
@@ -384,7 +416,7 @@ class RegenerateCartReceiptPdfTest {
         doReturn(bizEventList).when(bizEventCosmosClient).getAllCartBizEventDocument(anyString());
         doReturn(newCart).when(helpdeskServiceMock).buildCart(any());
         doThrow(CartNotFoundException.class).when(cartReceiptCosmosServiceMock).getCartForReceipt(anyString());
-        doReturn(new PdfCartGeneration()).when(generateCartReceiptPdfServiceMock).generateCartReceipts(any(), anyList(), any());
+        doReturn(new PdfCartGeneration()).when(generateCartReceiptPdfServiceMock).regenerateCartReceipts(any(), anyList(), any(), any());
         doReturn(false).when(generateCartReceiptPdfServiceMock).verifyAndUpdateCartReceipt(any(), any());
 
         // test execution
@@ -402,7 +434,7 @@ class RegenerateCartReceiptPdfTest {
         assertEquals("Unable to generate PDF cart receipt", body.getDetail());
 
         verify(bizEventCosmosClient).getAllCartBizEventDocument(anyString());
-        verify(generateCartReceiptPdfServiceMock).generateCartReceipts(any(), anyList(), any());
+        verify(generateCartReceiptPdfServiceMock).regenerateCartReceipts(any(), anyList(), any(), any());
         verify(generateCartReceiptPdfServiceMock).verifyAndUpdateCartReceipt(any(), any());
         verify(documentdb, never()).setValue(any());
     }
@@ -417,7 +449,7 @@ class RegenerateCartReceiptPdfTest {
         doReturn(bizEventList).when(bizEventCosmosClient).getAllCartBizEventDocument(anyString());
         doReturn(newCart).when(helpdeskServiceMock).buildCart(any());
         doThrow(CartNotFoundException.class).when(cartReceiptCosmosServiceMock).getCartForReceipt(anyString());
-        doReturn(new PdfCartGeneration()).when(generateCartReceiptPdfServiceMock).generateCartReceipts(any(), anyList(), any());
+        doReturn(new PdfCartGeneration()).when(generateCartReceiptPdfServiceMock).regenerateCartReceipts(any(), anyList(), any(), any());
         doThrow(CartReceiptGenerationNotToRetryException.class).when(generateCartReceiptPdfServiceMock).verifyAndUpdateCartReceipt(any(), any());
 
         // test execution
@@ -435,7 +467,7 @@ class RegenerateCartReceiptPdfTest {
         assertTrue(body.getDetail().startsWith("Error during cart receipt generation: "));
 
         verify(bizEventCosmosClient).getAllCartBizEventDocument(anyString());
-        verify(generateCartReceiptPdfServiceMock).generateCartReceipts(any(), anyList(), any());
+        verify(generateCartReceiptPdfServiceMock).regenerateCartReceipts(any(), anyList(), any(), any());
         verify(generateCartReceiptPdfServiceMock).verifyAndUpdateCartReceipt(any(), any());
         verify(documentdb, never()).setValue(any());
     }
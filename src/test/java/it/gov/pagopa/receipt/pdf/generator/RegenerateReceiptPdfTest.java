@@ -40,8 +40,10 @@ import org.mockito.stubbing.Answer;
 
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
+import static it.gov.pagopa.receipt.pdf.generator.utils.Constants.FORCE_PARAMETER;
 import static it.gov.pagopa.receipt.pdf.generator.utils.ObjectMapperUtilsTest.getBizEventFromFile;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -52,7 +54,9 @@ import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.isNull;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.same;
 import static org.mockito.Mockito.verify;
 
 @ExtendWith(MockitoExtension.class)
@@ -100,7 +104,7 @@ class RegenerateReceiptPdfTest {
         doReturn(bizEvent).when(bizEventCosmosClient).getBizEventDocument(anyString());
         doReturn(newReceipt).when(helpdeskServiceMock).createReceipt(any());
         doReturn(existingReceipt).when(receiptCosmosServiceMock).getReceipt(anyString());
-        doReturn(new PdfGeneration()).when(generateReceiptPdfServiceMock).generateReceipts(any(), any(), any());
+        doReturn(new PdfGeneration()).when(generateReceiptPdfServiceMock).regenerateReceipts(any(), any(), any(), any());
         doReturn(true).when(generateReceiptPdfServiceMock).verifyAndUpdateReceipt(any(), any());
 
         // test execution
@@ -115,7 +119,8 @@ class RegenerateReceiptPdfTest {
         assertEquals(HttpStatus.SC_OK, response.getStatusCode());
 
         verify(receiptCosmosServiceMock).getReceipt(anyString());
-        verify(generateReceiptPdfServiceMock).generateReceipts(any(), any(), any());
+        // the PDFs of the existing receipt can be reused if their template data is unchanged
+        verify(generateReceiptPdfServiceMock).regenerateReceipts(any(), any(), same(existingReceipt), any());
         verify(generateReceiptPdfServiceMock).verifyAndUpdateReceipt(any(), any());
         verify(documentdb).setValue(receiptBindingCaptor.capture());
 
@@ -125,6 +130,34 @@ class RegenerateReceiptPdfTest {
         assertNotNull(savedReceipt.getIoMessageData());
     }
 
+    @Test
+    @SneakyThrows
+    void regeneratePDFWithForceRendersAllThePdfsAgain() {
+        BizEvent bizEvent = getBizEventFromFile("biz-events/biz-event.json");
+
+        Receipt existingReceipt = buildReceiptWithStatus();
+        Receipt newReceipt = buildNewCreatedReceiptWithStatus(ReceiptStatusType.INSERTED);
+
+        doReturn(Map.of(FORCE_PARAMETER, "true")).when(requestMock).getQueryParameters();
+        doReturn(bizEvent).when(bizEventCosmosClient).getBizEventDocument(anyString());
+        doReturn(newReceipt).when(helpdeskServiceMock).createReceipt(any());
+        doReturn(existingReceipt).when(receiptCosmosServiceMock).getReceipt(anyString());
+        doReturn(new PdfGeneration()).when(generateReceiptPdfServiceMock).regenerateReceipts(any(), any(), any(), any());
+        doReturn(true).when(generateReceiptPdfServiceMock).verifyAndUpdateReceipt(any(), any());
+
+        HttpResponseMessage response = assertDoesNotThrow(() -> sut.run(
+                requestMock,
+                bizEvent.getId(),
+                documentdb,
+                executionContextMock
+        ));
+
+        assertEquals(HttpStatus.SC_OK, response.getStatusCode());
+        verify(generateReceiptPdfServiceMock).regenerateReceipts(any(), any(), isNull(), any());
+        verify(documentdb).setValue(receiptBindingCaptor.capture());
+        assertEquals(existingReceipt.getId(), receiptBindingCaptor.getValue().getId());
+    }
+
     @Test
     @SneakyThrows
     void regeneratePDFSuccessWithoutExistingReceipt() {
@@ -135,7 +168,7 @@ class RegenerateReceiptPdfTest {
         doReturn(bizEvent).when(bizEventCosmosClient).getBizEventDocument(anyString());
         doReturn(newReceipt).when(helpdeskServiceMock).createReceipt(any());
         doThrow(ReceiptNotFoundException.class).when(receiptCosmosServiceMock).getReceipt(anyString());
-        doReturn(new PdfGeneration()).when(generateReceiptPdfServiceMock).generateReceipts(any(), any(), any());
+        doReturn(new PdfGeneration()).when(generateReceiptPdfServiceMock).regenerateReceipts(any(), any(), any(), any());
         doReturn(true).when(generateReceiptPdfServiceMock).verifyAndUpdateReceipt(any(), any());
 
         // test execution
@@ -150,7 +183,7 @@ class RegenerateReceiptPdfTest {
         assertEquals(HttpStatus.SC_OK, response.getStatusCode());
 
         verify(receiptCosmosServiceMock).getReceipt(anyString());
-        verify(generateReceiptPdfServiceMock).generateReceipts(any(), any(), any());
+        verify(generateReceiptPdfServiceMock).regenerateReceipts(any(), any(), any(), any());
         verify(generateReceiptPdfServiceMock).verifyAndUpdateReceipt(any(), any());
         verify(documentdb).setValue(receiptBindingCaptor.capture());
 
@@ -179,7 +212,7 @@ class RegenerateReceiptPdfTest {
         assertEquals("BizEvent not found with id 1", body.getDetail());
 
         verify(receiptCosmosServiceMock, never()).getReceipt(anyString());
-        verify(generateReceiptPdfServiceMock, never()).generateReceipts(any(), any(), any());
+        verify(generateReceiptPdfServiceMock, never()).regenerateReceipts(any(), any(), any(), any());
         verify(generateReceiptPdfServiceMock, never()).verifyAndUpdateReceipt(any(), any());
         verify(documentdb, never()).setValue(receiptBindingCaptor.capture());
     }
@@ -204,7 +237,7 @@ class RegenerateReceiptPdfTest {
         assertEquals("Biz event is null", body.getDetail());
 
         verify(receiptCosmosServiceMock, never()).getReceipt(anyString());
-        verify(generateReceiptPdfServiceMock, never()).generateReceipts(any(), any(), any());
+        verify(generateReceiptPdfServiceMock, never()).regenerateReceipts(any(), any(), any(), any());
         verify(generateReceiptPdfServiceMock, never()).verifyAndUpdateReceipt(any(), any());
         verify(documentdb, never()).setValue(receiptBindingCaptor.capture());
     }
@@ -233,7 +266,7 @@ class RegenerateReceiptPdfTest {
         assertEquals("Biz event is in invalid status " + status, body.getDetail());
 
         verify(receiptCosmosServiceMock, never()).getReceipt(anyString());
-        verify(generateReceiptPdfServiceMock, never()).generateReceipts(any(), any(), any());
+        verify(generateReceiptPdfServiceMock, never()).regenerateReceipts(any(), any(), any(), any());
         verify(generateReceiptPdfServiceMock, never()).verifyAndUpdateReceipt(any(), any());
         verify(documentdb, never()).setValue(receiptBindingCaptor.capture());
     }
@@ -262,7 +295,7 @@ class RegenerateReceiptPdfTest {
         assertEquals("Biz event is in invalid because debtor's and payer's identifiers are missing or not valid", body.getDetail());
 
         verify(receiptCosmosServiceMock, never()).getReceipt(anyString());
-        verify(generateReceiptPdfServiceMock, never()).generateReceipts(any(), any(), any());
+        verify(generateReceiptPdfServiceMock, never()).regenerateReceipts(any(), any(), any(), any());
         verify(generateReceiptPdfServiceMock, never()).verifyAndUpdateReceipt(any(), any());
         verify(documentdb, never()).setValue(receiptBindingCaptor.capture());
     }
@@ -293,7 +326,7 @@ class RegenerateReceiptPdfTest {
         assertEquals("Biz event is in invalid because it is from e-commerce and e-commerce filter is enabled", body.getDetail());
 
         verify(receiptCosmosServiceMock, never()).getReceipt(anyString());
-        verify(generateReceiptPdfServiceMock, never()).generateReceipts(any(), any(), any());
+        verify(generateReceiptPdfServiceMock, never()).regenerateReceipts(any(), any(), any(), any());
         verify(generateReceiptPdfServiceMock, never()).verifyAndUpdateReceipt(any(), any());
         verify(documentdb, never()).setValue(receiptBindingCaptor.capture());
     }
@@ -322,7 +355,7 @@ class RegenerateReceiptPdfTest {
         assertEquals("Biz event is in invalid because contain either an invalid amount value or it is a legacy cart element", body.getDetail());
 
         verify(receiptCosmosServiceMock, never()).getReceipt(anyString());
-        verify(generateReceiptPdfServiceMock, never()).generateReceipts(any(), any(), any());
+        verify(generateReceiptPdfServiceMock, never()).regenerateReceipts(any(), any(), any(), any());
         verify(generateReceiptPdfServiceMock, never()).verifyAndUpdateReceipt(any(), any());
         verify(documentdb, never()).setValue(receiptBindingCaptor.capture());
     }
@@ -353,7 +386,7 @@ class RegenerateReceiptPdfTest {
         assertTrue(body.getDetail().startsWith("Failed to re-create receipt entity with eventId"));
 
         verify(receiptCosmosServiceMock).getReceipt(anyString());
-        verify(generateReceiptPdfServiceMock, never()).generateReceipts(any(), any(), any());
+        verify(generateReceiptPdfServiceMock, never()).regenerateReceipts(any(), any(), any(), any());
         verify(generateReceiptPdfServiceMock, never()).verifyAndUpdateReceipt(any(), any());
         verify(documentdb, never()).setValue(receiptBindingCaptor.capture());
     }
@@ -385,7 +418,7 @@ class RegenerateReceiptPdfTest {
         assertEquals("Unable to generate PDF receipt", body.getDetail());
 
         verify(receiptCosmosServiceMock).getReceipt(anyString());
-        verify(generateReceiptPdfServiceMock).generateReceipts(any(), any(), any());
+        verify(generateReceiptPdfServiceMock).regenerateReceipts(any(), any(), any(), any());
         verify(generateReceiptPdfServiceMock).verifyAndUpdateReceipt(any(), any());
         verify(documentdb, never()).setValue(receiptBindingCaptor.capture());
     }
@@ -417,7 +450,7 @@ class RegenerateReceiptPdfTest {
         assertTrue(body.getDetail().startsWith("Error during receipt generation: "));
 
         verify(receiptCosmosServiceMock).getReceipt(anyString());
-        verify(generateReceiptPdfServiceMock).generateReceipts(any(), any(), any());
+        verify(generateReceiptPdfServiceMock).regenerateReceipts(any(), any(), any(), any());
         verify(generateReceiptPdfServiceMock).verifyAndUpdateReceipt(any(), any());
         verify(documentdb, never()).setValue(receiptBindingCaptor.capture());
     }
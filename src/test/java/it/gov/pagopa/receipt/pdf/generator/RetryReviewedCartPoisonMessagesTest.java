@@ -4,6 +4,7 @@ import com.azure.core.http.rest.Response;
 import com.azure.storage.queue.models.SendMessageResult;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.microsoft.azure.functions.ExecutionContext;
 import com.microsoft.azure.functions.OutputBinding;
 import it.gov.pagopa.receipt.pdf.generator.client.impl.CartQueueClientImpl;
@@ -15,7 +16,6 @@ import it.gov.pagopa.receipt.pdf.generator.entity.event.TransactionDetails;
 import it.gov.pagopa.receipt.pdf.generator.entity.receipt.CartReceiptError;
 import it.gov.pagopa.receipt.pdf.generator.entity.receipt.enumeration.ReceiptErrorStatusType;
 import it.gov.pagopa.receipt.pdf.generator.exception.Aes256Exception;
-import it.gov.pagopa.receipt.pdf.generator.exception.CartNotFoundException;
 import it.gov.pagopa.receipt.pdf.generator.exception.ReceiptNotFoundException;
 import it.gov.pagopa.receipt.pdf.generator.exception.UnableToSaveException;
 import it.gov.pagopa.receipt.pdf.generator.service.impl.CartReceiptCosmosServiceImpl;
@@ -37,6 +37,8 @@ import java.util.ArrayList;
 import java.util.Base64;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -67,7 +69,7 @@ class RetryReviewedCartPoisonMessagesTest {
     @Captor
     private ArgumentCaptor<List<CartReceiptError>> receiptErrorCaptor;
     @Captor
-    private ArgumentCaptor<CartForReceipt> receiptCaptor;
+    private ArgumentCaptor<Map<CartForReceipt, JsonNode>> cartSnapshotsCaptor;
     @SuppressWarnings("unchecked")
     OutputBinding<List<CartReceiptError>> errorToCosmos = (OutputBinding<List<CartReceiptError>>)mock(OutputBinding.class);
     @SystemStub
@@ -79,7 +81,7 @@ class RetryReviewedCartPoisonMessagesTest {
     }
 
     @Test
-    void successfulRun() throws JsonProcessingException, UnableToSaveException, CartNotFoundException {
+    void successfulRun() throws JsonProcessingException {
         CartReceiptError receiptError = CartReceiptError.builder()
                 .messagePayload(ENCRYPTED_VALID_CONTENT_TO_RETRY)
                 .status(ReceiptErrorStatusType.REVIEWED)
@@ -87,7 +89,7 @@ class RetryReviewedCartPoisonMessagesTest {
                 .build();
 
         CartForReceipt receipt = CartForReceipt.builder().status(CartStatusType.TO_REVIEW).cartId(BIZ_EVENT_ID).build();
-        when(cosmosMock.getCartForReceipt(ID_TRANSACTION)).thenReturn(receipt);
+        when(cosmosMock.getCartsForReceipt(Set.of(ID_TRANSACTION))).thenReturn(Map.of(ID_TRANSACTION, receipt));
 
         when(queueResponse.getStatusCode()).thenReturn(HttpStatus.SC_CREATED);
         when(queueMock.sendMessageToQueue(any())).thenReturn(queueResponse);
@@ -97,8 +99,8 @@ class RetryReviewedCartPoisonMessagesTest {
         assertDoesNotThrow(() -> function.processRetryReviewedCartPoisonMessages(
                 Collections.singletonList(receiptError), errorToCosmos, context));
 
-        verify(cosmosMock).updateCartForReceipt(receiptCaptor.capture());
-        CartForReceipt receiptCaptorValue = receiptCaptor.getValue();
+        verify(cosmosMock).patchCartsForReceipt(cartSnapshotsCaptor.capture());
+        CartForReceipt receiptCaptorValue = cartSnapshotsCaptor.getValue().keySet().iterator().next();
         assertEquals(BIZ_EVENT_ID, receiptCaptorValue.getCartId());
         assertEquals(CartStatusType.INSERTED, receiptCaptorValue.getStatus());
 
@@ -133,14 +135,14 @@ class RetryReviewedCartPoisonMessagesTest {
     }
 
     @Test
-    void resendToCosmosErrorIfReceiptNotFound() throws CartNotFoundException {
+    void resendToCosmosErrorIfReceiptNotFound() {
         CartReceiptError receiptError = CartReceiptError.builder()
                 .messagePayload(ENCRYPTED_VALID_CONTENT_TO_RETRY)
                 .status(ReceiptErrorStatusType.REVIEWED)
                 .id(ID_TRANSACTION)
                 .build();
 
-        doThrow(new CartNotFoundException(COSMOS_ERROR)).when(cosmosMock).getCartForReceipt(ID_TRANSACTION);
+        when(cosmosMock.getCartsForReceipt(Set.of(ID_TRANSACTION))).thenReturn(Map.of());
 
         function = spy(new RetryReviewedCartPoisonMessages(cosmosMock, queueMock));
 
@@ -158,7 +160,7 @@ class RetryReviewedCartPoisonMessagesTest {
     }
 
     @Test
-    void resendToCosmosErrorIfSaveReceiptFailed() throws UnableToSaveException, CartNotFoundException {
+    void resendToCosmosErrorIfSaveReceiptFailed() {
         CartReceiptError receiptError = CartReceiptError.builder()
                 .messagePayload(ENCRYPTED_VALID_CONTENT_TO_RETRY)
                 .status(ReceiptErrorStatusType.REVIEWED)
@@ -166,16 +168,16 @@ class RetryReviewedCartPoisonMessagesTest {
                 .build();
 
         CartForReceipt receipt = CartForReceipt.builder().status(CartStatusType.TO_REVIEW).cartId(BIZ_EVENT_ID).build();
-        when(cosmosMock.getCartForReceipt(ID_TRANSACTION)).thenReturn(receipt);
-        doThrow(new UnableToSaveException(COSMOS_ERROR)).when(cosmosMock).updateCartForReceipt(any(CartForReceipt.class));
+        when(cosmosMock.getCartsForReceipt(Set.of(ID_TRANSACTION))).thenReturn(Map.of(ID_TRANSACTION, receipt));
+        when(cosmosMock.patchCartsForReceipt(any())).thenReturn(Map.of(ID_TRANSACTION, new UnableToSaveException(COSMOS_ERROR)));
 
         function = spy(new RetryReviewedCartPoisonMessages(cosmosMock, queueMock));
 
         assertDoesNotThrow(() -> function.processRetryReviewedCartPoisonMessages(
                 Collections.singletonList(receiptError), errorToCosmos, context));
 
-        verify(cosmosMock).updateCartForReceipt(receiptCaptor.capture());
-        CartForReceipt receiptCaptorValue = receiptCaptor.getValue();
+        verify(cosmosMock).patchCartsForReceipt(cartSnapshotsCaptor.capture());
+        CartForReceipt receiptCaptorValue = cartSnapshotsCaptor.getValue().keySet().iterator().next();
         assertEquals(BIZ_EVENT_ID, receiptCaptorValue.getCartId());
         assertEquals(CartStatusType.INSERTED, receiptCaptorValue.getStatus());
 
@@ -190,7 +192,7 @@ class RetryReviewedCartPoisonMessagesTest {
     }
 
     @Test
-    void resendToCosmosErrorIfQueueFailed() throws JsonProcessingException, UnableToSaveException, CartNotFoundException {
+    void resendToCosmosErrorIfQueueFailed() throws JsonProcessingException {
         CartReceiptError receiptError = CartReceiptError.builder()
                 .messagePayload(ENCRYPTED_VALID_CONTENT_TO_RETRY)
                 .status(ReceiptErrorStatusType.REVIEWED)
@@ -198,7 +200,7 @@ class RetryReviewedCartPoisonMessagesTest {
                 .build();
 
         CartForReceipt receipt = CartForReceipt.builder().status(CartStatusType.TO_REVIEW).cartId(BIZ_EVENT_ID).build();
-        when(cosmosMock.getCartForReceipt(ID_TRANSACTION)).thenReturn(receipt);
+        when(cosmosMock.getCartsForReceipt(Set.of(ID_TRANSACTION))).thenReturn(Map.of(ID_TRANSACTION, receipt));
 
         when(queueResponse.getStatusCode()).thenReturn(HttpStatus.SC_BAD_REQUEST);
         when(queueMock.sendMessageToQueue(any())).thenReturn(queueResponse);
@@ -208,8 +210,8 @@ class RetryReviewedCartPoisonMessagesTest {
         assertDoesNotThrow(() -> function.processRetryReviewedCartPoisonMessages(
                 Collections.singletonList(receiptError), errorToCosmos, context));
 
-        verify(cosmosMock).updateCartForReceipt(receiptCaptor.capture());
-        CartForReceipt receiptCaptorValue = receiptCaptor.getValue();
+        verify(cosmosMock).patchCartsForReceipt(cartSnapshotsCaptor.capture());
+        CartForReceipt receiptCaptorValue = cartSnapshotsCaptor.getValue().keySet().iterator().next();
         assertEquals(BIZ_EVENT_ID, receiptCaptorValue.getCartId());
         assertEquals(CartStatusType.INSERTED, receiptCaptorValue.getStatus());
 
@@ -227,7 +229,7 @@ class RetryReviewedCartPoisonMessagesTest {
     }
 
     @Test
-    void successfulRunMultipleItems() throws JsonProcessingException, UnableToSaveException, Aes256Exception, CartNotFoundException {
+    void successfulRunMultipleItems() throws JsonProcessingException, Aes256Exception {
         String encryptedMultiItemString = Aes256Utils.encrypt(buildQueueBizEventList(5));
         CartReceiptError receiptError = CartReceiptError.builder()
                 .messagePayload(encryptedMultiItemString)
@@ -236,7 +238,7 @@ class RetryReviewedCartPoisonMessagesTest {
                 .build();
 
         CartForReceipt receipt = CartForReceipt.builder().status(CartStatusType.TO_REVIEW).cartId(ID_TRANSACTION).build();
-        when(cosmosMock.getCartForReceipt(ID_TRANSACTION)).thenReturn(receipt);
+        when(cosmosMock.getCartsForReceipt(Set.of(ID_TRANSACTION))).thenReturn(Map.of(ID_TRANSACTION, receipt));
 
         when(queueResponse.getStatusCode()).thenReturn(HttpStatus.SC_CREATED);
         when(queueMock.sendMessageToQueue(any())).thenReturn(queueResponse);
@@ -246,8 +248,8 @@ class RetryReviewedCartPoisonMessagesTest {
         assertDoesNotThrow(() -> function.processRetryReviewedCartPoisonMessages(
                 Collections.singletonList(receiptError), errorToCosmos, context));
 
-        verify(cosmosMock).updateCartForReceipt(receiptCaptor.capture());
-        CartForReceipt receiptCaptorValue = receiptCaptor.getValue();
+        verify(cosmosMock).patchCartsForReceipt(cartSnapshotsCaptor.capture());
+        CartForReceipt receiptCaptorValue = cartSnapshotsCaptor.getValue().keySet().iterator().next();
         assertEquals(ID_TRANSACTION, receiptCaptorValue.getCartId());
         assertEquals(CartStatusType.INSERTED, receiptCaptorValue.getStatus());
 
@@ -263,6 +265,60 @@ class RetryReviewedCartPoisonMessagesTest {
         assertEquals(ID_TRANSACTION, receiptErrorCaptorValue.getId());
     }
 
+    @Test
+    void batchRunAttributesErrorsToEachItem() throws Aes256Exception {
+        CartReceiptError requeued = buildReviewedError("1");
+        CartReceiptError notFound = buildReviewedError("2");
+        CartReceiptError notSaved = buildReviewedError("3");
+
+        CartForReceipt requeuedCart = CartForReceipt.builder().cartId("1").status(CartStatusType.FAILED).build();
+        CartForReceipt notSavedCart = CartForReceipt.builder().cartId("3").status(CartStatusType.FAILED).build();
+        when(cosmosMock.getCartsForReceipt(Set.of("1", "2", "3"))).thenReturn(Map.of("1", requeuedCart, "3", notSavedCart));
+        when(cosmosMock.patchCartsForReceipt(any())).thenReturn(Map.of("3", new UnableToSaveException(COSMOS_ERROR)));
+
+        when(queueResponse.getStatusCode()).thenReturn(HttpStatus.SC_CREATED);
+        when(queueMock.sendMessageToQueue(any())).thenReturn(queueResponse);
+
+        function = spy(new RetryReviewedCartPoisonMessages(cosmosMock, queueMock));
+
+        assertDoesNotThrow(() -> function.processRetryReviewedCartPoisonMessages(
+                List.of(requeued, notFound, notSaved), errorToCosmos, context));
+
+        verify(cosmosMock).patchCartsForReceipt(cartSnapshotsCaptor.capture());
+        assertEquals(2, cartSnapshotsCaptor.getValue().size());
+        assertEquals(CartStatusType.INSERTED, requeuedCart.getStatus());
+        assertEquals(CartStatusType.INSERTED, notSavedCart.getStatus());
+
+        verify(queueMock).sendMessageToQueue(any());
+
+        verify(errorToCosmos).setValue(receiptErrorCaptor.capture());
+        assertEquals(List.of(requeued, notFound, notSaved), receiptErrorCaptor.getValue());
+        assertEquals(ReceiptErrorStatusType.REQUEUED, requeued.getStatus());
+        assertEquals(ReceiptErrorStatusType.TO_REVIEW, notFound.getStatus());
+        assertNotNull(notFound.getMessageError());
+        assertEquals(ReceiptErrorStatusType.TO_REVIEW, notSaved.getStatus());
+        assertEquals(COSMOS_ERROR, notSaved.getMessageError());
+    }
+
+    private static CartReceiptError buildReviewedError(String cartId) throws Aes256Exception {
+        String payload;
+        try {
+            payload = ObjectMapperUtils.writeValueAsString(List.of(BizEvent.builder()
+                    .id(BIZ_EVENT_ID + cartId)
+                    .transactionDetails(TransactionDetails.builder()
+                            .transaction(Transaction.builder().transactionId(cartId).build())
+                            .build())
+                    .build()));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+        return CartReceiptError.builder()
+                .messagePayload(Aes256Utils.encrypt(payload))
+                .status(ReceiptErrorStatusType.REVIEWED)
+                .id(cartId)
+                .build();
+    }
+
     private static String buildQueueBizEventList(int numberOfEvents) {
         List<BizEvent> listOfBizEvents = new ArrayList<>();
         for (int i = 0; i < numberOfEvents; i++) {
@@ -4,6 +4,7 @@ import com.azure.core.http.rest.Response;
 import com.azure.storage.queue.models.SendMessageResult;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.microsoft.azure.functions.ExecutionContext;
 import com.microsoft.azure.functions.OutputBinding;
 import it.gov.pagopa.receipt.pdf.generator.client.impl.ReceiptQueueClientImpl;
@@ -15,7 +16,6 @@ import it.gov.pagopa.receipt.pdf.generator.entity.receipt.ReceiptError;
 import it.gov.pagopa.receipt.pdf.generator.entity.receipt.enumeration.ReceiptErrorStatusType;
 import it.gov.pagopa.receipt.pdf.generator.entity.receipt.enumeration.ReceiptStatusType;
 import it.gov.pagopa.receipt.pdf.generator.exception.Aes256Exception;
-import it.gov.pagopa.receipt.pdf.generator.exception.ReceiptNotFoundException;
 import it.gov.pagopa.receipt.pdf.generator.exception.UnableToSaveException;
 import it.gov.pagopa.receipt.pdf.generator.service.impl.ReceiptCosmosServiceImpl;
 import it.gov.pagopa.receipt.pdf.generator.utils.Aes256Utils;
@@ -35,7 +35,10 @@ import uk.org.webcompere.systemstubs.jupiter.SystemStubsExtension;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -66,7 +69,7 @@ class RetryReviewedPoisonMessagesTest {
     @Captor
     private ArgumentCaptor<List<ReceiptError>> receiptErrorCaptor;
     @Captor
-    private ArgumentCaptor<Receipt> receiptCaptor;
+    private ArgumentCaptor<Map<Receipt, JsonNode>> receiptSnapshotsCaptor;
     @SuppressWarnings("unchecked")
     OutputBinding<List<ReceiptError>> errorToCosmos = (OutputBinding<List<ReceiptError>>)mock(OutputBinding.class);
     @SystemStub
@@ -78,7 +81,7 @@ class RetryReviewedPoisonMessagesTest {
     }
 
     @Test
-    void successfulRun() throws JsonProcessingException, ReceiptNotFoundException, UnableToSaveException {
+    void successfulRun() throws JsonProcessingException {
         ReceiptError receiptError = ReceiptError.builder()
                 .messagePayload(ENCRYPTED_VALID_CONTENT_TO_RETRY)
                 .status(ReceiptErrorStatusType.REVIEWED)
@@ -87,7 +90,7 @@ class RetryReviewedPoisonMessagesTest {
                 .build();
 
         Receipt receipt = Receipt.builder().status(ReceiptStatusType.TO_REVIEW).eventId(BIZ_EVENT_ID).build();
-        when(cosmosMock.getReceipt(BIZ_EVENT_ID)).thenReturn(receipt);
+        when(cosmosMock.getReceipts(Set.of(BIZ_EVENT_ID))).thenReturn(Map.of(BIZ_EVENT_ID, receipt));
 
         when(queueResponse.getStatusCode()).thenReturn(HttpStatus.SC_CREATED);
         when(queueMock.sendMessageToQueue(any())).thenReturn(queueResponse);
@@ -97,10 +100,11 @@ class RetryReviewedPoisonMessagesTest {
         assertDoesNotThrow(() -> function.processRetryReviewedPoisonMessages(
                 Collections.singletonList(receiptError), errorToCosmos, context));
 
-        verify(cosmosMock).updateReceipt(receiptCaptor.capture());
-        Receipt receiptCaptorValue = receiptCaptor.getValue();
+        verify(cosmosMock).patchReceipts(receiptSnapshotsCaptor.capture());
+        Receipt receiptCaptorValue = receiptSnapshotsCaptor.getValue().keySet().iterator().next();
         assertEquals(BIZ_EVENT_ID, receiptCaptorValue.getEventId());
         assertEquals(ReceiptStatusType.INSERTED, receiptCaptorValue.getStatus());
+        assertTrue(receiptSnapshotsCaptor.getValue().containsKey(receipt));
 
         verify(queueMock).sendMessageToQueue(messageCaptor.capture());
         BizEvent captured = ObjectMapperUtils.mapBizEventListString(new String(Base64.getMimeDecoder()
@@ -133,7 +137,7 @@ class RetryReviewedPoisonMessagesTest {
     }
 
     @Test
-    void resendToCosmosErrorIfReceiptNotFound() throws ReceiptNotFoundException {
+    void resendToCosmosErrorIfReceiptNotFound() {
         ReceiptError receiptError = ReceiptError.builder()
                 .messagePayload(ENCRYPTED_VALID_CONTENT_TO_RETRY)
                 .status(ReceiptErrorStatusType.REVIEWED)
@@ -141,7 +145,7 @@ class RetryReviewedPoisonMessagesTest {
                 .id(RECEIPT_ERROR_ID)
                 .build();
 
-        doThrow(new ReceiptNotFoundException(COSMOS_ERROR)).when(cosmosMock).getReceipt(BIZ_EVENT_ID);
+        when(cosmosMock.getReceipts(Set.of(BIZ_EVENT_ID))).thenReturn(Map.of());
 
         function = spy(new RetryReviewedPoisonMessages(cosmosMock, queueMock));
 
@@ -159,7 +163,7 @@ class RetryReviewedPoisonMessagesTest {
     }
 
     @Test
-    void resendToCosmosErrorIfSaveReceiptFailed() throws ReceiptNotFoundException, UnableToSaveException {
+    void resendToCosmosErrorIfSaveReceiptFailed() {
         ReceiptError receiptError = ReceiptError.builder()
                 .messagePayload(ENCRYPTED_VALID_CONTENT_TO_RETRY)
                 .status(ReceiptErrorStatusType.REVIEWED)
@@ -168,16 +172,16 @@ class RetryReviewedPoisonMessagesTest {
                 .build();
 
         Receipt receipt = Receipt.builder().status(ReceiptStatusType.TO_REVIEW).eventId(BIZ_EVENT_ID).build();
-        when(cosmosMock.getReceipt(BIZ_EVENT_ID)).thenReturn(receipt);
-        doThrow(new UnableToSaveException(COSMOS_ERROR)).when(cosmosMock).updateReceipt(any(Receipt.class));
+        when(cosmosMock.getReceipts(Set.of(BIZ_EVENT_ID))).thenReturn(Map.of(BIZ_EVENT_ID, receipt));
+        when(cosmosMock.patchReceipts(any())).thenReturn(Map.of(BIZ_EVENT_ID, new UnableToSaveException(COSMOS_ERROR)));
 
         function = spy(new RetryReviewedPoisonMessages(cosmosMock, queueMock));
 
         assertDoesNotThrow(() -> function.processRetryReviewedPoisonMessages(
                 Collections.singletonList(receiptError), errorToCosmos, context));
 
-        verify(cosmosMock).updateReceipt(receiptCaptor.capture());
-        Receipt receiptCaptorValue = receiptCaptor.getValue();
+        verify(cosmosMock).patchReceipts(receiptSnapshotsCaptor.capture());
+        Receipt receiptCaptorValue = receiptSnapshotsCaptor.getValue().keySet().iterator().next();
         assertEquals(BIZ_EVENT_ID, receiptCaptorValue.getEventId());
         assertEquals(ReceiptStatusType.INSERTED, receiptCaptorValue.getStatus());
 
@@ -192,7 +196,7 @@ class RetryReviewedPoisonMessagesTest {
     }
 
     @Test
-    void resendToCosmosErrorIfQueueFailed() throws JsonProcessingException, ReceiptNotFoundException, UnableToSaveException {
+    void resendToCosmosErrorIfQueueFailed() throws JsonProcessingException {
         ReceiptError receiptError = ReceiptError.builder()
                 .messagePayload(ENCRYPTED_VALID_CONTENT_TO_RETRY)
                 .status(ReceiptErrorStatusType.REVIEWED)
@@ -201,7 +205,7 @@ class RetryReviewedPoisonMessagesTest {
                 .build();
 
         Receipt receipt = Receipt.builder().status(ReceiptStatusType.TO_REVIEW).eventId(BIZ_EVENT_ID).build();
-        when(cosmosMock.getReceipt(BIZ_EVENT_ID)).thenReturn(receipt);
+        when(cosmosMock.getReceipts(Set.of(BIZ_EVENT_ID))).thenReturn(Map.of(BIZ_EVENT_ID, receipt));
 
         when(queueResponse.getStatusCode()).thenReturn(HttpStatus.SC_BAD_REQUEST);
         when(queueMock.sendMessageToQueue(any())).thenReturn(queueResponse);
@@ -211,8 +215,8 @@ class RetryReviewedPoisonMessagesTest {
         assertDoesNotThrow(() -> function.processRetryReviewedPoisonMessages(
                 Collections.singletonList(receiptError), errorToCosmos, context));
 
-        verify(cosmosMock).updateReceipt(receiptCaptor.capture());
-        Receipt receiptCaptorValue = receiptCaptor.getValue();
+        verify(cosmosMock).patchReceipts(receiptSnapshotsCaptor.capture());
+        Receipt receiptCaptorValue = receiptSnapshotsCaptor.getValue().keySet().iterator().next();
         assertEquals(BIZ_EVENT_ID, receiptCaptorValue.getEventId());
         assertEquals(ReceiptStatusType.INSERTED, receiptCaptorValue.getStatus());
 
@@ -230,7 +234,7 @@ class RetryReviewedPoisonMessagesTest {
     }
 
     @Test
-    void successfulRunMultipleItems() throws JsonProcessingException, ReceiptNotFoundException, UnableToSaveException, Aes256Exception {
+    void successfulRunMultipleItems() throws JsonProcessingException, Aes256Exception {
         String encryptedMultiItemString = Aes256Utils.encrypt(buildQueueBizEventList(5));
         ReceiptError receiptError = ReceiptError.builder()
                 .messagePayload(encryptedMultiItemString)
@@ -240,7 +244,7 @@ class RetryReviewedPoisonMessagesTest {
                 .build();
 
         Receipt receipt = Receipt.builder().status(ReceiptStatusType.TO_REVIEW).eventId(ID_TRANSACTION).build();
-        when(cosmosMock.getReceipt(BIZ_EVENT_ID)).thenReturn(receipt);
+        when(cosmosMock.getReceipts(Set.of(BIZ_EVENT_ID))).thenReturn(Map.of(BIZ_EVENT_ID, receipt));
 
         when(queueResponse.getStatusCode()).thenReturn(HttpStatus.SC_CREATED);
         when(queueMock.sendMessageToQueue(any())).thenReturn(queueResponse);
@@ -250,8 +254,8 @@ class RetryReviewedPoisonMessagesTest {
         assertDoesNotThrow(() -> function.processRetryReviewedPoisonMessages(
                 Collections.singletonList(receiptError), errorToCosmos, context));
 
-        verify(cosmosMock).updateReceipt(receiptCaptor.capture());
-        Receipt receiptCaptorValue = receiptCaptor.getValue();
+        verify(cosmosMock).patchReceipts(receiptSnapshotsCaptor.capture());
+        Receipt receiptCaptorValue = receiptSnapshotsCaptor.getValue().keySet().iterator().next();
         assertEquals(ID_TRANSACTION, receiptCaptorValue.getEventId());
         assertEquals(ReceiptStatusType.INSERTED, receiptCaptorValue.getStatus());
 
@@ -267,6 +271,118 @@ class RetryReviewedPoisonMessagesTest {
         assertEquals(String.valueOf(ID_TRANSACTION), receiptErrorCaptorValue.getBizEventId());
     }
 
+    @Test
+    void batchRunAttributesErrorsToEachItem() throws Aes256Exception {
+        ReceiptError requeued = buildReviewedError("requeued");
+        ReceiptError notFound = buildReviewedError("notFound");
+        ReceiptError notSaved = buildReviewedError("notSaved");
+
+        Receipt requeuedReceipt = Receipt.builder().status(ReceiptStatusType.TO_REVIEW).eventId("requeued").build();
+        Receipt notSavedReceipt = Receipt.builder().status(ReceiptStatusType.TO_REVIEW).eventId("notSaved").build();
+        when(cosmosMock.getReceipts(Set.of("requeued", "notFound", "notSaved")))
+                .thenReturn(Map.of("requeued", requeuedReceipt, "notSaved", notSavedReceipt));
+        when(cosmosMock.patchReceipts(any())).thenReturn(Map.of("notSaved", new UnableToSaveException(COSMOS_ERROR)));
+
+        when(queueResponse.getStatusCode()).thenReturn(HttpStatus.SC_CREATED);
+        when(queueMock.sendMessageToQueue(any())).thenReturn(queueResponse);
+
+        function = spy(new RetryReviewedPoisonMessages(cosmosMock, queueMock));
+
+        assertDoesNotThrow(() -> function.processRetryReviewedPoisonMessages(
+                List.of(requeued, notFound, notSaved), errorToCosmos, context));
+
+        verify(cosmosMock).getReceipts(any());
+        verify(cosmosMock).patchReceipts(receiptSnapshotsCaptor.capture());
+        assertEquals(Set.of(requeuedReceipt, notSavedReceipt), receiptSnapshotsCaptor.getValue().keySet());
+        assertEquals(ReceiptStatusType.INSERTED, requeuedReceipt.getStatus());
+        assertEquals(ReceiptStatusType.TO_REVIEW.name(), receiptSnapshotsCaptor.getValue().get(requeuedReceipt).get("status").asText());
+
+        verify(queueMock).sendMessageToQueue(any());
+
+        verify(errorToCosmos).setValue(receiptErrorCaptor.capture());
+        List<ReceiptError> itemsDone = receiptErrorCaptor.getValue();
+        assertEquals(List.of(requeued, notFound, notSaved), itemsDone);
+        assertEquals(ReceiptErrorStatusType.REQUEUED, requeued.getStatus());
+        assertNull(requeued.getMessageError());
+        assertEquals(ReceiptErrorStatusType.TO_REVIEW, notFound.getStatus());
+        assertTrue(notFound.getMessageError().contains("notFound"));
+        assertEquals(ReceiptErrorStatusType.TO_REVIEW, notSaved.getStatus());
+        assertEquals(COSMOS_ERROR, notSaved.getMessageError());
+    }
+
+    @Test
+    void batchRunReadFailedSendsAllItemsToReview() throws Aes256Exception {
+        ReceiptError first = buildReviewedError("first");
+        ReceiptError second = buildReviewedError("second");
+
+        when(cosmosMock.getReceipts(any())).thenThrow(new RuntimeException(COSMOS_ERROR));
+
+        function = spy(new RetryReviewedPoisonMessages(cosmosMock, queueMock));
+
+        assertDoesNotThrow(() -> function.processRetryReviewedPoisonMessages(
+                List.of(first, second), errorToCosmos, context));
+
+        verify(cosmosMock, never()).patchReceipts(any());
+        verifyNoInteractions(queueMock);
+
+        verify(errorToCosmos).setValue(receiptErrorCaptor.capture());
+        assertEquals(2, receiptErrorCaptor.getValue().size());
+        for (ReceiptError receiptError : receiptErrorCaptor.getValue()) {
+            assertEquals(ReceiptErrorStatusType.TO_REVIEW, receiptError.getStatus());
+            assertEquals(COSMOS_ERROR, receiptError.getMessageError());
+        }
+    }
+
+    @Test
+    void parallelBatchSavesEachItemExactlyOnce() throws Aes256Exception {
+        List<ReceiptError> items = new ArrayList<>();
+        Map<String, Receipt> receipts = new HashMap<>();
+        for (int i = 0; i < 40; i++) {
+            String bizEventId = (i % 3 == 0 ? "queueKo" : "queueOk") + i;
+            items.add(buildReviewedError(bizEventId));
+            receipts.put(bizEventId, Receipt.builder().status(ReceiptStatusType.TO_REVIEW).eventId(bizEventId).build());
+        }
+        when(cosmosMock.getReceipts(any())).thenReturn(receipts);
+        when(cosmosMock.patchReceipts(any())).thenReturn(Collections.emptyMap());
+        when(queueResponse.getStatusCode()).thenReturn(HttpStatus.SC_CREATED);
+        when(queueMock.sendMessageToQueue(any())).thenAnswer(invocation -> {
+            String message = new String(Base64.getMimeDecoder().decode((String) invocation.getArgument(0)));
+            if (message.contains("queueKo")) {
+                throw new IllegalStateException("queue error");
+            }
+            return queueResponse;
+        });
+
+        function = spy(new RetryReviewedPoisonMessages(cosmosMock, queueMock));
+
+        assertDoesNotThrow(() -> function.processRetryReviewedPoisonMessages(items, errorToCosmos, context));
+
+        verify(queueMock, times(40)).sendMessageToQueue(any());
+        verify(errorToCosmos).setValue(receiptErrorCaptor.capture());
+        List<ReceiptError> itemsDone = receiptErrorCaptor.getValue();
+        assertEquals(items, itemsDone);
+        for (ReceiptError receiptError : itemsDone) {
+            ReceiptErrorStatusType expected = receiptError.getBizEventId().startsWith("queueKo") ?
+                    ReceiptErrorStatusType.TO_REVIEW : ReceiptErrorStatusType.REQUEUED;
+            assertEquals(expected, receiptError.getStatus());
+        }
+    }
+
+    private static ReceiptError buildReviewedError(String bizEventId) throws Aes256Exception {
+        String payload;
+        try {
+            payload = ObjectMapperUtils.writeValueAsString(List.of(BizEvent.builder().id(bizEventId).build()));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+        return ReceiptError.builder()
+                .messagePayload(Aes256Utils.encrypt(payload))
+                .status(ReceiptErrorStatusType.REVIEWED)
+                .bizEventId(bizEventId)
+                .id(RECEIPT_ERROR_ID + bizEventId)
+                .build();
+    }
+
     private static String buildQueueBizEventList(int numberOfEvents) {
         List<BizEvent> listOfBizEvents = new ArrayList<>();
         for (int i = 0; i < numberOfEvents; i++) {
@@ -0,0 +1,90 @@
+package it.gov.pagopa.receipt.pdf.generator.benchmark;
+
+import it.gov.pagopa.receipt.pdf.generator.utils.Aes256Utils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-call cost of {@link Aes256Utils} with the cached derived key, compared with the previous implementation
+ * that ran the PBKDF2 derivation and created a new SecureRandom and Cipher on every call ({@code legacy*}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Aes256UtilsBenchmark {
+
+    private static final String SECRET_KEY = "benchmark-secret-key";
+    private static final String SALT = "benchmark-salt";
+    private static final String PAYLOAD = "[{\"id\":\"biz-event-id\",\"debtor\":{\"entityUniqueIdentifierValue\":\"JHNDOE00A01F205N\"}}]";
+
+    private String encryptedPayload;
+
+    @Setup
+    public void setUp() throws Exception {
+        this.encryptedPayload = Aes256Utils.encrypt(PAYLOAD, SECRET_KEY, SALT);
+    }
+
+    @Benchmark
+    public String encrypt() throws Exception {
+        return Aes256Utils.encrypt(PAYLOAD, SECRET_KEY, SALT);
+    }
+
+    @Benchmark
+    public String decrypt() throws Exception {
+        return Aes256Utils.decrypt(this.encryptedPayload, SECRET_KEY, SALT);
+    }
+
+    @Benchmark
+    public String legacyEncrypt() throws Exception {
+        byte[] iv = new byte[16];
+        new SecureRandom().nextBytes(iv);
+        Cipher cipher = Cipher.getInstance(Aes256Utils.AES_CBC_PKCS_5_PADDING);
+        cipher.init(Cipher.ENCRYPT_MODE, legacyDeriveKey(), new IvParameterSpec(iv));
+
+        byte[] cipherText = cipher.doFinal(PAYLOAD.getBytes(StandardCharsets.UTF_8));
+        byte[] encryptedData = new byte[iv.length + cipherText.length];
+        System.arraycopy(iv, 0, encryptedData, 0, iv.length);
+        System.arraycopy(cipherText, 0, encryptedData, iv.length, cipherText.length);
+        return Base64.getEncoder().encodeToString(encryptedData);
+    }
+
+    @Benchmark
+    public String legacyDecrypt() throws Exception {
+        byte[] encryptedData = Base64.getDecoder().decode(this.encryptedPayload);
+        byte[] iv = new byte[16];
+        System.arraycopy(encryptedData, 0, iv, 0, iv.length);
+        Cipher cipher = Cipher.getInstance(Aes256Utils.AES_CBC_PKCS_5_PADDING);
+        cipher.init(Cipher.DECRYPT_MODE, legacyDeriveKey(), new IvParameterSpec(iv));
+
+        byte[] cipherText = new byte[encryptedData.length - 16];
+        System.arraycopy(encryptedData, 16, cipherText, 0, cipherText.length);
+        return new String(cipher.doFinal(cipherText), StandardCharsets.UTF_8);
+    }
+
+    private static SecretKeySpec legacyDeriveKey() throws Exception {
+        SecretKeyFactory factory = SecretKeyFactory.getInstance(Aes256Utils.PBKDF_2_WITH_HMAC_SHA_256);
+        PBEKeySpec spec = new PBEKeySpec(SECRET_KEY.toCharArray(), SALT.getBytes(), 65536, 256);
+        return new SecretKeySpec(factory.generateSecret(spec).getEncoded(), Aes256Utils.ALGORITHM);
+    }
+}
@@ -0,0 +1,120 @@
+package it.gov.pagopa.receipt.pdf.generator.benchmark;
+
+import it.gov.pagopa.receipt.pdf.generator.entity.event.BizEvent;
+import it.gov.pagopa.receipt.pdf.generator.entity.receipt.CartItem;
+import it.gov.pagopa.receipt.pdf.generator.entity.receipt.EventData;
+import it.gov.pagopa.receipt.pdf.generator.entity.receipt.Receipt;
+import it.gov.pagopa.receipt.pdf.generator.exception.TemplateDataMappingException;
+import it.gov.pagopa.receipt.pdf.generator.model.CartInfo;
+import it.gov.pagopa.receipt.pdf.generator.model.TemplateSkeleton;
+import it.gov.pagopa.receipt.pdf.generator.model.template.ReceiptPDFTemplate;
+import it.gov.pagopa.receipt.pdf.generator.service.BuildTemplateService;
+import it.gov.pagopa.receipt.pdf.generator.service.impl.BuildTemplateServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static it.gov.pagopa.receipt.pdf.generator.utils.ObjectMapperUtilsTest.getBizEventFromFile;
+
+/**
+ * Cost of building the single and cart receipt templates, run with {@code -prof gc} to see the allocation rate.
+ * <p>
+ * The payment method and brand logo maps are read from the environment at class initialization:
+ * export PAYMENT_METHOD_NAME_MAP and BRAND_LOGO_MAP (i.e. {@code {}}) before running it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BuildTemplateServiceBenchmark {
+
+    private static final String BIZ_EVENT_FILE = "biz-events/bizEvent_complete_dst_winter.json";
+    private static final int CART_SIZE = 5;
+
+    private BuildTemplateService buildTemplateService;
+    private BizEvent bizEvent;
+    private Receipt receipt;
+    private List<BizEvent> cartBizEvents;
+    private Map<String, CartInfo> cartInfoMap;
+
+    @Setup
+    public void setUp() throws IOException {
+        this.buildTemplateService = new BuildTemplateServiceImpl();
+        this.bizEvent = getBizEventFromFile(BIZ_EVENT_FILE);
+        this.receipt = Receipt.builder()
+                .eventId(this.bizEvent.getId())
+                .eventData(EventData.builder()
+                        .amount("26,19 €")
+                        .cart(List.of(CartItem.builder().subject("subject").build()))
+                        .build())
+                .build();
+
+        this.cartBizEvents = new ArrayList<>();
+        this.cartInfoMap = new HashMap<>();
+        for (int i = 0; i < CART_SIZE; i++) {
+            BizEvent cartBizEvent = getBizEventFromFile(BIZ_EVENT_FILE);
+            cartBizEvent.setId("biz-event-id" + i);
+            this.cartBizEvents.add(cartBizEvent);
+            this.cartInfoMap.put(cartBizEvent.getId(), CartInfo.builder().subject("subject" + i).build());
+        }
+    }
+
+    @Benchmark
+    public ReceiptPDFTemplate buildTemplate() throws TemplateDataMappingException {
+        return this.buildTemplateService.buildTemplate(this.bizEvent, false, this.receipt);
+    }
+
+    @Benchmark
+    public ReceiptPDFTemplate buildCartTemplate() throws TemplateDataMappingException {
+        return this.buildTemplateService.buildCartTemplate(this.cartBizEvents, false, "cart-id", "130,95 €", this.cartInfoMap);
+    }
+
+    /**
+     * Payer template and one template per debtor of the cart, each built from scratch
+     */
+    @Benchmark
+    public void buildCartVariants(Blackhole blackhole) throws TemplateDataMappingException {
+        buildCartVariants(blackhole, null);
+    }
+
+    /**
+     * Payer template and one template per debtor of the cart, sharing the transaction and cart item parts
+     */
+    @Benchmark
+    public void buildCartVariantsSharedSkeleton(Blackhole blackhole) throws TemplateDataMappingException {
+        buildCartVariants(blackhole, new TemplateSkeleton());
+    }
+
+    private void buildCartVariants(Blackhole blackhole, TemplateSkeleton skeleton) throws TemplateDataMappingException {
+        blackhole.consume(this.buildTemplateService.buildCartTemplate(
+                this.cartBizEvents, false, "cart-id", "130,95 €", this.cartInfoMap, skeletonOrNew(skeleton)));
+        for (BizEvent cartBizEvent : this.cartBizEvents) {
+            blackhole.consume(this.buildTemplateService.buildCartTemplate(
+                    Collections.singletonList(cartBizEvent), true, "cart-id", "26,19 €",
+                    Collections.singletonMap(cartBizEvent.getId(), this.cartInfoMap.get(cartBizEvent.getId())),
+                    skeletonOrNew(skeleton)));
+        }
+    }
+
+    private static TemplateSkeleton skeletonOrNew(TemplateSkeleton skeleton) {
+        return skeleton != null ? skeleton : new TemplateSkeleton();
+    }
+}
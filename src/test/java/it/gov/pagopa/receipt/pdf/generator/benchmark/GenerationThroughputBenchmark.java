@@ -0,0 +1,245 @@
+package it.gov.pagopa.receipt.pdf.generator.benchmark;
+
+import com.microsoft.azure.functions.ExecutionContext;
+import it.gov.pagopa.receipt.pdf.generator.GenerateCartReceiptPdf;
+import it.gov.pagopa.receipt.pdf.generator.GenerateReceiptPdf;
+import it.gov.pagopa.receipt.pdf.generator.OfflineFunctions;
+import it.gov.pagopa.receipt.pdf.generator.benchmark.offline.InMemoryCartReceiptsCosmosClient;
+import it.gov.pagopa.receipt.pdf.generator.benchmark.offline.InMemoryQueueClient;
+import it.gov.pagopa.receipt.pdf.generator.benchmark.offline.InMemoryReceiptBlobClient;
+import it.gov.pagopa.receipt.pdf.generator.benchmark.offline.InMemoryReceiptCosmosClient;
+import it.gov.pagopa.receipt.pdf.generator.benchmark.offline.StubPdfEngine;
+import it.gov.pagopa.receipt.pdf.generator.benchmark.offline.StubPdfEngine.Range;
+import it.gov.pagopa.receipt.pdf.generator.client.impl.PdfEngineClientImpl;
+import it.gov.pagopa.receipt.pdf.generator.entity.cart.CartForReceipt;
+import it.gov.pagopa.receipt.pdf.generator.entity.cart.CartPayment;
+import it.gov.pagopa.receipt.pdf.generator.entity.cart.CartStatusType;
+import it.gov.pagopa.receipt.pdf.generator.entity.cart.Payload;
+import it.gov.pagopa.receipt.pdf.generator.entity.event.BizEvent;
+import it.gov.pagopa.receipt.pdf.generator.entity.receipt.CartItem;
+import it.gov.pagopa.receipt.pdf.generator.entity.receipt.EventData;
+import it.gov.pagopa.receipt.pdf.generator.entity.receipt.Receipt;
+import it.gov.pagopa.receipt.pdf.generator.entity.receipt.enumeration.ReceiptStatusType;
+import it.gov.pagopa.receipt.pdf.generator.service.impl.CartReceiptCosmosServiceImpl;
+import it.gov.pagopa.receipt.pdf.generator.service.impl.OfflineGenerationServices;
+import it.gov.pagopa.receipt.pdf.generator.service.impl.ReceiptCosmosServiceImpl;
+import it.gov.pagopa.receipt.pdf.generator.utils.ObjectMapperUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static it.gov.pagopa.receipt.pdf.generator.utils.ObjectMapperUtilsTest.getBizEventFromFile;
+
+/**
+ * End-to-end throughput of the {@link GenerateReceiptPdf} and {@link GenerateCartReceiptPdf} flows, run offline:
+ * Cosmos, blob storage and queues are in-memory stand-ins, the PDF Engine is a local HTTP stub called through
+ * the real {@link PdfEngineClientImpl}, so template build, HTTP call, PDF handling and patch are all measured.
+ * <p>
+ * Each invocation processes one queue message: messages per second come from the throughput mode,
+ * p50/p99 latency from the sample mode, allocation per message from {@code -prof gc} ({@code gc.alloc.rate.norm},
+ * it includes the stub engine running in the same JVM).
+ * The flows use env configuration read at class initialization: export WORKING_DIRECTORY_PATH (i.e. a temp dir),
+ * PAYMENT_METHOD_NAME_MAP and BRAND_LOGO_MAP (i.e. {@code {}}) before running it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(8)
+@Fork(1)
+public class GenerationThroughputBenchmark {
+
+    private static final String BIZ_EVENT_FILE = "biz-events/bizEvent_complete_dst_winter.json";
+    private static final String CART_ID = "benchmark-cart-id";
+    private static final String PAYER_FISCAL_CODE = "CF_PAYER";
+
+    /**
+     * PDF Engine latency in milliseconds, a single value or a uniform range (i.e. {@code 50-150})
+     */
+    @Param({"50-150"})
+    public String engineLatencyMs;
+    /**
+     * Generated PDF size in kilobytes, a single value or a uniform range (i.e. {@code 40-120})
+     */
+    @Param({"40-120"})
+    public String pdfSizeKb;
+    /**
+     * Number of payments of the cart, each with its own debtor
+     */
+    @Param({"5"})
+    public int cartSize;
+
+    private StubPdfEngine stubPdfEngine;
+    private InMemoryReceiptCosmosClient receiptCosmosClient;
+    private InMemoryCartReceiptsCosmosClient cartReceiptsCosmosClient;
+    private InMemoryReceiptBlobClient receiptBlobClient;
+    private GenerateReceiptPdf generateReceiptPdf;
+    private GenerateCartReceiptPdf generateCartReceiptPdf;
+    private String receiptMessage;
+    private String receiptEventId;
+    private String cartMessage;
+    private ExecutionContext context;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        // one log line per message would measure the console, only errors are kept
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME))
+                .setLevel(ch.qos.logback.classic.Level.WARN);
+
+        this.stubPdfEngine = new StubPdfEngine(Range.parse(this.engineLatencyMs, 1), Range.parse(this.pdfSizeKb, 1024));
+        PdfEngineClientImpl pdfEngineClient = new StubPdfEngineClient(this.stubPdfEngine.getEndpoint());
+
+        this.receiptCosmosClient = new InMemoryReceiptCosmosClient();
+        this.cartReceiptsCosmosClient = new InMemoryCartReceiptsCosmosClient();
+        this.receiptBlobClient = new InMemoryReceiptBlobClient();
+        InMemoryQueueClient queueClient = new InMemoryQueueClient();
+
+        this.generateReceiptPdf = OfflineFunctions.generateReceiptPdf(
+                OfflineGenerationServices.generateReceiptPdfService(pdfEngineClient, this.receiptBlobClient),
+                new ReceiptCosmosServiceImpl(this.receiptCosmosClient),
+                queueClient);
+        this.generateCartReceiptPdf = OfflineFunctions.generateCartReceiptPdf(
+                OfflineGenerationServices.generateCartReceiptPdfService(pdfEngineClient, this.receiptBlobClient),
+                new CartReceiptCosmosServiceImpl(this.cartReceiptsCosmosClient),
+                queueClient);
+
+        seedReceipt();
+        seedCart();
+        this.context = new BenchmarkExecutionContext();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.stubPdfEngine.close();
+        System.out.printf("%nPDF Engine calls %d, PDFs uploaded %d (%d KB), receipts saved %d, carts saved %d%n",
+                this.stubPdfEngine.getRequests(),
+                this.receiptBlobClient.getUploads(),
+                this.receiptBlobClient.getUploadedBytes() / 1024,
+                this.receiptCosmosClient.getWrites(),
+                this.cartReceiptsCosmosClient.getWrites());
+
+        // a flow failing fast would look like a throughput improvement
+        Receipt receipt = this.receiptCosmosClient.getLastSaved(this.receiptEventId);
+        if (receipt != null && receipt.getStatus() != ReceiptStatusType.GENERATED) {
+            throw new IllegalStateException("Receipt saved with status " + receipt.getStatus() + ": " + receipt.getReasonErr());
+        }
+        CartForReceipt cart = this.cartReceiptsCosmosClient.getLastSaved(CART_ID);
+        if (cart != null && cart.getStatus() != CartStatusType.GENERATED) {
+            throw new IllegalStateException("Cart saved with status " + cart.getStatus() + ": " + cart.getReasonErr());
+        }
+    }
+
+    /**
+     * Single receipt with different payer and debtor, two PDFs per message
+     */
+    @Benchmark
+    public void singleReceipt() throws Exception {
+        this.generateReceiptPdf.processGenerateReceipt(this.receiptMessage, this.context);
+    }
+
+    /**
+     * Cart with one PDF for the payer and one for each debtor
+     */
+    @Benchmark
+    public void cartReceipt() throws Exception {
+        this.generateCartReceiptPdf.processGenerateCartReceipt(this.cartMessage, this.context);
+    }
+
+    private void seedReceipt() throws Exception {
+        BizEvent bizEvent = getBizEventFromFile(BIZ_EVENT_FILE);
+        this.receiptEventId = bizEvent.getId();
+        this.receiptMessage = ObjectMapperUtils.writeValueAsString(Collections.singletonList(bizEvent));
+
+        this.receiptCosmosClient.seed(Receipt.builder()
+                .id(bizEvent.getId())
+                .eventId(bizEvent.getId())
+                .status(ReceiptStatusType.INSERTED)
+                .eventData(EventData.builder()
+                        .payerFiscalCode(PAYER_FISCAL_CODE)
+                        .debtorFiscalCode(bizEvent.getDebtor().getEntityUniqueIdentifierValue())
+                        .amount("70,00 €")
+                        .cart(List.of(CartItem.builder().subject("subject").build()))
+                        .build())
+                .build());
+    }
+
+    private void seedCart() throws Exception {
+        List<BizEvent> bizEvents = new ArrayList<>();
+        List<CartPayment> cartPayments = new ArrayList<>();
+        for (int i = 0; i < this.cartSize; i++) {
+            BizEvent bizEvent = getBizEventFromFile(BIZ_EVENT_FILE);
+            bizEvent.setId("biz-event-id-" + i);
+            bizEvent.getTransactionDetails().getTransaction().setTransactionId(CART_ID);
+            bizEvents.add(bizEvent);
+            cartPayments.add(CartPayment.builder()
+                    .bizEventId(bizEvent.getId())
+                    .subject("subject " + i)
+                    .payeeName("payee " + i)
+                    .debtorFiscalCode("CF_DEBTOR_" + i)
+                    .amount("26,19 €")
+                    .build());
+        }
+        this.cartMessage = ObjectMapperUtils.writeValueAsString(bizEvents);
+
+        this.cartReceiptsCosmosClient.seed(CartForReceipt.builder()
+                .id(CART_ID)
+                .cartId(CART_ID)
+                .status(CartStatusType.INSERTED)
+                .payload(Payload.builder()
+                        .payerFiscalCode(PAYER_FISCAL_CODE)
+                        .totalNotice(this.cartSize)
+                        .totalAmount("130,95 €")
+                        .cart(cartPayments)
+                        .build())
+                .build());
+    }
+
+    /**
+     * The real pooled client, pointed at the stub engine.
+     */
+    private static class StubPdfEngineClient extends PdfEngineClientImpl {
+
+        StubPdfEngineClient(String pdfEngineEndpoint) {
+            super(pdfEngineEndpoint);
+        }
+    }
+
+    private static class BenchmarkExecutionContext implements ExecutionContext {
+
+        private static final java.util.logging.Logger LOGGER = java.util.logging.Logger.getLogger("benchmark");
+
+        @Override
+        public java.util.logging.Logger getLogger() {
+            return LOGGER;
+        }
+
+        @Override
+        public String getInvocationId() {
+            return "benchmark";
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "GenerationThroughputBenchmark";
+        }
+    }
+}
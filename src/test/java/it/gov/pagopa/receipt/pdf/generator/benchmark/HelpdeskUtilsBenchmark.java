@@ -0,0 +1,54 @@
+package it.gov.pagopa.receipt.pdf.generator.benchmark;
+
+import it.gov.pagopa.receipt.pdf.generator.entity.event.BizEvent;
+import it.gov.pagopa.receipt.pdf.generator.entity.event.enumeration.BizEventStatusType;
+import it.gov.pagopa.receipt.pdf.generator.utils.HelpdeskUtils;
+import it.gov.pagopa.receipt.pdf.generator.utils.HelpdeskUtils.BizEventValidityCheck;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static it.gov.pagopa.receipt.pdf.generator.utils.ObjectMapperUtilsTest.getBizEventFromFile;
+
+/**
+ * Cost of the validity check run on every biz-event by the helpdesk functions, on the biz-event fixtures in status DONE.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HelpdeskUtilsBenchmark {
+
+    @Param({
+            "biz-events/bizEvent_complete_dst_winter.json",
+            "biz-events/bizEvent_complete_channeOnClientId.json",
+            "biz-events/bizEvent_modelType2_WISP.json"
+    })
+    public String bizEventFile;
+
+    private BizEvent bizEvent;
+
+    @Setup
+    public void setUp() throws IOException {
+        this.bizEvent = getBizEventFromFile(this.bizEventFile);
+        this.bizEvent.setEventStatus(BizEventStatusType.DONE);
+    }
+
+    @Benchmark
+    public BizEventValidityCheck isBizEventInvalid() {
+        return HelpdeskUtils.isBizEventInvalid(this.bizEvent);
+    }
+}
@@ -0,0 +1,63 @@
+package it.gov.pagopa.receipt.pdf.generator.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import it.gov.pagopa.receipt.pdf.generator.entity.event.BizEvent;
+import it.gov.pagopa.receipt.pdf.generator.utils.ObjectMapperUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static it.gov.pagopa.receipt.pdf.generator.utils.ObjectMapperUtilsTest.getBizEventFromFile;
+
+/**
+ * Parse cost of the queue messages with {@link ObjectMapperUtils#mapBizEventListString}:
+ * a single receipt message and a cart message of six biz-events.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ObjectMapperUtilsBenchmark {
+
+    private static final String BIZ_EVENT_FILE = "biz-events/bizEvent_complete_dst_winter.json";
+
+    /**
+     * Number of biz-events in the message
+     */
+    @Param({"1", "6"})
+    public int eventCount;
+
+    private String message;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<BizEvent> bizEvents = new ArrayList<>();
+        for (int i = 0; i < this.eventCount; i++) {
+            BizEvent bizEvent = getBizEventFromFile(BIZ_EVENT_FILE);
+            bizEvent.setId("biz-event-id-" + i);
+            bizEvents.add(bizEvent);
+        }
+        this.message = ObjectMapperUtils.writeValueAsString(bizEvents);
+    }
+
+    @Benchmark
+    public List<BizEvent> mapBizEventListString() throws IOException {
+        return ObjectMapperUtils.mapBizEventListString(this.message, new TypeReference<>() {
+        });
+    }
+}
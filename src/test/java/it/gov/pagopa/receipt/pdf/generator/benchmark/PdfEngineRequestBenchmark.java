@@ -0,0 +1,107 @@
+package it.gov.pagopa.receipt.pdf.generator.benchmark;
+
+import it.gov.pagopa.receipt.pdf.generator.client.impl.PdfEngineClientImpl;
+import it.gov.pagopa.receipt.pdf.generator.entity.event.BizEvent;
+import it.gov.pagopa.receipt.pdf.generator.entity.receipt.CartItem;
+import it.gov.pagopa.receipt.pdf.generator.entity.receipt.EventData;
+import it.gov.pagopa.receipt.pdf.generator.entity.receipt.Receipt;
+import it.gov.pagopa.receipt.pdf.generator.model.TemplateBundle;
+import it.gov.pagopa.receipt.pdf.generator.model.request.PdfEngineRequest;
+import it.gov.pagopa.receipt.pdf.generator.model.template.ReceiptPDFTemplate;
+import it.gov.pagopa.receipt.pdf.generator.service.impl.BuildTemplateServiceImpl;
+import it.gov.pagopa.receipt.pdf.generator.utils.ObjectMapperUtils;
+import it.gov.pagopa.receipt.pdf.generator.utils.ReceiptTemplateJsonWriter;
+import it.gov.pagopa.receipt.pdf.generator.utils.TemplateBundleRegistry;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.impl.client.HttpClients;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static it.gov.pagopa.receipt.pdf.generator.utils.Constants.ZIP_FILE_NAME;
+import static it.gov.pagopa.receipt.pdf.generator.utils.ObjectMapperUtilsTest.getBizEventFromFile;
+
+/**
+ * Cost of preparing the PDF Engine request for a receipt template: the streaming serialization of the template
+ * data (with the generic object mapper as baseline) and the multipart request, written as it would be on the wire.
+ * <p>
+ * The payment method and brand logo maps are read from the environment at class initialization:
+ * export PAYMENT_METHOD_NAME_MAP and BRAND_LOGO_MAP (i.e. {@code {}}) before running it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PdfEngineRequestBenchmark {
+
+    private static final String BIZ_EVENT_FILE = "biz-events/bizEvent_complete_dst_winter.json";
+
+    private ReceiptPDFTemplate template;
+    private PdfEngineRequest pdfEngineRequest;
+    private TemplateBundle templateBundle;
+    private RequestBuilder requestBuilder;
+
+    @Setup
+    public void setUp() throws Exception {
+        BizEvent bizEvent = getBizEventFromFile(BIZ_EVENT_FILE);
+        Receipt receipt = Receipt.builder()
+                .eventId(bizEvent.getId())
+                .eventData(EventData.builder()
+                        .amount("26,19 €")
+                        .cart(List.of(CartItem.builder().subject("subject").build()))
+                        .build())
+                .build();
+        this.template = new BuildTemplateServiceImpl().buildTemplate(bizEvent, false, receipt);
+        this.pdfEngineRequest = PdfEngineRequest.builder().template(this.template).build();
+        this.templateBundle = TemplateBundleRegistry.getInstance().getBundle(ZIP_FILE_NAME);
+        this.requestBuilder = new RequestBuilder();
+    }
+
+    @Benchmark
+    public void writeTemplateData() throws IOException {
+        ReceiptTemplateJsonWriter.write(this.template, OutputStream.nullOutputStream());
+    }
+
+    /**
+     * Baseline: the template data serialized with the reflection based object mapper
+     */
+    @Benchmark
+    public String writeTemplateDataObjectMapper() throws Exception {
+        return ObjectMapperUtils.writeValueAsString(this.template);
+    }
+
+    /**
+     * Multipart request with the shared template bundle and the template data, body included
+     */
+    @Benchmark
+    public HttpPost buildMultipartRequest() throws IOException {
+        HttpPost request = this.requestBuilder.build(this.pdfEngineRequest, this.templateBundle);
+        request.getEntity().writeTo(OutputStream.nullOutputStream());
+        return request;
+    }
+
+    private static class RequestBuilder extends PdfEngineClientImpl {
+
+        RequestBuilder() {
+            super(HttpClients.createMinimal(), "http://localhost/generate-pdf");
+        }
+
+        HttpPost build(PdfEngineRequest pdfEngineRequest, TemplateBundle templateBundle) {
+            return buildMultipartRequest(pdfEngineRequest, templateBundle);
+        }
+    }
+}
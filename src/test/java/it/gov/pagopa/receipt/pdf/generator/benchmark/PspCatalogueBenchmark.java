@@ -0,0 +1,100 @@
+package it.gov.pagopa.receipt.pdf.generator.benchmark;
+
+import it.gov.pagopa.receipt.pdf.generator.model.template.PSP;
+import it.gov.pagopa.receipt.pdf.generator.model.template.PSPFee;
+import it.gov.pagopa.receipt.pdf.generator.utils.ObjectMapperUtils;
+import it.gov.pagopa.receipt.pdf.generator.utils.PspCatalogue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load and lookup cost of the typed {@link PspCatalogue}, compared with the previous raw {@code Map} parse
+ * of psp_config_file.json and the untyped lookup done on every template build ({@code legacy*}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PspCatalogueBenchmark {
+
+    private static final String PSP_CONFIG_FILE_JSON_FILE_NAME = "psp_config_file.json";
+    private static final String ID_PSP = "BCITITMM";
+
+    private byte[] configuration;
+    private Map<String, Object> legacyPspMap;
+    private PspCatalogue catalogue;
+
+    @Setup
+    public void setUp() throws IOException {
+        // the test resources shadow the production configuration, pick the largest one on the classpath
+        byte[] largest = new byte[0];
+        for (URL url : Collections.list(getClass().getClassLoader().getResources(PSP_CONFIG_FILE_JSON_FILE_NAME))) {
+            try (InputStream stream = url.openStream()) {
+                byte[] content = stream.readAllBytes();
+                largest = content.length > largest.length ? content : largest;
+            }
+        }
+        this.configuration = largest;
+        this.legacyPspMap = legacyLoad();
+        this.catalogue = catalogueLoad();
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> legacyLoad() throws IOException {
+        try (InputStream data = new ByteArrayInputStream(this.configuration)) {
+            return ObjectMapperUtils.mapString(new String(data.readAllBytes()), Map.class);
+        }
+    }
+
+    @Benchmark
+    public PspCatalogue catalogueLoad() throws IOException {
+        try (InputStream data = new ByteArrayInputStream(this.configuration)) {
+            return PspCatalogue.read(data);
+        }
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public PSP legacyLookup() {
+        LinkedHashMap<String, String> info = (LinkedHashMap<String, String>) this.legacyPspMap
+                .getOrDefault(ID_PSP, new LinkedHashMap<>());
+        return PSP.builder()
+                .name(info.get("name"))
+                .fee(PSPFee.builder().amount("1,00 €").build())
+                .companyName(info.get("companyName"))
+                .address(info.get("address"))
+                .city(info.get("city"))
+                .province(info.get("province"))
+                .buildingNumber(info.get("buildingNumber"))
+                .postalCode(info.get("postalCode"))
+                .logo(info.get("logo"))
+                .build();
+    }
+
+    @Benchmark
+    public PSP catalogueLookup() {
+        PSP psp = this.catalogue.getPspTemplate(ID_PSP).orElseThrow();
+        psp.setFee(PSPFee.builder().amount("1,00 €").build());
+        return psp;
+    }
+}
@@ -0,0 +1,75 @@
+package it.gov.pagopa.receipt.pdf.generator.benchmark.offline;
+
+import com.azure.cosmos.models.CosmosItemResponse;
+import it.gov.pagopa.receipt.pdf.generator.client.CartReceiptsCosmosClient;
+import it.gov.pagopa.receipt.pdf.generator.entity.cart.CartForReceipt;
+import it.gov.pagopa.receipt.pdf.generator.exception.CartNotFoundException;
+import it.gov.pagopa.receipt.pdf.generator.model.DocumentPatch;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link CartReceiptsCosmosClient} backed by an {@link InMemoryContainer}, carts are looked up by cart id
+ */
+public class InMemoryCartReceiptsCosmosClient implements CartReceiptsCosmosClient {
+
+    private final InMemoryContainer<CartForReceipt> container = new InMemoryContainer<>(CartForReceipt.class);
+
+    public void seed(CartForReceipt cart) {
+        this.container.seed(cart.getCartId(), cart);
+    }
+
+    @Override
+    public CartForReceipt getCartItem(String cartId) throws CartNotFoundException {
+        CartForReceipt cart = this.container.read(cartId);
+        if (cart == null) {
+            throw new CartNotFoundException("Document not found in the defined container");
+        }
+        return cart;
+    }
+
+    @Override
+    public CosmosItemResponse<CartForReceipt> updateCart(CartForReceipt receipt) {
+        return this.container.write(receipt.getCartId(), receipt);
+    }
+
+    @Override
+    public CosmosItemResponse<CartForReceipt> patchCart(CartForReceipt cart, DocumentPatch patch) {
+        return this.container.write(cart.getCartId(), cart);
+    }
+
+    @Override
+    public List<CartForReceipt> getCartItems(Collection<String> cartIds) {
+        List<CartForReceipt> carts = new ArrayList<>();
+        for (String cartId : cartIds) {
+            CartForReceipt cart = this.container.read(cartId);
+            if (cart != null) {
+                carts.add(cart);
+            }
+        }
+        return carts;
+    }
+
+    @Override
+    public Map<String, Integer> patchCarts(Map<CartForReceipt, DocumentPatch> patches) {
+        Map<String, Integer> statusCodes = new HashMap<>();
+        patches.keySet().forEach(cart ->
+                statusCodes.put(cart.getCartId(), this.container.write(cart.getCartId(), cart).getStatusCode()));
+        return statusCodes;
+    }
+
+    /**
+     * @return the last version saved of the cart, null if never saved
+     */
+    public CartForReceipt getLastSaved(String cartId) {
+        return this.container.getLastWritten(cartId);
+    }
+
+    public long getWrites() {
+        return this.container.getWrites();
+    }
+}
@@ -0,0 +1,82 @@
+package it.gov.pagopa.receipt.pdf.generator.benchmark.offline;
+
+import com.azure.cosmos.models.CosmosItemResponse;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import it.gov.pagopa.receipt.pdf.generator.utils.ObjectMapperUtils;
+
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * In-memory stand-in of a Cosmos container.
+ * <p>
+ * Reads always deserialize a fresh copy of the seeded document, like the SDK does, so the same document
+ * can be processed again and again. Writes do not change the seeded version, the last one is kept apart.
+ *
+ * @param <T> the document type
+ */
+class InMemoryContainer<T> {
+
+    private final Class<T> documentClass;
+    private final Map<String, String> seeds = new ConcurrentHashMap<>();
+    private final Map<String, T> lastWritten = new ConcurrentHashMap<>();
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final CosmosItemResponse<T> okResponse;
+
+    @SuppressWarnings("unchecked")
+    InMemoryContainer(Class<T> documentClass) {
+        this.documentClass = documentClass;
+        // stub only: invocations are not recorded, so the mock does not grow during long runs
+        this.okResponse = mock(CosmosItemResponse.class, withSettings().stubOnly());
+        when(this.okResponse.getStatusCode()).thenReturn(200);
+    }
+
+    void seed(String id, T document) {
+        try {
+            this.seeds.put(id, ObjectMapperUtils.writeValueAsString(document));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return a fresh copy of the seeded document, null if not seeded
+     */
+    T read(String id) {
+        this.reads.increment();
+        String json = this.seeds.get(id);
+        if (json == null) {
+            return null;
+        }
+        try {
+            return ObjectMapperUtils.mapString(json, this.documentClass);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    CosmosItemResponse<T> write(String id, T document) {
+        this.writes.increment();
+        this.lastWritten.put(id, document);
+        return this.okResponse;
+    }
+
+    T getLastWritten(String id) {
+        return this.lastWritten.get(id);
+    }
+
+    long getReads() {
+        return this.reads.sum();
+    }
+
+    long getWrites() {
+        return this.writes.sum();
+    }
+}
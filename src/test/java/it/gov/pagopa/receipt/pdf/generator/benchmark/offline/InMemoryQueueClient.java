@@ -0,0 +1,36 @@
+package it.gov.pagopa.receipt.pdf.generator.benchmark.offline;
+
+import com.azure.core.http.rest.Response;
+import com.azure.core.http.rest.SimpleResponse;
+import com.azure.storage.queue.models.SendMessageResult;
+import it.gov.pagopa.receipt.pdf.generator.client.CartQueueClient;
+import it.gov.pagopa.receipt.pdf.generator.client.ReceiptQueueClient;
+import org.apache.http.HttpStatus;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Receipt and cart queue stand-in that accepts every message and only counts them
+ */
+public class InMemoryQueueClient implements ReceiptQueueClient, CartQueueClient {
+
+    private static final Response<SendMessageResult> CREATED = new SimpleResponse<>(null, HttpStatus.SC_CREATED, null, new SendMessageResult());
+
+    private final LongAdder messages = new LongAdder();
+
+    @Override
+    public Response<SendMessageResult> sendMessageToQueue(String messageText) {
+        this.messages.increment();
+        return CREATED;
+    }
+
+    @Override
+    public Response<SendMessageResult> sendMessageToQueue(String messageText, Duration visibilityTimeout) {
+        return sendMessageToQueue(messageText);
+    }
+
+    public long getMessages() {
+        return this.messages.sum();
+    }
+}
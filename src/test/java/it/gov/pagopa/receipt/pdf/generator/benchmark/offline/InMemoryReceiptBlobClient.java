@@ -0,0 +1,52 @@
+package it.gov.pagopa.receipt.pdf.generator.benchmark.offline;
+
+import it.gov.pagopa.receipt.pdf.generator.client.ReceiptBlobClient;
+import it.gov.pagopa.receipt.pdf.generator.model.response.BlobStorageResponse;
+import org.apache.http.HttpStatus;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link ReceiptBlobClient} that drains the PDF content and keeps only the number of files and bytes uploaded,
+ * so the uploaded PDFs are never found
+ */
+public class InMemoryReceiptBlobClient implements ReceiptBlobClient {
+
+    private final LongAdder uploads = new LongAdder();
+    private final LongAdder uploadedBytes = new LongAdder();
+
+    @Override
+    public BlobStorageResponse savePdfToBlobStorage(InputStream pdf, String fileName) {
+        try {
+            this.uploadedBytes.add(pdf.transferTo(OutputStream.nullOutputStream()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.uploads.increment();
+
+        BlobStorageResponse response = new BlobStorageResponse();
+        response.setDocumentName(fileName);
+        response.setDocumentUrl("http://localhost/receipts/" + fileName);
+        response.setStatusCode(HttpStatus.SC_CREATED);
+        return response;
+    }
+
+    @Override
+    public BlobStorageResponse findPdfInBlobStorage(String fileName) {
+        BlobStorageResponse response = new BlobStorageResponse();
+        response.setStatusCode(HttpStatus.SC_NOT_FOUND);
+        return response;
+    }
+
+    public long getUploads() {
+        return this.uploads.sum();
+    }
+
+    public long getUploadedBytes() {
+        return this.uploadedBytes.sum();
+    }
+}
@@ -0,0 +1,75 @@
+package it.gov.pagopa.receipt.pdf.generator.benchmark.offline;
+
+import com.azure.cosmos.models.CosmosItemResponse;
+import it.gov.pagopa.receipt.pdf.generator.client.ReceiptCosmosClient;
+import it.gov.pagopa.receipt.pdf.generator.entity.receipt.Receipt;
+import it.gov.pagopa.receipt.pdf.generator.exception.ReceiptNotFoundException;
+import it.gov.pagopa.receipt.pdf.generator.model.DocumentPatch;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link ReceiptCosmosClient} backed by an {@link InMemoryContainer}, receipts are looked up by event id
+ */
+public class InMemoryReceiptCosmosClient implements ReceiptCosmosClient {
+
+    private final InMemoryContainer<Receipt> container = new InMemoryContainer<>(Receipt.class);
+
+    public void seed(Receipt receipt) {
+        this.container.seed(receipt.getEventId(), receipt);
+    }
+
+    @Override
+    public Receipt getReceiptDocument(String eventId) throws ReceiptNotFoundException {
+        Receipt receipt = this.container.read(eventId);
+        if (receipt == null) {
+            throw new ReceiptNotFoundException("Document not found in the defined container");
+        }
+        return receipt;
+    }
+
+    @Override
+    public CosmosItemResponse<Receipt> updateReceipt(Receipt receipt) {
+        return this.container.write(receipt.getEventId(), receipt);
+    }
+
+    @Override
+    public CosmosItemResponse<Receipt> patchReceipt(Receipt receipt, DocumentPatch patch) {
+        return this.container.write(receipt.getEventId(), receipt);
+    }
+
+    @Override
+    public List<Receipt> getReceiptDocuments(Collection<String> eventIds) {
+        List<Receipt> receipts = new ArrayList<>();
+        for (String eventId : eventIds) {
+            Receipt receipt = this.container.read(eventId);
+            if (receipt != null) {
+                receipts.add(receipt);
+            }
+        }
+        return receipts;
+    }
+
+    @Override
+    public Map<String, Integer> patchReceipts(Map<Receipt, DocumentPatch> patches) {
+        Map<String, Integer> statusCodes = new HashMap<>();
+        patches.keySet().forEach(receipt ->
+                statusCodes.put(receipt.getEventId(), this.container.write(receipt.getEventId(), receipt).getStatusCode()));
+        return statusCodes;
+    }
+
+    /**
+     * @return the last version saved of the receipt, null if never saved
+     */
+    public Receipt getLastSaved(String eventId) {
+        return this.container.getLastWritten(eventId);
+    }
+
+    public long getWrites() {
+        return this.container.getWrites();
+    }
+}
@@ -0,0 +1,128 @@
+package it.gov.pagopa.receipt.pdf.generator.benchmark.offline;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Local HTTP stand-in of the PDF Engine: it drains the multipart request and, after a latency drawn from the
+ * configured range, answers 200 with a PDF whose size is drawn from the configured range.
+ * <p>
+ * The PDF content is a preallocated buffer, so the stub itself adds little allocation to the measured process.
+ */
+public class StubPdfEngine implements AutoCloseable {
+
+    private static final String PATH = "/generate-pdf";
+
+    private final HttpServer server;
+    private final ExecutorService executorService;
+    private final Range latencyMillis;
+    private final Range sizeBytes;
+    private final byte[] pdf;
+    private final LongAdder requests = new LongAdder();
+
+    /**
+     * Start the stub on a free port of the loopback interface
+     *
+     * @param latencyMillis the range of the response latency, in milliseconds
+     * @param sizeBytes     the range of the PDF size, in bytes
+     * @throws IOException if the server cannot be started
+     */
+    public StubPdfEngine(Range latencyMillis, Range sizeBytes) throws IOException {
+        this.latencyMillis = latencyMillis;
+        this.sizeBytes = sizeBytes;
+        this.pdf = new byte[(int) sizeBytes.max()];
+        Arrays.fill(this.pdf, (byte) '%');
+
+        this.executorService = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "stub-pdf-engine");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.server.createContext(PATH, this::handle);
+        this.server.setExecutor(this.executorService);
+        this.server.start();
+    }
+
+    /**
+     * @return the endpoint to set on the PDF Engine client
+     */
+    public String getEndpoint() {
+        return "http://" + this.server.getAddress().getHostString() + ":" + this.server.getAddress().getPort() + PATH;
+    }
+
+    public long getRequests() {
+        return this.requests.sum();
+    }
+
+    @Override
+    public void close() {
+        this.server.stop(0);
+        this.executorService.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (InputStream requestBody = exchange.getRequestBody()) {
+            requestBody.transferTo(OutputStream.nullOutputStream());
+        }
+        this.requests.increment();
+        sleep(this.latencyMillis.sample());
+
+        int size = (int) this.sizeBytes.sample();
+        exchange.getResponseHeaders().set("Content-Type", "application/pdf");
+        exchange.sendResponseHeaders(200, size);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(this.pdf, 0, size);
+        }
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Uniform distribution between two values, both included
+     */
+    public record Range(long min, long max) {
+
+        public Range {
+            if (min < 0 || max < min) {
+                throw new IllegalArgumentException("Invalid range " + min + "-" + max);
+            }
+        }
+
+        /**
+         * @param value a single value (i.e. {@code 50}) or a range (i.e. {@code 20-80})
+         * @param unit  multiplier applied to the bounds (i.e. 1024 to read kilobytes)
+         * @return the parsed range
+         */
+        public static Range parse(String value, long unit) {
+            String[] bounds = value.trim().split("-");
+            long min = Long.parseLong(bounds[0].trim()) * unit;
+            long max = bounds.length > 1 ? Long.parseLong(bounds[1].trim()) * unit : min;
+            return new Range(min, max);
+        }
+
+        public long sample() {
+            return this.min == this.max ? this.min : ThreadLocalRandom.current().nextLong(this.min, this.max + 1);
+        }
+    }
+}
@@ -2,24 +2,46 @@ package it.gov.pagopa.receipt.pdf.generator.client.impl;
 
 import com.azure.cosmos.CosmosContainer;
 import com.azure.cosmos.CosmosException;
+import com.azure.cosmos.models.CosmosBulkItemResponse;
+import com.azure.cosmos.models.CosmosBulkOperationResponse;
+import com.azure.cosmos.models.CosmosItemOperation;
+import com.azure.cosmos.models.CosmosItemOperationType;
+import com.azure.cosmos.models.CosmosItemRequestOptions;
 import com.azure.cosmos.models.CosmosItemResponse;
+import com.azure.cosmos.models.CosmosPatchItemRequestOptions;
+import com.azure.cosmos.models.CosmosPatchOperations;
+import com.azure.cosmos.models.FeedResponse;
 import com.azure.cosmos.models.PartitionKey;
 import it.gov.pagopa.receipt.pdf.generator.entity.cart.CartForReceipt;
 import it.gov.pagopa.receipt.pdf.generator.exception.CartNotFoundException;
+import it.gov.pagopa.receipt.pdf.generator.model.DocumentPatch;
+import it.gov.pagopa.receipt.pdf.generator.utils.DocumentPatchBuilder;
+import org.apache.http.HttpStatus;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static uk.org.webcompere.systemstubs.SystemStubs.withEnvironmentVariables;
@@ -55,7 +77,7 @@ class CartReceiptsCosmosClientImplTest {
         CartForReceipt cartForReceipt = new CartForReceipt();
         cartForReceipt.setId(CART_ID);
 
-        when(mockContainer.readItem(anyString(), any(), eq(CartForReceipt.class)))
+        when(mockContainer.readItem(anyString(), any(), any(CosmosItemRequestOptions.class), eq(CartForReceipt.class)))
                 .thenReturn(mockItemResponse);
         when(mockItemResponse.getItem()).thenReturn(cartForReceipt);
 
@@ -63,13 +85,13 @@ class CartReceiptsCosmosClientImplTest {
 
         assertNotNull(result);
         assertEquals(CART_ID, result.getId());
-        verify(mockContainer).readItem(eq(CART_ID), any(PartitionKey.class), any());
+        verify(mockContainer).readItem(eq(CART_ID), any(PartitionKey.class), any(CosmosItemRequestOptions.class), any());
     }
 
     @Test
     void getCartItem_KO_notFound() {
         when(mockCosmosException.getStatusCode()).thenReturn(404);
-        when(mockContainer.readItem(anyString(), any(), eq(CartForReceipt.class)))
+        when(mockContainer.readItem(anyString(), any(), any(CosmosItemRequestOptions.class), eq(CartForReceipt.class)))
                 .thenThrow(mockCosmosException);
 
         assertThrows(CartNotFoundException.class, () -> sut.getCartItem("an invalid receipt id"));
@@ -78,7 +100,7 @@ class CartReceiptsCosmosClientImplTest {
     @Test
     void getCartItem_KO_error() {
         when(mockCosmosException.getStatusCode()).thenReturn(500);
-        when(mockContainer.readItem(anyString(), any(), eq(CartForReceipt.class)))
+        when(mockContainer.readItem(anyString(), any(), any(CosmosItemRequestOptions.class), eq(CartForReceipt.class)))
                 .thenThrow(mockCosmosException);
 
         assertThrows(CosmosException.class, () -> sut.getCartItem("an invalid receipt id"));
@@ -97,5 +119,93 @@ class CartReceiptsCosmosClientImplTest {
         assertEquals(mockItemResponse, result);
         verify(mockContainer).upsertItem(cartForReceipt);
     }
-}
 
+    @Test
+    void patchCartWithPatchOperations() {
+        CartForReceipt cartForReceipt = CartForReceipt.builder().id(CART_ID).cartId(CART_ID)._etag("etag").build();
+        DocumentPatch patch = new DocumentPatch(CosmosPatchOperations.create().set("/status", "GENERATED"), List.of("status"));
+
+        doReturn(mockItemResponse).when(mockContainer).patchItem(
+                eq(CART_ID), any(PartitionKey.class), eq(patch.getOperations()), any(CosmosPatchItemRequestOptions.class), eq(CartForReceipt.class));
+
+        CosmosItemResponse<CartForReceipt> result = assertDoesNotThrow(() -> sut.patchCart(cartForReceipt, patch));
+
+        assertEquals(mockItemResponse, result);
+        verify(mockContainer, never()).replaceItem(any(), anyString(), any(), any(CosmosItemRequestOptions.class));
+    }
+
+    @Test
+    void patchCartTooManyOperationsReplacesDocument() {
+        CartForReceipt cartForReceipt = CartForReceipt.builder().id(CART_ID).cartId(CART_ID)._etag("etag").build();
+        CosmosPatchOperations operations = CosmosPatchOperations.create();
+        List<String> fields = new ArrayList<>();
+        for (int i = 0; i <= DocumentPatchBuilder.MAX_PATCH_OPERATIONS; i++) {
+            operations.set("/field" + i, i);
+            fields.add("field" + i);
+        }
+        DocumentPatch patch = new DocumentPatch(operations, fields);
+
+        doReturn(mockItemResponse).when(mockContainer).replaceItem(
+                eq(cartForReceipt), eq(CART_ID), any(PartitionKey.class), any(CosmosItemRequestOptions.class));
+
+        CosmosItemResponse<CartForReceipt> result = assertDoesNotThrow(() -> sut.patchCart(cartForReceipt, patch));
+
+        assertEquals(mockItemResponse, result);
+        verify(mockContainer, never()).patchItem(anyString(), any(), any(), any(), eq(CartForReceipt.class));
+    }
+
+    @Test
+    void getCartItemsWithSingleReadMany() {
+        CartForReceipt cartForReceipt = CartForReceipt.builder().id(CART_ID).cartId(CART_ID).build();
+        FeedResponse<CartForReceipt> page = mock(FeedResponse.class);
+        doReturn(List.of(cartForReceipt)).when(page).getResults();
+        doReturn(page).when(mockContainer).readMany(any(), eq(CartForReceipt.class));
+
+        assertEquals(List.of(cartForReceipt), sut.getCartItems(List.of(CART_ID, "2")));
+    }
+
+    @Test
+    void getCartItemsWithoutIdsSkipsRead() {
+        assertTrue(sut.getCartItems(List.of()).isEmpty());
+
+        verify(mockContainer, never()).readMany(any(), eq(CartForReceipt.class));
+    }
+
+    @Test
+    void patchCartsReplacesWidePatchesInTheSameBulk() {
+        CartForReceipt narrow = CartForReceipt.builder().id(CART_ID).cartId(CART_ID)._etag("etag").build();
+        CartForReceipt wide = CartForReceipt.builder().id("2").cartId("2")._etag("etag").build();
+        CosmosPatchOperations operations = CosmosPatchOperations.create();
+        List<String> fields = new ArrayList<>();
+        for (int i = 0; i <= DocumentPatchBuilder.MAX_PATCH_OPERATIONS; i++) {
+            operations.set("/field" + i, i);
+            fields.add("field" + i);
+        }
+        Map<CartForReceipt, DocumentPatch> patches = new IdentityHashMap<>();
+        patches.put(narrow, new DocumentPatch(CosmosPatchOperations.create().set("/status", "INSERTED"), List.of("status")));
+        patches.put(wide, new DocumentPatch(operations, fields));
+
+        ArgumentCaptor<List<CosmosItemOperation>> operationsCaptor = ArgumentCaptor.forClass(List.class);
+        doAnswer(invocation -> {
+            List<CosmosItemOperation> itemOperations = invocation.getArgument(0);
+            return itemOperations.stream().map(CartReceiptsCosmosClientImplTest::okResponse).toList();
+        }).when(mockContainer).executeBulkOperations(operationsCaptor.capture());
+
+        Map<String, Integer> result = sut.patchCarts(patches);
+
+        assertEquals(Map.of(CART_ID, HttpStatus.SC_OK, "2", HttpStatus.SC_OK), result);
+        Map<String, CosmosItemOperationType> types = operationsCaptor.getValue().stream()
+                .collect(Collectors.toMap(CosmosItemOperation::getId, CosmosItemOperation::getOperationType));
+        assertEquals(Map.of(CART_ID, CosmosItemOperationType.PATCH, "2", CosmosItemOperationType.REPLACE), types);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static CosmosBulkOperationResponse<Object> okResponse(CosmosItemOperation operation) {
+        CosmosBulkItemResponse itemResponse = mock(CosmosBulkItemResponse.class);
+        doReturn(HttpStatus.SC_OK).when(itemResponse).getStatusCode();
+        CosmosBulkOperationResponse<Object> response = mock(CosmosBulkOperationResponse.class);
+        doReturn(operation).when(response).getOperation();
+        doReturn(itemResponse).when(response).getResponse();
+        return response;
+    }
+}
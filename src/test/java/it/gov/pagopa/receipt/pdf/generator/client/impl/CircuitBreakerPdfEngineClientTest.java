@@ -0,0 +1,97 @@
+package it.gov.pagopa.receipt.pdf.generator.client.impl;
+
+import it.gov.pagopa.receipt.pdf.generator.client.PdfEngineClient;
+import it.gov.pagopa.receipt.pdf.generator.entity.receipt.enumeration.ReasonErrorCode;
+import it.gov.pagopa.receipt.pdf.generator.model.request.PdfEngineRequest;
+import it.gov.pagopa.receipt.pdf.generator.model.response.PdfEngineResponse;
+import it.gov.pagopa.receipt.pdf.generator.utils.CircuitBreaker;
+import org.apache.http.HttpStatus;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class CircuitBreakerPdfEngineClientTest {
+
+    private static final long OPEN_NANOS = 60_000_000_000L;
+
+    @Mock
+    private PdfEngineClient pdfEngineClientMock;
+
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker("test",
+            new CircuitBreaker.Settings(50, 100, Long.MAX_VALUE, 10, 2, OPEN_NANOS, 1), System::nanoTime);
+
+    @Test
+    void failedCallsOpenTheBreakerAndFurtherCallsAreRejected() {
+        CircuitBreakerPdfEngineClient sut = new CircuitBreakerPdfEngineClient(pdfEngineClientMock, circuitBreaker);
+        doReturn(getPdfEngineResponse(HttpStatus.SC_INTERNAL_SERVER_ERROR))
+                .when(pdfEngineClientMock).generatePDF(any(), any());
+
+        sut.generatePDF(new PdfEngineRequest(), null);
+        sut.generatePDF(new PdfEngineRequest(), null);
+        PdfEngineResponse rejected = sut.generatePDF(new PdfEngineRequest(), null);
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+        assertEquals(ReasonErrorCode.ERROR_PDF_ENGINE_UNAVAILABLE.getCode(), rejected.getStatusCode());
+        verify(pdfEngineClientMock, times(2)).generatePDF(any(), any());
+    }
+
+    @Test
+    void clientErrorsDoNotOpenTheBreaker() {
+        CircuitBreakerPdfEngineClient sut = new CircuitBreakerPdfEngineClient(pdfEngineClientMock, circuitBreaker);
+        PdfEngineResponse badRequest = getPdfEngineResponse(HttpStatus.SC_INTERNAL_SERVER_ERROR);
+        badRequest.setEngineStatusCode(HttpStatus.SC_BAD_REQUEST);
+        doReturn(badRequest).when(pdfEngineClientMock).generatePDF(any(), any());
+
+        sut.generatePDF(new PdfEngineRequest(), null);
+        sut.generatePDF(new PdfEngineRequest(), null);
+        PdfEngineResponse response = sut.generatePDF(new PdfEngineRequest(), null);
+
+        assertEquals(HttpStatus.SC_INTERNAL_SERVER_ERROR, response.getStatusCode());
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertEquals(0.0, circuitBreaker.getFailureRate());
+        verify(pdfEngineClientMock, times(3)).generatePDF(any(), any());
+    }
+
+    @Test
+    void asyncExceptionsCountAsFailures() {
+        CircuitBreakerPdfEngineClient sut = new CircuitBreakerPdfEngineClient(pdfEngineClientMock, circuitBreaker);
+        doReturn(CompletableFuture.failedFuture(new IOException("timeout")))
+                .when(pdfEngineClientMock).generatePDFAsync(any(), any());
+
+        sut.generatePDFAsync(new PdfEngineRequest(), null);
+        sut.generatePDFAsync(new PdfEngineRequest(), null);
+
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    void asyncCallsAreRecordedOnCompletion() {
+        CircuitBreakerPdfEngineClient sut = new CircuitBreakerPdfEngineClient(pdfEngineClientMock, circuitBreaker);
+        doReturn(CompletableFuture.completedFuture(getPdfEngineResponse(HttpStatus.SC_OK)))
+                .when(pdfEngineClientMock).generatePDFAsync(any(), any());
+
+        PdfEngineResponse response = sut.generatePDFAsync(new PdfEngineRequest(), null).join();
+        sut.generatePDFAsync(new PdfEngineRequest(), null).join();
+
+        assertEquals(HttpStatus.SC_OK, response.getStatusCode());
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+        assertEquals(0.0, circuitBreaker.getFailureRate());
+    }
+
+    private static PdfEngineResponse getPdfEngineResponse(int status) {
+        PdfEngineResponse pdfEngineResponse = new PdfEngineResponse();
+        pdfEngineResponse.setStatusCode(status);
+        return pdfEngineResponse;
+    }
+}
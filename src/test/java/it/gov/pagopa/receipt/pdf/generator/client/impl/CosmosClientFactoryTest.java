@@ -0,0 +1,132 @@
+package it.gov.pagopa.receipt.pdf.generator.client.impl;
+
+import com.azure.cosmos.CosmosClient;
+import com.azure.cosmos.CosmosContainer;
+import com.azure.cosmos.CosmosDatabase;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CosmosClientFactoryTest {
+
+    private static final String RECEIPT_ENDPOINT = "https://receipt.documents.azure.com:443/";
+    private static final String BIZ_EVENT_ENDPOINT = "https://biz-event.documents.azure.com:443/";
+    private static final String KEY = "key";
+    private static final String REGION = "region";
+    private static final String DATABASE = "db";
+    private static final String RECEIPT_CONTAINER = "receipts";
+    private static final String CART_CONTAINER = "cart-for-receipts";
+
+    @Mock
+    private CosmosClient mockClient;
+    @Mock
+    private CosmosDatabase mockDatabase;
+    @Mock
+    private CosmosContainer mockContainer;
+
+    private final AtomicInteger clientsBuilt = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        when(mockClient.getDatabase(anyString())).thenReturn(mockDatabase);
+        when(mockDatabase.getContainer(anyString())).thenReturn(mockContainer);
+    }
+
+    @Test
+    void getContainerSharesClientByEndpoint() {
+        CosmosClientFactory sut = new CosmosClientFactory(this::buildClient, false, Runnable::run);
+
+        CosmosContainer receiptContainer = sut.getContainer(RECEIPT_ENDPOINT, KEY, REGION, DATABASE, RECEIPT_CONTAINER);
+        CosmosContainer cartContainer = sut.getContainer(RECEIPT_ENDPOINT, KEY, REGION, DATABASE, CART_CONTAINER);
+
+        assertSame(mockContainer, receiptContainer);
+        assertSame(mockContainer, cartContainer);
+        assertEquals(1, clientsBuilt.get());
+        assertEquals(1, sut.getClientsCount());
+        verify(mockDatabase).getContainer(RECEIPT_CONTAINER);
+        verify(mockDatabase).getContainer(CART_CONTAINER);
+        verify(mockContainer, never()).openConnectionsAndInitCaches();
+    }
+
+    @Test
+    void getContainerBuildsOneClientForEachEndpoint() {
+        CosmosClientFactory sut = new CosmosClientFactory(this::buildClient, false, Runnable::run);
+
+        sut.getContainer(RECEIPT_ENDPOINT, KEY, REGION, DATABASE, RECEIPT_CONTAINER);
+        sut.getContainer(BIZ_EVENT_ENDPOINT, KEY, REGION, DATABASE, RECEIPT_CONTAINER);
+
+        assertEquals(2, clientsBuilt.get());
+        assertEquals(2, sut.getClientsCount());
+    }
+
+    @Test
+    void getContainerBuildsOneClientForEachKeyAndRegion() {
+        CosmosClientFactory sut = new CosmosClientFactory(this::buildClient, false, Runnable::run);
+
+        sut.getContainer(RECEIPT_ENDPOINT, KEY, REGION, DATABASE, RECEIPT_CONTAINER);
+        sut.getContainer(RECEIPT_ENDPOINT, "other-key", REGION, DATABASE, RECEIPT_CONTAINER);
+        sut.getContainer(RECEIPT_ENDPOINT, KEY, "other-region", DATABASE, RECEIPT_CONTAINER);
+
+        assertEquals(3, clientsBuilt.get());
+        assertEquals(3, sut.getClientsCount());
+    }
+
+    @Test
+    void getContainerDoesNotWaitForWarmUp() {
+        List<Runnable> warmUps = new ArrayList<>();
+        CosmosClientFactory sut = new CosmosClientFactory(this::buildClient, true, warmUps::add);
+
+        CosmosContainer container = sut.getContainer(RECEIPT_ENDPOINT, KEY, REGION, DATABASE, RECEIPT_CONTAINER);
+
+        assertSame(mockContainer, container);
+        verify(mockContainer, never()).openConnectionsAndInitCaches();
+        assertEquals(1, warmUps.size());
+
+        warmUps.get(0).run();
+
+        verify(mockContainer).openConnectionsAndInitCaches();
+    }
+
+    @Test
+    void getContainerOpensConnectionsOnlyOnFirstRequest() {
+        CosmosClientFactory sut = new CosmosClientFactory(this::buildClient, true, Runnable::run);
+
+        sut.getContainer(RECEIPT_ENDPOINT, KEY, REGION, DATABASE, RECEIPT_CONTAINER);
+        sut.getContainer(RECEIPT_ENDPOINT, KEY, REGION, DATABASE, RECEIPT_CONTAINER);
+        sut.getContainer(RECEIPT_ENDPOINT, KEY, REGION, DATABASE, CART_CONTAINER);
+
+        verify(mockContainer, times(2)).openConnectionsAndInitCaches();
+    }
+
+    @Test
+    void getContainerToleratesOpenConnectionsFailure() {
+        doThrow(RuntimeException.class).when(mockContainer).openConnectionsAndInitCaches();
+        CosmosClientFactory sut = new CosmosClientFactory(this::buildClient, true, Runnable::run);
+
+        CosmosContainer container = assertDoesNotThrow(() -> sut.getContainer(RECEIPT_ENDPOINT, KEY, REGION, DATABASE, RECEIPT_CONTAINER));
+
+        assertSame(mockContainer, container);
+    }
+
+    private CosmosClient buildClient(String serviceEndpoint, String key, String preferredRegion) {
+        clientsBuilt.incrementAndGet();
+        return mockClient;
+    }
+}
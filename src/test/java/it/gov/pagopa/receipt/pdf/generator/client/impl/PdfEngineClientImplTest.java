@@ -5,6 +5,10 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import it.gov.pagopa.receipt.pdf.generator.model.request.PdfEngineRequest;
 import it.gov.pagopa.receipt.pdf.generator.model.response.PdfEngineResponse;
 import it.gov.pagopa.receipt.pdf.generator.model.template.ReceiptPDFTemplate;
+import it.gov.pagopa.receipt.pdf.generator.utils.JmxMetrics;
+import it.gov.pagopa.receipt.pdf.generator.utils.PdfEngineCallMetrics;
+import it.gov.pagopa.receipt.pdf.generator.utils.PdfEngineCallMetrics.Phase;
+import it.gov.pagopa.receipt.pdf.generator.utils.ReceiptTemplateJsonWriter;
 import org.apache.commons.io.FileUtils;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpStatus;
@@ -12,6 +16,7 @@ import org.apache.http.NoHttpResponseException;
 import org.apache.http.StatusLine;
 import org.apache.http.client.HttpRequestRetryHandler;
 import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
 import org.apache.http.conn.ConnectTimeoutException;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.protocol.BasicHttpContext;
@@ -21,29 +26,52 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import com.sun.net.httpserver.HttpServer;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import javax.net.ssl.SSLException;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.nio.channels.UnresolvedAddressException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -56,7 +84,6 @@ class PdfEngineClientImplTest {
     @Mock
     private CloseableHttpClient clientMock;
 
-    @InjectMocks
     private PdfEngineClientImpl sut;
 
     @Mock
@@ -66,6 +93,8 @@ class PdfEngineClientImplTest {
     @Mock
     private HttpEntity mockEntity;
 
+    private static final String PDF_ENGINE_ENDPOINT = "http://localhost/generate-pdf";
+
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     @BeforeEach
@@ -73,6 +102,7 @@ class PdfEngineClientImplTest {
         Path basePath = Path.of("src/test/resources");
         tempDirectory = Files.createTempDirectory(basePath, "temp").toFile();
         tempFile = File.createTempFile("output", ".tmp", tempDirectory);
+        sut = new PdfEngineClientImpl(clientMock, PDF_ENGINE_ENDPOINT);
     }
 
     @AfterEach
@@ -111,6 +141,85 @@ class PdfEngineClientImplTest {
         assertTrue(tempPdf.delete());
     }
 
+    @Test
+    void runOkTemplateWrittenIntoRequestBody() throws Exception {
+        ReceiptPDFTemplate template = ReceiptPDFTemplate.builder()
+                .serviceCustomerId("serviceCustomerId")
+                .build();
+        PdfEngineRequest pdfEngineRequest = PdfEngineRequest.builder().template(template).build();
+        ArgumentCaptor<HttpPost> requestCaptor = ArgumentCaptor.forClass(HttpPost.class);
+
+        when(clientMock.execute(requestCaptor.capture())).thenReturn(mockResponse);
+        when(mockResponse.getStatusLine()).thenReturn(mockStatusLine);
+        when(mockStatusLine.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+        when(mockResponse.getEntity()).thenReturn(mockEntity);
+        when(mockEntity.getContent()).thenReturn(InputStream.nullInputStream());
+
+        PdfEngineResponse result =
+                assertDoesNotThrow(() -> sut.generatePDF(pdfEngineRequest, tempDirectory.toPath()));
+
+        assertEquals(HttpStatus.SC_OK, result.getStatusCode());
+        assertTrue(new File(result.getTempPdfPath()).delete());
+
+        HttpEntity requestEntity = requestCaptor.getValue().getEntity();
+        assertTrue(requestEntity.isRepeatable());
+        assertTrue(requestEntity.isChunked());
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        requestEntity.writeTo(body);
+        assertTrue(body.toString(StandardCharsets.ISO_8859_1).contains(objectMapper.writeValueAsString(template)));
+    }
+
+    @Test
+    void runOkStreaming() throws Exception {
+        PdfEngineRequest pdfEngineRequest = buildPdfEngineRequest();
+        sut.setStreamingEnabled(true);
+
+        when(clientMock.execute(any())).thenReturn(mockResponse);
+        when(mockResponse.getStatusLine()).thenReturn(mockStatusLine);
+        when(mockStatusLine.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+        when(mockResponse.getEntity()).thenReturn(mockEntity);
+        when(mockEntity.getContentLength()).thenReturn(3L);
+        when(mockEntity.getContent()).thenReturn(new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        PdfEngineResponse result =
+                assertDoesNotThrow(() -> sut.generatePDF(pdfEngineRequest, tempDirectory.toPath()));
+
+        assertEquals(HttpStatus.SC_OK, result.getStatusCode());
+        assertNull(result.getTempPdfPath());
+        assertEquals(3L, result.getPdfContentLength());
+        verify(mockResponse, never()).close();
+
+        try (InputStream pdfStream = result.getPdfStream()) {
+            assertEquals(3, pdfStream.readAllBytes().length);
+        }
+        verify(mockResponse).close();
+    }
+
+    @Test
+    void runOkStreamingFallbackToTempFileWhenTooLarge() throws Exception {
+        PdfEngineRequest pdfEngineRequest = buildPdfEngineRequest();
+        sut.setStreamingEnabled(true);
+        sut.setStreamingMaxLength(2);
+
+        when(clientMock.execute(any())).thenReturn(mockResponse);
+        when(mockResponse.getStatusLine()).thenReturn(mockStatusLine);
+        when(mockStatusLine.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+        when(mockResponse.getEntity()).thenReturn(mockEntity);
+        when(mockEntity.getContentLength()).thenReturn(3L);
+        when(mockEntity.getContent()).thenReturn(new ByteArrayInputStream(new byte[]{1, 2, 3}));
+
+        PdfEngineResponse result =
+                assertDoesNotThrow(() -> sut.generatePDF(pdfEngineRequest, tempDirectory.toPath()));
+
+        assertEquals(HttpStatus.SC_OK, result.getStatusCode());
+        assertNull(result.getPdfStream());
+        assertNotNull(result.getTempPdfPath());
+        File tempPdf = new File(result.getTempPdfPath());
+        assertEquals(3L, tempPdf.length());
+        assertTrue(tempPdf.delete());
+        verify(mockResponse).close();
+    }
+
     @Test
     void runKoUnauthorized() throws IOException {
         PdfEngineRequest pdfEngineRequest = buildPdfEngineRequest();
@@ -124,6 +233,7 @@ class PdfEngineClientImplTest {
                 assertDoesNotThrow(() -> sut.generatePDF(pdfEngineRequest, tempDirectory.toPath()));
 
         assertEquals(HttpStatus.SC_INTERNAL_SERVER_ERROR, result.getStatusCode());
+        assertEquals(HttpStatus.SC_UNAUTHORIZED, result.getEngineStatusCode());
         assertEquals("Unauthorized call to PDF engine function", result.getErrorMessage());
 
         verify(mockEntity, never()).getContent();
@@ -159,10 +269,44 @@ class PdfEngineClientImplTest {
                 assertDoesNotThrow(() -> sut.generatePDF(pdfEngineRequest, tempDirectory.toPath()));
 
         assertEquals(HttpStatus.SC_INTERNAL_SERVER_ERROR, result.getStatusCode());
+        assertEquals(HttpStatus.SC_BAD_REQUEST, result.getEngineStatusCode());
         assertEquals(errorMessage, result.getErrorMessage());
 
     }
 
+    @Test
+    void runKo503() throws IOException {
+        PdfEngineRequest pdfEngineRequest = buildPdfEngineRequest();
+
+        when(clientMock.execute(any())).thenReturn(mockResponse);
+        when(mockResponse.getStatusLine()).thenReturn(mockStatusLine);
+        when(mockStatusLine.getStatusCode()).thenReturn(HttpStatus.SC_SERVICE_UNAVAILABLE);
+        when(mockResponse.getEntity()).thenReturn(mockEntity);
+        when(mockEntity.getContent()).thenReturn(new ByteArrayInputStream(new byte[0]));
+
+        PdfEngineResponse result =
+                assertDoesNotThrow(() -> sut.generatePDF(pdfEngineRequest, tempDirectory.toPath()));
+
+        assertEquals(HttpStatus.SC_INTERNAL_SERVER_ERROR, result.getStatusCode());
+        assertEquals(HttpStatus.SC_SERVICE_UNAVAILABLE, result.getEngineStatusCode());
+        assertEquals("Unknown error in PDF engine function", result.getErrorMessage());
+    }
+
+    @Test
+    void runKoOkWithoutBody() throws IOException {
+        PdfEngineRequest pdfEngineRequest = buildPdfEngineRequest();
+
+        when(clientMock.execute(any())).thenReturn(mockResponse);
+        when(mockResponse.getStatusLine()).thenReturn(mockStatusLine);
+        when(mockStatusLine.getStatusCode()).thenReturn(HttpStatus.SC_OK);
+        when(mockResponse.getEntity()).thenReturn(null);
+
+        PdfEngineResponse result =
+                assertDoesNotThrow(() -> sut.generatePDF(pdfEngineRequest, tempDirectory.toPath()));
+
+        assertEquals(HttpStatus.SC_INTERNAL_SERVER_ERROR, result.getStatusCode());
+    }
+
     @Test
     void runKOMakeCallThrowIOException() throws Exception {
         PdfEngineRequest pdfEngineRequest = buildPdfEngineRequest();
@@ -200,6 +344,182 @@ class PdfEngineClientImplTest {
         assertTrue(result.getErrorMessage().startsWith("Exception thrown during pdf generation process:"));
     }
 
+    @Test
+    void runAsyncHttp2Ok() throws Exception {
+        byte[] pdf = new byte[]{1, 2, 3, 4};
+        AtomicReference<String> receivedBody = new AtomicReference<>();
+        HttpServer server = startPdfEngineStub(HttpStatus.SC_OK, pdf, receivedBody);
+        try {
+            PdfEngineRequest pdfEngineRequest = buildPdfEngineRequest();
+
+            PdfEngineResponse result = sut.generatePDFAsync(pdfEngineRequest, tempDirectory.toPath())
+                    .get(10, TimeUnit.SECONDS);
+
+            assertEquals(HttpStatus.SC_OK, result.getStatusCode());
+            assertNotNull(result.getTempPdfPath());
+            assertArrayEquals(pdf, Files.readAllBytes(Path.of(result.getTempPdfPath())));
+            assertTrue(receivedBody.get().contains("name=\"template\"; filename=\"template.zip\""));
+            assertTrue(receivedBody.get().contains(pdfEngineRequest.getData()));
+            verify(clientMock, never()).execute(any());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void runAsyncHttp2OkTemplate() throws Exception {
+        AtomicReference<String> receivedBody = new AtomicReference<>();
+        HttpServer server = startPdfEngineStub(HttpStatus.SC_OK, new byte[]{1}, receivedBody);
+        try {
+            ReceiptPDFTemplate template = ReceiptPDFTemplate.builder()
+                    .serviceCustomerId("serviceCustomerId")
+                    .build();
+            PdfEngineRequest pdfEngineRequest = PdfEngineRequest.builder().template(template).build();
+
+            PdfEngineResponse result = sut.generatePDFAsync(pdfEngineRequest, tempDirectory.toPath())
+                    .get(10, TimeUnit.SECONDS);
+
+            assertEquals(HttpStatus.SC_OK, result.getStatusCode());
+            assertTrue(receivedBody.get().contains(objectMapper.writeValueAsString(template)));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void runAsyncHttp2OkEncodedData() throws Exception {
+        AtomicReference<String> receivedBody = new AtomicReference<>();
+        HttpServer server = startPdfEngineStub(HttpStatus.SC_OK, new byte[]{1}, receivedBody);
+        try {
+            ReceiptPDFTemplate template = ReceiptPDFTemplate.builder()
+                    .serviceCustomerId("serviceCustomerId")
+                    .build();
+            PdfEngineRequest pdfEngineRequest = PdfEngineRequest.builder()
+                    .encodedData(ReceiptTemplateJsonWriter.writeValueAsBytes(template))
+                    .build();
+
+            PdfEngineResponse result = sut.generatePDFAsync(pdfEngineRequest, tempDirectory.toPath())
+                    .get(10, TimeUnit.SECONDS);
+
+            assertEquals(HttpStatus.SC_OK, result.getStatusCode());
+            assertTrue(receivedBody.get().contains(objectMapper.writeValueAsString(template)));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void runAsyncHttp2OkStreaming() throws Exception {
+        byte[] pdf = new byte[]{1, 2, 3, 4};
+        HttpServer server = startPdfEngineStub(HttpStatus.SC_OK, pdf, new AtomicReference<>());
+        try {
+            sut.setStreamingEnabled(true);
+
+            PdfEngineResponse result = sut.generatePDFAsync(buildPdfEngineRequest(), tempDirectory.toPath())
+                    .get(10, TimeUnit.SECONDS);
+
+            assertEquals(HttpStatus.SC_OK, result.getStatusCode());
+            assertNull(result.getTempPdfPath());
+            assertEquals(pdf.length, result.getPdfContentLength());
+            try (InputStream pdfStream = result.getPdfStream()) {
+                assertArrayEquals(pdf, pdfStream.readAllBytes());
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void runAsyncHttp2Ko400() throws Exception {
+        String error400 = "{\"errors\": [{\"message\": \"Invalid request\"}]}";
+        HttpServer server = startPdfEngineStub(HttpStatus.SC_BAD_REQUEST, error400.getBytes(), new AtomicReference<>());
+        try {
+            PdfEngineResponse result = sut.generatePDF(buildPdfEngineRequest(), tempDirectory.toPath());
+
+            assertEquals(HttpStatus.SC_INTERNAL_SERVER_ERROR, result.getStatusCode());
+            assertEquals(HttpStatus.SC_BAD_REQUEST, result.getEngineStatusCode());
+            assertEquals("Invalid request", result.getErrorMessage());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void runAsyncHttp2KoUnauthorized() throws Exception {
+        HttpServer server = startPdfEngineStub(HttpStatus.SC_UNAUTHORIZED, new byte[0], new AtomicReference<>());
+        try {
+            PdfEngineResponse result = sut.generatePDF(buildPdfEngineRequest(), tempDirectory.toPath());
+
+            assertEquals(HttpStatus.SC_INTERNAL_SERVER_ERROR, result.getStatusCode());
+            assertEquals(HttpStatus.SC_UNAUTHORIZED, result.getEngineStatusCode());
+            assertEquals("Unauthorized call to PDF engine function", result.getErrorMessage());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void runAsyncHttp2KoConnectionRefused() throws Exception {
+        sut = new PdfEngineClientImpl(clientMock, "http://localhost:1/generate-pdf");
+        sut.setAsyncHttpClient(HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build());
+
+        PdfEngineResponse result = sut.generatePDFAsync(buildPdfEngineRequest(), tempDirectory.toPath())
+                .get(10, TimeUnit.SECONDS);
+
+        assertEquals(HttpStatus.SC_INTERNAL_SERVER_ERROR, result.getStatusCode());
+        assertTrue(result.getErrorMessage().startsWith("Exception thrown during pdf generation process:"));
+    }
+
+    @Test
+    void runAsyncHttp2RetriesTransientError() throws Exception {
+        byte[] pdf = "%PDF-1.4 content".getBytes(StandardCharsets.UTF_8);
+        HttpServer server = startPdfEngineStub(HttpStatus.SC_OK, pdf, new AtomicReference<>());
+        HttpClient http2Client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build();
+        HttpClient asyncHttpClientMock = mock(HttpClient.class);
+        doReturn(CompletableFuture.failedFuture(new HttpConnectTimeoutException("connect timed out")))
+                .doAnswer(invocation -> http2Client.sendAsync(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(asyncHttpClientMock).sendAsync(any(), any());
+        sut.setAsyncHttpClient(asyncHttpClientMock);
+        long retried = PdfEngineCallMetrics.getInstance().getRetried();
+        try {
+            PdfEngineResponse result = sut.generatePDFAsync(buildPdfEngineRequest(), tempDirectory.toPath())
+                    .get(10, TimeUnit.SECONDS);
+
+            assertEquals(HttpStatus.SC_OK, result.getStatusCode());
+            assertArrayEquals(pdf, Files.readAllBytes(Path.of(result.getTempPdfPath())));
+            assertEquals(retried + 1, PdfEngineCallMetrics.getInstance().getRetried());
+            verify(asyncHttpClientMock, times(2)).sendAsync(any(), any());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void runAsyncHttp2DoesNotRetryNonTransientError() throws Exception {
+        HttpClient asyncHttpClientMock = mock(HttpClient.class);
+        doReturn(CompletableFuture.failedFuture(new SSLException("handshake failed")))
+                .when(asyncHttpClientMock).sendAsync(any(), any());
+        sut.setAsyncHttpClient(asyncHttpClientMock);
+
+        PdfEngineResponse result = sut.generatePDFAsync(buildPdfEngineRequest(), tempDirectory.toPath())
+                .get(10, TimeUnit.SECONDS);
+
+        assertEquals(HttpStatus.SC_INTERNAL_SERVER_ERROR, result.getStatusCode());
+        verify(asyncHttpClientMock).sendAsync(any(), any());
+    }
+
+    @Test
+    void asyncRetryPolicyMatchesTheRetryHandler() {
+        assertTrue(PdfEngineClientImpl.isRetriable(new HttpConnectTimeoutException("timeout"), 1));
+        assertTrue(PdfEngineClientImpl.isRetriable(new HttpTimeoutException("request timed out"), 2));
+        assertTrue(PdfEngineClientImpl.isRetriable(new IOException("connection reset"), 1));
+        // RETRY_COUNT default is 2, so executionCount=3 must not retry
+        assertFalse(PdfEngineClientImpl.isRetriable(new HttpConnectTimeoutException("timeout"), 3));
+        assertFalse(PdfEngineClientImpl.isRetriable(new SSLException("handshake failed"), 1));
+        assertFalse(PdfEngineClientImpl.isRetriable(new IOException("dns", new UnresolvedAddressException()), 1));
+        assertFalse(PdfEngineClientImpl.isRetriable(new IllegalStateException("bug"), 1));
+    }
+
     @Test
     void retryHandlerRetriesOnConnectTimeout() throws Exception {
         HttpRequestRetryHandler handler = retryHandler();
@@ -240,12 +560,83 @@ class PdfEngineClientImplTest {
         assertFalse(handler.retryRequest(new InterruptedIOException("interrupted"), 1, ctx));
     }
 
+    @Test
+    void retryHandlerCountsItsDecisions() throws Exception {
+        HttpRequestRetryHandler handler = retryHandler();
+        PdfEngineCallMetrics callMetrics = PdfEngineCallMetrics.getInstance();
+        long retried = callMetrics.getRetried();
+        long notRetried = callMetrics.getNotRetried();
+
+        handler.retryRequest(new NoHttpResponseException("stale keep-alive"), 1, new BasicHttpContext());
+        handler.retryRequest(new SSLException("handshake failed"), 1, new BasicHttpContext());
+
+        assertEquals(retried + 1, callMetrics.getRetried());
+        assertEquals(notRetried + 1, callMetrics.getNotRetried());
+    }
+
+    @Test
+    void pooledClientRecordsEveryCallPhase() throws Exception {
+        byte[] pdf = "%PDF-1.4 content".getBytes(StandardCharsets.UTF_8);
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/generate-pdf", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.sendResponseHeaders(HttpStatus.SC_OK, pdf.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(pdf);
+            }
+        });
+        server.start();
+        Method buildDefaultHttpClient = PdfEngineClientImpl.class.getDeclaredMethod("buildDefaultHttpClient");
+        buildDefaultHttpClient.setAccessible(true);
+        PdfEngineClientImpl pooledClient = new PdfEngineClientImpl(
+                (CloseableHttpClient) buildDefaultHttpClient.invoke(null),
+                "http://localhost:" + server.getAddress().getPort() + "/generate-pdf");
+
+        PdfEngineCallMetrics callMetrics = PdfEngineCallMetrics.getInstance();
+        Map<Phase, Long> countsBefore = new EnumMap<>(Phase.class);
+        for (Phase phase : Phase.values()) {
+            countsBefore.put(phase, callMetrics.getPhaseLatency(phase).getCount());
+        }
+
+        try {
+            PdfEngineResponse result = pooledClient.generatePDF(buildPdfEngineRequest(), tempDirectory.toPath());
+            assertEquals(HttpStatus.SC_OK, result.getStatusCode());
+        } finally {
+            server.stop(0);
+        }
+
+        for (Phase phase : Phase.values()) {
+            assertEquals(countsBefore.get(phase) + 1, callMetrics.getPhaseLatency(phase).getCount(), phase.name());
+        }
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName totalPool = new ObjectName(JmxMetrics.DOMAIN + ":type=PdfEngineConnectionPool,route=total");
+        assertEquals(0, mBeanServer.getAttribute(totalPool, "Leased"));
+        assertEquals(1, mBeanServer.getAttribute(totalPool, "Available"));
+        ObjectName route = new ObjectName(JmxMetrics.DOMAIN + ":type=PdfEngineConnectionPool,route=localhost_" + server.getAddress().getPort());
+        assertTrue(mBeanServer.isRegistered(route));
+    }
+
     private PdfEngineRequest buildPdfEngineRequest() throws JsonProcessingException {
         return PdfEngineRequest.builder()
                 .data(objectMapper.writeValueAsString(new ReceiptPDFTemplate()))
                 .build();
     }
 
+    private HttpServer startPdfEngineStub(int status, byte[] body, AtomicReference<String> receivedBody) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/generate-pdf", exchange -> {
+            receivedBody.set(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.ISO_8859_1));
+            exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        server.start();
+        sut = new PdfEngineClientImpl(clientMock, "http://localhost:" + server.getAddress().getPort() + "/generate-pdf");
+        sut.setAsyncHttpClient(HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build());
+        return server;
+    }
+
     private static HttpRequestRetryHandler retryHandler() throws Exception {
         Method m = PdfEngineClientImpl.class.getDeclaredMethod("buildRetryHandler");
         m.setAccessible(true);
@@ -80,4 +80,29 @@ class ReceiptBlobClientImplTest {
         assertNull(response.getDocumentName());
         assertNull(response.getDocumentUrl());
     }
-}
\ No newline at end of file
+
+    @Test
+    void findPdfExisting() {
+        when(mockContainer.getBlobClient("filename.pdf")).thenReturn(mockClient);
+        when(mockClient.exists()).thenReturn(true);
+        when(mockClient.getBlobName()).thenReturn("filename.pdf");
+        when(mockClient.getBlobUrl()).thenReturn("a valid blob url");
+
+        BlobStorageResponse response = sut.findPdfInBlobStorage("filename");
+
+        assertEquals(HttpStatus.OK.value(), response.getStatusCode());
+        assertEquals("filename.pdf", response.getDocumentName());
+        assertEquals("a valid blob url", response.getDocumentUrl());
+    }
+
+    @Test
+    void findPdfMissing() {
+        when(mockContainer.getBlobClient("filename.pdf")).thenReturn(mockClient);
+        when(mockClient.exists()).thenReturn(false);
+
+        BlobStorageResponse response = sut.findPdfInBlobStorage("filename");
+
+        assertEquals(HttpStatus.NOT_FOUND.value(), response.getStatusCode());
+        assertNull(response.getDocumentName());
+    }
+}
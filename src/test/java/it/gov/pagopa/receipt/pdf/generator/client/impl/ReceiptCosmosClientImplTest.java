@@ -2,30 +2,52 @@ package it.gov.pagopa.receipt.pdf.generator.client.impl;
 
 import com.azure.cosmos.CosmosContainer;
 import com.azure.cosmos.CosmosException;
+import com.azure.cosmos.models.CosmosBulkItemResponse;
+import com.azure.cosmos.models.CosmosBulkOperationResponse;
+import com.azure.cosmos.models.CosmosItemIdentity;
+import com.azure.cosmos.models.CosmosItemOperation;
+import com.azure.cosmos.models.CosmosItemOperationType;
+import com.azure.cosmos.models.CosmosItemRequestOptions;
 import com.azure.cosmos.models.CosmosItemResponse;
+import com.azure.cosmos.models.CosmosPatchItemRequestOptions;
+import com.azure.cosmos.models.CosmosPatchOperations;
+import com.azure.cosmos.models.CosmosQueryRequestOptions;
+import com.azure.cosmos.models.FeedResponse;
 import com.azure.cosmos.models.PartitionKey;
 import com.azure.cosmos.models.SqlQuerySpec;
 import com.azure.cosmos.util.CosmosPagedIterable;
 import it.gov.pagopa.receipt.pdf.generator.entity.receipt.Receipt;
 import it.gov.pagopa.receipt.pdf.generator.exception.ReceiptNotFoundException;
+import it.gov.pagopa.receipt.pdf.generator.model.DocumentPatch;
+import it.gov.pagopa.receipt.pdf.generator.utils.CosmosLookupMetrics;
+import it.gov.pagopa.receipt.pdf.generator.utils.CosmosLookupMetrics.LookupPath;
+import it.gov.pagopa.receipt.pdf.generator.utils.DocumentPatchBuilder;
+import org.apache.http.HttpStatus;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
-import java.util.Optional;
-import java.util.stream.Stream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static uk.org.webcompere.systemstubs.SystemStubs.withEnvironmentVariables;
@@ -40,7 +62,9 @@ class ReceiptCosmosClientImplTest {
     @Mock
     private CosmosPagedIterable<Receipt> mockIterable;
     @Mock
-    private Stream<Receipt> mockReceiptStream;
+    private FeedResponse<Receipt> mockEmptyPage;
+    @Mock
+    private FeedResponse<Receipt> mockPage;
     @Mock
     private CosmosItemResponse<Receipt> mockItemResponse;
     @Mock
@@ -75,33 +99,143 @@ class ReceiptCosmosClientImplTest {
         verify(mockContainer, never()).queryItems(anyString(), any(), eq(Receipt.class));
     }
 
+    @Test
+    void getReceiptDocument_OK_partitionQuery() {
+        Receipt receipt = new Receipt();
+        receipt.setId("a legacy receipt id");
+
+        when(mockCosmosException.getStatusCode()).thenReturn(404);
+        when(mockContainer.readItem(anyString(), any(PartitionKey.class), eq(Receipt.class))).thenThrow(mockCosmosException);
+        when(mockContainer.queryItems(any(SqlQuerySpec.class), any(CosmosQueryRequestOptions.class), eq(Receipt.class))).thenReturn(mockIterable);
+        when(mockIterable.iterableByPage()).thenReturn(List.of(mockPage));
+        when(mockPage.getResults()).thenReturn(List.of(receipt));
+        when(mockPage.getRequestCharge()).thenReturn(2.5);
+
+        Receipt result = assertDoesNotThrow(() -> sut.getReceiptDocument(RECEIPT_ID));
+
+        assertEquals("a legacy receipt id", result.getId());
+        ArgumentCaptor<CosmosQueryRequestOptions> optionsCaptor = ArgumentCaptor.forClass(CosmosQueryRequestOptions.class);
+        verify(mockContainer).queryItems(any(SqlQuerySpec.class), optionsCaptor.capture(), eq(Receipt.class));
+        assertEquals(new PartitionKey(RECEIPT_ID), optionsCaptor.getValue().getPartitionKey());
+        CosmosLookupMetrics metrics = sut.getLookupMetrics();
+        assertEquals(1, metrics.getFoundCount(LookupPath.PARTITION_QUERY));
+        assertEquals(2.5, metrics.getRequestCharge(LookupPath.PARTITION_QUERY));
+        assertEquals(0, metrics.getCount(LookupPath.QUERY_FALLBACK));
+    }
+
     @Test
     void getReceiptDocument_OK_fallbackOnIterate() {
         Receipt receipt = new Receipt();
         receipt.setId(RECEIPT_ID);
+        sut.setQueryFallbackEnabled(true);
 
         when(mockCosmosException.getStatusCode()).thenReturn(404);
         when(mockContainer.readItem(anyString(), any(PartitionKey.class), eq(Receipt.class))).thenThrow(mockCosmosException);
-        when(mockContainer.queryItems(any(SqlQuerySpec.class), any(), eq(Receipt.class))).thenReturn(mockIterable);
-        when(mockIterable.stream()).thenReturn(mockReceiptStream);
-        when(mockReceiptStream.findFirst()).thenReturn(Optional.of(receipt));
+        when(mockContainer.queryItems(any(SqlQuerySpec.class), any(CosmosQueryRequestOptions.class), eq(Receipt.class))).thenReturn(mockIterable);
+        when(mockIterable.iterableByPage()).thenReturn(List.of(mockEmptyPage), List.of(mockEmptyPage, mockPage));
+        when(mockEmptyPage.getResults()).thenReturn(Collections.emptyList());
+        when(mockEmptyPage.getRequestCharge()).thenReturn(2.5);
+        when(mockPage.getResults()).thenReturn(List.of(receipt));
+        when(mockPage.getRequestCharge()).thenReturn(3.0);
 
         Receipt result = assertDoesNotThrow(() -> sut.getReceiptDocument(RECEIPT_ID));
 
         assertEquals(RECEIPT_ID, result.getId());
+        CosmosLookupMetrics metrics = sut.getLookupMetrics();
+        assertEquals(1, metrics.getCount(LookupPath.POINT_READ));
+        assertEquals(0, metrics.getFoundCount(LookupPath.POINT_READ));
+        assertEquals(1, metrics.getCount(LookupPath.PARTITION_QUERY));
+        assertEquals(0, metrics.getFoundCount(LookupPath.PARTITION_QUERY));
+        assertEquals(1, metrics.getFoundCount(LookupPath.QUERY_FALLBACK));
+        assertEquals(5.5, metrics.getRequestCharge(LookupPath.QUERY_FALLBACK));
     }
 
     @Test
     void getReceiptDocument_readItemNullFallbackToQuery_notFound_throwsReceiptNotFoundException() {
+        sut.setQueryFallbackEnabled(true);
         when(mockCosmosException.getStatusCode()).thenReturn(404);
         when(mockContainer.readItem(anyString(), any(PartitionKey.class), eq(Receipt.class))).thenThrow(mockCosmosException);
-        when(mockContainer.queryItems(any(SqlQuerySpec.class), any(), eq(Receipt.class))).thenReturn(mockIterable);
-        when(mockIterable.stream()).thenReturn(mockReceiptStream);
-        when(mockReceiptStream.findFirst()).thenReturn(Optional.empty());
+        when(mockContainer.queryItems(any(SqlQuerySpec.class), any(CosmosQueryRequestOptions.class), eq(Receipt.class))).thenReturn(mockIterable);
+        when(mockIterable.iterableByPage()).thenReturn(List.of(mockEmptyPage));
+        when(mockEmptyPage.getResults()).thenReturn(Collections.emptyList());
 
         assertThrows(ReceiptNotFoundException.class, () -> sut.getReceiptDocument("an invalid receipt id"));
     }
 
+    @Test
+    void getReceiptDocument_notFound_fallbackDisabled_onlyPartitionQuery() {
+        when(mockCosmosException.getStatusCode()).thenReturn(404);
+        when(mockCosmosException.getRequestCharge()).thenReturn(1.0);
+        when(mockContainer.readItem(anyString(), any(PartitionKey.class), eq(Receipt.class))).thenThrow(mockCosmosException);
+        when(mockContainer.queryItems(any(SqlQuerySpec.class), any(CosmosQueryRequestOptions.class), eq(Receipt.class))).thenReturn(mockIterable);
+        when(mockIterable.iterableByPage()).thenReturn(List.of(mockEmptyPage));
+        when(mockEmptyPage.getResults()).thenReturn(Collections.emptyList());
+
+        assertThrows(ReceiptNotFoundException.class, () -> sut.getReceiptDocument(RECEIPT_ID));
+
+        verify(mockContainer, times(1)).queryItems(any(SqlQuerySpec.class), any(CosmosQueryRequestOptions.class), eq(Receipt.class));
+        CosmosLookupMetrics metrics = sut.getLookupMetrics();
+        assertEquals(1, metrics.getCount(LookupPath.POINT_READ));
+        assertEquals(1.0, metrics.getRequestCharge(LookupPath.POINT_READ));
+        assertEquals(1, metrics.getCount(LookupPath.PARTITION_QUERY));
+        assertEquals(0, metrics.getCount(LookupPath.QUERY_FALLBACK));
+    }
+
+    @Test
+    void getReceiptDocument_knownMiss_servedFromNegativeCache() {
+        sut.setQueryFallbackEnabled(true);
+        when(mockCosmosException.getStatusCode()).thenReturn(404);
+        when(mockContainer.readItem(anyString(), any(PartitionKey.class), eq(Receipt.class))).thenThrow(mockCosmosException);
+        when(mockContainer.queryItems(any(SqlQuerySpec.class), any(CosmosQueryRequestOptions.class), eq(Receipt.class))).thenReturn(mockIterable);
+        when(mockIterable.iterableByPage()).thenReturn(List.of(mockEmptyPage));
+        when(mockEmptyPage.getResults()).thenReturn(Collections.emptyList());
+
+        assertThrows(ReceiptNotFoundException.class, () -> sut.getReceiptDocument(RECEIPT_ID));
+        assertThrows(ReceiptNotFoundException.class, () -> sut.getReceiptDocument(RECEIPT_ID));
+
+        verify(mockContainer, times(2)).readItem(anyString(), any(PartitionKey.class), eq(Receipt.class));
+        CosmosLookupMetrics metrics = sut.getLookupMetrics();
+        assertEquals(2, metrics.getCount(LookupPath.PARTITION_QUERY));
+        assertEquals(1, metrics.getCount(LookupPath.QUERY_FALLBACK));
+        assertEquals(1, metrics.getCount(LookupPath.NEGATIVE_CACHE));
+    }
+
+    @Test
+    void getReceiptDocument_knownMissExpired_queryRunAgain() {
+        sut.setQueryFallbackEnabled(true);
+        sut.setNotFoundCacheTtlMillis(0);
+        when(mockCosmosException.getStatusCode()).thenReturn(404);
+        when(mockContainer.readItem(anyString(), any(PartitionKey.class), eq(Receipt.class))).thenThrow(mockCosmosException);
+        when(mockContainer.queryItems(any(SqlQuerySpec.class), any(CosmosQueryRequestOptions.class), eq(Receipt.class))).thenReturn(mockIterable);
+        when(mockIterable.iterableByPage()).thenReturn(List.of(mockEmptyPage));
+        when(mockEmptyPage.getResults()).thenReturn(Collections.emptyList());
+
+        assertThrows(ReceiptNotFoundException.class, () -> sut.getReceiptDocument(RECEIPT_ID));
+        assertThrows(ReceiptNotFoundException.class, () -> sut.getReceiptDocument(RECEIPT_ID));
+
+        assertEquals(2, sut.getLookupMetrics().getCount(LookupPath.QUERY_FALLBACK));
+        assertEquals(0, sut.getLookupMetrics().getCount(LookupPath.NEGATIVE_CACHE));
+    }
+
+    @Test
+    void getReceiptDocument_knownMissBeyondMaxSize_eldestEvicted() {
+        sut.setQueryFallbackEnabled(true);
+        sut.setNotFoundCacheMaxSize(1);
+        when(mockCosmosException.getStatusCode()).thenReturn(404);
+        when(mockContainer.readItem(anyString(), any(PartitionKey.class), eq(Receipt.class))).thenThrow(mockCosmosException);
+        when(mockContainer.queryItems(any(SqlQuerySpec.class), any(CosmosQueryRequestOptions.class), eq(Receipt.class))).thenReturn(mockIterable);
+        when(mockIterable.iterableByPage()).thenReturn(List.of(mockEmptyPage));
+        when(mockEmptyPage.getResults()).thenReturn(Collections.emptyList());
+
+        assertThrows(ReceiptNotFoundException.class, () -> sut.getReceiptDocument(RECEIPT_ID));
+        assertThrows(ReceiptNotFoundException.class, () -> sut.getReceiptDocument("another-" + RECEIPT_ID));
+        assertThrows(ReceiptNotFoundException.class, () -> sut.getReceiptDocument("another-" + RECEIPT_ID));
+        assertThrows(ReceiptNotFoundException.class, () -> sut.getReceiptDocument(RECEIPT_ID));
+
+        assertEquals(3, sut.getLookupMetrics().getCount(LookupPath.QUERY_FALLBACK));
+        assertEquals(1, sut.getLookupMetrics().getCount(LookupPath.NEGATIVE_CACHE));
+    }
+
     @Test
     void getReceiptDocument_readItemNon404CosmosException_rethrows() {
         when(mockCosmosException.getStatusCode()).thenReturn(500);
@@ -109,4 +243,131 @@ class ReceiptCosmosClientImplTest {
 
         assertThrows(CosmosException.class, () -> sut.getReceiptDocument(RECEIPT_ID));
     }
+
+    @Test
+    void patchReceipt_OK_patchWithEtagCondition() {
+        Receipt receipt = Receipt.builder().id(RECEIPT_ID).eventId(RECEIPT_ID)._etag("etag").build();
+        DocumentPatch patch = new DocumentPatch(CosmosPatchOperations.create().set("/status", "GENERATED"), List.of("status"));
+
+        when(mockContainer.patchItem(eq(RECEIPT_ID), any(PartitionKey.class), eq(patch.getOperations()),
+                any(CosmosPatchItemRequestOptions.class), eq(Receipt.class))).thenReturn(mockItemResponse);
+
+        CosmosItemResponse<Receipt> result = assertDoesNotThrow(() -> sut.patchReceipt(receipt, patch));
+
+        assertEquals(mockItemResponse, result);
+        ArgumentCaptor<CosmosPatchItemRequestOptions> optionsCaptor = ArgumentCaptor.forClass(CosmosPatchItemRequestOptions.class);
+        verify(mockContainer).patchItem(eq(RECEIPT_ID), any(PartitionKey.class), eq(patch.getOperations()),
+                optionsCaptor.capture(), eq(Receipt.class));
+        assertEquals("etag", optionsCaptor.getValue().getIfMatchETag());
+        verify(mockContainer, never()).replaceItem(any(), anyString(), any(), any(CosmosItemRequestOptions.class));
+    }
+
+    @Test
+    void patchReceipt_OK_tooManyOperationsReplacesDocument() {
+        Receipt receipt = Receipt.builder().id(RECEIPT_ID).eventId(RECEIPT_ID)._etag("etag").build();
+        CosmosPatchOperations operations = CosmosPatchOperations.create();
+        List<String> fields = new ArrayList<>();
+        for (int i = 0; i <= DocumentPatchBuilder.MAX_PATCH_OPERATIONS; i++) {
+            operations.set("/field" + i, i);
+            fields.add("field" + i);
+        }
+        DocumentPatch patch = new DocumentPatch(operations, fields);
+
+        when(mockContainer.replaceItem(eq(receipt), eq(RECEIPT_ID), any(PartitionKey.class), any(CosmosItemRequestOptions.class)))
+                .thenReturn(mockItemResponse);
+
+        CosmosItemResponse<Receipt> result = assertDoesNotThrow(() -> sut.patchReceipt(receipt, patch));
+
+        assertEquals(mockItemResponse, result);
+        verify(mockContainer, never()).patchItem(anyString(), any(), any(), any(), eq(Receipt.class));
+    }
+
+    @Test
+    void getReceiptDocuments_OK_singleReadMany() {
+        Receipt receipt = Receipt.builder().id(RECEIPT_ID).eventId(RECEIPT_ID).build();
+        when(mockContainer.readMany(any(), eq(Receipt.class))).thenReturn(mockPage);
+        when(mockPage.getResults()).thenReturn(List.of(receipt));
+
+        List<Receipt> result = sut.getReceiptDocuments(List.of(RECEIPT_ID, RECEIPT_ID));
+
+        assertEquals(List.of(receipt), result);
+        ArgumentCaptor<List<CosmosItemIdentity>> identitiesCaptor = ArgumentCaptor.forClass(List.class);
+        verify(mockContainer).readMany(identitiesCaptor.capture(), eq(Receipt.class));
+        assertEquals(List.of(RECEIPT_ID),
+                identitiesCaptor.getValue().stream().map(CosmosItemIdentity::getId).toList());
+        verify(mockContainer, never()).queryItems(any(SqlQuerySpec.class), any(CosmosQueryRequestOptions.class), eq(Receipt.class));
+    }
+
+    @Test
+    void getReceiptDocuments_OK_missingQueriedInTheirPartition() {
+        Receipt receipt = Receipt.builder().id(RECEIPT_ID).eventId(RECEIPT_ID).build();
+        Receipt legacyReceipt = Receipt.builder().id("a legacy receipt id").eventId("legacy").build();
+        @SuppressWarnings("unchecked")
+        FeedResponse<Receipt> legacyPage = mock(FeedResponse.class);
+        when(mockContainer.readMany(any(), eq(Receipt.class))).thenReturn(mockPage);
+        when(mockPage.getResults()).thenReturn(List.of(receipt));
+        when(mockContainer.queryItems(any(SqlQuerySpec.class), any(CosmosQueryRequestOptions.class), eq(Receipt.class))).thenReturn(mockIterable);
+        when(mockIterable.iterableByPage()).thenReturn(List.of(mockEmptyPage), List.of(legacyPage));
+        when(mockEmptyPage.getResults()).thenReturn(Collections.emptyList());
+        when(legacyPage.getResults()).thenReturn(List.of(legacyReceipt));
+
+        List<Receipt> result = sut.getReceiptDocuments(List.of(RECEIPT_ID, "missing", "legacy"));
+
+        assertEquals(List.of(receipt, legacyReceipt), result);
+        ArgumentCaptor<CosmosQueryRequestOptions> optionsCaptor = ArgumentCaptor.forClass(CosmosQueryRequestOptions.class);
+        verify(mockContainer, times(2)).queryItems(any(SqlQuerySpec.class), optionsCaptor.capture(), eq(Receipt.class));
+        assertEquals(List.of(new PartitionKey("missing"), new PartitionKey("legacy")),
+                optionsCaptor.getAllValues().stream().map(CosmosQueryRequestOptions::getPartitionKey).toList());
+    }
+
+    @Test
+    void getReceiptDocuments_noIds_noRequest() {
+        assertTrue(sut.getReceiptDocuments(Collections.emptyList()).isEmpty());
+
+        verify(mockContainer, never()).readMany(any(), eq(Receipt.class));
+    }
+
+    @Test
+    void patchReceipts_OK_statusByEventId() {
+        Receipt saved = Receipt.builder().id(RECEIPT_ID).eventId(RECEIPT_ID)._etag("etag").build();
+        Receipt conflicting = Receipt.builder().id("conflicting").eventId("conflicting")._etag("old etag").build();
+        Receipt notExecuted = Receipt.builder().id("not executed").eventId("not executed").build();
+        DocumentPatch patch = new DocumentPatch(CosmosPatchOperations.create().set("/status", "INSERTED"), List.of("status"));
+        Map<Receipt, DocumentPatch> patches = new LinkedHashMap<>();
+        patches.put(saved, patch);
+        patches.put(conflicting, patch);
+        patches.put(notExecuted, patch);
+
+        when(mockCosmosException.getStatusCode()).thenReturn(HttpStatus.SC_PRECONDITION_FAILED);
+        ArgumentCaptor<List<CosmosItemOperation>> operationsCaptor = ArgumentCaptor.forClass(List.class);
+        when(mockContainer.executeBulkOperations(operationsCaptor.capture())).thenAnswer(invocation -> {
+            List<CosmosItemOperation> operations = invocation.getArgument(0);
+            return List.of(
+                    bulkResponse(operations.get(0), HttpStatus.SC_OK, null),
+                    bulkResponse(operations.get(1), 0, mockCosmosException));
+        });
+
+        Map<String, Integer> result = sut.patchReceipts(patches);
+
+        assertEquals(Map.of(
+                RECEIPT_ID, HttpStatus.SC_OK,
+                "conflicting", HttpStatus.SC_PRECONDITION_FAILED,
+                "not executed", HttpStatus.SC_INTERNAL_SERVER_ERROR), result);
+        List<CosmosItemOperation> operations = operationsCaptor.getValue();
+        assertEquals(3, operations.size());
+        assertTrue(operations.stream().allMatch(operation -> operation.getOperationType() == CosmosItemOperationType.PATCH));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static CosmosBulkOperationResponse<Object> bulkResponse(CosmosItemOperation operation, int statusCode, Exception exception) {
+        CosmosBulkOperationResponse<Object> response = mock(CosmosBulkOperationResponse.class);
+        when(response.getOperation()).thenReturn(operation);
+        when(response.getException()).thenReturn(exception);
+        if (exception == null) {
+            CosmosBulkItemResponse itemResponse = mock(CosmosBulkItemResponse.class);
+            when(itemResponse.getStatusCode()).thenReturn(statusCode);
+            when(response.getResponse()).thenReturn(itemResponse);
+        }
+        return response;
+    }
 }
@@ -7,6 +7,8 @@ import com.microsoft.azure.functions.HttpStatus;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
+
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
@@ -61,4 +63,23 @@ class ReceiptQueueClientImplTest {
 
         Assertions.assertEquals(HttpStatus.NO_CONTENT.value(), clientResponse.getStatusCode());
     }
-}
\ No newline at end of file
+
+    @Test
+    void runOkWithVisibilityTimeout() {
+        String MESSAGE_TEXT = "a valid message text";
+        Duration visibilityTimeout = Duration.ofSeconds(90);
+
+        Response<SendMessageResult> response = mock(Response.class);
+        QueueClient mockClient = mock(QueueClient.class);
+
+        when(response.getStatusCode()).thenReturn(HttpStatus.CREATED.value());
+        when(mockClient.sendMessageWithResponse(eq(MESSAGE_TEXT), eq(visibilityTimeout), eq(null), eq(null), eq(null)))
+                .thenReturn(response);
+
+        ReceiptQueueClientImpl client = new ReceiptQueueClientImpl(mockClient);
+
+        Response<SendMessageResult> clientResponse = client.sendMessageToQueue(MESSAGE_TEXT, visibilityTimeout);
+
+        Assertions.assertEquals(HttpStatus.CREATED.value(), clientResponse.getStatusCode());
+    }
+}
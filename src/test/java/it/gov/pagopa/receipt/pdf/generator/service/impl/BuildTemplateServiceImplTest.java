@@ -8,6 +8,7 @@ import it.gov.pagopa.receipt.pdf.generator.entity.receipt.Receipt;
 import it.gov.pagopa.receipt.pdf.generator.entity.receipt.enumeration.ReasonErrorCode;
 import it.gov.pagopa.receipt.pdf.generator.exception.TemplateDataMappingException;
 import it.gov.pagopa.receipt.pdf.generator.model.CartInfo;
+import it.gov.pagopa.receipt.pdf.generator.model.TemplateSkeleton;
 import it.gov.pagopa.receipt.pdf.generator.model.template.ReceiptPDFTemplate;
 import it.gov.pagopa.receipt.pdf.generator.utils.TemplateDataField;
 import org.junit.jupiter.api.BeforeEach;
@@ -16,6 +17,7 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.math.BigDecimal;
 import java.text.NumberFormat;
 import java.util.ArrayList;
@@ -103,6 +105,11 @@ class BuildTemplateServiceImplTest {
 
     public static final String WISP_NOTICE_CODE = "35100000000000";
 
+    private static final int ALLOCATION_WARMUP_CALLS = 2_000;
+    private static final int ALLOCATION_MEASURED_CALLS = 1_000;
+    private static final long BUILD_TEMPLATE_ALLOCATION_BUDGET_BYTES = 6_000;
+    private static final long BUILD_CART_TEMPLATE_ALLOCATION_BUDGET_BYTES = 10_000;
+
     private BuildTemplateServiceImpl buildTemplateService;
 
     @BeforeEach
@@ -1760,6 +1767,114 @@ class BuildTemplateServiceImplTest {
         return numberFormat.format(valueToFormat);
     }
 
+    @Test
+    void buildTemplateAllocationBudget() throws Exception {
+        BizEvent bizEvent = getBizEventFromFile("biz-events/bizEvent_complete_dst_winter.json");
+        Receipt receipt = buildReceiptWithAmountAndSingleCartListWithOnlyRemittance();
+
+        long bytesPerCall = allocatedBytesPerCall(() -> buildTemplateService.buildTemplate(bizEvent, GENERATED_BY_DEBTOR, receipt));
+
+        assertTrue(bytesPerCall <= BUILD_TEMPLATE_ALLOCATION_BUDGET_BYTES,
+                "buildTemplate allocates " + bytesPerCall + " bytes per call, budget is " + BUILD_TEMPLATE_ALLOCATION_BUDGET_BYTES);
+    }
+
+    @Test
+    void buildCartTemplateAllocationBudget() throws Exception {
+        List<BizEvent> bizEventList = new ArrayList<>();
+        Map<String, CartInfo> cartInfoMap = new HashMap<>();
+        for (int i = 0; i < 5; i++) {
+            BizEvent bizEvent = getBizEventFromFile("biz-events/bizEvent_complete_dst_winter.json");
+            bizEvent.setId(BIZ_EVENT_ID + i);
+            bizEventList.add(bizEvent);
+            cartInfoMap.put(BIZ_EVENT_ID + i, CartInfo.builder().subject(REMITTANCE_INFORMATION + i).build());
+        }
+
+        long bytesPerCall = allocatedBytesPerCall(() -> buildTemplateService.buildCartTemplate(
+                bizEventList, GENERATED_BY_PAYER, ID_TRANSACTION, FORMATTED_GRAND_TOTAL, cartInfoMap));
+
+        assertTrue(bytesPerCall <= BUILD_CART_TEMPLATE_ALLOCATION_BUDGET_BYTES,
+                "buildCartTemplate allocates " + bytesPerCall + " bytes per call, budget is " + BUILD_CART_TEMPLATE_ALLOCATION_BUDGET_BYTES);
+    }
+
+    @ParameterizedTest
+    @CsvSource(value = {
+            "biz-events/bizEvent_complete_dst_summer.json",
+            "biz-events/bizEvent_complete_milliseconds_dst_winter.json",
+            "biz-events/bizEvent_complete_channeOnClientId.json",
+            "biz-events/bizEvent_modelType1_withoutTransactionDetails.json",
+            "biz-events/bizEvent_modelType2_WISP.json"
+    })
+    void buildTemplateWithSharedSkeletonMatchesStandaloneBuild(String pathToFile) throws Exception {
+        BizEvent bizEvent = getBizEventFromFile(pathToFile);
+        Receipt receipt = buildReceiptWithAmountAndSingleCartListWithOnlyRemittance();
+        TemplateSkeleton skeleton = new TemplateSkeleton();
+
+        ReceiptPDFTemplate payerTemplate = buildTemplateService.buildTemplate(bizEvent, GENERATED_BY_PAYER, receipt, skeleton);
+        ReceiptPDFTemplate debtorTemplate = buildTemplateService.buildTemplate(bizEvent, GENERATED_BY_DEBTOR, receipt, skeleton);
+
+        assertEquals(buildTemplateService.buildTemplate(bizEvent, GENERATED_BY_PAYER, receipt), payerTemplate);
+        assertEquals(buildTemplateService.buildTemplate(bizEvent, GENERATED_BY_DEBTOR, receipt), debtorTemplate);
+
+        assertNotSame(payerTemplate.getTransaction(), debtorTemplate.getTransaction());
+        assertFalse(payerTemplate.getTransaction().isRequestedByDebtor());
+        assertTrue(debtorTemplate.getTransaction().isRequestedByDebtor());
+        assertSame(payerTemplate.getTransaction().getPsp(), debtorTemplate.getTransaction().getPsp());
+        assertSame(payerTemplate.getTransaction().getPaymentMethod(), debtorTemplate.getTransaction().getPaymentMethod());
+        assertSame(payerTemplate.getCart().getItems().get(0), debtorTemplate.getCart().getItems().get(0));
+    }
+
+    @Test
+    void buildCartTemplateWithSharedSkeletonMatchesStandaloneBuild() throws Exception {
+        List<BizEvent> bizEventList = new ArrayList<>();
+        Map<String, CartInfo> cartInfoMap = new HashMap<>();
+        for (int i = 0; i < 3; i++) {
+            BizEvent bizEvent = getBizEventFromFile("biz-events/bizEvent_complete_dst_winter.json");
+            bizEvent.setId(BIZ_EVENT_ID + i);
+            bizEventList.add(bizEvent);
+            cartInfoMap.put(BIZ_EVENT_ID + i, CartInfo.builder().debtorFiscalCode(DEBTOR_VALID_CF + i).subject(REMITTANCE_INFORMATION + i).build());
+        }
+        TemplateSkeleton skeleton = new TemplateSkeleton();
+
+        ReceiptPDFTemplate payerTemplate = buildTemplateService.buildCartTemplate(
+                bizEventList, GENERATED_BY_PAYER, ID_TRANSACTION, FORMATTED_GRAND_TOTAL, cartInfoMap, skeleton);
+        assertEquals(buildTemplateService.buildCartTemplate(
+                bizEventList, GENERATED_BY_PAYER, ID_TRANSACTION, FORMATTED_GRAND_TOTAL, cartInfoMap), payerTemplate);
+
+        for (int i = 0; i < bizEventList.size(); i++) {
+            List<BizEvent> debtorBizEvents = Collections.singletonList(bizEventList.get(i));
+            Map<String, CartInfo> debtorCartInfo = Collections.singletonMap(BIZ_EVENT_ID + i, cartInfoMap.get(BIZ_EVENT_ID + i));
+
+            ReceiptPDFTemplate debtorTemplate = buildTemplateService.buildCartTemplate(
+                    debtorBizEvents, GENERATED_BY_DEBTOR, ID_TRANSACTION, FORMATTED_AMOUNT, debtorCartInfo, skeleton);
+
+            assertEquals(buildTemplateService.buildCartTemplate(
+                    debtorBizEvents, GENERATED_BY_DEBTOR, ID_TRANSACTION, FORMATTED_AMOUNT, debtorCartInfo), debtorTemplate);
+            assertSame(payerTemplate.getCart().getItems().get(i), debtorTemplate.getCart().getItems().get(0));
+            assertTrue(debtorTemplate.getCart().isHideFeesAndTotals());
+        }
+        assertFalse(payerTemplate.getCart().isHideFeesAndTotals());
+        assertEquals(FORMATTED_GRAND_TOTAL, payerTemplate.getTransaction().getAmount());
+    }
+
+    @Test
+    void buildTemplateWithSharedSkeletonDoesNotKeepFailedParts() throws Exception {
+        BizEvent bizEvent = getBizEventFromFile("biz-events/bizEvent_complete_dst_winter.json");
+        String creationDate = bizEvent.getTransactionDetails().getTransaction().getCreationDate();
+        bizEvent.getTransactionDetails().getTransaction().setCreationDate(null);
+        bizEvent.getPaymentInfo().setPaymentDateTime(null);
+        Receipt receipt = buildReceiptWithAmountAndSingleCartListWithOnlyRemittance();
+        TemplateSkeleton skeleton = new TemplateSkeleton();
+
+        TemplateDataMappingException e = assertThrows(TemplateDataMappingException.class,
+                () -> buildTemplateService.buildTemplate(bizEvent, GENERATED_BY_PAYER, receipt, skeleton));
+        assertEquals(ReasonErrorCode.ERROR_TEMPLATE_PDF.getCode(), e.getStatusCode());
+
+        bizEvent.getTransactionDetails().getTransaction().setCreationDate(creationDate);
+
+        ReceiptPDFTemplate debtorTemplate = buildTemplateService.buildTemplate(bizEvent, GENERATED_BY_DEBTOR, receipt, skeleton);
+        assertEquals(DATE_TIME_TIMESTAMP_FORMATTED_DST_WINTER, debtorTemplate.getTransaction().getTimestamp());
+    }
+
     private Receipt buildReceiptWithAmountAndSingleCartListWithOnlyRemittance() {
         return Receipt.builder()
                 .eventId(BIZ_EVENT_ID)
@@ -1773,4 +1888,26 @@ class BuildTemplateServiceImplTest {
                                 .build())
                 .build();
     }
+
+    /**
+     * Average bytes allocated by the current thread for a single call, measured after a warm-up
+     * so that one-off allocations (class loading, lazy singletons, JIT) are not counted
+     */
+    private static long allocatedBytesPerCall(TemplateBuild templateBuild) throws Exception {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < ALLOCATION_WARMUP_CALLS; i++) {
+            templateBuild.build();
+        }
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ALLOCATION_MEASURED_CALLS; i++) {
+            templateBuild.build();
+        }
+        return (threadMXBean.getThreadAllocatedBytes(threadId) - before) / ALLOCATION_MEASURED_CALLS;
+    }
+
+    @FunctionalInterface
+    private interface TemplateBuild {
+        ReceiptPDFTemplate build() throws TemplateDataMappingException;
+    }
 }
@@ -1,10 +1,14 @@
 package it.gov.pagopa.receipt.pdf.generator.service.impl;
 
+import com.azure.cosmos.CosmosException;
 import com.azure.cosmos.models.CosmosItemResponse;
+import com.fasterxml.jackson.databind.JsonNode;
 import it.gov.pagopa.receipt.pdf.generator.client.CartReceiptsCosmosClient;
 import it.gov.pagopa.receipt.pdf.generator.entity.cart.CartForReceipt;
+import it.gov.pagopa.receipt.pdf.generator.entity.cart.CartStatusType;
 import it.gov.pagopa.receipt.pdf.generator.exception.CartNotFoundException;
 import it.gov.pagopa.receipt.pdf.generator.exception.UnableToSaveException;
+import it.gov.pagopa.receipt.pdf.generator.utils.DocumentPatchBuilder;
 import org.apache.http.HttpStatus;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -12,13 +16,23 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 
 @ExtendWith(MockitoExtension.class)
 class CartReceiptCosmosServiceImplTest {
@@ -55,6 +69,90 @@ class CartReceiptCosmosServiceImplTest {
         assertThrows(UnableToSaveException.class, () -> sut.updateCartForReceipt(new CartForReceipt()));
     }
 
+    @Test
+    void patchCartForReceiptSuccess() {
+        CartForReceipt cart = CartForReceipt.builder().cartId("1").status(CartStatusType.INSERTED).build();
+        JsonNode snapshot = DocumentPatchBuilder.snapshot(cart);
+        cart.setStatus(CartStatusType.GENERATED);
+        doReturn(responseMock).when(cartCosmosClientMock).patchCart(eq(cart), any());
+        doReturn(HttpStatus.SC_OK).when(responseMock).getStatusCode();
+
+        assertDoesNotThrow(() -> sut.patchCartForReceipt(snapshot, cart));
+    }
+
+    @Test
+    void patchCartForReceiptSkippedWithoutChanges() {
+        CartForReceipt cart = CartForReceipt.builder().cartId("1").status(CartStatusType.INSERTED).build();
+        JsonNode snapshot = DocumentPatchBuilder.snapshot(cart);
+
+        assertDoesNotThrow(() -> sut.patchCartForReceipt(snapshot, cart));
+
+        verify(cartCosmosClientMock, never()).patchCart(any(), any());
+    }
+
+    @Test
+    void patchCartForReceiptFailPatchResponseStatusNotOK() {
+        CartForReceipt cart = CartForReceipt.builder().cartId("1").status(CartStatusType.INSERTED).build();
+        JsonNode snapshot = DocumentPatchBuilder.snapshot(cart);
+        cart.setStatus(CartStatusType.GENERATED);
+        doReturn(responseMock).when(cartCosmosClientMock).patchCart(eq(cart), any());
+        doReturn(HttpStatus.SC_INTERNAL_SERVER_ERROR).when(responseMock).getStatusCode();
+
+        assertThrows(UnableToSaveException.class, () -> sut.patchCartForReceipt(snapshot, cart));
+    }
+
+    @Test
+    void patchCartForReceiptFailPreconditionFailed() {
+        CartForReceipt cart = CartForReceipt.builder().cartId("1").status(CartStatusType.INSERTED).build();
+        JsonNode snapshot = DocumentPatchBuilder.snapshot(cart);
+        cart.setStatus(CartStatusType.GENERATED);
+        CosmosException cosmosException = mock(CosmosException.class);
+        doReturn(HttpStatus.SC_PRECONDITION_FAILED).when(cosmosException).getStatusCode();
+        doThrow(cosmosException).when(cartCosmosClientMock).patchCart(eq(cart), any());
+
+        assertThrows(UnableToSaveException.class, () -> sut.patchCartForReceipt(snapshot, cart));
+    }
+
+    @Test
+    void getCartsForReceiptByCartId() {
+        CartForReceipt cart = CartForReceipt.builder().cartId("1").build();
+        doReturn(List.of(cart)).when(cartCosmosClientMock).getCartItems(List.of("1", "2"));
+
+        assertEquals(Map.of("1", cart), sut.getCartsForReceipt(List.of("1", "2")));
+    }
+
+    @Test
+    void patchCartsForReceiptReturnsErrorsOfCartsNotSaved() {
+        CartForReceipt saved = CartForReceipt.builder().cartId("1").status(CartStatusType.FAILED).build();
+        CartForReceipt notSaved = CartForReceipt.builder().cartId("2").status(CartStatusType.FAILED).build();
+        Map<CartForReceipt, JsonNode> snapshots = new IdentityHashMap<>();
+        for (CartForReceipt cart : List.of(saved, notSaved)) {
+            snapshots.put(cart, DocumentPatchBuilder.snapshot(cart));
+            cart.setStatus(CartStatusType.INSERTED);
+        }
+        doReturn(Map.of("1", HttpStatus.SC_OK, "2", HttpStatus.SC_PRECONDITION_FAILED))
+                .when(cartCosmosClientMock).patchCarts(any());
+
+        Map<String, UnableToSaveException> errors = sut.patchCartsForReceipt(snapshots);
+
+        assertEquals(Set.of("2"), errors.keySet());
+        assertEquals(HttpStatus.SC_PRECONDITION_FAILED, errors.get("2").getStatusCode());
+    }
+
+    @Test
+    void patchCartsForReceiptBulkFailedReturnsErrorsOfAllCarts() {
+        CartForReceipt first = CartForReceipt.builder().cartId("1").status(CartStatusType.FAILED).build();
+        CartForReceipt second = CartForReceipt.builder().cartId("2").status(CartStatusType.FAILED).build();
+        Map<CartForReceipt, JsonNode> snapshots = new IdentityHashMap<>();
+        for (CartForReceipt cart : List.of(first, second)) {
+            snapshots.put(cart, DocumentPatchBuilder.snapshot(cart));
+            cart.setStatus(CartStatusType.INSERTED);
+        }
+        doThrow(RuntimeException.class).when(cartCosmosClientMock).patchCarts(any());
+
+        assertEquals(Set.of("1", "2"), sut.patchCartsForReceipt(snapshots).keySet());
+    }
+
     @Test
     void getCartForReceiptSuccess() throws CartNotFoundException {
         doReturn(new CartForReceipt()).when(cartCosmosClientMock).getCartItem(anyString());
@@ -17,6 +17,8 @@ import it.gov.pagopa.receipt.pdf.generator.model.template.ReceiptPDFTemplate;
 import it.gov.pagopa.receipt.pdf.generator.service.BuildTemplateService;
 import it.gov.pagopa.receipt.pdf.generator.service.PdfEngineService;
 import it.gov.pagopa.receipt.pdf.generator.service.ReceiptBlobStorageService;
+import it.gov.pagopa.receipt.pdf.generator.utils.ReceiptTemplateJsonWriter;
+import it.gov.pagopa.receipt.pdf.generator.utils.TemplateHash;
 import lombok.SneakyThrows;
 import org.apache.http.HttpStatus;
 import org.junit.jupiter.api.Test;
@@ -31,6 +33,12 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static it.gov.pagopa.receipt.pdf.generator.utils.Constants.ALREADY_CREATED;
 import static it.gov.pagopa.receipt.pdf.generator.utils.ObjectMapperUtilsTest.getBizEventFromFile;
@@ -47,6 +55,7 @@ import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyMap;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.never;
@@ -83,9 +92,9 @@ class GenerateCartReceiptPdfServiceImplTest {
     @SneakyThrows
     void generateCartReceiptsPayerNullSuccess() {
         doReturn(new ReceiptPDFTemplate())
-                .when(buildTemplateServiceMock).buildCartTemplate(anyList(), anyBoolean(), anyString(), anyString(), anyMap());
-        doReturn(getPdfEngineResponse())
-                .when(pdfEngineServiceMock).generatePDFReceipt(any(), any());
+                .when(buildTemplateServiceMock).buildCartTemplate(anyList(), anyBoolean(), anyString(), anyString(), anyMap(), any());
+        doReturn(CompletableFuture.completedFuture(getPdfEngineResponse()))
+                .when(pdfEngineServiceMock).generatePDFReceiptAsync(any(), any());
         doReturn(getBlobStorageResponse())
                 .when(receiptBlobStorageMock).saveToBlobStorage(any(), anyString());
 
@@ -111,8 +120,8 @@ class GenerateCartReceiptPdfServiceImplTest {
         });
         assertNull(result.getPayerMetadata());
 
-        verify(buildTemplateServiceMock, times(totalNotice)).buildCartTemplate(anyList(), anyBoolean(), anyString(), anyString(), anyMap());
-        verify(pdfEngineServiceMock, times(totalNotice)).generatePDFReceipt(any(), any());
+        verify(buildTemplateServiceMock, times(totalNotice)).buildCartTemplate(anyList(), anyBoolean(), anyString(), anyString(), anyMap(), any());
+        verify(pdfEngineServiceMock, times(totalNotice)).generatePDFReceiptAsync(any(), any());
         verify(receiptBlobStorageMock, times(totalNotice)).saveToBlobStorage(any(), any());
     }
 
@@ -120,9 +129,9 @@ class GenerateCartReceiptPdfServiceImplTest {
     @SneakyThrows
     void generateCartReceiptsSameDebtorPayerSuccess() {
         doReturn(new ReceiptPDFTemplate())
-                .when(buildTemplateServiceMock).buildCartTemplate(anyList(), anyBoolean(), anyString(), anyString(), anyMap());
-        doReturn(getPdfEngineResponse())
-                .when(pdfEngineServiceMock).generatePDFReceipt(any(), any());
+                .when(buildTemplateServiceMock).buildCartTemplate(anyList(), anyBoolean(), anyString(), anyString(), anyMap(), any());
+        doReturn(CompletableFuture.completedFuture(getPdfEngineResponse()))
+                .when(pdfEngineServiceMock).generatePDFReceiptAsync(any(), any());
         doReturn(getBlobStorageResponse())
                 .when(receiptBlobStorageMock).saveToBlobStorage(any(), anyString());
 
@@ -145,18 +154,46 @@ class GenerateCartReceiptPdfServiceImplTest {
         assertNotNull(result.getPayerMetadata().getDocumentUrl());
         assertEquals(HttpStatus.SC_OK, result.getPayerMetadata().getStatusCode());
 
-        verify(buildTemplateServiceMock).buildCartTemplate(anyList(), anyBoolean(), anyString(), anyString(), anyMap());
-        verify(pdfEngineServiceMock).generatePDFReceipt(any(), any());
+        verify(buildTemplateServiceMock).buildCartTemplate(anyList(), anyBoolean(), anyString(), anyString(), anyMap(), any());
+        verify(pdfEngineServiceMock).generatePDFReceiptAsync(any(), any());
         verify(receiptBlobStorageMock).saveToBlobStorage(any(), any());
     }
 
+    @Test
+    @SneakyThrows
+    void generateCartReceiptsSameDebtorPayerOnRetryReusesSavedPdf() {
+        doReturn(new ReceiptPDFTemplate())
+                .when(buildTemplateServiceMock).buildCartTemplate(anyList(), anyBoolean(), anyString(), anyString(), anyMap(), any());
+        doReturn(getBlobStorageResponse())
+                .when(receiptBlobStorageMock).findSavedPdf(anyString());
+
+        int totalNotice = 2;
+        List<BizEvent> bizEventList = getBizEventList(totalNotice);
+        CartForReceipt cartForReceipt = buildCartForReceiptWithoutMetadata(
+                PAYER_FISCAL_CODE,
+                PAYER_FISCAL_CODE,
+                totalNotice
+        );
+        cartForReceipt.setNumRetry(1);
+
+        PdfCartGeneration result =
+                assertDoesNotThrow(() -> sut.generateCartReceipts(cartForReceipt, bizEventList, WORKING_DIR_PATH));
+
+        assertEquals(HttpStatus.SC_OK, result.getPayerMetadata().getStatusCode());
+        assertNotNull(result.getPayerMetadata().getDocumentName());
+
+        verify(receiptBlobStorageMock).findSavedPdf(anyString());
+        verify(pdfEngineServiceMock, never()).generatePDFReceiptAsync(any(), any());
+        verify(receiptBlobStorageMock, never()).saveToBlobStorage(any(), any());
+    }
+
     @Test
     @SneakyThrows
     void generateCartReceiptsDifferentDebtorPayerSuccess() {
         doReturn(new ReceiptPDFTemplate())
-                .when(buildTemplateServiceMock).buildCartTemplate(anyList(), anyBoolean(), anyString(), anyString(), anyMap());
-        doReturn(getPdfEngineResponse())
-                .when(pdfEngineServiceMock).generatePDFReceipt(any(), any());
+                .when(buildTemplateServiceMock).buildCartTemplate(anyList(), anyBoolean(), anyString(), anyString(), anyMap(), any());
+        doReturn(CompletableFuture.completedFuture(getPdfEngineResponse()))
+                .when(pdfEngineServiceMock).generatePDFReceiptAsync(any(), any());
         doReturn(getBlobStorageResponse())
                 .when(receiptBlobStorageMock).saveToBlobStorage(any(), anyString());
 
@@ -187,20 +224,99 @@ class GenerateCartReceiptPdfServiceImplTest {
         assertEquals(HttpStatus.SC_OK, result.getPayerMetadata().getStatusCode());
 
         verify(buildTemplateServiceMock, times(totalNotice + 1))
-                .buildCartTemplate(anyList(), anyBoolean(), anyString(), anyString(), anyMap());
+                .buildCartTemplate(anyList(), anyBoolean(), anyString(), anyString(), anyMap(), any());
         verify(pdfEngineServiceMock, times(totalNotice + 1))
-                .generatePDFReceipt(any(), any());
+                .generatePDFReceiptAsync(any(), any());
         verify(receiptBlobStorageMock, times(totalNotice + 1))
                 .saveToBlobStorage(any(), any());
     }
 
+    @Test
+    @SneakyThrows
+    void regenerateCartReceiptsIsNotSharedWithTheGenerationInFlight() {
+        CountDownLatch generationStarted = new CountDownLatch(1);
+        CountDownLatch releaseGeneration = new CountDownLatch(1);
+        AtomicInteger engineCalls = new AtomicInteger();
+        doReturn(new ReceiptPDFTemplate())
+                .when(buildTemplateServiceMock).buildCartTemplate(anyList(), anyBoolean(), anyString(), anyString(), anyMap(), any());
+        doAnswer(invocation -> {
+            if (engineCalls.incrementAndGet() == 1) {
+                generationStarted.countDown();
+                releaseGeneration.await();
+            }
+            return CompletableFuture.completedFuture(getPdfEngineResponse());
+        }).when(pdfEngineServiceMock).generatePDFReceiptAsync(any(), any());
+        doReturn(getBlobStorageResponse())
+                .when(receiptBlobStorageMock).saveToBlobStorage(any(), anyString());
+
+        int totalNotice = 2;
+        List<BizEvent> bizEventList = getBizEventList(totalNotice);
+
+        CompletableFuture<PdfCartGeneration> generation = CompletableFuture.supplyAsync(() -> sut.generateCartReceipts(
+                buildCartForReceiptWithoutMetadata(PAYER_FISCAL_CODE, DEBTOR_FISCAL_CODE, totalNotice),
+                bizEventList, WORKING_DIR_PATH));
+        try {
+            assertTrue(generationStarted.await(5, TimeUnit.SECONDS));
+
+            PdfCartGeneration regeneration = CompletableFuture.supplyAsync(() -> sut.regenerateCartReceipts(
+                            buildCartForReceiptWithoutMetadata(PAYER_FISCAL_CODE, DEBTOR_FISCAL_CODE, totalNotice),
+                            bizEventList, null, WORKING_DIR_PATH))
+                    .get(5, TimeUnit.SECONDS);
+
+            assertEquals(HttpStatus.SC_OK, regeneration.getPayerMetadata().getStatusCode());
+        } finally {
+            releaseGeneration.countDown();
+        }
+        assertEquals(HttpStatus.SC_OK, generation.get(5, TimeUnit.SECONDS).getPayerMetadata().getStatusCode());
+    }
+
+    @Test
+    @SneakyThrows
+    void regenerateCartReceiptsDifferentDebtorPayerRendersOnlyChangedPdfs() {
+        String templateHash = TemplateHash.of(ReceiptTemplateJsonWriter.writeValueAsBytes(new ReceiptPDFTemplate()));
+        doReturn(new ReceiptPDFTemplate())
+                .when(buildTemplateServiceMock).buildCartTemplate(anyList(), anyBoolean(), anyString(), anyString(), anyMap(), any());
+        doReturn(getBlobStorageResponse())
+                .when(receiptBlobStorageMock).findSavedPdf(anyString());
+        doReturn(CompletableFuture.completedFuture(getPdfEngineResponse()))
+                .when(pdfEngineServiceMock).generatePDFReceiptAsync(any(), any());
+        doReturn(getBlobStorageResponse())
+                .when(receiptBlobStorageMock).saveToBlobStorage(any(), anyString());
+
+        int totalNotice = 2;
+        List<BizEvent> bizEventList = getBizEventList(totalNotice);
+        CartForReceipt cartForReceipt = buildCartForReceiptWithoutMetadata(
+                PAYER_FISCAL_CODE,
+                DEBTOR_FISCAL_CODE,
+                totalNotice
+        );
+        CartForReceipt previousCart = buildCartForReceipt(PAYER_FISCAL_CODE, DEBTOR_FISCAL_CODE, totalNotice, true, true);
+        previousCart.getPayload().getMdAttachPayer().setTemplateHash(templateHash);
+        previousCart.getPayload().getCart().get(0).getMdAttach().setTemplateHash(templateHash);
+        previousCart.getPayload().getCart().get(1).getMdAttach().setTemplateHash("previousHash");
+
+        PdfCartGeneration result = assertDoesNotThrow(
+                () -> sut.regenerateCartReceipts(cartForReceipt, bizEventList, previousCart, WORKING_DIR_PATH));
+
+        assertEquals(HttpStatus.SC_OK, result.getPayerMetadata().getStatusCode());
+        assertEquals(templateHash, result.getPayerMetadata().getTemplateHash());
+        result.getDebtorMetadataMap().forEach((key, debtorMetadata) -> {
+            assertEquals(HttpStatus.SC_OK, debtorMetadata.getStatusCode());
+            assertEquals(templateHash, debtorMetadata.getTemplateHash());
+        });
+
+        verify(receiptBlobStorageMock, times(2)).findSavedPdf(anyString());
+        verify(pdfEngineServiceMock).generatePDFReceiptAsync(any(), any());
+        verify(receiptBlobStorageMock).saveToBlobStorage(any(), any());
+    }
+
     @Test
     @SneakyThrows
     void generateCartReceiptsDifferentDebtorPayerAndDebtorAnonimoSuccess() {
         doReturn(new ReceiptPDFTemplate())
-                .when(buildTemplateServiceMock).buildCartTemplate(anyList(), anyBoolean(), anyString(), anyString(), anyMap());
-        doReturn(getPdfEngineResponse())
-                .when(pdfEngineServiceMock).generatePDFReceipt(any(), any());
+                .when(buildTemplateServiceMock).buildCartTemplate(anyList(), anyBoolean(), anyString(), anyString(), anyMap(), any());
+        doReturn(CompletableFuture.completedFuture(getPdfEngineResponse()))
+                .when(pdfEngineServiceMock).generatePDFReceiptAsync(any(), any());
         doReturn(getBlobStorageResponse())
                 .when(receiptBlobStorageMock).saveToBlobStorage(any(), anyString());
 
@@ -223,8 +339,8 @@ class GenerateCartReceiptPdfServiceImplTest {
         assertNotNull(result.getPayerMetadata().getDocumentUrl());
         assertEquals(HttpStatus.SC_OK, result.getPayerMetadata().getStatusCode());
 
-        verify(buildTemplateServiceMock).buildCartTemplate(anyList(), anyBoolean(), anyString(), anyString(), anyMap());
-        verify(pdfEngineServiceMock).generatePDFReceipt(any(), any());
+        verify(buildTemplateServiceMock).buildCartTemplate(anyList(), anyBoolean(), anyString(), anyString(), anyMap(), any());
+        verify(pdfEngineServiceMock).generatePDFReceiptAsync(any(), any());
         verify(receiptBlobStorageMock).saveToBlobStorage(any(), any());
     }
 
@@ -255,8 +371,8 @@ class GenerateCartReceiptPdfServiceImplTest {
         });
         assertNull(result.getPayerMetadata());
 
-        verify(buildTemplateServiceMock, never()).buildCartTemplate(anyList(), anyBoolean(), anyString(), anyString(), anyMap());
-        verify(pdfEngineServiceMock, never()).generatePDFReceipt(any(), any());
+        verify(buildTemplateServiceMock, never()).buildCartTemplate(anyList(), anyBoolean(), anyString(), anyString(), anyMap(), any());
+        verify(pdfEngineServiceMock, never()).generatePDFReceiptAsync(any(), any());
         verify(receiptBlobStorageMock, never()).saveToBlobStorage(any(), any());
     }
 
@@ -284,8 +400,8 @@ class GenerateCartReceiptPdfServiceImplTest {
         assertNull(result.getPayerMetadata().getDocumentUrl());
         assertEquals(ALREADY_CREATED, result.getPayerMetadata().getStatusCode());
 
-        verify(buildTemplateServiceMock, never()).buildCartTemplate(anyList(), anyBoolean(), anyString(), anyString(), anyMap());
-        verify(pdfEngineServiceMock, never()).generatePDFReceipt(any(), any());
+        verify(buildTemplateServiceMock, never()).buildCartTemplate(anyList(), anyBoolean(), anyString(), anyString(), anyMap(), any());
+        verify(pdfEngineServiceMock, never()).generatePDFReceiptAsync(any(), any());
         verify(receiptBlobStorageMock, never()).saveToBlobStorage(any(), any());
     }
 
@@ -293,9 +409,9 @@ class GenerateCartReceiptPdfServiceImplTest {
     @SneakyThrows
     void generateCartReceiptsDifferentDebtorPayerAndPayerReceiptAlreadyCreatedSuccess() {
         doReturn(new ReceiptPDFTemplate())
-                .when(buildTemplateServiceMock).buildCartTemplate(anyList(), anyBoolean(), anyString(), anyString(), anyMap());
-        doReturn(getPdfEngineResponse())
-                .when(pdfEngineServiceMock).generatePDFReceipt(any(), any());
+                .when(buildTemplateServiceMock).buildCartTemplate(anyList(), anyBoolean(), anyString(), anyString(), anyMap(), any());
+        doReturn(CompletableFuture.completedFuture(getPdfEngineResponse()))
+                .when(pdfEngineServiceMock).generatePDFReceiptAsync(any(), any());
         doReturn(getBlobStorageResponse())
                 .when(receiptBlobStorageMock).saveToBlobStorage(any(), anyString());
 
@@ -327,19 +443,21 @@ class GenerateCartReceiptPdfServiceImplTest {
         assertNull(result.getPayerMetadata().getDocumentUrl());
         assertEquals(ALREADY_CREATED, result.getPayerMetadata().getStatusCode());
 
-        verify(buildTemplateServiceMock, times(totalNotice)).buildCartTemplate(anyList(), anyBoolean(), anyString(), anyString(), anyMap());
-        verify(pdfEngineServiceMock, times(totalNotice)).generatePDFReceipt(any(), any());
+        verify(buildTemplateServiceMock, times(totalNotice)).buildCartTemplate(anyList(), anyBoolean(), anyString(), anyString(), anyMap(), any());
+        verify(pdfEngineServiceMock, times(totalNotice)).generatePDFReceiptAsync(any(), any());
         verify(receiptBlobStorageMock, times(totalNotice)).saveToBlobStorage(any(), any());
     }
 
     @Test
     @SneakyThrows
     void generateCartReceiptsPayerNullFailPDFEngineCallReturn500() {
+        // consecutive stubbing relies on the generation order
+        sut.setCartGenerationParallelism(1);
         doReturn(new ReceiptPDFTemplate())
-                .when(buildTemplateServiceMock).buildCartTemplate(anyList(), anyBoolean(), anyString(), anyString(), anyMap());
-        doThrow(new GeneratePDFException(ERROR_MESSAGE, HttpStatus.SC_INTERNAL_SERVER_ERROR))
-                .doReturn(getPdfEngineResponse())
-                .when(pdfEngineServiceMock).generatePDFReceipt(any(), any());
+                .when(buildTemplateServiceMock).buildCartTemplate(anyList(), anyBoolean(), anyString(), anyString(), anyMap(), any());
+        doReturn(CompletableFuture.failedFuture(new GeneratePDFException(ERROR_MESSAGE, HttpStatus.SC_INTERNAL_SERVER_ERROR)))
+                .doReturn(CompletableFuture.completedFuture(getPdfEngineResponse()))
+                .when(pdfEngineServiceMock).generatePDFReceiptAsync(any(), any());
         doReturn(getBlobStorageResponse())
                 .when(receiptBlobStorageMock).saveToBlobStorage(any(), anyString());
 
@@ -363,6 +481,7 @@ class GenerateCartReceiptPdfServiceImplTest {
                 assertNull(debtorMetadata.getDocumentName());
                 assertNull(debtorMetadata.getDocumentUrl());
                 assertEquals(HttpStatus.SC_INTERNAL_SERVER_ERROR, debtorMetadata.getStatusCode());
+                assertEquals(ReasonErrorCode.ERROR_PDF_ENGINE, debtorMetadata.getReasonErrorCode());
             } else if (key.equals(BIZ_EVENT_ID + 1)) {
                 assertNull(debtorMetadata.getErrorMessage());
                 assertNotNull(debtorMetadata.getDocumentName());
@@ -374,19 +493,21 @@ class GenerateCartReceiptPdfServiceImplTest {
         });
         assertNull(result.getPayerMetadata());
 
-        verify(buildTemplateServiceMock, times(totalNotice)).buildCartTemplate(anyList(), anyBoolean(), anyString(), anyString(), anyMap());
-        verify(pdfEngineServiceMock, times(totalNotice)).generatePDFReceipt(any(), any());
+        verify(buildTemplateServiceMock, times(totalNotice)).buildCartTemplate(anyList(), anyBoolean(), anyString(), anyString(), anyMap(), any());
+        verify(pdfEngineServiceMock, times(totalNotice)).generatePDFReceiptAsync(any(), any());
         verify(receiptBlobStorageMock, times(1)).saveToBlobStorage(any(), any());
     }
 
     @Test
     @SneakyThrows
     void generateCartReceiptsPayerNullFailBuildTemplateData() {
+        // consecutive stubbing relies on the generation order
+        sut.setCartGenerationParallelism(1);
         doThrow(new TemplateDataMappingException("error message", ReasonErrorCode.ERROR_TEMPLATE_PDF.getCode()))
                 .doReturn(new ReceiptPDFTemplate())
-                .when(buildTemplateServiceMock).buildCartTemplate(anyList(), anyBoolean(), anyString(), anyString(), anyMap());
-        doReturn(getPdfEngineResponse())
-                .when(pdfEngineServiceMock).generatePDFReceipt(any(), any());
+                .when(buildTemplateServiceMock).buildCartTemplate(anyList(), anyBoolean(), anyString(), anyString(), anyMap(), any());
+        doReturn(CompletableFuture.completedFuture(getPdfEngineResponse()))
+                .when(pdfEngineServiceMock).generatePDFReceiptAsync(any(), any());
         doReturn(getBlobStorageResponse())
                 .when(receiptBlobStorageMock).saveToBlobStorage(any(), anyString());
 
@@ -421,18 +542,20 @@ class GenerateCartReceiptPdfServiceImplTest {
         });
         assertNull(result.getPayerMetadata());
 
-        verify(buildTemplateServiceMock, times(totalNotice)).buildCartTemplate(anyList(), anyBoolean(), anyString(), anyString(), anyMap());
-        verify(pdfEngineServiceMock, times(1)).generatePDFReceipt(any(), any());
+        verify(buildTemplateServiceMock, times(totalNotice)).buildCartTemplate(anyList(), anyBoolean(), anyString(), anyString(), anyMap(), any());
+        verify(pdfEngineServiceMock, times(1)).generatePDFReceiptAsync(any(), any());
         verify(receiptBlobStorageMock, times(1)).saveToBlobStorage(any(), any());
     }
 
     @Test
     @SneakyThrows
     void generateCartReceiptsPayerNullFailSaveToBlobStorageThrowsException() {
+        // consecutive stubbing relies on the generation order
+        sut.setCartGenerationParallelism(1);
         doReturn(new ReceiptPDFTemplate())
-                .when(buildTemplateServiceMock).buildCartTemplate(anyList(), anyBoolean(), anyString(), anyString(), anyMap());
-        doReturn(getPdfEngineResponse())
-                .when(pdfEngineServiceMock).generatePDFReceipt(any(), any());
+                .when(buildTemplateServiceMock).buildCartTemplate(anyList(), anyBoolean(), anyString(), anyString(), anyMap(), any());
+        doReturn(CompletableFuture.completedFuture(getPdfEngineResponse()))
+                .when(pdfEngineServiceMock).generatePDFReceiptAsync(any(), any());
         doThrow(new SavePDFToBlobException(ERROR_MESSAGE, ReasonErrorCode.ERROR_BLOB_STORAGE.getCode()))
                 .doReturn(getBlobStorageResponse())
                 .when(receiptBlobStorageMock).saveToBlobStorage(any(), anyString());
@@ -457,6 +580,7 @@ class GenerateCartReceiptPdfServiceImplTest {
                 assertNull(debtorMetadata.getDocumentName());
                 assertNull(debtorMetadata.getDocumentUrl());
                 assertEquals(ReasonErrorCode.ERROR_BLOB_STORAGE.getCode(), debtorMetadata.getStatusCode());
+                assertNull(debtorMetadata.getReasonErrorCode());
             } else if (key.equals(BIZ_EVENT_ID + 1)) {
                 assertNull(debtorMetadata.getErrorMessage());
                 assertNotNull(debtorMetadata.getDocumentName());
@@ -468,11 +592,127 @@ class GenerateCartReceiptPdfServiceImplTest {
         });
         assertNull(result.getPayerMetadata());
 
-        verify(buildTemplateServiceMock, times(totalNotice)).buildCartTemplate(anyList(), anyBoolean(), anyString(), anyString(), anyMap());
-        verify(pdfEngineServiceMock, times(totalNotice)).generatePDFReceipt(any(), any());
+        verify(buildTemplateServiceMock, times(totalNotice)).buildCartTemplate(anyList(), anyBoolean(), anyString(), anyString(), anyMap(), any());
+        verify(pdfEngineServiceMock, times(totalNotice)).generatePDFReceiptAsync(any(), any());
         verify(receiptBlobStorageMock, times(totalNotice)).saveToBlobStorage(any(), any());
     }
 
+    @Test
+    @SneakyThrows
+    void generateCartReceiptsDifferentDebtorPayerInParallelRespectsParallelism() {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        Set<String> threadNames = ConcurrentHashMap.newKeySet();
+        doReturn(new ReceiptPDFTemplate())
+                .when(buildTemplateServiceMock).buildCartTemplate(anyList(), anyBoolean(), anyString(), anyString(), anyMap(), any());
+        doAnswer(invocation -> {
+            threadNames.add(Thread.currentThread().getName());
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            Thread.sleep(50);
+            inFlight.decrementAndGet();
+            return CompletableFuture.completedFuture(getPdfEngineResponse());
+        }).when(pdfEngineServiceMock).generatePDFReceiptAsync(any(), any());
+        doReturn(getBlobStorageResponse())
+                .when(receiptBlobStorageMock).saveToBlobStorage(any(), anyString());
+        sut.setCartGenerationParallelism(2);
+
+        int totalNotice = 5;
+        List<BizEvent> bizEventList = getBizEventList(totalNotice);
+        CartForReceipt cartForReceipt = buildCartForReceiptWithoutMetadata(
+                PAYER_FISCAL_CODE,
+                DEBTOR_FISCAL_CODE,
+                totalNotice
+        );
+
+        PdfCartGeneration result =
+                assertDoesNotThrow(() -> sut.generateCartReceipts(cartForReceipt, bizEventList, WORKING_DIR_PATH));
+
+        assertNotNull(result);
+        assertEquals(totalNotice, result.getDebtorMetadataMap().size());
+        result.getDebtorMetadataMap().forEach((key, debtorMetadata) ->
+                assertEquals(HttpStatus.SC_OK, debtorMetadata.getStatusCode()));
+        assertEquals(HttpStatus.SC_OK, result.getPayerMetadata().getStatusCode());
+        assertTrue(maxInFlight.get() <= 2);
+        assertTrue(threadNames.contains(Thread.currentThread().getName()));
+
+        verify(pdfEngineServiceMock, times(totalNotice + 1)).generatePDFReceiptAsync(any(), any());
+        verify(receiptBlobStorageMock, times(totalNotice + 1)).saveToBlobStorage(any(), any());
+    }
+
+    @Test
+    @SneakyThrows
+    void generateCartReceiptsDifferentDebtorPayerInParallelIsolatesUnexpectedFailure() {
+        doAnswer(invocation -> {
+            List<BizEvent> events = invocation.getArgument(0);
+            boolean requestedByDebtor = invocation.getArgument(1);
+            if (requestedByDebtor && events.get(0).getId().equals(BIZ_EVENT_ID + 1)) {
+                throw new IllegalStateException(ERROR_MESSAGE);
+            }
+            return new ReceiptPDFTemplate();
+        }).when(buildTemplateServiceMock).buildCartTemplate(anyList(), anyBoolean(), anyString(), anyString(), anyMap(), any());
+        doReturn(CompletableFuture.completedFuture(getPdfEngineResponse()))
+                .when(pdfEngineServiceMock).generatePDFReceiptAsync(any(), any());
+        doReturn(getBlobStorageResponse())
+                .when(receiptBlobStorageMock).saveToBlobStorage(any(), anyString());
+        sut.setCartGenerationParallelism(3);
+
+        int totalNotice = 3;
+        List<BizEvent> bizEventList = getBizEventList(totalNotice);
+        CartForReceipt cartForReceipt = buildCartForReceiptWithoutMetadata(
+                PAYER_FISCAL_CODE,
+                DEBTOR_FISCAL_CODE,
+                totalNotice
+        );
+
+        PdfCartGeneration result =
+                assertDoesNotThrow(() -> sut.generateCartReceipts(cartForReceipt, bizEventList, WORKING_DIR_PATH));
+
+        assertNotNull(result);
+        assertEquals(totalNotice, result.getDebtorMetadataMap().size());
+        result.getDebtorMetadataMap().forEach((key, debtorMetadata) -> {
+            if (key.equals(BIZ_EVENT_ID + 1)) {
+                assertEquals(HttpStatus.SC_INTERNAL_SERVER_ERROR, debtorMetadata.getStatusCode());
+                assertEquals(ERROR_MESSAGE, debtorMetadata.getErrorMessage());
+            } else {
+                assertEquals(HttpStatus.SC_OK, debtorMetadata.getStatusCode());
+            }
+        });
+        assertEquals(HttpStatus.SC_OK, result.getPayerMetadata().getStatusCode());
+
+        verify(pdfEngineServiceMock, times(totalNotice)).generatePDFReceiptAsync(any(), any());
+    }
+
+    @Test
+    @SneakyThrows
+    void generateCartReceiptsDifferentDebtorPayerSequentialMode() {
+        Set<String> threadNames = ConcurrentHashMap.newKeySet();
+        doReturn(new ReceiptPDFTemplate())
+                .when(buildTemplateServiceMock).buildCartTemplate(anyList(), anyBoolean(), anyString(), anyString(), anyMap(), any());
+        doAnswer(invocation -> {
+            threadNames.add(Thread.currentThread().getName());
+            return CompletableFuture.completedFuture(getPdfEngineResponse());
+        }).when(pdfEngineServiceMock).generatePDFReceiptAsync(any(), any());
+        doReturn(getBlobStorageResponse())
+                .when(receiptBlobStorageMock).saveToBlobStorage(any(), anyString());
+        sut.setCartGenerationParallelism(1);
+
+        int totalNotice = 3;
+        List<BizEvent> bizEventList = getBizEventList(totalNotice);
+        CartForReceipt cartForReceipt = buildCartForReceiptWithoutMetadata(
+                PAYER_FISCAL_CODE,
+                DEBTOR_FISCAL_CODE,
+                totalNotice
+        );
+
+        PdfCartGeneration result =
+                assertDoesNotThrow(() -> sut.generateCartReceipts(cartForReceipt, bizEventList, WORKING_DIR_PATH));
+
+        assertNotNull(result);
+        assertEquals(totalNotice, result.getDebtorMetadataMap().size());
+        assertEquals(HttpStatus.SC_OK, result.getPayerMetadata().getStatusCode());
+        assertEquals(Set.of(Thread.currentThread().getName()), threadNames);
+    }
+
     @Test
     void verifySameDebtorPayerSuccess() {
         int totalNotice = 2;
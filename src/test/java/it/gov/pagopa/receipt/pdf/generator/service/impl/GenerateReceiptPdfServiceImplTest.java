@@ -29,6 +29,8 @@ import it.gov.pagopa.receipt.pdf.generator.model.template.ReceiptPDFTemplate;
 import it.gov.pagopa.receipt.pdf.generator.service.BuildTemplateService;
 import it.gov.pagopa.receipt.pdf.generator.service.PdfEngineService;
 import it.gov.pagopa.receipt.pdf.generator.service.ReceiptBlobStorageService;
+import it.gov.pagopa.receipt.pdf.generator.utils.ReceiptTemplateJsonWriter;
+import it.gov.pagopa.receipt.pdf.generator.utils.TemplateHash;
 import lombok.SneakyThrows;
 import org.apache.http.HttpStatus;
 import org.junit.jupiter.api.Test;
@@ -38,6 +40,12 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static it.gov.pagopa.receipt.pdf.generator.utils.Constants.ALREADY_CREATED;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -47,8 +55,10 @@ import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.never;
@@ -84,12 +94,12 @@ class GenerateReceiptPdfServiceImplTest {
         Receipt receiptOnly = getReceiptWithOnlyDebtor(false);
         BizEvent bizEventOnly = getBizEventWithOnlyDebtor();
 
-        doReturn(getPdfEngineResponse())
-                .when(pdfEngineServiceMock).generatePDFReceipt(any(), any());
+        doReturn(CompletableFuture.completedFuture(getPdfEngineResponse()))
+                .when(pdfEngineServiceMock).generatePDFReceiptAsync(any(), any());
         doReturn(getBlobStorageResponse())
                 .when(receiptBlobStorageMock).saveToBlobStorage(any(), anyString());
         doReturn(new ReceiptPDFTemplate())
-                .when(buildTemplateServiceMock).buildTemplate(any(), anyBoolean(), any(Receipt.class));
+                .when(buildTemplateServiceMock).buildTemplate(any(), anyBoolean(), any(Receipt.class), any());
 
         PdfGeneration pdfGeneration = sut.generateReceipts(receiptOnly, bizEventOnly, Path.of("/tmp"));
 
@@ -102,8 +112,8 @@ class GenerateReceiptPdfServiceImplTest {
         assertEquals(HttpStatus.SC_OK, pdfGeneration.getDebtorMetadata().getStatusCode());
         assertNull(pdfGeneration.getPayerMetadata());
 
-        verify(buildTemplateServiceMock).buildTemplate(any(), anyBoolean(), any(Receipt.class));
-        verify(pdfEngineServiceMock).generatePDFReceipt(any(), any());
+        verify(buildTemplateServiceMock).buildTemplate(any(), anyBoolean(), any(Receipt.class), any());
+        verify(pdfEngineServiceMock).generatePDFReceiptAsync(any(), any());
         verify(receiptBlobStorageMock).saveToBlobStorage(any(), anyString());
     }
 
@@ -113,12 +123,12 @@ class GenerateReceiptPdfServiceImplTest {
         Receipt receiptOnly = getReceiptWithDebtorPayer(VALID_CF_DEBTOR, false, false);
         BizEvent bizEventOnly = getBizEventWithDebtorPayer(VALID_CF_DEBTOR);
 
-        doReturn(getPdfEngineResponse())
-                .when(pdfEngineServiceMock).generatePDFReceipt(any(), any());
+        doReturn(CompletableFuture.completedFuture(getPdfEngineResponse()))
+                .when(pdfEngineServiceMock).generatePDFReceiptAsync(any(), any());
         doReturn(getBlobStorageResponse())
                 .when(receiptBlobStorageMock).saveToBlobStorage(any(), anyString());
         doReturn(new ReceiptPDFTemplate())
-                .when(buildTemplateServiceMock).buildTemplate(any(), anyBoolean(), any(Receipt.class));
+                .when(buildTemplateServiceMock).buildTemplate(any(), anyBoolean(), any(Receipt.class), any());
 
         PdfGeneration pdfGeneration = sut.generateReceipts(receiptOnly, bizEventOnly, Path.of("/tmp"));
 
@@ -131,8 +141,8 @@ class GenerateReceiptPdfServiceImplTest {
         assertEquals(HttpStatus.SC_OK, pdfGeneration.getDebtorMetadata().getStatusCode());
         assertNull(pdfGeneration.getPayerMetadata());
 
-        verify(buildTemplateServiceMock).buildTemplate(any(), anyBoolean(), any(Receipt.class));
-        verify(pdfEngineServiceMock).generatePDFReceipt(any(), any());
+        verify(buildTemplateServiceMock).buildTemplate(any(), anyBoolean(), any(Receipt.class), any());
+        verify(pdfEngineServiceMock).generatePDFReceiptAsync(any(), any());
         verify(receiptBlobStorageMock).saveToBlobStorage(any(), anyString());
     }
 
@@ -142,13 +152,13 @@ class GenerateReceiptPdfServiceImplTest {
         Receipt receiptOnly = getReceiptWithDebtorPayer(VALID_CF_PAYER, false, false);
         BizEvent bizEventOnly = getBizEventWithDebtorPayer(VALID_CF_PAYER);
 
-        doReturn(getPdfEngineResponse(),
-                getPdfEngineResponse())
-                .when(pdfEngineServiceMock).generatePDFReceipt(any(), any());
+        doReturn(CompletableFuture.completedFuture(getPdfEngineResponse()),
+                CompletableFuture.completedFuture(getPdfEngineResponse()))
+                .when(pdfEngineServiceMock).generatePDFReceiptAsync(any(), any());
         doReturn(getBlobStorageResponse(), getBlobStorageResponse())
                 .when(receiptBlobStorageMock).saveToBlobStorage(any(), anyString());
         doReturn(new ReceiptPDFTemplate())
-                .when(buildTemplateServiceMock).buildTemplate(any(), anyBoolean(), any(Receipt.class));
+                .when(buildTemplateServiceMock).buildTemplate(any(), anyBoolean(), any(Receipt.class), any());
 
         PdfGeneration pdfGeneration = sut.generateReceipts(receiptOnly, bizEventOnly, Path.of("/tmp"));
 
@@ -165,8 +175,8 @@ class GenerateReceiptPdfServiceImplTest {
         assertNotNull(pdfGeneration.getPayerMetadata().getDocumentUrl());
         assertEquals(HttpStatus.SC_OK, pdfGeneration.getPayerMetadata().getStatusCode());
 
-        verify(buildTemplateServiceMock, times(2)).buildTemplate(any(), anyBoolean(), any(Receipt.class));
-        verify(pdfEngineServiceMock, times(2)).generatePDFReceipt(any(), any());
+        verify(buildTemplateServiceMock, times(2)).buildTemplate(any(), anyBoolean(), any(Receipt.class), any());
+        verify(pdfEngineServiceMock, times(2)).generatePDFReceiptAsync(any(), any());
         verify(receiptBlobStorageMock, times(2)).saveToBlobStorage(any(), anyString());
     }
 
@@ -178,13 +188,13 @@ class GenerateReceiptPdfServiceImplTest {
 
         receiptOnly.getEventData().setDebtorFiscalCode("ANONIMO");
 
-        doReturn(getPdfEngineResponse(),
-                getPdfEngineResponse())
-                .when(pdfEngineServiceMock).generatePDFReceipt(any(), any());
+        doReturn(CompletableFuture.completedFuture(getPdfEngineResponse()),
+                CompletableFuture.completedFuture(getPdfEngineResponse()))
+                .when(pdfEngineServiceMock).generatePDFReceiptAsync(any(), any());
         doReturn(getBlobStorageResponse(), getBlobStorageResponse())
                 .when(receiptBlobStorageMock).saveToBlobStorage(any(), anyString());
         doReturn(new ReceiptPDFTemplate())
-                .when(buildTemplateServiceMock).buildTemplate(any(), anyBoolean(), any(Receipt.class));
+                .when(buildTemplateServiceMock).buildTemplate(any(), anyBoolean(), any(Receipt.class), any());
 
         PdfGeneration pdfGeneration = sut.generateReceipts(receiptOnly, listOfBizEvents, Path.of("/tmp"));
 
@@ -196,8 +206,8 @@ class GenerateReceiptPdfServiceImplTest {
         assertNotNull(pdfGeneration.getPayerMetadata().getDocumentUrl());
         assertEquals(HttpStatus.SC_OK, pdfGeneration.getPayerMetadata().getStatusCode());
 
-        verify(buildTemplateServiceMock, times(1)).buildTemplate(any(), anyBoolean(), any(Receipt.class));
-        verify(pdfEngineServiceMock, times(1)).generatePDFReceipt(any(), any());
+        verify(buildTemplateServiceMock, times(1)).buildTemplate(any(), anyBoolean(), any(Receipt.class), any());
+        verify(pdfEngineServiceMock, times(1)).generatePDFReceiptAsync(any(), any());
         verify(receiptBlobStorageMock, times(1)).saveToBlobStorage(any(), anyString());
     }
 
@@ -218,8 +228,8 @@ class GenerateReceiptPdfServiceImplTest {
         assertEquals(ALREADY_CREATED, pdfGeneration.getDebtorMetadata().getStatusCode());
         assertNull(pdfGeneration.getPayerMetadata());
 
-        verify(buildTemplateServiceMock, never()).buildTemplate(any(), anyBoolean(), any(Receipt.class));
-        verify(pdfEngineServiceMock, never()).generatePDFReceipt(any(), any());
+        verify(buildTemplateServiceMock, never()).buildTemplate(any(), anyBoolean(), any(Receipt.class), any());
+        verify(pdfEngineServiceMock, never()).generatePDFReceiptAsync(any(), any());
         verify(receiptBlobStorageMock, never()).saveToBlobStorage(any(), anyString());
     }
 
@@ -240,8 +250,8 @@ class GenerateReceiptPdfServiceImplTest {
         assertEquals(ALREADY_CREATED, pdfGeneration.getDebtorMetadata().getStatusCode());
         assertNull(pdfGeneration.getPayerMetadata());
 
-        verify(buildTemplateServiceMock, never()).buildTemplate(any(), anyBoolean(), any(Receipt.class));
-        verify(pdfEngineServiceMock, never()).generatePDFReceipt(any(), any());
+        verify(buildTemplateServiceMock, never()).buildTemplate(any(), anyBoolean(), any(Receipt.class), any());
+        verify(pdfEngineServiceMock, never()).generatePDFReceiptAsync(any(), any());
         verify(receiptBlobStorageMock, never()).saveToBlobStorage(any(), anyString());
     }
 
@@ -251,12 +261,12 @@ class GenerateReceiptPdfServiceImplTest {
         Receipt receiptOnly = getReceiptWithDebtorPayer(VALID_CF_PAYER, false, true);
         BizEvent bizEventOnly = getBizEventWithDebtorPayer(VALID_CF_PAYER);
 
-        doReturn(getPdfEngineResponse())
-                .when(pdfEngineServiceMock).generatePDFReceipt(any(), any());
+        doReturn(CompletableFuture.completedFuture(getPdfEngineResponse()))
+                .when(pdfEngineServiceMock).generatePDFReceiptAsync(any(), any());
         doReturn(getBlobStorageResponse())
                 .when(receiptBlobStorageMock).saveToBlobStorage(any(), anyString());
         doReturn(new ReceiptPDFTemplate())
-                .when(buildTemplateServiceMock).buildTemplate(any(), anyBoolean(), any(Receipt.class));
+                .when(buildTemplateServiceMock).buildTemplate(any(), anyBoolean(), any(Receipt.class), any());
 
         PdfGeneration pdfGeneration = sut.generateReceipts(receiptOnly, bizEventOnly, Path.of("/tmp"));
 
@@ -273,21 +283,227 @@ class GenerateReceiptPdfServiceImplTest {
         assertNull(pdfGeneration.getPayerMetadata().getDocumentUrl());
         assertEquals(ALREADY_CREATED, pdfGeneration.getPayerMetadata().getStatusCode());
 
-        verify(buildTemplateServiceMock).buildTemplate(any(), anyBoolean(), any(Receipt.class));
-        verify(pdfEngineServiceMock).generatePDFReceipt(any(), any());
+        verify(buildTemplateServiceMock).buildTemplate(any(), anyBoolean(), any(Receipt.class), any());
+        verify(pdfEngineServiceMock).generatePDFReceiptAsync(any(), any());
         verify(receiptBlobStorageMock).saveToBlobStorage(any(), anyString());
     }
 
+    @Test
+    @SneakyThrows
+    void generateReceiptsDifferentDebtorPayerInParallelIsolatesUnexpectedFailure() {
+        Receipt receiptOnly = getReceiptWithDebtorPayer(VALID_CF_PAYER, false, false);
+        BizEvent bizEventOnly = getBizEventWithDebtorPayer(VALID_CF_PAYER);
+
+        doReturn(CompletableFuture.completedFuture(getPdfEngineResponse()))
+                .when(pdfEngineServiceMock).generatePDFReceiptAsync(any(), any());
+        doReturn(getBlobStorageResponse())
+                .when(receiptBlobStorageMock).saveToBlobStorage(any(), anyString());
+        doReturn(new ReceiptPDFTemplate())
+                .when(buildTemplateServiceMock).buildTemplate(any(), eq(false), any(Receipt.class), any());
+        doThrow(new IllegalStateException(ERROR_MESSAGE))
+                .when(buildTemplateServiceMock).buildTemplate(any(), eq(true), any(Receipt.class), any());
+
+        PdfGeneration pdfGeneration = sut.generateReceipts(receiptOnly, bizEventOnly, Path.of("/tmp"));
+
+        assertFalse(pdfGeneration.isGenerateOnlyDebtor());
+        assertEquals(HttpStatus.SC_OK, pdfGeneration.getPayerMetadata().getStatusCode());
+        assertEquals("document name", pdfGeneration.getPayerMetadata().getDocumentName());
+        assertEquals(HttpStatus.SC_INTERNAL_SERVER_ERROR, pdfGeneration.getDebtorMetadata().getStatusCode());
+        assertEquals(ERROR_MESSAGE, pdfGeneration.getDebtorMetadata().getErrorMessage());
+
+        boolean result = sut.verifyAndUpdateReceipt(receiptOnly, pdfGeneration);
+
+        assertFalse(result);
+        assertNotNull(receiptOnly.getMdAttachPayer());
+        assertNotNull(receiptOnly.getReasonErr());
+        assertEquals(HttpStatus.SC_INTERNAL_SERVER_ERROR, receiptOnly.getReasonErr().getCode());
+        verify(pdfEngineServiceMock, times(1)).generatePDFReceiptAsync(any(), any());
+    }
+
+    @Test
+    @SneakyThrows
+    void generateReceiptsDifferentDebtorPayerSequentialMode() {
+        sut.setParallelGenerationEnabled(false);
+        Receipt receiptOnly = getReceiptWithDebtorPayer(VALID_CF_PAYER, false, false);
+        BizEvent bizEventOnly = getBizEventWithDebtorPayer(VALID_CF_PAYER);
+        List<String> threads = new CopyOnWriteArrayList<>();
+
+        doReturn(CompletableFuture.completedFuture(getPdfEngineResponse()))
+                .when(pdfEngineServiceMock).generatePDFReceiptAsync(any(), any());
+        doReturn(getBlobStorageResponse())
+                .when(receiptBlobStorageMock).saveToBlobStorage(any(), anyString());
+        doAnswer(invocation -> {
+            threads.add(Thread.currentThread().getName());
+            return new ReceiptPDFTemplate();
+        }).when(buildTemplateServiceMock).buildTemplate(any(), anyBoolean(), any(Receipt.class), any());
+
+        PdfGeneration pdfGeneration = sut.generateReceipts(receiptOnly, bizEventOnly, Path.of("/tmp"));
+
+        assertEquals(HttpStatus.SC_OK, pdfGeneration.getPayerMetadata().getStatusCode());
+        assertEquals(HttpStatus.SC_OK, pdfGeneration.getDebtorMetadata().getStatusCode());
+        assertEquals(List.of(Thread.currentThread().getName(), Thread.currentThread().getName()), threads);
+    }
+
+    @Test
+    @SneakyThrows
+    void generateReceiptsPayerNullOnRetryReusesSavedPdf() {
+        Receipt receiptOnly = getReceiptWithOnlyDebtor(false);
+        receiptOnly.setNumRetry(1);
+        BizEvent bizEventOnly = getBizEventWithOnlyDebtor();
+
+        doReturn(getBlobStorageResponse())
+                .when(receiptBlobStorageMock).findSavedPdf(anyString());
+        doReturn(new ReceiptPDFTemplate())
+                .when(buildTemplateServiceMock).buildTemplate(any(), anyBoolean(), any(Receipt.class), any());
+
+        PdfGeneration pdfGeneration = sut.generateReceipts(receiptOnly, bizEventOnly, Path.of("/tmp"));
+
+        assertEquals(HttpStatus.SC_OK, pdfGeneration.getDebtorMetadata().getStatusCode());
+        assertEquals("document name", pdfGeneration.getDebtorMetadata().getDocumentName());
+
+        verify(pdfEngineServiceMock, never()).generatePDFReceiptAsync(any(), any());
+        verify(receiptBlobStorageMock, never()).saveToBlobStorage(any(), anyString());
+    }
+
+    @Test
+    @SneakyThrows
+    void generateReceiptsPayerNullOnRetryGeneratesMissingPdfWithTheProbedName() {
+        Receipt receiptOnly = getReceiptWithOnlyDebtor(false);
+        receiptOnly.setNumRetry(1);
+        BizEvent bizEventOnly = getBizEventWithOnlyDebtor();
+        List<String> blobNames = new CopyOnWriteArrayList<>();
+
+        doAnswer(invocation -> {
+            blobNames.add(invocation.getArgument(0));
+            return null;
+        }).when(receiptBlobStorageMock).findSavedPdf(anyString());
+        doReturn(CompletableFuture.completedFuture(getPdfEngineResponse()))
+                .when(pdfEngineServiceMock).generatePDFReceiptAsync(any(), any());
+        doAnswer(invocation -> {
+            blobNames.add(invocation.getArgument(1));
+            return getBlobStorageResponse();
+        }).when(receiptBlobStorageMock).saveToBlobStorage(any(), anyString());
+        doReturn(new ReceiptPDFTemplate())
+                .when(buildTemplateServiceMock).buildTemplate(any(), anyBoolean(), any(Receipt.class), any());
+
+        PdfGeneration pdfGeneration = sut.generateReceipts(receiptOnly, bizEventOnly, Path.of("/tmp"));
+
+        assertEquals(HttpStatus.SC_OK, pdfGeneration.getDebtorMetadata().getStatusCode());
+        assertEquals(2, blobNames.size());
+        assertEquals(blobNames.get(0), blobNames.get(1));
+        assertTrue(blobNames.get(0).matches("pagopa-ricevuta-[0-9a-f]{16}-" + BIZ_EVENT_ID + "-d"));
+    }
+
+    @Test
+    @SneakyThrows
+    void regenerateReceiptsPayerNullWithUnchangedTemplateReusesSavedPdf() {
+        Receipt receiptOnly = getReceiptWithOnlyDebtor(false);
+        Receipt previousReceipt = getReceiptWithOnlyDebtor(true);
+        String templateHash = TemplateHash.of(ReceiptTemplateJsonWriter.writeValueAsBytes(new ReceiptPDFTemplate()));
+        previousReceipt.getMdAttach().setTemplateHash(templateHash);
+        BizEvent bizEventOnly = getBizEventWithOnlyDebtor();
+
+        doReturn(getBlobStorageResponse())
+                .when(receiptBlobStorageMock).findSavedPdf(anyString());
+        doReturn(new ReceiptPDFTemplate())
+                .when(buildTemplateServiceMock).buildTemplate(any(), anyBoolean(), any(Receipt.class), any());
+
+        PdfGeneration pdfGeneration = sut.regenerateReceipts(receiptOnly, bizEventOnly, previousReceipt, Path.of("/tmp"));
+
+        assertEquals(HttpStatus.SC_OK, pdfGeneration.getDebtorMetadata().getStatusCode());
+        assertEquals(templateHash, pdfGeneration.getDebtorMetadata().getTemplateHash());
+
+        verify(pdfEngineServiceMock, never()).generatePDFReceiptAsync(any(), any());
+        verify(receiptBlobStorageMock, never()).saveToBlobStorage(any(), anyString());
+    }
+
+    @Test
+    @SneakyThrows
+    void regenerateReceiptsPayerNullWithChangedTemplateRendersPdfAgain() {
+        Receipt receiptOnly = getReceiptWithOnlyDebtor(false);
+        Receipt previousReceipt = getReceiptWithOnlyDebtor(true);
+        previousReceipt.getMdAttach().setTemplateHash("previousHash");
+        BizEvent bizEventOnly = getBizEventWithOnlyDebtor();
+
+        doReturn(CompletableFuture.completedFuture(getPdfEngineResponse()))
+                .when(pdfEngineServiceMock).generatePDFReceiptAsync(any(), any());
+        doReturn(getBlobStorageResponse())
+                .when(receiptBlobStorageMock).saveToBlobStorage(any(), anyString());
+        doReturn(new ReceiptPDFTemplate())
+                .when(buildTemplateServiceMock).buildTemplate(any(), anyBoolean(), any(Receipt.class), any());
+
+        PdfGeneration pdfGeneration = sut.regenerateReceipts(receiptOnly, bizEventOnly, previousReceipt, Path.of("/tmp"));
+
+        assertEquals(HttpStatus.SC_OK, pdfGeneration.getDebtorMetadata().getStatusCode());
+        assertEquals(TemplateHash.of(ReceiptTemplateJsonWriter.writeValueAsBytes(new ReceiptPDFTemplate())), pdfGeneration.getDebtorMetadata().getTemplateHash());
+
+        verify(receiptBlobStorageMock, never()).findSavedPdf(anyString());
+        verify(pdfEngineServiceMock).generatePDFReceiptAsync(any(), any());
+    }
+
+    @Test
+    @SneakyThrows
+    void regenerateReceiptsIsNotSharedWithTheGenerationInFlight() {
+        CountDownLatch generationStarted = new CountDownLatch(1);
+        CountDownLatch releaseGeneration = new CountDownLatch(1);
+        AtomicInteger engineCalls = new AtomicInteger();
+        doAnswer(invocation -> {
+            if (engineCalls.incrementAndGet() == 1) {
+                generationStarted.countDown();
+                releaseGeneration.await();
+            }
+            return CompletableFuture.completedFuture(getPdfEngineResponse());
+        }).when(pdfEngineServiceMock).generatePDFReceiptAsync(any(), any());
+        doReturn(getBlobStorageResponse())
+                .when(receiptBlobStorageMock).saveToBlobStorage(any(), anyString());
+        doReturn(new ReceiptPDFTemplate())
+                .when(buildTemplateServiceMock).buildTemplate(any(), anyBoolean(), any(Receipt.class), any());
+
+        CompletableFuture<PdfGeneration> generation = CompletableFuture.supplyAsync(() ->
+                sut.generateReceipts(getReceiptWithOnlyDebtor(false), getBizEventWithOnlyDebtor(), Path.of("/tmp")));
+        try {
+            assertTrue(generationStarted.await(5, TimeUnit.SECONDS));
+
+            PdfGeneration regeneration = CompletableFuture.supplyAsync(() ->
+                            sut.regenerateReceipts(getReceiptWithOnlyDebtor(false), getBizEventWithOnlyDebtor(), null, Path.of("/tmp")))
+                    .get(5, TimeUnit.SECONDS);
+
+            assertEquals(HttpStatus.SC_OK, regeneration.getDebtorMetadata().getStatusCode());
+        } finally {
+            releaseGeneration.countDown();
+        }
+        assertEquals(HttpStatus.SC_OK, generation.get(5, TimeUnit.SECONDS).getDebtorMetadata().getStatusCode());
+        verify(pdfEngineServiceMock, times(2)).generatePDFReceiptAsync(any(), any());
+    }
+
+    @Test
+    @SneakyThrows
+    void generateReceiptsPayerNullFirstAttemptDoesNotProbe() {
+        Receipt receiptOnly = getReceiptWithOnlyDebtor(false);
+        BizEvent bizEventOnly = getBizEventWithOnlyDebtor();
+
+        doReturn(CompletableFuture.completedFuture(getPdfEngineResponse()))
+                .when(pdfEngineServiceMock).generatePDFReceiptAsync(any(), any());
+        doReturn(getBlobStorageResponse())
+                .when(receiptBlobStorageMock).saveToBlobStorage(any(), anyString());
+        doReturn(new ReceiptPDFTemplate())
+                .when(buildTemplateServiceMock).buildTemplate(any(), anyBoolean(), any(Receipt.class), any());
+
+        sut.generateReceipts(receiptOnly, bizEventOnly, Path.of("/tmp"));
+
+        verify(receiptBlobStorageMock, never()).findSavedPdf(anyString());
+    }
+
     @Test
     @SneakyThrows
     void generateReceiptsPayerNullFailPDFEngineCallReturn500() {
         Receipt receiptOnly = getReceiptWithOnlyDebtor(false);
         BizEvent bizEventOnly = getBizEventWithOnlyDebtor();
 
-        doThrow(new GeneratePDFException(ERROR_MESSAGE, HttpStatus.SC_INTERNAL_SERVER_ERROR))
-                .when(pdfEngineServiceMock).generatePDFReceipt(any(), any());
+        doReturn(CompletableFuture.failedFuture(new GeneratePDFException(ERROR_MESSAGE, HttpStatus.SC_INTERNAL_SERVER_ERROR)))
+                .when(pdfEngineServiceMock).generatePDFReceiptAsync(any(), any());
         doReturn(new ReceiptPDFTemplate())
-                .when(buildTemplateServiceMock).buildTemplate(any(), anyBoolean(), any(Receipt.class));
+                .when(buildTemplateServiceMock).buildTemplate(any(), anyBoolean(), any(Receipt.class), any());
 
         PdfGeneration pdfGeneration = sut.generateReceipts(receiptOnly, bizEventOnly, Path.of("/tmp"));
 
@@ -299,9 +515,10 @@ class GenerateReceiptPdfServiceImplTest {
         assertNull(pdfGeneration.getDebtorMetadata().getDocumentUrl());
         assertEquals(HttpStatus.SC_INTERNAL_SERVER_ERROR, pdfGeneration.getDebtorMetadata().getStatusCode());
         assertNull(pdfGeneration.getPayerMetadata());
+        assertEquals(ReasonErrorCode.ERROR_PDF_ENGINE, pdfGeneration.getDebtorMetadata().getReasonErrorCode());
 
-        verify(buildTemplateServiceMock).buildTemplate(any(), anyBoolean(), any(Receipt.class));
-        verify(pdfEngineServiceMock).generatePDFReceipt(any(), any());
+        verify(buildTemplateServiceMock).buildTemplate(any(), anyBoolean(), any(Receipt.class), any());
+        verify(pdfEngineServiceMock).generatePDFReceiptAsync(any(), any());
         verify(receiptBlobStorageMock, never()).saveToBlobStorage(any(), anyString());
     }
 
@@ -312,7 +529,7 @@ class GenerateReceiptPdfServiceImplTest {
         BizEvent bizEventOnly = getBizEventWithOnlyDebtor();
 
         doThrow(new TemplateDataMappingException("error message", ReasonErrorCode.ERROR_TEMPLATE_PDF.getCode()))
-                .when(buildTemplateServiceMock).buildTemplate(any(), anyBoolean(), any(Receipt.class));
+                .when(buildTemplateServiceMock).buildTemplate(any(), anyBoolean(), any(Receipt.class), any());
 
         PdfGeneration pdfGeneration = sut.generateReceipts(receiptOnly, bizEventOnly, Path.of("/tmp"));
 
@@ -324,9 +541,10 @@ class GenerateReceiptPdfServiceImplTest {
         assertNull(pdfGeneration.getDebtorMetadata().getDocumentUrl());
         assertEquals(ReasonErrorCode.ERROR_TEMPLATE_PDF.getCode(), pdfGeneration.getDebtorMetadata().getStatusCode());
         assertNull(pdfGeneration.getPayerMetadata());
+        assertNull(pdfGeneration.getDebtorMetadata().getReasonErrorCode());
 
-        verify(buildTemplateServiceMock).buildTemplate(any(), anyBoolean(), any(Receipt.class));
-        verify(pdfEngineServiceMock, never()).generatePDFReceipt(any(), any());
+        verify(buildTemplateServiceMock).buildTemplate(any(), anyBoolean(), any(Receipt.class), any());
+        verify(pdfEngineServiceMock, never()).generatePDFReceiptAsync(any(), any());
         verify(receiptBlobStorageMock, never()).saveToBlobStorage(any(), anyString());
     }
 
@@ -336,12 +554,12 @@ class GenerateReceiptPdfServiceImplTest {
         Receipt receiptOnly = getReceiptWithOnlyDebtor(false);
         BizEvent bizEventOnly = getBizEventWithOnlyDebtor();
 
-        doReturn(getPdfEngineResponse())
-                .when(pdfEngineServiceMock).generatePDFReceipt(any(), any());
+        doReturn(CompletableFuture.completedFuture(getPdfEngineResponse()))
+                .when(pdfEngineServiceMock).generatePDFReceiptAsync(any(), any());
         doThrow(new SavePDFToBlobException(ERROR_MESSAGE, ReasonErrorCode.ERROR_BLOB_STORAGE.getCode()))
                 .when(receiptBlobStorageMock).saveToBlobStorage(any(), anyString());
         doReturn(new ReceiptPDFTemplate())
-                .when(buildTemplateServiceMock).buildTemplate(any(), anyBoolean(), any(Receipt.class));
+                .when(buildTemplateServiceMock).buildTemplate(any(), anyBoolean(), any(Receipt.class), any());
 
         PdfGeneration pdfGeneration = sut.generateReceipts(receiptOnly, bizEventOnly, Path.of("/tmp"));
 
@@ -353,9 +571,10 @@ class GenerateReceiptPdfServiceImplTest {
         assertNull(pdfGeneration.getDebtorMetadata().getDocumentUrl());
         assertEquals(ReasonErrorCode.ERROR_BLOB_STORAGE.getCode(), pdfGeneration.getDebtorMetadata().getStatusCode());
         assertNull(pdfGeneration.getPayerMetadata());
+        assertNull(pdfGeneration.getDebtorMetadata().getReasonErrorCode());
 
-        verify(buildTemplateServiceMock).buildTemplate(any(), anyBoolean(), any(Receipt.class));
-        verify(pdfEngineServiceMock).generatePDFReceipt(any(), any());
+        verify(buildTemplateServiceMock).buildTemplate(any(), anyBoolean(), any(Receipt.class), any());
+        verify(pdfEngineServiceMock).generatePDFReceiptAsync(any(), any());
         verify(receiptBlobStorageMock).saveToBlobStorage(any(), anyString());
     }
 
@@ -369,6 +588,7 @@ class GenerateReceiptPdfServiceImplTest {
                         .statusCode(HttpStatus.SC_OK)
                         .documentName(DEBTOR_DOCUMENT_NAME)
                         .documentUrl(DEBTOR_DOCUMENT_URL)
+                        .templateHash("templateHash")
                         .build())
                 .generateOnlyDebtor(true)
                 .build();
@@ -381,6 +601,7 @@ class GenerateReceiptPdfServiceImplTest {
         assertNotNull(receipt.getMdAttach().getName());
         assertEquals(DEBTOR_DOCUMENT_NAME, receipt.getMdAttach().getName());
         assertEquals(DEBTOR_DOCUMENT_URL, receipt.getMdAttach().getUrl());
+        assertEquals("templateHash", receipt.getMdAttach().getTemplateHash());
         assertNull(receipt.getMdAttachPayer());
         assertNull(receipt.getReasonErr());
         assertNull(receipt.getReasonErrPayer());
@@ -0,0 +1,29 @@
+package it.gov.pagopa.receipt.pdf.generator.service.impl;
+
+import it.gov.pagopa.receipt.pdf.generator.client.PdfEngineClient;
+import it.gov.pagopa.receipt.pdf.generator.client.ReceiptBlobClient;
+import it.gov.pagopa.receipt.pdf.generator.service.GenerateCartReceiptPdfService;
+import it.gov.pagopa.receipt.pdf.generator.service.GenerateReceiptPdfService;
+
+/**
+ * Generation services wired to the provided clients, used to run the generation flows without Azure resources.
+ */
+public final class OfflineGenerationServices {
+
+    private OfflineGenerationServices() {
+    }
+
+    public static GenerateReceiptPdfService generateReceiptPdfService(PdfEngineClient pdfEngineClient, ReceiptBlobClient receiptBlobClient) {
+        return new GenerateReceiptPdfServiceImpl(
+                new PdfEngineServiceImpl(pdfEngineClient),
+                new ReceiptBlobStorageServiceImpl(receiptBlobClient),
+                new BuildTemplateServiceImpl());
+    }
+
+    public static GenerateCartReceiptPdfService generateCartReceiptPdfService(PdfEngineClient pdfEngineClient, ReceiptBlobClient receiptBlobClient) {
+        return new GenerateCartReceiptPdfServiceImpl(
+                new PdfEngineServiceImpl(pdfEngineClient),
+                new ReceiptBlobStorageServiceImpl(receiptBlobClient),
+                new BuildTemplateServiceImpl());
+    }
+}
@@ -10,8 +10,12 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
@@ -51,6 +55,29 @@ class PdfEngineServiceImplTest {
         assertEquals(HttpStatus.SC_INTERNAL_SERVER_ERROR, e.getStatusCode());
     }
 
+    @Test
+    void generatePDFReceiptAsyncSuccess() {
+        doReturn(CompletableFuture.completedFuture(getPdfEngineResponse(HttpStatus.SC_OK, PDF_PATH)))
+                .when(pdfEngineClientMock).generatePDFAsync(any(), any());
+
+        PdfEngineResponse result = assertDoesNotThrow(() -> sut.generatePDFReceiptAsync(new byte[0], null).join());
+
+        assertEquals(PDF_PATH, result.getTempPdfPath());
+        assertEquals(HttpStatus.SC_OK, result.getStatusCode());
+    }
+
+    @Test
+    void generatePDFReceiptAsyncFailOnResponseKo() {
+        doReturn(CompletableFuture.completedFuture(getPdfEngineResponse(HttpStatus.SC_INTERNAL_SERVER_ERROR, null)))
+                .when(pdfEngineClientMock).generatePDFAsync(any(), any());
+
+        CompletableFuture<PdfEngineResponse> future = sut.generatePDFReceiptAsync(new byte[0], null);
+
+        CompletionException e = assertThrows(CompletionException.class, future::join);
+        GeneratePDFException cause = assertInstanceOf(GeneratePDFException.class, e.getCause());
+        assertEquals(HttpStatus.SC_INTERNAL_SERVER_ERROR, cause.getStatusCode());
+    }
+
     private PdfEngineResponse getPdfEngineResponse(int status, String pdfPath) {
         PdfEngineResponse pdfEngineResponse = new PdfEngineResponse();
         pdfEngineResponse.setTempPdfPath(pdfPath);
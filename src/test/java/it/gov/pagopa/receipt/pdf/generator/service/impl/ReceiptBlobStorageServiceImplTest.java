@@ -16,8 +16,11 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
@@ -25,12 +28,15 @@ import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 
 @ExtendWith(MockitoExtension.class)
@@ -126,6 +132,63 @@ class ReceiptBlobStorageServiceImplTest {
         assertNotNull(e.getMessage());
     }
 
+    @Test
+    void saveToBlobStorageStreamingSuccess() throws IOException {
+        sut.setMinFileLength(10);
+        InputStream pdfStream = spy(new ByteArrayInputStream(new byte[20]));
+        doAnswer(invocation -> {
+            ((InputStream) invocation.getArgument(0)).readAllBytes();
+            return getBlobStorageResponse(HttpStatus.CREATED.value());
+        }).when(receiptBlobClientMock).savePdfToBlobStorage(any(), anyString());
+
+        PdfMetadata result = assertDoesNotThrow(() ->
+                sut.saveToBlobStorage(buildStreamingPdfEngineResponse(pdfStream, -1), BLOB_NAME));
+
+        assertEquals(DOCUMENT, result.getDocumentName());
+        assertEquals(URL, result.getDocumentUrl());
+        assertEquals(org.apache.http.HttpStatus.SC_OK, result.getStatusCode());
+        verify(pdfStream).close();
+    }
+
+    @Test
+    void saveToBlobStorageStreamingFailMinLengthReachedWhileUploading() throws IOException {
+        sut.setMinFileLength(10);
+        InputStream pdfStream = spy(new ByteArrayInputStream(new byte[5]));
+        doAnswer(invocation -> {
+            try {
+                ((InputStream) invocation.getArgument(0)).readAllBytes();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return getBlobStorageResponse(HttpStatus.CREATED.value());
+        }).when(receiptBlobClientMock).savePdfToBlobStorage(any(), anyString());
+
+        SavePDFToBlobException e = assertThrows(
+                SavePDFToBlobException.class,
+                () -> sut.saveToBlobStorage(buildStreamingPdfEngineResponse(pdfStream, -1), BLOB_NAME)
+        );
+
+        assertEquals(ReasonErrorCode.ERROR_BLOB_STORAGE.getCode(), e.getStatusCode());
+        assertEquals("Minimum file size not reached", e.getMessage());
+        verify(pdfStream).close();
+    }
+
+    @Test
+    void saveToBlobStorageStreamingFailDeclaredLengthBelowMinimum() throws IOException {
+        sut.setMinFileLength(10);
+        InputStream pdfStream = spy(new ByteArrayInputStream(new byte[5]));
+
+        SavePDFToBlobException e = assertThrows(
+                SavePDFToBlobException.class,
+                () -> sut.saveToBlobStorage(buildStreamingPdfEngineResponse(pdfStream, 5), BLOB_NAME)
+        );
+
+        assertEquals(ReasonErrorCode.ERROR_BLOB_STORAGE.getCode(), e.getStatusCode());
+        assertEquals("Minimum file size not reached", e.getMessage());
+        verify(receiptBlobClientMock, never()).savePdfToBlobStorage(any(), anyString());
+        verify(pdfStream).close();
+    }
+
     private BlobStorageResponse getBlobStorageResponse(int status) {
         BlobStorageResponse blobStorageResponse = new BlobStorageResponse();
         blobStorageResponse.setStatusCode(status);
@@ -136,6 +199,14 @@ class ReceiptBlobStorageServiceImplTest {
         return blobStorageResponse;
     }
 
+    private PdfEngineResponse buildStreamingPdfEngineResponse(InputStream pdfStream, long contentLength) {
+        PdfEngineResponse pdfEngineResponse = new PdfEngineResponse();
+        pdfEngineResponse.setPdfStream(pdfStream);
+        pdfEngineResponse.setPdfContentLength(contentLength);
+        pdfEngineResponse.setStatusCode(org.apache.http.HttpStatus.SC_OK);
+        return pdfEngineResponse;
+    }
+
     private PdfEngineResponse buildPdfEngineResponse() {
         PdfEngineResponse pdfEngineResponse = new PdfEngineResponse();
         pdfEngineResponse.setTempPdfPath(outputPdf.getPath());
@@ -143,4 +214,36 @@ class ReceiptBlobStorageServiceImplTest {
         return pdfEngineResponse;
     }
 
-}
\ No newline at end of file
+
+    @Test
+    void findSavedPdfFound() {
+        BlobStorageResponse blobStorageResponse = new BlobStorageResponse();
+        blobStorageResponse.setDocumentName(DOCUMENT);
+        blobStorageResponse.setDocumentUrl(URL);
+        blobStorageResponse.setStatusCode(HttpStatus.OK.value());
+        doReturn(blobStorageResponse).when(receiptBlobClientMock).findPdfInBlobStorage(BLOB_NAME);
+
+        PdfMetadata response = sut.findSavedPdf(BLOB_NAME);
+
+        assertNotNull(response);
+        assertEquals(DOCUMENT, response.getDocumentName());
+        assertEquals(URL, response.getDocumentUrl());
+        assertEquals(HttpStatus.OK.value(), response.getStatusCode());
+    }
+
+    @Test
+    void findSavedPdfNotFound() {
+        BlobStorageResponse blobStorageResponse = new BlobStorageResponse();
+        blobStorageResponse.setStatusCode(HttpStatus.NOT_FOUND.value());
+        doReturn(blobStorageResponse).when(receiptBlobClientMock).findPdfInBlobStorage(BLOB_NAME);
+
+        assertNull(sut.findSavedPdf(BLOB_NAME));
+    }
+
+    @Test
+    void findSavedPdfLookUpFailureIsAMiss() {
+        doThrow(new RuntimeException("storage unreachable")).when(receiptBlobClientMock).findPdfInBlobStorage(BLOB_NAME);
+
+        assertNull(sut.findSavedPdf(BLOB_NAME));
+    }
+}
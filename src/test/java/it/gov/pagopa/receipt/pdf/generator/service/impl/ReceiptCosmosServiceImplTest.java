@@ -2,20 +2,34 @@ package it.gov.pagopa.receipt.pdf.generator.service.impl;
 
 import com.azure.cosmos.CosmosException;
 import com.azure.cosmos.models.CosmosItemResponse;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.microsoft.azure.functions.HttpStatus;
 import it.gov.pagopa.receipt.pdf.generator.client.ReceiptCosmosClient;
 import it.gov.pagopa.receipt.pdf.generator.entity.receipt.Receipt;
+import it.gov.pagopa.receipt.pdf.generator.entity.receipt.enumeration.ReceiptStatusType;
 import it.gov.pagopa.receipt.pdf.generator.exception.ReceiptNotFoundException;
 import it.gov.pagopa.receipt.pdf.generator.exception.UnableToSaveException;
+import it.gov.pagopa.receipt.pdf.generator.model.DocumentPatch;
+import it.gov.pagopa.receipt.pdf.generator.utils.DocumentPatchBuilder;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -76,4 +90,102 @@ class ReceiptCosmosServiceImplTest {
         assertThrows(UnableToSaveException.class,() -> function.updateReceipt(receipt));
     }
 
-}
\ No newline at end of file
+    @Test
+    void patchReceiptSuccess(){
+        Receipt receipt = Receipt.builder().eventId(BIZ_EVENT_ID).status(ReceiptStatusType.INSERTED).build();
+        JsonNode snapshot = DocumentPatchBuilder.snapshot(receipt);
+        receipt.setStatus(ReceiptStatusType.GENERATED);
+        when(saveReceiptResponse.getStatusCode()).thenReturn(HttpStatus.OK.value());
+        when(receiptCosmosClient.patchReceipt(eq(receipt), any())).thenReturn(saveReceiptResponse);
+        function = spy(new ReceiptCosmosServiceImpl(receiptCosmosClient));
+        assertDoesNotThrow(() -> function.patchReceipt(snapshot, receipt));
+    }
+    @Test
+    void patchReceiptSkippedWithoutChanges(){
+        Receipt receipt = Receipt.builder().eventId(BIZ_EVENT_ID).status(ReceiptStatusType.INSERTED).build();
+        JsonNode snapshot = DocumentPatchBuilder.snapshot(receipt);
+        function = spy(new ReceiptCosmosServiceImpl(receiptCosmosClient));
+        assertDoesNotThrow(() -> function.patchReceipt(snapshot, receipt));
+        verify(receiptCosmosClient, never()).patchReceipt(any(), any());
+    }
+    @Test
+    void patchReceiptFailedNotOk(){
+        Receipt receipt = Receipt.builder().eventId(BIZ_EVENT_ID).status(ReceiptStatusType.INSERTED).build();
+        JsonNode snapshot = DocumentPatchBuilder.snapshot(receipt);
+        receipt.setStatus(ReceiptStatusType.GENERATED);
+        when(saveReceiptResponse.getStatusCode()).thenReturn(HttpStatus.I_AM_A_TEAPOT.value());
+        when(receiptCosmosClient.patchReceipt(eq(receipt), any())).thenReturn(saveReceiptResponse);
+        function = spy(new ReceiptCosmosServiceImpl(receiptCosmosClient));
+        assertThrows(UnableToSaveException.class,() -> function.patchReceipt(snapshot, receipt));
+    }
+    @Test
+    void patchReceiptFailedWithPreconditionFailed(){
+        Receipt receipt = Receipt.builder().eventId(BIZ_EVENT_ID).status(ReceiptStatusType.INSERTED).build();
+        JsonNode snapshot = DocumentPatchBuilder.snapshot(receipt);
+        receipt.setStatus(ReceiptStatusType.GENERATED);
+        CosmosException cosmosException = mock(CosmosException.class);
+        when(cosmosException.getStatusCode()).thenReturn(HttpStatus.PRECONDITION_FAILED.value());
+        when(receiptCosmosClient.patchReceipt(eq(receipt), any())).thenThrow(cosmosException);
+        function = spy(new ReceiptCosmosServiceImpl(receiptCosmosClient));
+        assertThrows(UnableToSaveException.class,() -> function.patchReceipt(snapshot, receipt));
+    }
+
+    @Test
+    void getReceiptsByEventId(){
+        Receipt receipt = Receipt.builder().eventId(BIZ_EVENT_ID).build();
+        when(receiptCosmosClient.getReceiptDocuments(List.of(BIZ_EVENT_ID, "missing"))).thenReturn(List.of(receipt));
+        function = spy(new ReceiptCosmosServiceImpl(receiptCosmosClient));
+
+        Map<String, Receipt> receipts = function.getReceipts(List.of(BIZ_EVENT_ID, "missing"));
+
+        assertEquals(Map.of(BIZ_EVENT_ID, receipt), receipts);
+    }
+    @Test
+    void patchReceiptsReturnsErrorsOfReceiptsNotSaved(){
+        Receipt saved = Receipt.builder().eventId(BIZ_EVENT_ID).status(ReceiptStatusType.TO_REVIEW).build();
+        Receipt notSaved = Receipt.builder().eventId("not saved").status(ReceiptStatusType.TO_REVIEW).build();
+        Receipt unchanged = Receipt.builder().eventId("unchanged").status(ReceiptStatusType.TO_REVIEW).build();
+        Map<Receipt, JsonNode> snapshots = new IdentityHashMap<>();
+        for (Receipt receipt : List.of(saved, notSaved, unchanged)) {
+            snapshots.put(receipt, DocumentPatchBuilder.snapshot(receipt));
+        }
+        saved.setStatus(ReceiptStatusType.INSERTED);
+        notSaved.setStatus(ReceiptStatusType.INSERTED);
+
+        ArgumentCaptor<Map<Receipt, DocumentPatch>> patchesCaptor = ArgumentCaptor.forClass(Map.class);
+        when(receiptCosmosClient.patchReceipts(patchesCaptor.capture()))
+                .thenReturn(Map.of(BIZ_EVENT_ID, HttpStatus.OK.value(), "not saved", HttpStatus.PRECONDITION_FAILED.value()));
+        function = spy(new ReceiptCosmosServiceImpl(receiptCosmosClient));
+
+        Map<String, UnableToSaveException> errors = function.patchReceipts(snapshots);
+
+        assertEquals(Set.of(saved, notSaved), patchesCaptor.getValue().keySet());
+        assertEquals(Set.of("not saved"), errors.keySet());
+        assertEquals(HttpStatus.PRECONDITION_FAILED.value(), errors.get("not saved").getStatusCode());
+    }
+    @Test
+    void patchReceiptsBulkFailedReturnsErrorsOfAllReceipts(){
+        Receipt first = Receipt.builder().eventId(BIZ_EVENT_ID).status(ReceiptStatusType.TO_REVIEW).build();
+        Receipt second = Receipt.builder().eventId("second").status(ReceiptStatusType.TO_REVIEW).build();
+        Map<Receipt, JsonNode> snapshots = new IdentityHashMap<>();
+        for (Receipt receipt : List.of(first, second)) {
+            snapshots.put(receipt, DocumentPatchBuilder.snapshot(receipt));
+            receipt.setStatus(ReceiptStatusType.INSERTED);
+        }
+        when(receiptCosmosClient.patchReceipts(any())).thenThrow(CosmosException.class);
+        function = spy(new ReceiptCosmosServiceImpl(receiptCosmosClient));
+
+        Map<String, UnableToSaveException> errors = function.patchReceipts(snapshots);
+
+        assertEquals(Set.of(BIZ_EVENT_ID, "second"), errors.keySet());
+    }
+    @Test
+    void patchReceiptsWithoutChangesSkipsClient(){
+        Receipt receipt = Receipt.builder().eventId(BIZ_EVENT_ID).status(ReceiptStatusType.TO_REVIEW).build();
+        function = spy(new ReceiptCosmosServiceImpl(receiptCosmosClient));
+
+        assertTrue(function.patchReceipts(Map.of(receipt, DocumentPatchBuilder.snapshot(receipt))).isEmpty());
+        verify(receiptCosmosClient, never()).patchReceipts(any());
+    }
+
+}
@@ -0,0 +1,97 @@
+package it.gov.pagopa.receipt.pdf.generator.utils;
+
+import it.gov.pagopa.receipt.pdf.generator.exception.Aes256Exception;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class Aes256UtilsTest {
+
+    private static final String SECRET_KEY = "secret-key";
+    private static final String ROTATED_SECRET_KEY = "rotated-secret-key";
+    private static final String SALT = "salt";
+    private static final String CONTENT = "content to encrypt";
+
+    @AfterEach
+    void tearDown() {
+        Aes256Utils.clearDerivedKeys();
+    }
+
+    @Test
+    void encryptDecryptRoundTripDerivesKeyOnce() throws Aes256Exception {
+        Aes256Utils.clearDerivedKeys();
+
+        String first = Aes256Utils.encrypt(CONTENT, SECRET_KEY, SALT);
+        String second = Aes256Utils.encrypt(CONTENT, SECRET_KEY, SALT);
+
+        assertNotEquals(first, second);
+        assertEquals(CONTENT, Aes256Utils.decrypt(first, SECRET_KEY, SALT));
+        assertEquals(CONTENT, Aes256Utils.decrypt(second, SECRET_KEY, SALT));
+        assertEquals(1, Aes256Utils.getDerivedKeysCount());
+    }
+
+    @Test
+    void rotatedKeyIsCachedSeparatelyAndOldMessagesStillDecrypt() throws Aes256Exception {
+        Aes256Utils.clearDerivedKeys();
+
+        String encryptedWithOldKey = Aes256Utils.encrypt(CONTENT, SECRET_KEY, SALT);
+        String encryptedWithNewKey = Aes256Utils.encrypt(CONTENT, ROTATED_SECRET_KEY, SALT);
+
+        assertEquals(CONTENT, Aes256Utils.decrypt(encryptedWithOldKey, SECRET_KEY, SALT));
+        assertEquals(CONTENT, Aes256Utils.decrypt(encryptedWithNewKey, ROTATED_SECRET_KEY, SALT));
+        assertThrows(Aes256Exception.class, () -> Aes256Utils.decrypt(encryptedWithOldKey, ROTATED_SECRET_KEY, SALT));
+        assertEquals(2, Aes256Utils.getDerivedKeysCount());
+    }
+
+    @Test
+    void otherDerivedKeysAreBoundedByLeastRecentUse() throws Aes256Exception {
+        Aes256Utils.clearDerivedKeys();
+
+        String encryptedWithOldKey = Aes256Utils.encrypt(CONTENT, SECRET_KEY, SALT);
+        for (int i = 0; i < Aes256Utils.MAX_OTHER_DERIVED_KEYS + 2; i++) {
+            Aes256Utils.encrypt(CONTENT, ROTATED_SECRET_KEY + i, SALT);
+        }
+
+        assertEquals(Aes256Utils.MAX_OTHER_DERIVED_KEYS, Aes256Utils.getDerivedKeysCount());
+        assertEquals(CONTENT, Aes256Utils.decrypt(encryptedWithOldKey, SECRET_KEY, SALT));
+        assertEquals(Aes256Utils.MAX_OTHER_DERIVED_KEYS, Aes256Utils.getDerivedKeysCount());
+    }
+
+    @Test
+    void concurrentCallsUseThreadConfinedCiphers() {
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            List<CompletableFuture<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                String content = CONTENT + i;
+                futures.add(CompletableFuture.supplyAsync(() -> roundTrip(content), executorService));
+            }
+
+            List<String> results = new ArrayList<>();
+            futures.forEach(future -> results.add(future.join()));
+            for (int i = 0; i < 32; i++) {
+                assertEquals(CONTENT + i, results.get(i));
+            }
+            assertEquals(1, Aes256Utils.getDerivedKeysCount());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private static String roundTrip(String content) {
+        try {
+            return Aes256Utils.decrypt(Aes256Utils.encrypt(content, SECRET_KEY, SALT), SECRET_KEY, SALT);
+        } catch (Aes256Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package it.gov.pagopa.receipt.pdf.generator.utils;
+
+import it.gov.pagopa.receipt.pdf.generator.utils.CircuitBreaker.Permit;
+import it.gov.pagopa.receipt.pdf.generator.utils.CircuitBreaker.State;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTest {
+
+    private static final long SLOW_CALL_NANOS = 1_000;
+    private static final long OPEN_NANOS = 10_000;
+
+    private final AtomicLong clock = new AtomicLong();
+    private final CircuitBreaker sut = new CircuitBreaker("test",
+            new CircuitBreaker.Settings(50, 80, SLOW_CALL_NANOS, 10, 4, OPEN_NANOS, 2), clock::get);
+
+    @Test
+    void opensOnFailureRateOnlyAfterMinimumCalls() {
+        call(false, 0);
+        call(false, 0);
+        call(false, 0);
+        assertEquals(State.CLOSED, sut.getState());
+
+        call(true, 0);
+
+        assertEquals(State.OPEN, sut.getState());
+        assertEquals(75.0, sut.getFailureRate());
+        assertNull(sut.tryAcquirePermission());
+        assertEquals(1, sut.getRejectedCalls());
+        assertEquals(1, sut.getOpenedCount());
+    }
+
+    @Test
+    void opensOnSlowCallRate() {
+        for (int i = 0; i < 4; i++) {
+            call(true, SLOW_CALL_NANOS);
+        }
+
+        assertEquals(State.OPEN, sut.getState());
+        assertEquals(100.0, sut.getSlowCallRate());
+    }
+
+    @Test
+    void staysClosedWhileRatesAreBelowThresholds() {
+        for (int i = 0; i < 20; i++) {
+            call(i % 4 != 0, 0);
+        }
+
+        assertEquals(State.CLOSED, sut.getState());
+        assertNotNull(sut.tryAcquirePermission());
+    }
+
+    @Test
+    void halfOpenPermitsLimitedProbesAndClosesOnSuccess() {
+        tripOpen();
+        clock.addAndGet(OPEN_NANOS);
+
+        Permit firstProbe = sut.tryAcquirePermission();
+        Permit secondProbe = sut.tryAcquirePermission();
+        assertNotNull(firstProbe);
+        assertNotNull(secondProbe);
+        assertTrue(firstProbe.probe());
+        assertNull(sut.tryAcquirePermission());
+        assertEquals(State.HALF_OPEN, sut.getState());
+
+        sut.onResult(firstProbe, true, 0);
+        sut.onResult(secondProbe, true, 0);
+
+        assertEquals(State.CLOSED, sut.getState());
+        assertEquals(0.0, sut.getFailureRate());
+        assertNotNull(sut.tryAcquirePermission());
+    }
+
+    @Test
+    void halfOpenGoesBackToOpenOnFailedProbes() {
+        tripOpen();
+        clock.addAndGet(OPEN_NANOS);
+
+        Permit firstProbe = sut.tryAcquirePermission();
+        Permit secondProbe = sut.tryAcquirePermission();
+        sut.onResult(firstProbe, false, 0);
+        sut.onResult(secondProbe, true, 0);
+
+        assertEquals(State.OPEN, sut.getState());
+        assertEquals(2, sut.getOpenedCount());
+        assertNull(sut.tryAcquirePermission());
+    }
+
+    @Test
+    void callsPermittedBeforeTheLastStateChangeAreNotCountedAsProbes() {
+        Permit staleCall = sut.tryAcquirePermission();
+        tripOpen();
+        clock.addAndGet(OPEN_NANOS);
+        Permit firstProbe = sut.tryAcquirePermission();
+        Permit secondProbe = sut.tryAcquirePermission();
+
+        sut.onResult(staleCall, false, 0);
+        sut.onResult(firstProbe, true, 0);
+
+        assertEquals(State.HALF_OPEN, sut.getState());
+
+        sut.onResult(secondProbe, true, 0);
+
+        assertEquals(State.CLOSED, sut.getState());
+    }
+
+    @Test
+    void isCallPermittedDoesNotAcquirePermissions() {
+        tripOpen();
+        assertFalse(sut.isCallPermitted());
+
+        clock.addAndGet(OPEN_NANOS);
+        assertTrue(sut.isCallPermitted());
+        assertEquals(State.OPEN, sut.getState());
+
+        assertNotNull(sut.tryAcquirePermission());
+        assertNotNull(sut.tryAcquirePermission());
+        assertFalse(sut.isCallPermitted());
+        assertEquals(0, sut.getRejectedCalls());
+    }
+
+    @Test
+    void mxBeanExposesStateCode() {
+        CircuitBreaker.CircuitBreakerMXBean mxBean = sut.toMXBean();
+        assertEquals(0, mxBean.getStateCode());
+
+        tripOpen();
+
+        assertEquals(1, mxBean.getStateCode());
+        assertEquals("OPEN", mxBean.getState());
+    }
+
+    private void tripOpen() {
+        for (int i = 0; i < 4; i++) {
+            call(false, 0);
+        }
+        assertEquals(State.OPEN, sut.getState());
+    }
+
+    private void call(boolean success, long durationNanos) {
+        Permit permit = sut.tryAcquirePermission();
+        assertNotNull(permit);
+        sut.onResult(permit, success, durationNanos);
+    }
+}
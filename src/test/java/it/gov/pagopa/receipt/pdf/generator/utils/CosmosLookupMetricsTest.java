@@ -0,0 +1,35 @@
+package it.gov.pagopa.receipt.pdf.generator.utils;
+
+import it.gov.pagopa.receipt.pdf.generator.utils.CosmosLookupMetrics.LookupPath;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CosmosLookupMetricsTest {
+
+    private static final String DOMAIN = "it.gov.pagopa.receipt.pdf.generator";
+
+    @Test
+    void registerExportsTheCountersOfEachPathOverJmx() throws Exception {
+        CosmosLookupMetrics sut = new CosmosLookupMetrics().register("CosmosLookupMetricsTest");
+
+        sut.record(LookupPath.POINT_READ, false, 1.0, TimeUnit.MILLISECONDS.toNanos(3));
+        sut.record(LookupPath.PARTITION_QUERY, true, 2.5, TimeUnit.MILLISECONDS.toNanos(5));
+
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName pointRead = new ObjectName(DOMAIN + ":type=CosmosLookup,container=CosmosLookupMetricsTest,path=POINT_READ");
+        ObjectName partitionQuery = new ObjectName(DOMAIN + ":type=CosmosLookup,container=CosmosLookupMetricsTest,path=PARTITION_QUERY");
+        assertEquals(1L, mBeanServer.getAttribute(pointRead, "Count"));
+        assertEquals(0L, mBeanServer.getAttribute(pointRead, "FoundCount"));
+        assertEquals(1L, mBeanServer.getAttribute(partitionQuery, "FoundCount"));
+        assertEquals(2.5, mBeanServer.getAttribute(partitionQuery, "RequestCharge"));
+        assertEquals(5L, mBeanServer.getAttribute(partitionQuery, "ElapsedMillis"));
+        assertEquals(0L, mBeanServer.getAttribute(
+                new ObjectName(DOMAIN + ":type=CosmosLookup,container=CosmosLookupMetricsTest,path=QUERY_FALLBACK"), "Count"));
+    }
+}
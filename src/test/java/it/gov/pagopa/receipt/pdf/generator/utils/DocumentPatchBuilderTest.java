@@ -0,0 +1,122 @@
+package it.gov.pagopa.receipt.pdf.generator.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import it.gov.pagopa.receipt.pdf.generator.entity.receipt.EventData;
+import it.gov.pagopa.receipt.pdf.generator.entity.receipt.ReasonError;
+import it.gov.pagopa.receipt.pdf.generator.entity.receipt.Receipt;
+import it.gov.pagopa.receipt.pdf.generator.entity.receipt.enumeration.ReceiptStatusType;
+import it.gov.pagopa.receipt.pdf.generator.model.DocumentPatch;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DocumentPatchBuilderTest {
+
+    private static final String EVENT_ID = "event-id";
+
+    @Test
+    void diffUnchangedDocumentIsEmpty() {
+        Receipt receipt = buildReceipt();
+        JsonNode snapshot = DocumentPatchBuilder.snapshot(receipt);
+
+        DocumentPatch patch = DocumentPatchBuilder.diff(snapshot, receipt);
+
+        assertTrue(patch.isEmpty());
+        assertEquals(0, patch.size());
+    }
+
+    @Test
+    void diffContainsOnlyChangedFields() {
+        Receipt receipt = buildReceipt();
+        JsonNode snapshot = DocumentPatchBuilder.snapshot(receipt);
+
+        receipt.setStatus(ReceiptStatusType.GENERATED);
+        receipt.setGenerated_at(2L);
+        receipt.setReasonErr(null);
+
+        DocumentPatch patch = DocumentPatchBuilder.diff(snapshot, receipt);
+
+        assertFalse(patch.isEmpty());
+        assertEquals(3, patch.size());
+        assertEquals(List.of("status", "reasonErr", "generated_at"), patch.getChangedFields());
+    }
+
+    @Test
+    void diffDetectsChangesInNestedObjects() {
+        Receipt receipt = buildReceipt();
+        JsonNode snapshot = DocumentPatchBuilder.snapshot(receipt);
+
+        receipt.getEventData().setAmount("20.00");
+
+        DocumentPatch patch = DocumentPatchBuilder.diff(snapshot, receipt);
+
+        assertEquals(List.of("eventData"), patch.getChangedFields());
+    }
+
+    @Test
+    void diffSkipsIdAndSystemProperties() {
+        Receipt receipt = buildReceipt();
+        JsonNode snapshot = DocumentPatchBuilder.snapshot(receipt);
+
+        receipt.setId("another-id");
+        receipt.set_etag("another-etag");
+
+        assertTrue(DocumentPatchBuilder.diff(snapshot, receipt).isEmpty());
+    }
+
+    @Test
+    void diffRemovesFieldsMissingInCurrentDocument() {
+        Map<String, Object> document = new HashMap<>();
+        document.put("id", EVENT_ID);
+        document.put("status", "INSERTED");
+        document.put("numRetry", 1);
+        JsonNode snapshot = DocumentPatchBuilder.snapshot(document);
+
+        document.remove("numRetry");
+
+        DocumentPatch patch = DocumentPatchBuilder.diff(snapshot, document);
+
+        assertEquals(List.of("numRetry"), patch.getChangedFields());
+    }
+
+    @Test
+    void rebaseKeepsTheFieldsChangedInTheMeantime() {
+        Receipt receipt = buildReceipt();
+        JsonNode snapshot = DocumentPatchBuilder.snapshot(receipt);
+        receipt.setStatus(ReceiptStatusType.GENERATED);
+        receipt.setReasonErr(null);
+
+        Receipt latest = buildReceipt();
+        latest.setNumRetry(2);
+        latest.set_etag("latest-etag");
+
+        Receipt rebased = DocumentPatchBuilder.rebase(snapshot, receipt, latest);
+
+        assertEquals(ReceiptStatusType.GENERATED, rebased.getStatus());
+        assertNull(rebased.getReasonErr());
+        assertEquals(2, rebased.getNumRetry());
+        assertEquals("latest-etag", rebased.get_etag());
+        assertEquals(List.of("status", "reasonErr"),
+                DocumentPatchBuilder.diff(DocumentPatchBuilder.snapshot(latest), rebased).getChangedFields());
+    }
+
+    private static Receipt buildReceipt() {
+        return Receipt.builder()
+                .id(EVENT_ID)
+                .eventId(EVENT_ID)
+                .status(ReceiptStatusType.INSERTED)
+                .eventData(EventData.builder().amount("10.00").build())
+                .reasonErr(ReasonError.builder().code(500).message("error").build())
+                .numRetry(1)
+                .inserted_at(1L)
+                ._etag("etag")
+                .build();
+    }
+}
@@ -0,0 +1,78 @@
+package it.gov.pagopa.receipt.pdf.generator.utils;
+
+import it.gov.pagopa.receipt.pdf.generator.entity.receipt.enumeration.ReasonErrorCode;
+import it.gov.pagopa.receipt.pdf.generator.exception.GeneratePDFException;
+import it.gov.pagopa.receipt.pdf.generator.model.PdfMetadata;
+import it.gov.pagopa.receipt.pdf.generator.utils.GenerationMetrics.Stage;
+import org.apache.http.HttpStatus;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import static it.gov.pagopa.receipt.pdf.generator.utils.Constants.ALREADY_CREATED;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class GenerationMetricsTest {
+
+    private static final String DOMAIN = "it.gov.pagopa.receipt.pdf.generator";
+
+    @Test
+    void timeRecordsTheStageAlsoWhenItFails() {
+        GenerationMetrics sut = GenerationMetrics.detached();
+
+        assertEquals("template", sut.time(Stage.TEMPLATE_BUILD, () -> "template"));
+        assertThrows(GeneratePDFException.class, () -> sut.time(Stage.ENGINE_CALL, () -> {
+            throw new GeneratePDFException("error", HttpStatus.SC_INTERNAL_SERVER_ERROR);
+        }));
+
+        assertEquals(1, sut.getStageLatency(Stage.TEMPLATE_BUILD).getCount());
+        assertEquals(1, sut.getStageLatency(Stage.ENGINE_CALL).getCount());
+        assertEquals(0, sut.getStageLatency(Stage.BLOB_UPLOAD).getCount());
+    }
+
+    @Test
+    void recordPdfOutcomesSkipsAlreadyCreatedPdfs() {
+        GenerationMetrics sut = GenerationMetrics.detached();
+
+        sut.recordPdfOutcomes(Arrays.asList(
+                PdfMetadata.builder().statusCode(HttpStatus.SC_OK).build(),
+                PdfMetadata.builder().statusCode(ReasonErrorCode.ERROR_BLOB_STORAGE.getCode()).build(),
+                PdfMetadata.builder().statusCode(HttpStatus.SC_INTERNAL_SERVER_ERROR).build(),
+                PdfMetadata.builder().statusCode(ALREADY_CREATED).build(),
+                null));
+
+        assertEquals(1, sut.getOutcomeCount(GenerationMetrics.OUTCOME_GENERATED));
+        assertEquals(1, sut.getOutcomeCount(ReasonErrorCode.ERROR_BLOB_STORAGE.name()));
+        assertEquals(1, sut.getOutcomeCount(GenerationMetrics.OUTCOME_OTHER_ERROR));
+        assertEquals(0, sut.getOutcomeCount(ReasonErrorCode.ERROR_PDF_ENGINE.name()));
+        assertEquals(1, sut.getPdfsPerMessage().getCount());
+        assertEquals(3, sut.getPdfsPerMessage().getSum());
+    }
+
+    @Test
+    void getInstanceExportsTheMetricsOverJmx() throws Exception {
+        GenerationMetrics sut = GenerationMetrics.getInstance("GenerationMetricsTest");
+        assertSame(sut, GenerationMetrics.getInstance("GenerationMetricsTest"));
+
+        sut.recordStage(Stage.COSMOS_READ, System.nanoTime());
+        sut.recordPdfOutcomes(Arrays.asList(PdfMetadata.builder().statusCode(HttpStatus.SC_OK).build(), null));
+        sut.recordBlobProbe(true);
+
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        assertEquals(1L, mBeanServer.getAttribute(
+                new ObjectName(DOMAIN + ":type=StageLatency,function=GenerationMetricsTest,stage=COSMOS_READ"), "Bucket_Inf"));
+        assertEquals(1L, mBeanServer.getAttribute(
+                new ObjectName(DOMAIN + ":type=PdfsPerMessage,function=GenerationMetricsTest"), "Bucket_1"));
+        assertEquals(1L, mBeanServer.getAttribute(
+                new ObjectName(DOMAIN + ":type=PdfOutcome,function=GenerationMetricsTest,outcome=GENERATED"), "Count"));
+        assertEquals(1L, mBeanServer.getAttribute(
+                new ObjectName(DOMAIN + ":type=BlobProbe,function=GenerationMetricsTest,result=HIT"), "Count"));
+        assertEquals(0L, mBeanServer.getAttribute(
+                new ObjectName(DOMAIN + ":type=BlobProbe,function=GenerationMetricsTest,result=MISS"), "Count"));
+    }
+}
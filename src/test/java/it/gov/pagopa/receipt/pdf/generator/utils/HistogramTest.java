@@ -0,0 +1,60 @@
+package it.gov.pagopa.receipt.pdf.generator.utils;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.AttributeNotFoundException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.ReflectionException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HistogramTest {
+
+    @Test
+    void recordCountsValuesInCumulativeBuckets() {
+        Histogram histogram = new Histogram("test", 10, 100);
+
+        histogram.record(5);
+        histogram.record(10);
+        histogram.record(50);
+        histogram.record(500);
+
+        assertEquals(4, histogram.getCount());
+        assertEquals(565, histogram.getSum());
+        assertEquals(2, histogram.getCumulativeCount(10));
+        assertEquals(3, histogram.getCumulativeCount(100));
+        assertEquals(4, histogram.getCumulativeCount(Double.POSITIVE_INFINITY));
+    }
+
+    @Test
+    void attributesFollowThePrometheusLayout() throws AttributeNotFoundException {
+        Histogram histogram = new Histogram("test", 0.5, 10);
+        histogram.record(1);
+
+        List<String> attributes = Arrays.stream(histogram.getMBeanInfo().getAttributes())
+                .map(MBeanAttributeInfo::getName)
+                .toList();
+
+        assertEquals(List.of("Count", "Sum", "Bucket_0_5", "Bucket_10", "Bucket_Inf"), attributes);
+        assertEquals(0L, histogram.getAttribute("Bucket_0_5"));
+        assertEquals(1L, histogram.getAttribute("Bucket_10"));
+        assertEquals(1L, histogram.getAttribute("Bucket_Inf"));
+        assertEquals(1.0, histogram.getAttribute("Sum"));
+        assertThrows(AttributeNotFoundException.class, () -> histogram.getAttribute("Bucket_20"));
+    }
+
+    @Test
+    void invokeThrowsReflectionException() {
+        Histogram histogram = new Histogram("test", 10);
+
+        ReflectionException e = assertThrows(ReflectionException.class,
+                () -> histogram.invoke("reset", new Object[0], new String[0]));
+
+        assertInstanceOf(NoSuchMethodException.class, e.getTargetException());
+        assertEquals("reset", e.getTargetException().getMessage());
+    }
+}
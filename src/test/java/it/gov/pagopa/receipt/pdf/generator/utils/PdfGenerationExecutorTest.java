@@ -0,0 +1,132 @@
+package it.gov.pagopa.receipt.pdf.generator.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PdfGenerationExecutorTest {
+
+    private final ExecutorService executorService = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    void runAllUsesPoolUpToMaxParallelism() {
+        PdfGenerationExecutor sut = new PdfGenerationExecutor(executorService, 4);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        AtomicInteger completed = new AtomicInteger();
+
+        sut.runAll(buildTasks(8, () -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            sleep();
+            inFlight.decrementAndGet();
+            completed.incrementAndGet();
+        }), 3);
+
+        assertEquals(8, completed.get());
+        assertTrue(maxInFlight.get() <= 3);
+        assertEquals(4, sut.getAvailableFanOutPermits());
+    }
+
+    @Test
+    void runAllWithoutPermitsRunsOnInvokingThread() {
+        PdfGenerationExecutor sut = new PdfGenerationExecutor(executorService, 0);
+        Set<String> threadNames = ConcurrentHashMap.newKeySet();
+
+        sut.runAll(buildTasks(3, () -> threadNames.add(Thread.currentThread().getName())), 3);
+
+        assertEquals(Set.of(Thread.currentThread().getName()), threadNames);
+    }
+
+    @Test
+    void runAllUnexpectedErrorDoesNotStopOtherTasks() {
+        PdfGenerationExecutor sut = new PdfGenerationExecutor(executorService, 2);
+        AtomicInteger completed = new AtomicInteger();
+        List<Runnable> tasks = new ArrayList<>();
+        tasks.add(() -> {
+            throw new IllegalStateException("error");
+        });
+        tasks.addAll(buildTasks(3, completed::incrementAndGet));
+
+        sut.runAll(tasks, 2);
+
+        assertEquals(3, completed.get());
+        assertEquals(2, sut.getAvailableFanOutPermits());
+    }
+
+    @Test
+    void forEachHandlesEveryItemOnce() {
+        PdfGenerationExecutor sut = new PdfGenerationExecutor(executorService, 4);
+        Map<Integer, AtomicInteger> handled = new ConcurrentHashMap<>();
+
+        sut.forEach(buildItems(20), 3,
+                item -> handled.computeIfAbsent(item, key -> new AtomicInteger()).incrementAndGet(),
+                (item, e) -> {
+                    throw new IllegalStateException("unexpected", e);
+                });
+
+        assertEquals(20, handled.size());
+        assertTrue(handled.values().stream().allMatch(count -> count.get() == 1));
+        assertEquals(4, sut.getAvailableFanOutPermits());
+    }
+
+    @Test
+    void forEachPassesFailedItemsToErrorHandler() {
+        PdfGenerationExecutor sut = new PdfGenerationExecutor(executorService, 2);
+        AtomicInteger completed = new AtomicInteger();
+        Set<Integer> failed = ConcurrentHashMap.newKeySet();
+
+        sut.forEach(buildItems(6), 3, item -> {
+            if (item % 2 == 0) {
+                throw new IllegalStateException("error");
+            }
+            completed.incrementAndGet();
+        }, (item, e) -> {
+            failed.add(item);
+            throw new IllegalStateException("handler error");
+        });
+
+        assertEquals(3, completed.get());
+        assertEquals(Set.of(0, 2, 4), failed);
+        assertEquals(2, sut.getAvailableFanOutPermits());
+    }
+
+    private static List<Integer> buildItems(int count) {
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            items.add(i);
+        }
+        return items;
+    }
+
+    private static List<Runnable> buildTasks(int count, Runnable task) {
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            tasks.add(task);
+        }
+        return tasks;
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(20);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
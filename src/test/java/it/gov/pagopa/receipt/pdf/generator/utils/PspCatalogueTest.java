@@ -0,0 +1,68 @@
+package it.gov.pagopa.receipt.pdf.generator.utils;
+
+import it.gov.pagopa.receipt.pdf.generator.exception.PdfJsonMappingException;
+import it.gov.pagopa.receipt.pdf.generator.model.PspConfiguration;
+import it.gov.pagopa.receipt.pdf.generator.model.template.PSP;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PspCatalogueTest {
+
+    private static final String ID_PSP = "ID_PSP";
+
+    @Test
+    void loadMapsTypedEntries() {
+        PspCatalogue sut = PspCatalogue.load("psp_config_file.json");
+
+        PspConfiguration configuration = sut.getConfiguration(ID_PSP).orElseThrow();
+
+        assertTrue(sut.size() > 0);
+        assertEquals("name", configuration.getName());
+        assertEquals("fiscalCode", configuration.getFiscalCode());
+        assertEquals("logo", configuration.getLogo());
+        assertEquals("province", configuration.getProvince());
+    }
+
+    @Test
+    void loadMissingResourceThrows() {
+        assertThrows(PdfJsonMappingException.class, () -> PspCatalogue.load("missing_psp_config_file.json"));
+    }
+
+    @Test
+    void getPspTemplateReturnsCopies() {
+        PspCatalogue sut = new PspCatalogue(Map.of(ID_PSP, PspConfiguration.builder()
+                .name("name")
+                .companyName("companyName")
+                .logo("logo")
+                .build()));
+
+        PSP first = sut.getPspTemplate(ID_PSP).orElseThrow();
+        first.setName("updated");
+        PSP second = sut.getPspTemplate(ID_PSP).orElseThrow();
+
+        assertNotSame(first, second);
+        assertEquals("name", second.getName());
+        assertEquals("companyName", first.getCompanyName());
+        assertEquals("logo", first.getLogo());
+        assertNull(first.getFee());
+        assertNull(first.getCity());
+    }
+
+    @Test
+    void getPspTemplateNotConfigured() {
+        PspCatalogue sut = new PspCatalogue(Map.of());
+
+        Optional<PSP> result = sut.getPspTemplate("UNKNOWN");
+
+        assertTrue(result.isEmpty());
+        assertTrue(sut.getConfiguration("UNKNOWN").isEmpty());
+    }
+}
@@ -0,0 +1,120 @@
+package it.gov.pagopa.receipt.pdf.generator.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import it.gov.pagopa.receipt.pdf.generator.model.template.Cart;
+import it.gov.pagopa.receipt.pdf.generator.model.template.Debtor;
+import it.gov.pagopa.receipt.pdf.generator.model.template.Item;
+import it.gov.pagopa.receipt.pdf.generator.model.template.PSP;
+import it.gov.pagopa.receipt.pdf.generator.model.template.PSPFee;
+import it.gov.pagopa.receipt.pdf.generator.model.template.Payee;
+import it.gov.pagopa.receipt.pdf.generator.model.template.PaymentMethod;
+import it.gov.pagopa.receipt.pdf.generator.model.template.ReceiptPDFTemplate;
+import it.gov.pagopa.receipt.pdf.generator.model.template.RefNumber;
+import it.gov.pagopa.receipt.pdf.generator.model.template.Transaction;
+import it.gov.pagopa.receipt.pdf.generator.model.template.User;
+import it.gov.pagopa.receipt.pdf.generator.model.template.UserData;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class ReceiptTemplateJsonWriterTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void writeFullTemplateMatchesObjectMapper() throws IOException {
+        ReceiptPDFTemplate template = ReceiptPDFTemplate.builder()
+                .serviceCustomerId("serviceCustomerId")
+                .transaction(Transaction.builder()
+                        .timestamp("16 luglio 2023, 15:30:00")
+                        .amount("1.000,00 €")
+                        .psp(PSP.builder()
+                                .name("name")
+                                .fee(PSPFee.builder().amount("2,00 €").build())
+                                .companyName("companyName")
+                                .logo("logo")
+                                .address("address")
+                                .buildingNumber("1")
+                                .postalCode("00100")
+                                .city("Roma")
+                                .province("RM")
+                                .build())
+                        .rrn("rrn")
+                        .authCode("authCode")
+                        .paymentMethod(PaymentMethod.builder()
+                                .name("name")
+                                .logo("logo")
+                                .accountHolder("Mario \"Rossi\" – àèì")
+                                .build())
+                        .requestedByDebtor(true)
+                        .processedByPagoPA(true)
+                        .build())
+                .user(User.builder()
+                        .data(UserData.builder().fullName("Mario Rossi").taxCode("RSSMRA80A01H501U").build())
+                        .email("mario@rossi.it")
+                        .build())
+                .cart(Cart.builder()
+                        .items(List.of(Item.builder()
+                                .refNumber(RefNumber.builder().type("codiceAvviso").value("302000100000009424").build())
+                                .debtor(Debtor.builder().fullName("Mario Rossi").taxCode("RSSMRA80A01H501U").build())
+                                .payee(Payee.builder().name("Comune").taxCode("00000000000").build())
+                                .subject("subject\nwith new line")
+                                .amount("998,00 €")
+                                .build()))
+                        .amountPartial("998,00 €")
+                        .hideFeesAndTotals(true)
+                        .build())
+                .build();
+
+        assertEquals(objectMapper.readTree(objectMapper.writeValueAsString(template)), write(template));
+    }
+
+    @Test
+    void writeSparseTemplateOmitsNulls() throws IOException {
+        ReceiptPDFTemplate template = ReceiptPDFTemplate.builder()
+                .transaction(Transaction.builder()
+                        .psp(PSP.builder().name("name").build())
+                        .build())
+                .cart(Cart.builder()
+                        .items(Arrays.asList(Item.builder().amount("1,00 €").build(), null))
+                        .build())
+                .build();
+
+        JsonNode result = write(template);
+
+        assertEquals(objectMapper.readTree(objectMapper.writeValueAsString(template)), result);
+        assertFalse(result.has("serviceCustomerId"));
+        assertFalse(result.has("user"));
+        assertFalse(result.get("transaction").get("psp").has("fee"));
+    }
+
+    @Test
+    void writeEmptyTemplate() throws IOException {
+        ReceiptPDFTemplate template = new ReceiptPDFTemplate();
+
+        assertEquals(objectMapper.writeValueAsString(template), writeToString(template));
+    }
+
+    @Test
+    void writeNullTemplate() throws IOException {
+        assertEquals("null", writeToString(null));
+    }
+
+    private JsonNode write(ReceiptPDFTemplate template) throws IOException {
+        return objectMapper.readTree(writeToString(template));
+    }
+
+    private static String writeToString(ReceiptPDFTemplate template) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ReceiptTemplateJsonWriter.write(template, out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
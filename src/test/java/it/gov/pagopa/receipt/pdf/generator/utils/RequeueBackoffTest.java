@@ -0,0 +1,62 @@
+package it.gov.pagopa.receipt.pdf.generator.utils;
+
+import it.gov.pagopa.receipt.pdf.generator.entity.receipt.enumeration.ReasonErrorCode;
+import it.gov.pagopa.receipt.pdf.generator.model.PdfMetadata;
+import org.apache.http.HttpStatus;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequeueBackoffTest {
+
+    private final RequeueBackoff sut = new RequeueBackoff(1,
+            Map.of(ReasonErrorCode.ERROR_BLOB_STORAGE, 2L, ReasonErrorCode.ERROR_PDF_ENGINE, 30L),
+            RequeueBackoff.QUEUE_MAX_DELAY_SECONDS);
+
+    @Test
+    void baseDependsOnTheReasonErrorCode() {
+        assertEquals(2, sut.getBaseSeconds(failed(ReasonErrorCode.ERROR_BLOB_STORAGE.getCode(), null)));
+        assertEquals(30, sut.getBaseSeconds(failed(HttpStatus.SC_INTERNAL_SERVER_ERROR, ReasonErrorCode.ERROR_PDF_ENGINE)));
+        assertEquals(1, sut.getBaseSeconds(failed(ReasonErrorCode.ERROR_PDV_IO.getCode(), null)));
+    }
+
+    @Test
+    void onlyTheFailuresOfTheEngineUseTheEngineBase() {
+        assertEquals(1, sut.getBaseSeconds(failed(HttpStatus.SC_INTERNAL_SERVER_ERROR, null)));
+        assertEquals(30, sut.getBaseSeconds(failed(ReasonErrorCode.ERROR_PDF_ENGINE_UNAVAILABLE.getCode(), ReasonErrorCode.ERROR_PDF_ENGINE)));
+    }
+
+    @Test
+    void ceilingGrowsExponentiallyUpToTheQueueMaximum() {
+        assertEquals(30, sut.getCeilingSeconds(0, 30));
+        assertEquals(240, sut.getCeilingSeconds(3, 30));
+        assertEquals(RequeueBackoff.QUEUE_MAX_DELAY_SECONDS, sut.getCeilingSeconds(20, 30));
+        assertEquals(RequeueBackoff.QUEUE_MAX_DELAY_SECONDS, sut.getCeilingSeconds(100, 30));
+    }
+
+    @Test
+    void nextDelayIsJitteredWithinTheLongestFailureCeiling() {
+        List<PdfMetadata> pdfs = Arrays.asList(
+                PdfMetadata.builder().statusCode(HttpStatus.SC_OK).build(),
+                failed(ReasonErrorCode.ERROR_BLOB_STORAGE.getCode(), null),
+                failed(HttpStatus.SC_INTERNAL_SERVER_ERROR, ReasonErrorCode.ERROR_PDF_ENGINE),
+                null);
+
+        for (int i = 0; i < 100; i++) {
+            Duration delay = sut.nextDelay(2, pdfs);
+            assertTrue(delay.getSeconds() >= 60 && delay.getSeconds() <= 120, delay::toString);
+        }
+        assertEquals(1, sut.nextDelay(0, Collections.emptyList()).getSeconds());
+    }
+
+    private static PdfMetadata failed(int statusCode, ReasonErrorCode reasonErrorCode) {
+        return PdfMetadata.builder().statusCode(statusCode).reasonErrorCode(reasonErrorCode).build();
+    }
+}
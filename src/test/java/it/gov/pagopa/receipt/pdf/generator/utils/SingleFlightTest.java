@@ -0,0 +1,77 @@
+package it.gov.pagopa.receipt.pdf.generator.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleFlightTest {
+
+    private final SingleFlight<String, Object> sut = new SingleFlight<>();
+
+    @Test
+    void concurrentDuplicatesShareTheInFlightResult() throws Exception {
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        Object result = new Object();
+
+        CompletableFuture<Object> leader = CompletableFuture.supplyAsync(() -> sut.execute("key", () -> {
+            calls.incrementAndGet();
+            leaderStarted.countDown();
+            await(release);
+            return result;
+        }));
+        assertTrue(leaderStarted.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Object> duplicate = CompletableFuture.supplyAsync(() -> sut.execute("key", () -> {
+            calls.incrementAndGet();
+            return new Object();
+        }));
+        while (sut.getCollapsed() == 0) {
+            Thread.onSpinWait();
+        }
+        release.countDown();
+
+        assertSame(result, leader.get(5, TimeUnit.SECONDS));
+        assertSame(result, duplicate.get(5, TimeUnit.SECONDS));
+        assertEquals(1, calls.get());
+        assertEquals(1, sut.getExecuted());
+        assertEquals(1, sut.getCollapsed());
+        assertEquals(0, sut.getInFlight());
+    }
+
+    @Test
+    void completedCallsAreNotCached() {
+        sut.execute("key", Object::new);
+        sut.execute("key", Object::new);
+        sut.execute("other", Object::new);
+
+        assertEquals(3, sut.getExecuted());
+        assertEquals(0, sut.getCollapsed());
+    }
+
+    @Test
+    void failureIsRethrownAndTheKeyReleased() {
+        IllegalStateException failure = new IllegalStateException("failure");
+
+        assertSame(failure, assertThrows(IllegalStateException.class, () -> sut.execute("key", () -> {
+            throw failure;
+        })));
+        assertEquals(0, sut.getInFlight());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
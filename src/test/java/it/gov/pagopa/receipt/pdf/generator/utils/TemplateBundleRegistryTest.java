@@ -0,0 +1,87 @@
+package it.gov.pagopa.receipt.pdf.generator.utils;
+
+import it.gov.pagopa.receipt.pdf.generator.model.TemplateBundle;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static it.gov.pagopa.receipt.pdf.generator.utils.Constants.ZIP_FILE_NAME;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TemplateBundleRegistryTest {
+
+    private TemplateBundleRegistry sut;
+
+    @BeforeEach
+    void setUp() {
+        sut = new TemplateBundleRegistry();
+    }
+
+    @Test
+    void getBundleLoadsOnceAndReusesSharedPart() throws IOException {
+        TemplateBundle first = sut.getBundle(ZIP_FILE_NAME);
+        TemplateBundle second = sut.getBundle(ZIP_FILE_NAME);
+
+        assertSame(first, second);
+        assertSame(first.getContentBody(), second.getContentBody());
+        assertEquals(ZIP_FILE_NAME, first.getContentBody().getFilename());
+        assertEquals("application/zip", first.getContentBody().getMimeType());
+        assertEquals(1, sut.getServedFromMemoryCount());
+        assertEquals(first.getSize(), sut.getTotalBytesSaved());
+        assertEquals(first.getSize(), sut.getBytesSavedPerRequest(ZIP_FILE_NAME));
+    }
+
+    @Test
+    void getContentHashLoadsOnceWithoutCountingAsServed() throws IOException {
+        String contentHash = sut.getContentHash(ZIP_FILE_NAME);
+        TemplateBundle bundle = sut.getBundle(ZIP_FILE_NAME);
+
+        assertEquals(bundle.getContentHash(), contentHash);
+        assertEquals(contentHash, sut.getContentHash(ZIP_FILE_NAME));
+        assertEquals(1, sut.getServedFromMemoryCount());
+        assertEquals(bundle.getSize(), sut.getTotalBytesSaved());
+    }
+
+    @Test
+    void getBundleContentMatchesClasspathResource() throws IOException {
+        byte[] expected;
+        try (InputStream stream = getClass().getClassLoader().getResourceAsStream(ZIP_FILE_NAME)) {
+            expected = stream.readAllBytes();
+        }
+
+        TemplateBundle bundle = sut.getBundle(ZIP_FILE_NAME);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bundle.getContentBody().writeTo(out);
+
+        assertArrayEquals(expected, out.toByteArray());
+        assertEquals(expected.length, bundle.getSize());
+        assertEquals(64, bundle.getContentHash().length());
+    }
+
+    @Test
+    void getBundleNotFoundThrowsIOException() {
+        assertThrows(IOException.class, () -> sut.getBundle("missing-template.zip"));
+        assertEquals(0, sut.getBytesSavedPerRequest("missing-template.zip"));
+    }
+
+    @Test
+    void registerHoldsMultipleVersions() throws IOException {
+        TemplateBundle defaultBundle = sut.getBundle(ZIP_FILE_NAME);
+        TemplateBundle v2 = sut.register("template-v2.zip", "v2".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(2, sut.getLoadedBundles().size());
+        assertNotEquals(defaultBundle.getContentHash(), v2.getContentHash());
+        assertSame(v2, sut.findByContentHash(v2.getContentHash()).orElseThrow());
+        assertSame(defaultBundle, sut.findByContentHash(defaultBundle.getContentHash()).orElseThrow());
+        assertTrue(sut.findByContentHash("unknown").isEmpty());
+    }
+}
@@ -0,0 +1,45 @@
+package it.gov.pagopa.receipt.pdf.generator.utils;
+
+import it.gov.pagopa.receipt.pdf.generator.model.template.ReceiptPDFTemplate;
+import it.gov.pagopa.receipt.pdf.generator.model.template.Transaction;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class TemplateHashTest {
+
+    @Test
+    void sameTemplateDataHasTheSameHash() throws Exception {
+        String hash = TemplateHash.of(buildTemplate("1000"));
+
+        assertEquals(64, hash.length());
+        assertEquals(hash, TemplateHash.of(buildTemplate("1000")));
+    }
+
+    @Test
+    void differentTemplateDataHasDifferentHash() throws Exception {
+        assertNotEquals(TemplateHash.of(buildTemplate("1000")), TemplateHash.of(buildTemplate("1001")));
+    }
+
+    @Test
+    void hashIsNotCountedAsBundleServedFromMemory() throws Exception {
+        TemplateBundleRegistry registry = TemplateBundleRegistry.getInstance();
+        TemplateHash.of(buildTemplate("1000"));
+        long servedFromMemory = registry.getServedFromMemoryCount();
+        long bytesSaved = registry.getTotalBytesSaved();
+
+        TemplateHash.of(buildTemplate("1000"));
+
+        assertEquals(servedFromMemory, registry.getServedFromMemoryCount());
+        assertEquals(bytesSaved, registry.getTotalBytesSaved());
+    }
+
+    private static byte[] buildTemplate(String amount) throws IOException {
+        return ReceiptTemplateJsonWriter.writeValueAsBytes(ReceiptPDFTemplate.builder()
+                .transaction(Transaction.builder().amount(amount).build())
+                .build());
+    }
+}